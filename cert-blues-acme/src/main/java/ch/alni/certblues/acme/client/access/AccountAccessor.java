@@ -28,10 +28,14 @@ package ch.alni.certblues.acme.client.access;
 import ch.alni.certblues.acme.client.request.CreatedResource;
 import ch.alni.certblues.acme.client.request.NonceSource;
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
 import ch.alni.certblues.acme.protocol.Account;
 import ch.alni.certblues.acme.protocol.AccountRequest;
 import reactor.core.publisher.Mono;
 
+import static ch.alni.certblues.acme.metrics.AcmeMetrics.timedRequest;
+import static ch.alni.certblues.acme.metrics.AcmeTracing.tracedRequest;
+
 public class AccountAccessor {
 
     private final NonceSource nonceSource;
@@ -58,7 +62,9 @@ public class AccountAccessor {
     public Mono<? extends CreatedResource<Account>> getAccount(String newAccountUrl, AccountRequest resourceRequest) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(newAccountUrl, resourceRequest, nonce))
-                .flatMap(jwsObject -> requestHandler.create(newAccountUrl, jwsObject, nonceSource, Account.class))
+                .flatMap(jwsObject -> requestHandler.create(newAccountUrl, jwsObject, nonceSource, Account.class)
+                        .transform(timedRequest(AcmeOperation.NEW_ACCOUNT))
+                        .transform(tracedRequest(AcmeOperation.NEW_ACCOUNT, newAccountUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
@@ -70,7 +76,9 @@ public class AccountAccessor {
     public Mono<Account> getAccount(String accountUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(accountUrl, accountUrl, "", nonce))
-                .flatMap(jwsObject -> requestHandler.request(accountUrl, jwsObject, nonceSource, Account.class))
+                .flatMap(jwsObject -> requestHandler.request(accountUrl, jwsObject, nonceSource, Account.class)
+                        .transform(timedRequest(AcmeOperation.GET_ACCOUNT))
+                        .transform(tracedRequest(AcmeOperation.GET_ACCOUNT, accountUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 }
@@ -27,9 +27,13 @@ package ch.alni.certblues.acme.client.access;
 
 import ch.alni.certblues.acme.client.request.NonceSource;
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
 import ch.alni.certblues.acme.protocol.Authorization;
 import reactor.core.publisher.Mono;
 
+import static ch.alni.certblues.acme.metrics.AcmeMetrics.timedRequest;
+import static ch.alni.certblues.acme.metrics.AcmeTracing.tracedRequest;
+
 public class AuthorizationAccessor {
 
     private final NonceSource nonceSource;
@@ -50,7 +54,9 @@ public class AuthorizationAccessor {
     public Mono<Authorization> getAuthorization(String accountUrl, String authorizationUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(authorizationUrl, accountUrl, "", nonce))
-                .flatMap(jwsObject -> requestHandler.request(authorizationUrl, jwsObject, nonceSource, Authorization.class))
+                .flatMap(jwsObject -> requestHandler.request(authorizationUrl, jwsObject, nonceSource, Authorization.class)
+                        .transform(timedRequest(AcmeOperation.GET_AUTHORIZATION))
+                        .transform(tracedRequest(AcmeOperation.GET_AUTHORIZATION, authorizationUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 }
@@ -27,9 +27,13 @@ package ch.alni.certblues.acme.client.access;
 
 import ch.alni.certblues.acme.client.request.NonceSource;
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
 import ch.alni.certblues.acme.protocol.Challenge;
 import reactor.core.publisher.Mono;
 
+import static ch.alni.certblues.acme.metrics.AcmeMetrics.timedRequest;
+import static ch.alni.certblues.acme.metrics.AcmeTracing.tracedRequest;
+
 public class ChallengeAccessor {
 
     private final NonceSource nonceSource;
@@ -50,14 +54,18 @@ public class ChallengeAccessor {
     public Mono<Challenge> submitChallenge(String accountUrl, String challengeUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(challengeUrl, accountUrl, "{}", nonce))
-                .flatMap(jwsObject -> requestHandler.request(challengeUrl, jwsObject, nonceSource, Challenge.class))
+                .flatMap(jwsObject -> requestHandler.request(challengeUrl, jwsObject, nonceSource, Challenge.class)
+                        .transform(timedRequest(AcmeOperation.SUBMIT_CHALLENGE))
+                        .transform(tracedRequest(AcmeOperation.SUBMIT_CHALLENGE, challengeUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
     public Mono<Challenge> getChallenge(String accountUrl, String challengeUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(challengeUrl, accountUrl, "", nonce))
-                .flatMap(jwsObject -> requestHandler.request(challengeUrl, jwsObject, nonceSource, Challenge.class))
+                .flatMap(jwsObject -> requestHandler.request(challengeUrl, jwsObject, nonceSource, Challenge.class)
+                        .transform(timedRequest(AcmeOperation.GET_CHALLENGE))
+                        .transform(tracedRequest(AcmeOperation.GET_CHALLENGE, challengeUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
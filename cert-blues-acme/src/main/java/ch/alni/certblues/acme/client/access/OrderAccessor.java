@@ -28,11 +28,15 @@ package ch.alni.certblues.acme.client.access;
 import ch.alni.certblues.acme.client.request.CreatedResource;
 import ch.alni.certblues.acme.client.request.NonceSource;
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
 import ch.alni.certblues.acme.protocol.Order;
 import ch.alni.certblues.acme.protocol.OrderFinalizationRequest;
 import ch.alni.certblues.acme.protocol.OrderRequest;
 import reactor.core.publisher.Mono;
 
+import static ch.alni.certblues.acme.metrics.AcmeMetrics.timedRequest;
+import static ch.alni.certblues.acme.metrics.AcmeTracing.tracedRequest;
+
 public class OrderAccessor {
 
     private final NonceSource nonceSource;
@@ -60,7 +64,9 @@ public class OrderAccessor {
     public Mono<CreatedResource<Order>> createOrder(String accountUrl, String newOrderUrl, OrderRequest resourceRequest) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(newOrderUrl, accountUrl, resourceRequest, nonce))
-                .flatMap(jwsObject -> requestHandler.create(newOrderUrl, jwsObject, nonceSource, Order.class))
+                .flatMap(jwsObject -> requestHandler.create(newOrderUrl, jwsObject, nonceSource, Order.class)
+                        .transform(timedRequest(AcmeOperation.NEW_ORDER))
+                        .transform(tracedRequest(AcmeOperation.NEW_ORDER, newOrderUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
@@ -74,7 +80,9 @@ public class OrderAccessor {
     public Mono<Order> getOrder(String accountUrl, String orderUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(orderUrl, accountUrl, "", nonce))
-                .flatMap(jwsObject -> requestHandler.request(orderUrl, jwsObject, nonceSource, Order.class))
+                .flatMap(jwsObject -> requestHandler.request(orderUrl, jwsObject, nonceSource, Order.class)
+                        .transform(timedRequest(AcmeOperation.GET_ORDER))
+                        .transform(tracedRequest(AcmeOperation.GET_ORDER, orderUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
@@ -89,7 +97,9 @@ public class OrderAccessor {
     public Mono<Order> submitCsr(String accountUrl, String finalizeUrl, OrderFinalizationRequest finalizationRequest) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(finalizeUrl, accountUrl, finalizationRequest, nonce))
-                .flatMap(jwsObject -> requestHandler.request(finalizeUrl, jwsObject, nonceSource, Order.class))
+                .flatMap(jwsObject -> requestHandler.request(finalizeUrl, jwsObject, nonceSource, Order.class)
+                        .transform(timedRequest(AcmeOperation.FINALIZE))
+                        .transform(tracedRequest(AcmeOperation.FINALIZE, finalizeUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 
@@ -103,7 +113,9 @@ public class OrderAccessor {
     public Mono<String> downloadCertificate(String accountUrl, String certificateUrl) {
         return nonceSource.getNonce()
                 .flatMap(nonce -> payloadSigner.sign(certificateUrl, accountUrl, "", nonce))
-                .flatMap(jwsObject -> requestHandler.request(certificateUrl, jwsObject, nonceSource))
+                .flatMap(jwsObject -> requestHandler.request(certificateUrl, jwsObject, nonceSource)
+                        .transform(timedRequest(AcmeOperation.DOWNLOAD_CERTIFICATE))
+                        .transform(tracedRequest(AcmeOperation.DOWNLOAD_CERTIFICATE, certificateUrl)))
                 .retryWhen(retryHandler.getRetry());
     }
 }
@@ -30,10 +30,14 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
+import ch.alni.certblues.acme.jfr.SigningEvent;
 import ch.alni.certblues.acme.jws.JwsHeader;
 import ch.alni.certblues.acme.jws.JwsObject;
 import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.acme.metrics.AcmeMetrics;
+import ch.alni.certblues.acme.metrics.AcmeTracing;
 import ch.alni.certblues.acme.protocol.AcmeRequest;
+import ch.alni.certblues.common.jfr.JfrEvents;
 import ch.alni.certblues.common.json.JsonObjects;
 import reactor.core.publisher.Mono;
 
@@ -123,7 +127,10 @@ public class PayloadSigner {
         final Mono<String> signatureMono = Mono
                 .zip(protectedHeaderMono, encodedPayloadMono,
                         (protectedHeader, encodedPayload) -> protectedHeader + "." + encodedPayload)
-                .flatMap(keyPair::sign);
+                .flatMap(content -> keyPair.sign(content)
+                        .transform(AcmeMetrics.timedSigning(keyPair.getAlgorithm()))
+                        .transform(AcmeTracing.tracedSigning(keyPair.getAlgorithm()))
+                        .transform(JfrEvents.recorded(() -> new SigningEvent(keyPair.getAlgorithm()))));
 
         return Mono.zip(protectedHeaderMono, encodedPayloadMono, signatureMono)
                 .map(tuple -> JwsObject.builder()
@@ -27,6 +27,11 @@ package ch.alni.certblues.acme.client.request;
 
 import org.slf4j.Logger;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
 import java.util.Optional;
 
@@ -35,6 +40,7 @@ import ch.alni.certblues.acme.protocol.AcmeServerException;
 import ch.alni.certblues.acme.protocol.Error;
 import ch.alni.certblues.common.json.JsonObjectException;
 import ch.alni.certblues.common.json.JsonObjects;
+import io.netty.handler.codec.http.HttpHeaders;
 import reactor.netty.http.client.HttpClientResponse;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -48,6 +54,7 @@ final class HttpResponses {
     private static final String HEADER_CONTENT_TYPE = "Content-Type";
     private static final String HEADER_LOCATION = "Location";
     private static final String HEADER_REPLAY_NONCE = "Replay-Nonce";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
 
     private HttpResponses() {
     }
@@ -65,15 +72,21 @@ final class HttpResponses {
      * @throws AcmeClientException if response payload cannot be deserialized
      */
     static <T> T getPayload(HttpClientResponse response, String body, Class<T> clazz) {
-        final var statusCode = response.status().code();
+        return getPayload(response.status().code(), response.responseHeaders(), body, clazz);
+    }
 
+    /**
+     * Same as {@link #getPayload(HttpClientResponse, String, Class)} but takes the status code and the headers
+     * directly, so that the parsing can be exercised without a connection.
+     */
+    static <T> T getPayload(int statusCode, HttpHeaders headers, String body, Class<T> clazz) {
         try {
             if (statusCode < 400) {
                 LOG.info("status code {}, trying to convert body", statusCode);
                 return JsonObjects.deserialize(body, clazz);
             }
             else {
-                extractError(response, body).ifPresent(error -> {
+                extractError(headers, body).ifPresent(error -> {
                     throw new AcmeServerException(error);
                 });
 
@@ -86,15 +99,17 @@ final class HttpResponses {
     }
 
     public static String getPayload(HttpClientResponse response, String body) {
-        final var statusCode = response.status().code();
+        return getPayload(response.status().code(), response.responseHeaders(), body);
+    }
 
+    static String getPayload(int statusCode, HttpHeaders headers, String body) {
         try {
             if (statusCode < 400) {
                 LOG.info("status code {}, trying to convert body", statusCode);
                 return body;
             }
             else {
-                extractError(response, body).ifPresent(error -> {
+                extractError(headers, body).ifPresent(error -> {
                     throw new AcmeServerException(error);
                 });
 
@@ -114,9 +129,11 @@ final class HttpResponses {
      * @throws AcmeServerException if the server returned the status code that is greater or equal to 400
      */
     static String getNonce(HttpClientResponse response) {
-        final var statusCode = response.status().code();
+        return getNonce(response.status().code(), response.responseHeaders());
+    }
 
-        final String nonce = getHeader(response, HEADER_REPLAY_NONCE);
+    static String getNonce(int statusCode, HttpHeaders headers) {
+        final String nonce = headers.getAsString(HEADER_REPLAY_NONCE);
         LOG.info("a new nonce returned: {}, status code {}", nonce, statusCode);
         return nonce;
     }
@@ -125,15 +142,45 @@ final class HttpResponses {
      * Returns the Location header from the response or null if this header is not present.
      */
     static String getLocation(HttpClientResponse response) {
-        return getHeader(response, HEADER_LOCATION);
+        return getLocation(response.responseHeaders());
+    }
+
+    static String getLocation(HttpHeaders headers) {
+        return headers.getAsString(HEADER_LOCATION);
+    }
+
+    /**
+     * Returns the Retry-After header from the response, given either in seconds or as HTTP date, or null if this
+     * header is not present or invalid.
+     */
+    static Duration getRetryAfter(HttpClientResponse response) {
+        return getRetryAfter(response.responseHeaders(), Instant.now());
     }
 
-    private static String getHeader(HttpClientResponse response, String header) {
-        return response.responseHeaders().getAsString(header);
+    static Duration getRetryAfter(HttpHeaders headers, Instant now) {
+        final String retryAfter = headers.getAsString(HEADER_RETRY_AFTER);
+        if (null == retryAfter || retryAfter.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        }
+        catch (NumberFormatException e) {
+            try {
+                final Instant retryOn = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant();
+                return retryOn.isAfter(now) ? Duration.between(now, retryOn) : Duration.ZERO;
+            }
+            catch (DateTimeParseException invalid) {
+                LOG.warn("invalid Retry-After header ignored: {}", retryAfter);
+                return null;
+            }
+        }
     }
 
-    private static Optional<Error> extractError(HttpClientResponse response, String body) {
-        final boolean responseIsJson = response.responseHeaders().entries().stream()
+    private static Optional<Error> extractError(HttpHeaders headers, String body) {
+        final boolean responseIsJson = headers.entries().stream()
                 .filter(entry -> entry.getKey().equals(HEADER_CONTENT_TYPE))
                 .map(Map.Entry::getValue)
                 .anyMatch(header -> header.startsWith("application/problem+json"));
@@ -30,6 +30,7 @@ import org.slf4j.Logger;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import ch.alni.certblues.acme.jfr.NonceEvent;
 import reactor.core.publisher.Mono;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -49,7 +50,17 @@ public class NonceSource {
 
     public Mono<String> getNonce() {
         // tries to extract the nonce value from the queue, and resorts to the query if the queue is empty
-        return Mono.fromSupplier(nonceValues::poll).switchIfEmpty(nonceMono)
+        return Mono.defer(() -> {
+                    final var event = new NonceEvent();
+                    event.begin();
+
+                    final String nonce = nonceValues.poll();
+                    event.hit = null != nonce;
+
+                    return (null != nonce ? Mono.just(nonce) : nonceMono)
+                            .doOnError(event::failed)
+                            .doFinally(signalType -> event.commit());
+                })
                 .doOnNext(nonce -> LOG.info("using nonce {}", nonce));
     }
 
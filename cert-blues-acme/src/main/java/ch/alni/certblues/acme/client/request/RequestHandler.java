@@ -26,20 +26,29 @@
 package ch.alni.certblues.acme.client.request;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
+import ch.alni.certblues.acme.jfr.AcmeRequestEvent;
 import ch.alni.certblues.acme.jws.JwsObject;
 import ch.alni.certblues.common.json.JsonObjects;
+import ch.alni.certblues.common.traffic.TrafficExchange;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
 import reactor.core.publisher.Mono;
 import reactor.netty.ByteBufMono;
 import reactor.netty.http.client.HttpClient;
 import reactor.netty.http.client.HttpClientResponse;
 import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -49,10 +58,23 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class RequestHandler {
     private static final Logger LOG = getLogger(RequestHandler.class);
 
+    private static final String TRAFFIC_SOURCE = "acme";
+
     private final HttpClient httpClient;
 
+    // null if the traffic is not recorded
+    private final TrafficRecorder trafficRecorder;
+
     public RequestHandler(HttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    /**
+     * Creates a new instance that passes all exchanges with the ACME server to the given recorder.
+     */
+    public RequestHandler(HttpClient httpClient, @Nullable TrafficRecorder trafficRecorder) {
         this.httpClient = httpClient;
+        this.trafficRecorder = trafficRecorder;
     }
 
     /**
@@ -62,11 +84,14 @@ public class RequestHandler {
      * @return mono over the nonce
      */
     public Mono<String> getNonce(String newNonceUrl) {
-        return httpClient
+        final Mono<HttpClientResponse> responseMono = httpClient
                 .head()
                 .uri(URI.create(newNonceUrl))
-                .response()
-                .map(HttpResponses::getNonce)
+                .response();
+
+        return recorded("HEAD", newNonceUrl, null, profiled("HEAD", newNonceUrl, null,
+                responseMono.map(response -> Tuples.of("", response))))
+                .map(responseTuple2 -> HttpResponses.getNonce(responseTuple2.getT2()))
                 .filter(Objects::nonNull);
     }
 
@@ -79,16 +104,41 @@ public class RequestHandler {
      * @return mono over the returned resource
      */
     public <T> Mono<T> get(String resourceUrl, Class<T> clazz) {
-        return httpClient
+        final Mono<Tuple2<String, HttpClientResponse>> responseMono = httpClient
                 .headers(headers -> headers.add(HttpHeaderNames.CONTENT_TYPE, "application/json"))
                 .get()
                 .uri(URI.create(resourceUrl))
                 .responseSingle((response, bufMono) -> bufMono
                         .asString(StandardCharsets.UTF_8)
-                        .zipWith(Mono.just(response)))
+                        .zipWith(Mono.just(response)));
+
+        return recorded("GET", resourceUrl, null, profiled("GET", resourceUrl, null, responseMono))
                 .map(responseTuple2 -> HttpResponses.getPayload(responseTuple2.getT2(), responseTuple2.getT1(), clazz));
     }
 
+    /**
+     * Issues a GET request to get the resource at the provided URL together with the Retry-After header.
+     *
+     * @param resourceUrl the URL pointing at the resource
+     * @param clazz       the type of the resource object
+     * @param <T>         the type parameter
+     * @return mono over the returned resource
+     */
+    public <T> Mono<RetrievedResource<T>> retrieve(String resourceUrl, Class<T> clazz) {
+        final Mono<Tuple2<String, HttpClientResponse>> responseMono = httpClient
+                .get()
+                .uri(URI.create(resourceUrl))
+                .responseSingle((response, bufMono) -> bufMono
+                        .asString(StandardCharsets.UTF_8)
+                        .zipWith(Mono.just(response)));
+
+        return recorded("GET", resourceUrl, null, profiled("GET", resourceUrl, null, responseMono))
+                .map(responseTuple2 -> new RetrievedResource<>(
+                        HttpResponses.getPayload(responseTuple2.getT2(), responseTuple2.getT1(), clazz),
+                        HttpResponses.getRetryAfter(responseTuple2.getT2())
+                ));
+    }
+
     /**
      * Issues a request to get the resource at the provided URL.
      *
@@ -136,17 +186,90 @@ public class RequestHandler {
 
     @NotNull
     private Mono<Tuple2<String, HttpClientResponse>> doRequest(String resourceUrl, JwsObject jwsObject, NonceSource nonceSource) {
-        return httpClient
-                .headers(headers -> headers.add(HttpHeaderNames.CONTENT_TYPE, "application/jose+json"))
-                .post()
-                .uri(URI.create(resourceUrl))
-                .send(ByteBufMono.fromString(Mono.fromSupplier(() -> JsonObjects.serialize(jwsObject))))
-                .responseSingle((response, bufMono) -> bufMono
-                        .asString(StandardCharsets.UTF_8)
-                        .zipWith(Mono.just(response)))
+        return Mono.defer(() -> {
+                    final String body = JsonObjects.serialize(jwsObject);
+                    final Mono<Tuple2<String, HttpClientResponse>> responseMono = httpClient
+                            .headers(headers -> headers.add(HttpHeaderNames.CONTENT_TYPE, "application/jose+json"))
+                            .post()
+                            .uri(URI.create(resourceUrl))
+                            .send(ByteBufMono.fromString(Mono.just(body)))
+                            .responseSingle((response, bufMono) -> bufMono
+                                    .asString(StandardCharsets.UTF_8)
+                                    .zipWith(Mono.just(response)));
+
+                    return recorded("POST", resourceUrl, body, profiled("POST", resourceUrl, body, responseMono));
+                })
                 .doOnNext(responseTuple2 -> propagateNonce(HttpResponses.getNonce(responseTuple2.getT2()), nonceSource));
     }
 
+    /**
+     * Passes the exchange to the traffic recorder once the whole response has been received. The exchange with the
+     * ACME server does not fail if it cannot be recorded.
+     */
+    private Mono<Tuple2<String, HttpClientResponse>> recorded(String method, String url, @Nullable String requestBody,
+                                                              Mono<Tuple2<String, HttpClientResponse>> responseMono) {
+        if (null == trafficRecorder) {
+            return responseMono;
+        }
+
+        return Mono.defer(() -> {
+            if (!trafficRecorder.isEnabled()) {
+                return responseMono;
+            }
+
+            final Instant startedOn = Instant.now();
+            final long started = System.nanoTime();
+
+            return responseMono.doOnNext(responseTuple2 -> {
+                final HttpClientResponse response = responseTuple2.getT2();
+                final long latencyMicros = (System.nanoTime() - started) / 1000;
+
+                try {
+                    trafficRecorder.record(new TrafficExchange(TRAFFIC_SOURCE, startedOn, latencyMicros, method, url,
+                            TrafficExchange.redact(toMap(response.requestHeaders())), requestBody,
+                            response.status().code(), TrafficExchange.redact(toMap(response.responseHeaders())),
+                            responseTuple2.getT1().isEmpty() ? null : responseTuple2.getT1()));
+                }
+                catch (RuntimeException e) {
+                    LOG.warn("cannot record the exchange with {}", url, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Records the exchange as a flight recorder event if the event is enabled.
+     */
+    private static Mono<Tuple2<String, HttpClientResponse>> profiled(String method, String url, @Nullable String requestBody,
+                                                                     Mono<Tuple2<String, HttpClientResponse>> responseMono) {
+        return Mono.defer(() -> {
+            final var event = new AcmeRequestEvent();
+            if (!event.isEnabled()) {
+                return responseMono;
+            }
+
+            event.method = method;
+            event.url = url;
+            event.urlKind = AcmeRequestEvent.getUrlKind(url);
+            event.requestBytes = null == requestBody ? 0 : requestBody.getBytes(StandardCharsets.UTF_8).length;
+            event.begin();
+
+            return responseMono
+                    .doOnNext(responseTuple2 -> {
+                        event.status = responseTuple2.getT2().status().code();
+                        event.responseBytes = responseTuple2.getT1().getBytes(StandardCharsets.UTF_8).length;
+                    })
+                    .doOnError(event::failed)
+                    .doFinally(signalType -> event.commit());
+        });
+    }
+
+    private static Map<String, String> toMap(HttpHeaders headers) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        headers.forEach(entry -> result.merge(entry.getKey(), entry.getValue(), (first, second) -> first + ", " + second));
+        return result;
+    }
+
     private void propagateNonce(String nonce, NonceSource nonceSource) {
         if (null != nonce) {
             LOG.info("updating nonce {}", nonce);
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.client.request;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Wrapper over some resource and how long the server asks to wait before retrieving it again.
+ *
+ * @param <T> type of the resource object
+ */
+public class RetrievedResource<T> {
+
+    private final T resource;
+    private final Duration retryAfter;
+
+    public RetrievedResource(T resource, @Nullable Duration retryAfter) {
+        this.resource = resource;
+        this.retryAfter = retryAfter;
+    }
+
+    public T getResource() {
+        return resource;
+    }
+
+    /**
+     * Returns the value of the Retry-After header, null if the server has not sent it.
+     */
+    @Nullable
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -25,10 +25,20 @@
 
 package ch.alni.certblues.acme.facade;
 
+import org.jetbrains.annotations.Nullable;
+
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.client.request.RetrievedResource;
+import ch.alni.certblues.acme.jws.ExternalAccountBinding;
 import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.acme.metrics.AcmeMetrics;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
+import ch.alni.certblues.acme.metrics.AcmeTracing;
 import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.acme.protocol.CertificateIdentifiers;
 import ch.alni.certblues.acme.protocol.Directory;
+import ch.alni.certblues.acme.protocol.RenewalInfo;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
@@ -47,11 +57,55 @@ public final class AcmeClient {
      * @param directoryUrl URL of the ACME server directory
      */
     public AcmeClient(HttpClient httpClient, String directoryUrl) {
-        this.requestHandler = new RequestHandler(httpClient);
-        this.directoryMono = requestHandler.get(directoryUrl, Directory.class).share();
+        this(httpClient, directoryUrl, null);
+    }
+
+    /**
+     * Creates a new instance that passes all exchanges with the ACME server to the given recorder.
+     *
+     * @param httpClient      HTTP client to be used
+     * @param directoryUrl    URL of the ACME server directory
+     * @param trafficRecorder the recorder of the exchanges, null if the exchanges are not recorded
+     */
+    public AcmeClient(HttpClient httpClient, String directoryUrl, @Nullable TrafficRecorder trafficRecorder) {
+        this.requestHandler = new RequestHandler(httpClient, trafficRecorder);
+        this.directoryMono = requestHandler.get(directoryUrl, Directory.class)
+                .transform(AcmeMetrics.timedRequest(AcmeOperation.GET_DIRECTORY))
+                .transform(AcmeTracing.tracedRequest(AcmeOperation.GET_DIRECTORY, directoryUrl))
+                .share();
+    }
+
+    /**
+     * Returns the renewal information of the certificate with the given ARI identifier (RFC 9773), empty if the
+     * server does not provide it.
+     *
+     * @param certificateId the identifier of the certificate as returned by {@link CertificateIdentifiers}
+     */
+    public Mono<RetrievedResource<RenewalInfo>> getRenewalInfo(String certificateId) {
+        return directoryMono
+                .filter(directory -> null != directory.renewalInfo())
+                .flatMap(directory -> {
+                    final String baseUrl = directory.renewalInfo();
+                    final String renewalInfoUrl = (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + certificateId;
+                    return requestHandler.retrieve(renewalInfoUrl, RenewalInfo.class)
+                            .transform(AcmeMetrics.timedRequest(AcmeOperation.GET_RENEWAL_INFO))
+                            .transform(AcmeTracing.tracedRequest(AcmeOperation.GET_RENEWAL_INFO, renewalInfoUrl));
+                });
     }
 
     public AcmeSession login(SigningKeyPair accountKeyPair, AccountRequest accountRequest) {
-        return new AcmeSession(requestHandler, directoryMono, accountKeyPair, accountRequest);
+        return login(accountKeyPair, accountRequest, null);
+    }
+
+    /**
+     * Logs in with the given account key, binding the account to the given external account if it is created.
+     *
+     * @param accountKeyPair         the key pair identifying the account on the ACME server
+     * @param accountRequest         request to create or retrieve the account
+     * @param externalAccountBinding the credentials of the external account, null if the CA does not require it
+     */
+    public AcmeSession login(SigningKeyPair accountKeyPair, AccountRequest accountRequest,
+                             @Nullable ExternalAccountBinding externalAccountBinding) {
+        return new AcmeSession(requestHandler, directoryMono, accountKeyPair, accountRequest, externalAccountBinding);
     }
 }
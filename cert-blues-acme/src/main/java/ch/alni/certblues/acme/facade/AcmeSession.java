@@ -25,7 +25,11 @@
 
 package ch.alni.certblues.acme.facade;
 
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 import ch.alni.certblues.acme.client.access.AccountAccessor;
@@ -37,9 +41,15 @@ import ch.alni.certblues.acme.client.access.RetryHandler;
 import ch.alni.certblues.acme.client.request.CreatedResource;
 import ch.alni.certblues.acme.client.request.NonceSource;
 import ch.alni.certblues.acme.client.request.RequestHandler;
+import ch.alni.certblues.acme.jws.ExternalAccountBinding;
 import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.acme.metrics.AcmeMetrics;
+import ch.alni.certblues.acme.metrics.AcmeOperation;
+import ch.alni.certblues.acme.metrics.AcmeTracing;
 import ch.alni.certblues.acme.protocol.Account;
 import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.acme.protocol.AcmeClientException;
+import ch.alni.certblues.acme.protocol.AcmeServerException;
 import ch.alni.certblues.acme.protocol.Authorization;
 import ch.alni.certblues.acme.protocol.Challenge;
 import ch.alni.certblues.acme.protocol.ChallengeStatus;
@@ -52,10 +62,13 @@ import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
+import static org.slf4j.LoggerFactory.getLogger;
+
 /**
  * Client session against the ACME server.
  */
 public class AcmeSession {
+    private static final Logger LOG = getLogger(AcmeSession.class);
 
     private final AccountAccessor accountAccessor;
     private final OrderAccessor orderAccessor;
@@ -72,17 +85,22 @@ public class AcmeSession {
     /**
      * Creates a new instance.
      *
-     * @param requestHandler interface to handle HTTP requests
-     * @param accountKeyPair the key pair identifying the account on the ACME server
-     * @param directoryMono  how to get the directory information from ACME server
-     * @param accountRequest request to create or retrieve the account
+     * @param requestHandler         interface to handle HTTP requests
+     * @param accountKeyPair         the key pair identifying the account on the ACME server
+     * @param directoryMono          how to get the directory information from ACME server
+     * @param accountRequest         request to create or retrieve the account
+     * @param externalAccountBinding the credentials to bind a new account with, null if the CA does not require it
      */
-    AcmeSession(RequestHandler requestHandler, Mono<Directory> directoryMono, SigningKeyPair accountKeyPair, AccountRequest accountRequest) {
+    AcmeSession(RequestHandler requestHandler, Mono<Directory> directoryMono, SigningKeyPair accountKeyPair,
+                AccountRequest accountRequest, @Nullable ExternalAccountBinding externalAccountBinding) {
         final var payloadSigner = new PayloadSigner(accountKeyPair);
         final var retryHandler = new RetryHandler(5);
 
         // we create one nonce source per session
-        final var nonceSource = new NonceSource(directoryMono.map(Directory::newNonce).flatMap(requestHandler::getNonce));
+        final var nonceSource = new NonceSource(directoryMono.map(Directory::newNonce)
+                .flatMap(newNonceUrl -> requestHandler.getNonce(newNonceUrl)
+                        .transform(AcmeMetrics.timedRequest(AcmeOperation.NEW_NONCE))
+                        .transform(AcmeTracing.tracedRequest(AcmeOperation.NEW_NONCE, newNonceUrl))));
 
         this.accountAccessor = new AccountAccessor(nonceSource, payloadSigner, retryHandler, requestHandler);
         this.orderAccessor = new OrderAccessor(nonceSource, payloadSigner, retryHandler, requestHandler);
@@ -93,13 +111,49 @@ public class AcmeSession {
 
         // pre-build the base mono's
         final var accountResourceMono = directoryMono
-                .flatMap(directory -> accountAccessor.getAccount(directory.newAccount(), accountRequest));
+                .flatMap(directory -> bindAccount(directory, accountKeyPair, accountRequest, externalAccountBinding)
+                        .flatMap(request -> accountAccessor.getAccount(directory.newAccount(), request)));
         accountUrlMono = accountResourceMono.map(CreatedResource::getResourceUrl).share();
         accountMono = accountResourceMono.map(CreatedResource::getResource).share();
         publicKeyThumbprintMono = accountKeyPair.getPublicKeyThumbprint().share();
         authorizationProvisioner = new AuthorizationProvisioner(publicKeyThumbprintMono);
     }
 
+    private static Mono<AccountRequest> bindAccount(Directory directory, SigningKeyPair accountKeyPair,
+                                                    AccountRequest accountRequest,
+                                                    @Nullable ExternalAccountBinding externalAccountBinding) {
+        if (null == externalAccountBinding) {
+            final boolean required = null != directory.meta() &&
+                    Boolean.TRUE.equals(directory.meta().externalAccountRequired());
+            return required && !Boolean.TRUE.equals(accountRequest.onlyReturnExisting()) ?
+                    Mono.error(new AcmeClientException("the ACME server requires an external account binding")) :
+                    Mono.just(accountRequest);
+        }
+
+        return accountKeyPair.getPublicJwk().map(publicJwk -> accountRequest.toBuilder()
+                .externalAccountBinding(externalAccountBinding.bind(directory.newAccount(), publicJwk))
+                .build());
+    }
+
+    private static OrderRequest withoutReplaces(OrderRequest orderRequest) {
+        return null == orderRequest.replaces() ? orderRequest : orderRequest.toBuilder().replaces(null).build();
+    }
+
+    /**
+     * Returns true if the server has refused the replacement of the certificate in the order request. Servers that
+     * predate the alreadyReplaced error report a malformed request instead, which is only taken as a refused
+     * replacement if its detail refers to the replaces field; other malformed requests are errors of the client.
+     */
+    static boolean isReplacementRefused(Throwable throwable) {
+        if (throwable instanceof AcmeServerException exception && null != exception.getError()) {
+            final String type = exception.getError().type();
+            final String detail = exception.getError().detail();
+            return type.endsWith(":alreadyReplaced") || type.endsWith(":malformed") && null != detail &&
+                    detail.toLowerCase(Locale.ROOT).contains("replaces");
+        }
+        return false;
+    }
+
     public Mono<Account> getAccount() {
         return accountMono;
     }
@@ -112,9 +166,23 @@ public class AcmeSession {
     }
 
     public Mono<CreatedResource<Order>> createOrder(OrderRequest orderRequest) {
-        return Mono.zip(directoryMono, accountUrlMono).flatMap(tuple ->
-                orderAccessor.createOrder(tuple.getT2(), tuple.getT1().newOrder(), orderRequest)
-        );
+        return Mono.zip(directoryMono, accountUrlMono).flatMap(tuple -> {
+            final Directory directory = tuple.getT1();
+            // only the servers that provide renewal information know the replaced certificates
+            if (null == orderRequest.replaces() || null == directory.renewalInfo()) {
+                return orderAccessor.createOrder(tuple.getT2(), directory.newOrder(), withoutReplaces(orderRequest));
+            }
+
+            // the server refuses the replacement if the certificate has been replaced already or issued to
+            // another account, the certificate is then ordered as a new one
+            return orderAccessor.createOrder(tuple.getT2(), directory.newOrder(), orderRequest)
+                    .onErrorResume(AcmeSession::isReplacementRefused, throwable -> {
+                        LOG.warn("the replacement of certificate {} is refused: {}", orderRequest.replaces(),
+                                throwable.getMessage());
+                        return orderAccessor.createOrder(tuple.getT2(), directory.newOrder(),
+                                withoutReplaces(orderRequest));
+                    });
+        });
     }
 
     /**
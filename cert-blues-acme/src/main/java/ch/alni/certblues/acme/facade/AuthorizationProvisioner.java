@@ -25,8 +25,12 @@
 
 package ch.alni.certblues.acme.facade;
 
+import ch.alni.certblues.acme.jfr.ProvisioningEvent;
 import ch.alni.certblues.acme.key.Thumbprints;
+import ch.alni.certblues.acme.metrics.AcmeMetrics;
+import ch.alni.certblues.acme.metrics.AcmeTracing;
 import ch.alni.certblues.acme.protocol.*;
+import ch.alni.certblues.common.jfr.JfrEvents;
 import org.slf4j.Logger;
 import reactor.core.publisher.Mono;
 
@@ -83,10 +87,16 @@ class AuthorizationProvisioner {
         if (challenge instanceof DnsChallenge && strategy.isDnsProvisioningSupported()) {
             final var name = identifier.value();
             final var value = Thumbprints.getSha256Digest(keyAuth);
-            return strategy.getDnsChallengeProvisioner().provisionDns(name, value);
+            return strategy.getDnsChallengeProvisioner().provisionDns(name, value)
+                    .transform(AcmeMetrics.timedProvisioning("dns-01"))
+                    .transform(AcmeTracing.tracedProvisioning("dns-01", name))
+                    .transform(JfrEvents.recorded(() -> new ProvisioningEvent("dns-01", name)));
         }
         else if (challenge instanceof HttpChallenge && strategy.isHttpProvisioningSupported()) {
-            return strategy.getHttpChallengeProvisioner().provisionHttp(challenge.token(), keyAuth);
+            return strategy.getHttpChallengeProvisioner().provisionHttp(challenge.token(), keyAuth)
+                    .transform(AcmeMetrics.timedProvisioning("http-01"))
+                    .transform(AcmeTracing.tracedProvisioning("http-01", identifier.value()))
+                    .transform(JfrEvents.recorded(() -> new ProvisioningEvent("http-01", identifier.value())));
         }
         else {
             throw new IllegalArgumentException("unsupported challenge type " + challenge);
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.jfr;
+
+import java.net.URI;
+import java.util.Locale;
+
+import ch.alni.certblues.common.jfr.FailableEvent;
+import ch.alni.certblues.common.jfr.JfrEvents;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request to the ACME server, from sending the request until the whole response has been received.
+ */
+@Name(JfrEvents.NAME_PREFIX + "AcmeRequest")
+@Label("ACME Request")
+@Category({JfrEvents.CATEGORY, "ACME"})
+@Description("Request to the ACME server until the whole response has been received")
+@StackTrace(false)
+public final class AcmeRequestEvent extends Event implements FailableEvent {
+
+    @Label("Method")
+    public String method;
+
+    @Label("URL Kind")
+    @Description("The kind of the resource, derived from the URL path")
+    public String urlKind;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Failure")
+    public String failure;
+
+    @Override
+    public void failed(Throwable throwable) {
+        failure = JfrEvents.toFailure(throwable);
+    }
+
+    /**
+     * Returns the kind of the ACME resource by the path of its URL. The paths are not standardized, but the servers
+     * name them after the resources, for example "/acme/new-acct" or "/acme/authz-v3/123".
+     */
+    public static String getUrlKind(String url) {
+        final String path = URI.create(url).getPath().toLowerCase(Locale.ROOT);
+        if (path.contains("nonce")) {
+            return "newNonce";
+        }
+        else if (path.contains("new-acc")) {
+            return "newAccount";
+        }
+        else if (path.contains("new-order")) {
+            return "newOrder";
+        }
+        else if (path.contains("finalize")) {
+            return "finalize";
+        }
+        else if (path.contains("authz")) {
+            return "authorization";
+        }
+        else if (path.contains("chall")) {
+            return "challenge";
+        }
+        else if (path.contains("renewal")) {
+            return "renewalInfo";
+        }
+        else if (path.contains("cert")) {
+            return "certificate";
+        }
+        else if (path.contains("order")) {
+            return "order";
+        }
+        else if (path.contains("acc")) {
+            return "account";
+        }
+        else if (path.contains("directory")) {
+            return "directory";
+        }
+        else {
+            return "other";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.jfr;
+
+import ch.alni.certblues.common.jfr.FailableEvent;
+import ch.alni.certblues.common.jfr.JfrEvents;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A signature of the payload of an ACME request by the account key.
+ */
+@Name(JfrEvents.NAME_PREFIX + "AcmeSigning")
+@Label("ACME Signing")
+@Category({JfrEvents.CATEGORY, "ACME"})
+@Description("Signature of a request payload by the account key")
+@StackTrace(false)
+public final class SigningEvent extends Event implements FailableEvent {
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Failure")
+    public String failure;
+
+    public SigningEvent(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public void failed(Throwable throwable) {
+        failure = JfrEvents.toFailure(throwable);
+    }
+}
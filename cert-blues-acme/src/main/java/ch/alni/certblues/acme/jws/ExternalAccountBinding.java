@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.jws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import ch.alni.certblues.acme.key.PublicJwk;
+import ch.alni.certblues.common.json.JsonObjects;
+
+/**
+ * The credentials of an external account that the CA requires new ACME accounts to be bound to, see RFC 8555 section
+ * 7.3.4. The binding is a JWS over the public key of the ACME account, signed with the MAC key issued by the CA.
+ */
+public final class ExternalAccountBinding {
+
+    private static final String ALGORITHM = "HS256";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final String keyId;
+    private final byte[] macKey;
+
+    /**
+     * Creates new credentials.
+     *
+     * @param keyId  the key identifier issued by the CA
+     * @param macKey the MAC key issued by the CA, base64url-encoded
+     */
+    public ExternalAccountBinding(String keyId, String macKey) {
+        this.keyId = keyId;
+        this.macKey = Base64.getUrlDecoder().decode(macKey);
+    }
+
+    private static String encode(byte[] content) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(content);
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Binds the given account key to the external account.
+     *
+     * @param newAccountUrl "new-account" URL of the ACME directory
+     * @param accountJwk    the public key of the ACME account
+     * @return the JWS to be included into the request to create the account
+     */
+    public JwsObject bind(String newAccountUrl, PublicJwk accountJwk) {
+        final Map<String, String> protectedHeader = new LinkedHashMap<>();
+        protectedHeader.put("alg", ALGORITHM);
+        protectedHeader.put("kid", keyId);
+        protectedHeader.put("url", newAccountUrl);
+
+        final String encodedHeader = encode(JsonObjects.serialize(protectedHeader).getBytes(StandardCharsets.UTF_8));
+        final String encodedPayload = encode(JsonObjects.serialize(accountJwk).getBytes(StandardCharsets.UTF_8));
+
+        return JwsObject.builder()
+                .protectedHeader(encodedHeader)
+                .payload(encodedPayload)
+                .signature(encode(mac(encodedHeader + "." + encodedPayload)))
+                .build();
+    }
+
+    private byte[] mac(String content) {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(macKey, MAC_ALGORITHM));
+            return mac.doFinal(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("cannot sign the external account binding", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        // the MAC key is a secret
+        return "ExternalAccountBinding{keyId='" + keyId + "'}";
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.metrics;
+
+import java.util.function.Function;
+
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Timers of the ACME client. They are registered in the global registry of Micrometer, so that the application
+ * decides where they are exported to. Without an exporter the timers are no-ops.
+ */
+public final class AcmeMetrics {
+
+    /**
+     * Every request to the ACME server, tagged by operation, outcome and error type. The retries are separate requests.
+     */
+    public static final String REQUESTS = "acme.client.requests";
+
+    /**
+     * Every signature of a request payload, tagged by algorithm and outcome.
+     */
+    public static final String SIGNING = "acme.client.signing";
+
+    /**
+     * Every provisioning of a challenge, tagged by challenge type and outcome.
+     */
+    public static final String PROVISIONING = "acme.client.provisioning";
+
+    private static final String ERROR_TYPE_PREFIX = "urn:ietf:params:acme:error:";
+    private static final String NO_ERROR = "none";
+
+    private AcmeMetrics() {
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> timedRequest(AcmeOperation operation) {
+        return mono -> timed(mono, REQUESTS, Tags.of("operation", operation.getTagValue()));
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> timedSigning(String algorithm) {
+        return mono -> timed(mono, SIGNING, Tags.of("algorithm", algorithm));
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> timedProvisioning(String challengeType) {
+        return mono -> timed(mono, PROVISIONING, Tags.of("type", challengeType));
+    }
+
+    /**
+     * Returns the error type of the ACME error without the namespace, or the class name of other exceptions.
+     */
+    static String getErrorType(Throwable throwable) {
+        if (throwable instanceof AcmeServerException e && null != e.getError() && null != e.getError().type()) {
+            final String type = e.getError().type();
+            return type.startsWith(ERROR_TYPE_PREFIX) ? type.substring(ERROR_TYPE_PREFIX.length()) : type;
+        }
+        return throwable.getClass().getSimpleName();
+    }
+
+    private static <T> Mono<T> timed(Mono<T> mono, String name, Tags tags) {
+        // a new sample for each subscription, so that every retry is measured on its own
+        return Mono.defer(() -> {
+            final Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+            return mono
+                    .doOnSuccess(value -> sample.stop(timer(name, tags, "success", NO_ERROR)))
+                    .doOnError(throwable -> sample.stop(timer(name, tags, "error", getErrorType(throwable))));
+        });
+    }
+
+    private static Timer timer(String name, Tags tags, String outcome, String error) {
+        return Timer.builder(name)
+                .tags(tags)
+                .tag("outcome", outcome)
+                .tag("error", error)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+}
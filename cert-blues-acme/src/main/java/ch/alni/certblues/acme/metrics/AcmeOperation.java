@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.metrics;
+
+/**
+ * The requests to the ACME server, used as tag of the request metrics.
+ */
+public enum AcmeOperation {
+    GET_DIRECTORY("getDirectory"),
+    NEW_NONCE("newNonce"),
+    NEW_ACCOUNT("newAccount"),
+    GET_ACCOUNT("getAccount"),
+    NEW_ORDER("newOrder"),
+    GET_ORDER("getOrder"),
+    GET_AUTHORIZATION("getAuthorization"),
+    SUBMIT_CHALLENGE("submitChallenge"),
+    GET_CHALLENGE("getChallenge"),
+    FINALIZE("finalize"),
+    DOWNLOAD_CERTIFICATE("downloadCertificate"),
+    GET_RENEWAL_INFO("getRenewalInfo");
+
+    private final String tagValue;
+
+    AcmeOperation(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.metrics;
+
+import java.util.function.Function;
+
+import ch.alni.certblues.common.tracing.Tracing;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import reactor.core.publisher.Mono;
+
+/**
+ * Spans of the ACME client. They become children of the span found in the Reactor context of the subscriber, see
+ * {@link Tracing}.
+ */
+public final class AcmeTracing {
+
+    public static final AttributeKey<String> OPERATION = AttributeKey.stringKey("acme.operation");
+    public static final AttributeKey<String> URL = AttributeKey.stringKey("url.full");
+    public static final AttributeKey<String> ALGORITHM = AttributeKey.stringKey("acme.signing.algorithm");
+    public static final AttributeKey<String> CHALLENGE_TYPE = AttributeKey.stringKey("acme.challenge.type");
+    public static final AttributeKey<String> IDENTIFIER = AttributeKey.stringKey("acme.identifier");
+
+    private AcmeTracing() {
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> tracedRequest(AcmeOperation operation, String url) {
+        return Tracing.traced("acme " + operation.getTagValue(), SpanKind.CLIENT,
+                Attributes.of(OPERATION, operation.getTagValue(), URL, url));
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> tracedSigning(String algorithm) {
+        return Tracing.traced("acme sign", SpanKind.INTERNAL, Attributes.of(ALGORITHM, algorithm));
+    }
+
+    public static <T> Function<Mono<T>, Mono<T>> tracedProvisioning(String challengeType, String identifier) {
+        return Tracing.traced("acme provision " + challengeType, SpanKind.INTERNAL,
+                Attributes.of(CHALLENGE_TYPE, challengeType, IDENTIFIER, identifier));
+    }
+}
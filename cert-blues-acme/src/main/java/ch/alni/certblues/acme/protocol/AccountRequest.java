@@ -40,6 +40,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 
+import ch.alni.certblues.acme.jws.JwsObject;
+
 /**
  * An ACME account resource represents a set of metadata associated with an account.
  */
@@ -66,6 +68,16 @@ public abstract class AccountRequest implements AcmeRequest {
     @Nullable
     public abstract Boolean onlyReturnExisting();
 
+    /**
+     * Binds the new account to an account the client has with the CA, required by some CAs.
+     */
+    @JsonGetter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Nullable
+    public abstract JwsObject externalAccountBinding();
+
+    public abstract Builder toBuilder();
+
     @AutoValue.Builder
     @JsonPOJOBuilder(withPrefix = "")
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -85,6 +97,9 @@ public abstract class AccountRequest implements AcmeRequest {
         @JsonSetter
         public abstract Builder onlyReturnExisting(Boolean value);
 
+        @JsonSetter
+        public abstract Builder externalAccountBinding(JwsObject value);
+
         public abstract AccountRequest build();
     }
 }
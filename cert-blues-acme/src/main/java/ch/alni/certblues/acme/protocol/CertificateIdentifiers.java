@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Computes the unique identifier of a certificate used by the renewal information (RFC 9773): the key identifier
+ * from the authority key identifier extension and the serial number of the certificate, both base64url-encoded and
+ * joined with a dot.
+ */
+public final class CertificateIdentifiers {
+
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_SEQUENCE = 0x30;
+    // [0] IMPLICIT KeyIdentifier
+    private static final int TAG_KEY_IDENTIFIER = 0x80;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private CertificateIdentifiers() {
+    }
+
+    /**
+     * Returns the identifier of the first certificate in the given DER or PEM encoding.
+     *
+     * @throws IllegalArgumentException if the certificate cannot be parsed or has no authority key identifier
+     */
+    public static String of(byte[] encodedCertificate) {
+        try {
+            final var certificateFactory = CertificateFactory.getInstance("X.509");
+            return of((X509Certificate) certificateFactory.generateCertificate(
+                    new ByteArrayInputStream(encodedCertificate)));
+        }
+        catch (CertificateException e) {
+            throw new IllegalArgumentException("cannot parse the certificate", e);
+        }
+    }
+
+    /**
+     * Returns the identifier of the given certificate.
+     *
+     * @throws IllegalArgumentException if the certificate has no authority key identifier
+     */
+    public static String of(X509Certificate certificate) {
+        final byte[] extensionValue = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+        if (null == extensionValue) {
+            throw new IllegalArgumentException("the certificate has no authority key identifier");
+        }
+        return of(getKeyIdentifier(extensionValue), certificate.getSerialNumber());
+    }
+
+    /**
+     * Returns the identifier made of the given key identifier of the issuer and serial number.
+     */
+    public static String of(byte[] keyIdentifier, BigInteger serialNumber) {
+        // the two's complement of the serial number is the content of its DER encoding
+        return ENCODER.encodeToString(keyIdentifier) + "." + ENCODER.encodeToString(serialNumber.toByteArray());
+    }
+
+    /**
+     * Reads the key identifier from the DER encoding of the authority key identifier extension: an OCTET STRING
+     * wrapping the SEQUENCE whose first element is the key identifier.
+     */
+    static byte[] getKeyIdentifier(byte[] extensionValue) {
+        final ByteBuffer buffer = ByteBuffer.wrap(extensionValue);
+        expectTag(buffer, TAG_OCTET_STRING);
+        readLength(buffer);
+        expectTag(buffer, TAG_SEQUENCE);
+        readLength(buffer);
+        expectTag(buffer, TAG_KEY_IDENTIFIER);
+        final int length = readLength(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("the authority key identifier is truncated");
+        }
+        final int start = buffer.position();
+        return Arrays.copyOfRange(extensionValue, start, start + length);
+    }
+
+    private static void expectTag(ByteBuffer buffer, int tag) {
+        if (!buffer.hasRemaining() || (buffer.get() & 0xff) != tag) {
+            throw new IllegalArgumentException("the authority key identifier has no key identifier");
+        }
+    }
+
+    private static int readLength(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            throw new IllegalArgumentException("the authority key identifier is truncated");
+        }
+        final int first = buffer.get() & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+
+        // long form: the low bits tell how many bytes follow
+        final int count = first & 0x7f;
+        if (count == 0 || count > 3 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("the authority key identifier has an invalid length");
+        }
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length = (length << 8) | (buffer.get() & 0xff);
+        }
+        return length;
+    }
+}
@@ -70,6 +70,13 @@ public abstract class Directory {
     @Nullable
     public abstract String keyChange();
 
+    /**
+     * URL of the renewal information of the certificates (RFC 9773), null if the server does not provide it.
+     */
+    @JsonGetter
+    @Nullable
+    public abstract String renewalInfo();
+
     @JsonGetter
     @Nullable
     public abstract Meta meta();
@@ -102,6 +109,9 @@ public abstract class Directory {
         @JsonSetter
         public abstract Builder keyChange(String value);
 
+        @JsonSetter
+        public abstract Builder renewalInfo(String value);
+
         @JsonSetter
         public abstract Builder meta(Meta value);
 
@@ -27,6 +27,7 @@ package ch.alni.certblues.acme.protocol;
 
 public enum ErrorType {
     accountDoesNotExist,
+    alreadyReplaced,
     alreadyRevoked,
     badCSR,
     badNonce,
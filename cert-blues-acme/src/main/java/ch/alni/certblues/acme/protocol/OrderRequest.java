@@ -64,6 +64,16 @@ public abstract class OrderRequest implements AcmeRequest {
     @Nullable
     public abstract OffsetDateTime notAfter();
 
+    /**
+     * The ARI identifier of the certificate this order replaces (RFC 9773), null if it replaces none.
+     */
+    @JsonGetter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Nullable
+    public abstract String replaces();
+
+    public abstract Builder toBuilder();
+
     @AutoValue.Builder
     @JsonPOJOBuilder(withPrefix = "")
     public abstract static class Builder {
@@ -82,6 +92,9 @@ public abstract class OrderRequest implements AcmeRequest {
         @JsonSetter
         public abstract Builder notAfter(OffsetDateTime value);
 
+        @JsonSetter
+        public abstract Builder replaces(String value);
+
         public abstract OrderRequest build();
     }
 }
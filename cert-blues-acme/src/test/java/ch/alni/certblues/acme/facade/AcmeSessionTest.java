@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.facade;
+
+import org.junit.jupiter.api.Test;
+
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import ch.alni.certblues.acme.protocol.Error;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcmeSessionTest {
+
+    @Test
+    void shouldTakeAlreadyReplacedAsRefusedReplacement() {
+        assertThat(AcmeSession.isReplacementRefused(error("alreadyReplaced", "certificate has been replaced")))
+                .isTrue();
+    }
+
+    @Test
+    void shouldTakeMalformedReplacesAsRefusedReplacement() {
+        assertThat(AcmeSession.isReplacementRefused(error("malformed", "unknown field \"replaces\""))).isTrue();
+    }
+
+    @Test
+    void shouldNotTakeOtherMalformedRequestsAsRefusedReplacement() {
+        assertThat(AcmeSession.isReplacementRefused(error("malformed", "invalid identifier"))).isFalse();
+        assertThat(AcmeSession.isReplacementRefused(error("rateLimited", "too many replaces"))).isFalse();
+        assertThat(AcmeSession.isReplacementRefused(new AcmeServerException("no body"))).isFalse();
+    }
+
+    private static AcmeServerException error(String type, String detail) {
+        return new AcmeServerException(Error.builder()
+                .type("urn:ietf:params:acme:error:" + type)
+                .detail(detail)
+                .status(400)
+                .build());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.jfr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import ch.alni.certblues.acme.client.request.NonceSource;
+import ch.alni.certblues.common.jfr.JfrEvents;
+import ch.alni.certblues.common.jfr.RecordingSummary;
+import jdk.jfr.Recording;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class AcmeEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldSummarizeRecordedEvents() throws Exception {
+        final Path recordingFile = tempDir.resolve("test.jfr");
+
+        try (var recording = new Recording()) {
+            recording.enable(NonceEvent.class).withoutThreshold();
+            recording.enable(SigningEvent.class).withoutThreshold();
+            recording.start();
+
+            final var nonceSource = new NonceSource(Mono.just("new-nonce").delayElement(Duration.ofMillis(5)));
+            nonceSource.update("returned-nonce");
+
+            // the first nonce is taken from the queue, the second one is requested
+            StepVerifier.create(nonceSource.getNonce()).expectNext("returned-nonce").verifyComplete();
+            StepVerifier.create(nonceSource.getNonce()).expectNext("new-nonce").verifyComplete();
+
+            StepVerifier.create(Mono.error(new IllegalStateException("key vault is not available"))
+                            .transform(JfrEvents.recorded(() -> new SigningEvent("RS256"))))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        final var summary = RecordingSummary.read(recordingFile);
+
+        assertThat(summary.getEntries())
+                .extracting(RecordingSummary.Entry::eventType, RecordingSummary.Entry::key,
+                        RecordingSummary.Entry::count, RecordingSummary.Entry::failures)
+                .containsExactly(
+                        tuple("AcmeNonce", "hit=false", 1L, 0L),
+                        tuple("AcmeNonce", "hit=true", 1L, 0L),
+                        tuple("AcmeSigning", "RS256", 1L, 1L)
+                );
+        assertThat(summary.getEntries().get(0).max()).isGreaterThanOrEqualTo(Duration.ofMillis(5));
+        assertThat(summary.format()).contains("AcmeNonce", "AcmeSigning", "garbage collections");
+    }
+
+    @Test
+    void shouldDeriveUrlKindFromPath() {
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/new-nonce")).isEqualTo("newNonce");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/new-acct")).isEqualTo("newAccount");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/order/1/2")).isEqualTo("order");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/authz-v3/3")).isEqualTo("authorization");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/chall-v3/3/x")).isEqualTo("challenge");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/finalize/1/2")).isEqualTo("finalize");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/acme/cert/fa")).isEqualTo("certificate");
+        assertThat(AcmeRequestEvent.getUrlKind("https://acme-v02.api.letsencrypt.org/directory")).isEqualTo("directory");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.jws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import ch.alni.certblues.acme.key.PublicJwk;
+import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.common.json.JsonObjects;
+import ch.alni.certblues.common.json.ObjectMapperFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExternalAccountBindingTest {
+
+    private static final String NEW_ACCOUNT_URL = "https://example.com/acme/new-account";
+
+    private static final String MAC_KEY = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("an external account mac key".getBytes(StandardCharsets.UTF_8));
+
+    private static String decode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void shouldBindAccountKeyToExternalAccount() throws Exception {
+        final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        final InputStream resourceAsStream = Objects.requireNonNull(getClass().getResourceAsStream("/jwk-example.json"),
+                "cannot open example JSON file");
+        final PublicJwk publicJwk = objectMapper.readerFor(PublicJwk.class).readValue(
+                new InputStreamReader(resourceAsStream, StandardCharsets.UTF_8)
+        );
+
+        final JwsObject binding = new ExternalAccountBinding("kid-1", MAC_KEY).bind(NEW_ACCOUNT_URL, publicJwk);
+
+        // the header has no nonce, and the payload is the account key
+        final JsonNode header = objectMapper.readTree(decode(binding.protectedHeader()));
+        assertThat(header.get("alg").asText()).isEqualTo("HS256");
+        assertThat(header.get("kid").asText()).isEqualTo("kid-1");
+        assertThat(header.get("url").asText()).isEqualTo(NEW_ACCOUNT_URL);
+        assertThat(header.has("nonce")).isFalse();
+        assertThat(decode(binding.payload())).isEqualTo(JsonObjects.serialize(publicJwk));
+
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Base64.getUrlDecoder().decode(MAC_KEY), "HmacSHA256"));
+        final byte[] expected = mac.doFinal((binding.protectedHeader() + "." + binding.payload())
+                .getBytes(StandardCharsets.US_ASCII));
+        assertThat(Base64.getUrlDecoder().decode(binding.signature())).isEqualTo(expected);
+
+        final AccountRequest accountRequest = AccountRequest.builder()
+                .termsOfServiceAgreed(true)
+                .externalAccountBinding(binding)
+                .build();
+        final JsonNode json = objectMapper.readTree(JsonObjects.serialize(accountRequest));
+        assertThat(json.get("externalAccountBinding").get("protected").asText()).isEqualTo(binding.protectedHeader());
+    }
+}
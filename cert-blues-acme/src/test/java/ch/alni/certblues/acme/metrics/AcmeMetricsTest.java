@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import ch.alni.certblues.acme.protocol.Error;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcmeMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void shouldTimeEveryAttemptWithItsOutcome() {
+        final var error = Error.builder()
+                .type("urn:ietf:params:acme:error:badNonce")
+                .detail("JWS has an invalid anti-replay nonce")
+                .status(400)
+                .build();
+
+        final Mono<String> failingMono = Mono.<String>error(new AcmeServerException(error))
+                .transform(AcmeMetrics.timedRequest(AcmeOperation.NEW_ORDER));
+
+        StepVerifier.create(failingMono.retry(2)).expectError(AcmeServerException.class).verify();
+        StepVerifier.create(Mono.just("order").transform(AcmeMetrics.timedRequest(AcmeOperation.NEW_ORDER)))
+                .expectNext("order")
+                .verifyComplete();
+
+        assertThat(registry.get(AcmeMetrics.REQUESTS)
+                .tags("operation", "newOrder", "outcome", "error", "error", "badNonce")
+                .timer()
+                .count()).isEqualTo(3);
+        assertThat(registry.get(AcmeMetrics.REQUESTS)
+                .tags("operation", "newOrder", "outcome", "success", "error", "none")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldUseClassNameForOtherErrors() {
+        assertThat(AcmeMetrics.getErrorType(new IllegalStateException())).isEqualTo("IllegalStateException");
+        assertThat(AcmeMetrics.getErrorType(new AcmeServerException("no problem document")))
+                .isEqualTo("AcmeServerException");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import ch.alni.certblues.common.tracing.Tracing;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcmeTracingTest {
+
+    private static final String ORDER_URL = "https://acme.example.com/order/1";
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+
+    @BeforeEach
+    void setUp() {
+        GlobalOpenTelemetry.resetForTest();
+        GlobalOpenTelemetry.set(OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                        .build())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        GlobalOpenTelemetry.resetForTest();
+    }
+
+    @Test
+    void shouldTraceEveryAttemptAsChildOfTheContextSpan() {
+        final Span orderSpan = Tracing.getTracer().spanBuilder("certificate order").startSpan();
+
+        final Mono<String> failingMono = Mono.<String>error(new IllegalStateException("badNonce"))
+                .transform(AcmeTracing.tracedRequest(AcmeOperation.GET_ORDER, ORDER_URL));
+
+        // the context must survive the switch of the threads
+        StepVerifier.create(failingMono
+                        .subscribeOn(Schedulers.parallel())
+                        .retry(1)
+                        .contextWrite(Tracing.withContext(Context.root().with(orderSpan))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        orderSpan.end();
+
+        final List<SpanData> requestSpans = spanExporter.getFinishedSpanItems().stream()
+                .filter(span -> span.getName().equals("acme getOrder"))
+                .toList();
+
+        assertThat(requestSpans).hasSize(2).allSatisfy(span -> {
+            assertThat(span.getTraceId()).isEqualTo(orderSpan.getSpanContext().getTraceId());
+            assertThat(span.getParentSpanId()).isEqualTo(orderSpan.getSpanContext().getSpanId());
+            assertThat(span.getAttributes().get(AcmeTracing.URL)).isEqualTo(ORDER_URL);
+            assertThat(span.getStatus().getStatusCode()).isEqualTo(StatusCode.ERROR);
+        });
+    }
+
+    @Test
+    void shouldStartNewTraceWithoutContextSpan() {
+        StepVerifier.create(Mono.just("nonce")
+                        .transform(AcmeTracing.tracedRequest(AcmeOperation.NEW_NONCE, "https://acme.example.com/nonce")))
+                .expectNext("nonce")
+                .verifyComplete();
+
+        assertThat(spanExporter.getFinishedSpanItems()).singleElement().satisfies(span -> {
+            assertThat(span.getParentSpanContext().isValid()).isFalse();
+            assertThat(span.getStatus().getStatusCode()).isEqualTo(StatusCode.UNSET);
+        });
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificateIdentifiersTest {
+
+    // the example of RFC 9773, section 4.1
+    private static final String KEY_IDENTIFIER = "69885b6b87464041e1b37b847ba0ae2cde01c8d4";
+
+    @Test
+    void shouldComputeIdentifierOfRfcExample() {
+        final byte[] keyIdentifier = HexFormat.of().parseHex(KEY_IDENTIFIER);
+
+        assertThat(CertificateIdentifiers.of(keyIdentifier, new BigInteger("87654321", 16)))
+                .isEqualTo("aYhba4dGQEHhs3uEe6CuLN4ByNQ.AIdlQyE");
+    }
+
+    @Test
+    void shouldReadKeyIdentifierFromExtension() {
+        // OCTET STRING { SEQUENCE { [0] keyIdentifier, [1] authorityCertIssuer omitted } }
+        final byte[] extensionValue = HexFormat.of().parseHex("041830168014" + KEY_IDENTIFIER);
+
+        assertThat(CertificateIdentifiers.getKeyIdentifier(extensionValue))
+                .isEqualTo(HexFormat.of().parseHex(KEY_IDENTIFIER));
+    }
+
+    @Test
+    void shouldRejectExtensionWithoutKeyIdentifier() {
+        // only the serial number of the issuer certificate, tagged [2]
+        final byte[] extensionValue = HexFormat.of().parseHex("04053003820101");
+
+        assertThatThrownBy(() -> CertificateIdentifiers.getKeyIdentifier(extensionValue))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyEntry;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyPair;
+import ch.alni.certblues.acme.server.MockAcmeServer;
+import ch.alni.certblues.acme.server.MockAcmeServerOptions;
+import ch.alni.certblues.certbot.ca.CertificateAuthorities;
+import ch.alni.certblues.certbot.ca.CertificateAuthority;
+import ch.alni.certblues.certbot.impl.CertBotFactory;
+import ch.alni.certblues.certbot.inmemory.BackendBehaviour;
+import ch.alni.certblues.certbot.inmemory.InMemoryCertificateStore;
+import ch.alni.certblues.certbot.inmemory.InMemoryChallengeProvisioner;
+import ch.alni.certblues.certbot.inmemory.InMemoryLeaseStore;
+import ch.alni.certblues.certbot.inmemory.InMemoryStorageService;
+import ch.alni.certblues.certbot.inmemory.LatencyDistribution;
+import ch.alni.certblues.certbot.inmemory.SyntheticFleet;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+import ch.alni.certblues.certbot.sharding.ShardKey;
+import org.junit.jupiter.api.Test;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the application against the mock ACME server and the in-memory backends with a synthetic fleet, and reports
+ * the end-to-end throughput.
+ * <p>
+ * The size of the fleet and the concurrency can be changed with the system properties {@code loadTest.certificates},
+ * {@code loadTest.zones} and {@code loadTest.concurrency}, see the {@code loadTest} task.
+ */
+class RunnerLoadTest {
+
+    private static final int CERTIFICATES = Integer.getInteger("loadTest.certificates", 1000);
+    private static final int ZONES = Integer.getInteger("loadTest.zones", 20);
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 50);
+
+    private static final Duration RENEWAL_INTERVAL = Duration.ofDays(30);
+
+    @Test
+    void shouldRenewExpiringCertificates() throws Exception {
+        final Clock clock = Clock.systemUTC();
+
+        // latencies in the range of the Azure services, with some throttling of the key vault
+        final var keyVault = BackendBehaviour.builder()
+                .latency(LatencyDistribution.logNormal(Duration.ofMillis(40), Duration.ofMillis(250)))
+                .throttlingRate(0.02)
+                .retryAfter(Duration.ofMillis(200))
+                .build();
+        final var tableStorage = BackendBehaviour.builder()
+                .latency(LatencyDistribution.logNormal(Duration.ofMillis(15), Duration.ofMillis(100)))
+                .build();
+        final var blobStorage = BackendBehaviour.builder()
+                .latency(LatencyDistribution.logNormal(Duration.ofMillis(20), Duration.ofMillis(150)))
+                .build();
+        final var dnsZone = BackendBehaviour.builder()
+                .latency(LatencyDistribution.logNormal(Duration.ofMillis(200), Duration.ofSeconds(1)))
+                .build();
+
+        final var certificateStore = new InMemoryCertificateStore(generateKeyPair(), keyVault, clock);
+        final var storageService = new InMemoryStorageService(tableStorage);
+        final var provisioner = new InMemoryChallengeProvisioner(blobStorage, dnsZone);
+
+        final int pendingCount = SyntheticFleet.builder()
+                .certificateCount(CERTIFICATES)
+                .zoneCount(ZONES)
+                .expiryWindow(Duration.ofDays(90))
+                .newCertificateRate(0.05)
+                .expiredRate(0.02)
+                .clock(clock)
+                .build()
+                .populate(storageService, certificateStore, RENEWAL_INTERVAL);
+
+        final var properties = new CertBluesProperties(RENEWAL_INTERVAL, true, RENEWAL_INTERVAL, Duration.ofMinutes(30), CONCURRENCY,
+                Math.max(1, CONCURRENCY / ZONES), Duration.ofSeconds(10), null);
+        // the mock server has no rate limits
+        final var rateLimitProperties = new RateLimitProperties(false, 300, 50, 5, 5);
+        // a single instance that owns all shards, the requests go through the shard checks nonetheless
+        final var shardingProperties = new ShardingProperties(true, "load-test", 16, ShardKey.CERTIFICATE_NAME,
+                Duration.ofSeconds(60), Duration.ofSeconds(15), Duration.ZERO);
+
+        try (var server = MockAcmeServer.start(MockAcmeServerOptions.builder()
+                .latency(Duration.ofMillis(20))
+                .badNonceRate(0.01)
+                .build())) {
+
+            final var connectionProvider = ConnectionProvider.builder("load-test")
+                    .maxConnections(CONCURRENCY * 2)
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            final var acmeClient = new AcmeClient(HttpClient.create(connectionProvider), server.getDirectoryUrl());
+            final var certBotFactory = new CertBotFactory(certificateStore, provisioner);
+
+            final var renewalProcessor = new RenewalProcessor(certBotFactory, storageService, certificateStore,
+                    List.of(new SimpleRsaKeyPair(new SimpleRsaKeyEntry(generateKeyPair()))),
+                    CertificateAuthorities.of(new CertificateAuthority("mock", acmeClient, null)),
+                    RateLimitStore.none(), properties, rateLimitProperties, new InMemoryLeaseStore(),
+                    shardingProperties, clock);
+            final var runner = new Runner(renewalProcessor, properties);
+
+            final long started = System.nanoTime();
+            try {
+                runner.run();
+            }
+            finally {
+                certBotFactory.destroy();
+            }
+            final Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+
+            System.out.printf("%d of %d certificates renewed in %d ms, %.1f certificates/s%n",
+                    certificateStore.getUploadedCertificateCount(), CERTIFICATES, elapsed.toMillis(),
+                    certificateStore.getUploadedCertificateCount() * 1000.0 / Math.max(1, elapsed.toMillis()));
+            System.out.println(certificateStore.getBackend());
+            System.out.println(storageService.getBackend());
+            System.out.println(provisioner.getHttpBackend());
+            System.out.println(provisioner.getDnsBackend());
+        }
+
+        assertThat(certificateStore.getUploadedCertificateCount()).isEqualTo(pendingCount);
+    }
+
+    private static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+}
@@ -27,44 +27,160 @@ package ch.alni.certblues;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
+import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 
+import ch.alni.certblues.common.traffic.TrafficFile;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
 import io.netty.handler.logging.LogLevel;
 import reactor.netty.http.HttpProtocol;
 import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
 import reactor.netty.transport.logging.AdvancedByteBufFormat;
 
 @SpringBootApplication
-@EnableConfigurationProperties(CertBluesProperties.class)
+@EnableConfigurationProperties({CertBluesProperties.class, TracingProperties.class, RateLimitProperties.class,
+        DaemonProperties.class, ShardingProperties.class, NotificationProperties.class, ImportProperties.class})
 public class CertBluesApplication {
 
+    private static final int MIN_EVENT_LOOP_THREADS = 2;
+
     public static void main(String[] args) {
         SpringApplication.run(CertBluesApplication.class, args);
     }
 
     /**
-     * Provides the base HTTP client that is used by various components.
+     * Provides the event loop group of the HTTP client for the ACME server. It is shut down with the context, so that
+     * its threads do not outlive it.
+     */
+    @Bean(destroyMethod = "disposeLater")
+    public LoopResources acmeLoopResources() {
+        return createLoopResources("acme");
+    }
+
+    /**
+     * Provides the connection pool of the HTTP client for the ACME server.
+     */
+    @Bean(destroyMethod = "disposeLater")
+    public ConnectionProvider acmeConnectionProvider() {
+        return createConnectionProvider("acme");
+    }
+
+    /**
+     * Provides the HTTP client for the ACME server.
+     */
+    @Bean
+    public reactor.netty.http.client.HttpClient acmeHttpClient(
+            @Qualifier("acmeConnectionProvider") ConnectionProvider connectionProvider,
+            @Qualifier("acmeLoopResources") LoopResources loopResources) {
+        return createHttpClient(connectionProvider, loopResources);
+    }
+
+    /**
+     * Provides the event loop group of the HTTP client for the Azure services.
+     */
+    @Bean(destroyMethod = "disposeLater")
+    public LoopResources azureLoopResources() {
+        return createLoopResources("azure");
+    }
+
+    /**
+     * Provides the connection pool of the HTTP client for the Azure services.
+     */
+    @Bean(destroyMethod = "disposeLater")
+    public ConnectionProvider azureConnectionProvider() {
+        return createConnectionProvider("azure");
+    }
+
+    /**
+     * Provides the HTTP client for the Azure services.
+     */
+    @Bean
+    public reactor.netty.http.client.HttpClient azureHttpClient(
+            @Qualifier("azureConnectionProvider") ConnectionProvider connectionProvider,
+            @Qualifier("azureLoopResources") LoopResources loopResources) {
+        return createHttpClient(connectionProvider, loopResources);
+    }
+
+    /**
+     * Provides the recorder for the traffic of the HTTP clients if a recording file is configured. The recording can
+     * be replayed with the replay server from the test-common module.
      */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "cert-blues", name = "traffic-recording-file")
+    public TrafficFile trafficRecorder(CertBluesProperties properties) throws IOException {
+        return TrafficFile.create(properties.getTrafficRecordingFile());
+    }
+
+    /**
+     * Provides the OpenTelemetry SDK if an exporter for the spans is configured. The SDK is registered as the global
+     * instance that the clients take their tracer from; closing it exports the remaining spans.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "cert-blues.tracing", name = "exporter")
+    public OpenTelemetrySdk openTelemetry(TracingProperties properties,
+                                          @Value("${spring.application.name}") String applicationName) throws IOException {
+        final SpanExporter spanExporter = switch (properties.getExporter()) {
+            case OTLP -> OtlpGrpcSpanExporter.builder().setEndpoint(properties.getOtlpEndpoint()).build();
+            case FILE -> SpanFileExporter.create(properties.getFile());
+        };
+
+        final SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.of(AttributeKey.stringKey("service.name"), applicationName))))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(properties.getSamplingRatio())))
+                .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build())
+                .build();
+
+        return OpenTelemetrySdk.builder()
+                .setTracerProvider(tracerProvider)
+                .buildAndRegisterGlobal();
+    }
+
     @Bean
-    public reactor.netty.http.client.HttpClient baseHttpClient() {
-        final ConnectionProvider connectionProvider = ConnectionProvider.builder("custom")
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+
+    private static ConnectionProvider createConnectionProvider(String name) {
+        return ConnectionProvider.builder(name)
                 .maxIdleTime(Duration.ofSeconds(45))
                 .maxLifeTime(Duration.ofSeconds(60))
                 .build();
+    }
 
+    private static LoopResources createLoopResources(String name) {
+        // the number of available processors respects the CPU quota of the container
+        final int eventLoopThreads = Math.max(MIN_EVENT_LOOP_THREADS, Runtime.getRuntime().availableProcessors());
+        return LoopResources.create(name, eventLoopThreads, true);
+    }
+
+    /**
+     * Creates an HTTP client with its own connection pool and event loop group, so that slow responses of one service
+     * do not delay the processing of the other.
+     */
+    private static reactor.netty.http.client.HttpClient createHttpClient(ConnectionProvider connectionProvider,
+                                                                         LoopResources loopResources) {
         return reactor.netty.http.client.HttpClient.create(connectionProvider)
+                .runOn(loopResources)
                 .secure()
                 .protocol(HttpProtocol.HTTP11, HttpProtocol.H2)
                 .wiretap("reactor.netty.http.client.HttpClient", LogLevel.INFO, AdvancedByteBufFormat.TEXTUAL)
                 .responseTimeout(Duration.ofSeconds(30));
     }
-
-    @Bean
-    public Clock clock() {
-        return Clock.systemDefaultZone();
-    }
 }
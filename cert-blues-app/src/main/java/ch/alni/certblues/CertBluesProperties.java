@@ -25,9 +25,11 @@
 
 package ch.alni.certblues;
 
+import org.jetbrains.annotations.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 
+import java.nio.file.Path;
 import java.time.Duration;
 
 @ConfigurationProperties(prefix = "cert-blues")
@@ -39,21 +41,97 @@ public class CertBluesProperties {
     private final Duration renewalInterval;
 
     /**
-     * How long the application can be executed before the execution is aborted.
+     * If true, the certificates are renewed within the window suggested by the CA (ACME renewal information) if the
+     * CA provides it, and only the other certificates after the renewal interval. Disabled by default, all
+     * certificates are then renewed after the renewal interval. The windows are cached for as long as the CA asks,
+     * which only saves requests in daemon mode; a single run asks the CA once per certificate.
+     */
+    private final boolean renewalInfoEnabled;
+
+    /**
+     * How long before the expiry the CA is asked when to renew a certificate. The CA can suggest an early renewal,
+     * for example if the certificate is going to be revoked.
+     */
+    private final Duration renewalInfoHorizon;
+
+    /**
+     * How long the application can be executed before the execution is aborted. The daemon fails the orders that take
+     * longer.
      */
     private final Duration maxExecutionTime;
 
+    /**
+     * How many certificate orders can be processed at the same time.
+     */
+    private final int maxConcurrentOrders;
+
+    /**
+     * How many certificate orders can be processed at the same time for the same DNS zone or storage endpoint. 0 by
+     * default, for no limit other than the maximum number of the concurrent orders.
+     */
+    private final int laneConcurrency;
+
+    /**
+     * The expected duration of a certificate order before any order has completed. The estimate is not kept between
+     * the runs, the run logs the estimate it has ended with to tune this value. Not used by the daemon, it does not
+     * defer the orders by a deadline.
+     */
+    private final Duration orderDurationEstimate;
+
+    /**
+     * The file to record the exchanges with the ACME server and the Azure services to, for example
+     * "traffic.jsonl.gz". The traffic is not recorded if not set.
+     */
+    private final Path trafficRecordingFile;
+
     public CertBluesProperties(@DefaultValue("60d") Duration renewalInterval,
-                               @DefaultValue("10m") Duration maxExecutionTime) {
+                               @DefaultValue("false") boolean renewalInfoEnabled,
+                               @DefaultValue("90d") Duration renewalInfoHorizon,
+                               @DefaultValue("10m") Duration maxExecutionTime,
+                               @DefaultValue("10") int maxConcurrentOrders,
+                               @DefaultValue("0") int laneConcurrency,
+                               @DefaultValue("2m") Duration orderDurationEstimate,
+                               @Nullable Path trafficRecordingFile) {
         this.renewalInterval = renewalInterval;
+        this.renewalInfoEnabled = renewalInfoEnabled;
+        this.renewalInfoHorizon = renewalInfoHorizon;
         this.maxExecutionTime = maxExecutionTime;
+        this.maxConcurrentOrders = maxConcurrentOrders;
+        this.laneConcurrency = laneConcurrency;
+        this.orderDurationEstimate = orderDurationEstimate;
+        this.trafficRecordingFile = trafficRecordingFile;
     }
 
     public Duration getRenewalInterval() {
         return renewalInterval;
     }
 
+    public boolean isRenewalInfoEnabled() {
+        return renewalInfoEnabled;
+    }
+
+    public Duration getRenewalInfoHorizon() {
+        return renewalInfoHorizon;
+    }
+
     public Duration getMaxExecutionTime() {
         return maxExecutionTime;
     }
+
+    public int getMaxConcurrentOrders() {
+        return maxConcurrentOrders;
+    }
+
+    public int getLaneConcurrency() {
+        return laneConcurrency > 0 ? laneConcurrency : maxConcurrentOrders;
+    }
+
+    public Duration getOrderDurationEstimate() {
+        return orderDurationEstimate;
+    }
+
+    @Nullable
+    public Path getTrafficRecordingFile() {
+        return trafficRecordingFile;
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "cert-blues.daemon")
+public class DaemonProperties {
+
+    /**
+     * If true, the application keeps running and renews each certificate when it is due instead of renewing the due
+     * certificates once and ending.
+     */
+    private final boolean enabled;
+
+    /**
+     * How often the certificates and the certificate requests are read again, to pick up the new certificate
+     * requests and the changes of the renewal windows.
+     */
+    private final Duration reconciliationInterval;
+
+    /**
+     * How long to wait before the renewal of a certificate that has failed or has been deferred is tried again.
+     */
+    private final Duration retryDelay;
+
+    /**
+     * How long the started orders can take to complete when the application is shut down.
+     */
+    private final Duration drainTimeout;
+
+    public DaemonProperties(@DefaultValue("false") boolean enabled,
+                            @DefaultValue("1h") Duration reconciliationInterval,
+                            @DefaultValue("10m") Duration retryDelay,
+                            @DefaultValue("2m") Duration drainTimeout) {
+        this.enabled = enabled;
+        this.reconciliationInterval = reconciliationInterval;
+        this.retryDelay = retryDelay;
+        this.drainTimeout = drainTimeout;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getReconciliationInterval() {
+        return reconciliationInterval;
+    }
+
+    public Duration getRetryDelay() {
+        return retryDelay;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+}
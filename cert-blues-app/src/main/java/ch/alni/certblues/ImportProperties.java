@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "cert-blues.import")
+public class ImportProperties {
+
+    /**
+     * The file with one certificate request as JSON per line to import. The application imports it and ends instead
+     * of renewing the certificates.
+     */
+    private final Path file;
+
+    /**
+     * The file to keep the progress of the import in, next to the imported file if not set.
+     */
+    private final Path progressFile;
+
+    /**
+     * How many batches of requests are written at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * How many lines are imported before the progress is saved.
+     */
+    private final int windowSize;
+
+    public ImportProperties(Path file,
+                            Path progressFile,
+                            @DefaultValue("8") int concurrency,
+                            @DefaultValue("1000") int windowSize) {
+        this.file = file;
+        this.progressFile = progressFile;
+        this.concurrency = concurrency;
+        this.windowSize = windowSize;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Path getProgressFile() {
+        return progressFile != null ? progressFile : file.resolveSibling(file.getFileName() + ".progress");
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.importing.ImportReport;
+import ch.alni.certblues.certbot.importing.RequestImporter;
+import ch.alni.certblues.certbot.importing.RequestWriter;
+import org.slf4j.Logger;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.NoneNestedConditions;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Entry point for the application in import mode: writes the certificate requests of a file into the request store
+ * and ends. The certificates are not renewed in this mode.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cert-blues.import", name = "file")
+public class ImportRunner implements CommandLineRunner {
+    private static final Logger LOG = getLogger(ImportRunner.class);
+
+    private final StorageService storageService;
+    private final ImportProperties properties;
+    private final Clock clock;
+
+    public ImportRunner(StorageService storageService, ImportProperties properties, Clock clock) {
+        this.storageService = storageService;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!(storageService instanceof RequestWriter writer)) {
+            throw new IllegalStateException("the configured request store does not support the import");
+        }
+
+        LOG.info("import of the certificate requests from {} started", properties.getFile());
+
+        final RequestImporter importer = new RequestImporter(writer, properties.getConcurrency(),
+                properties.getWindowSize(), clock);
+        final ImportReport report = importer.importFile(properties.getFile(), properties.getProgressFile()).block();
+
+        LOG.info("import of the certificate requests ended: {}", report);
+    }
+
+    /**
+     * Matches if the application is not in import mode, the certificates are renewed then.
+     */
+    static class NotImporting extends NoneNestedConditions {
+
+        NotImporting() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = "cert-blues.import", name = "file")
+        static class Importing {
+        }
+    }
+}
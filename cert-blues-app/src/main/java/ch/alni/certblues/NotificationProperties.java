@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "cert-blues.notifications")
+public class NotificationProperties {
+
+    /**
+     * How often the queue is checked for new notifications.
+     */
+    private final Duration pollInterval;
+
+    /**
+     * How long the received notifications are hidden, must be longer than an order takes. The notifications whose
+     * certificate has not been issued are delivered again after that.
+     */
+    private final Duration visibilityTimeout;
+
+    /**
+     * The maximum number of notifications processed together.
+     */
+    private final int maxNotifications;
+
+    /**
+     * How often a notification is delivered before it is moved to the poison queue.
+     */
+    private final int maxDeliveries;
+
+    public NotificationProperties(@DefaultValue("5s") Duration pollInterval,
+                                  @DefaultValue("10m") Duration visibilityTimeout,
+                                  @DefaultValue("32") int maxNotifications,
+                                  @DefaultValue("5") int maxDeliveries) {
+        this.pollInterval = pollInterval;
+        this.visibilityTimeout = visibilityTimeout;
+        this.maxNotifications = maxNotifications;
+        this.maxDeliveries = maxDeliveries;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public Duration getVisibilityTimeout() {
+        return visibilityTimeout;
+    }
+
+    public int getMaxNotifications() {
+        return maxNotifications;
+    }
+
+    public int getMaxDeliveries() {
+        return maxDeliveries;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import ch.alni.certblues.certbot.ratelimit.RateLimit;
+
+@ConfigurationProperties(prefix = "cert-blues.rate-limits")
+public class RateLimitProperties {
+
+    /**
+     * If the certificate requests that would exceed the rate limits of the ACME server are deferred to the next run.
+     */
+    private final boolean enabled;
+
+    /**
+     * How many new orders the account can create within 3 hours.
+     */
+    private final int newOrders;
+
+    /**
+     * How many certificates can be issued for a registered domain within 7 days.
+     */
+    private final int certificatesPerDomain;
+
+    /**
+     * How many certificates can be issued for the same set of DNS names within 7 days.
+     */
+    private final int duplicateCertificates;
+
+    /**
+     * How many validations of a DNS name can fail within an hour.
+     */
+    private final int failedValidations;
+
+    public RateLimitProperties(@DefaultValue("false") boolean enabled,
+                               @DefaultValue("300") int newOrders,
+                               @DefaultValue("50") int certificatesPerDomain,
+                               @DefaultValue("5") int duplicateCertificates,
+                               @DefaultValue("5") int failedValidations) {
+        this.enabled = enabled;
+        this.newOrders = newOrders;
+        this.certificatesPerDomain = certificatesPerDomain;
+        this.duplicateCertificates = duplicateCertificates;
+        this.failedValidations = failedValidations;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns how many events are allowed within the window of each limit.
+     */
+    public Map<RateLimit, Integer> getMaximums() {
+        final Map<RateLimit, Integer> maximums = new EnumMap<>(RateLimit.class);
+        maximums.put(RateLimit.NEW_ORDERS, newOrders);
+        maximums.put(RateLimit.CERTIFICATES_PER_DOMAIN, certificatesPerDomain);
+        maximums.put(RateLimit.DUPLICATE_CERTIFICATES, duplicateCertificates);
+        maximums.put(RateLimit.FAILED_VALIDATIONS, failedValidations);
+        return maximums;
+    }
+}
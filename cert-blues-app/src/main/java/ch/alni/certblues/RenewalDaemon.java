@@ -0,0 +1,295 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.RenewalProcessor.RenewalBatch;
+import ch.alni.certblues.certbot.CertBot;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.queue.QueuedStorageService;
+import ch.alni.certblues.certbot.queue.RequestNotificationQueue;
+import ch.alni.certblues.certbot.renewal.RenewalPlanner;
+import ch.alni.certblues.certbot.scheduling.RenewalQueue;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Sinks;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the application running and renews each certificate when it is due, so that the sessions with the CAs and
+ * the clients of the Azure services are reused by all renewals. The certificates are kept in a queue ordered by
+ * their renewal time; the daemon sleeps until the next one is due and reads the inventory again from time to time to
+ * pick up the new certificate requests. If a request queue is configured, the requests of its notifications are
+ * processed within seconds in between.
+ * <p>
+ * The due certificates and the notified requests are fed into one pipeline that keeps running, so that they are
+ * ordered as soon as there is a free slot instead of waiting for the orders started before.
+ * <p>
+ * On shutdown no new orders are started and the started orders are given some time to complete.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cert-blues.daemon", name = "enabled", havingValue = "true")
+@Conditional(ImportRunner.NotImporting.class)
+public class RenewalDaemon implements SmartLifecycle {
+    private static final Logger LOG = getLogger(RenewalDaemon.class);
+
+    // how long to wait for the daemon to end after the started orders have been cancelled
+    private static final Duration CANCEL_TIMEOUT = Duration.ofSeconds(10);
+
+    private final RenewalProcessor renewalProcessor;
+    private final CertBluesProperties properties;
+    private final DaemonProperties daemonProperties;
+    private final StorageService storageService;
+    private final Clock clock;
+
+    // null if the new certificate requests are only picked up by the reconciliations
+    private final QueuedStorageService notifiedRequests;
+    private final Duration pollInterval;
+
+    private final RenewalQueue renewalQueue = new RenewalQueue();
+    private final Object lock = new Object();
+
+    // the due certificates in the pipeline, retried if they are not renewed; the certificates without a request stay
+    // until they are due again
+    private final Map<String, CertificateInfo> renewing = new ConcurrentHashMap<>();
+
+    private volatile boolean stopping;
+    private volatile Thread thread;
+
+    public RenewalDaemon(RenewalProcessor renewalProcessor,
+                         CertBluesProperties properties,
+                         DaemonProperties daemonProperties,
+                         StorageService storageService,
+                         ObjectProvider<RequestNotificationQueue> requestNotificationQueue,
+                         NotificationProperties notificationProperties,
+                         Clock clock) {
+        this.renewalProcessor = renewalProcessor;
+        this.properties = properties;
+        this.daemonProperties = daemonProperties;
+        this.storageService = storageService;
+        this.clock = clock;
+
+        final RequestNotificationQueue queue = requestNotificationQueue.getIfAvailable();
+        this.notifiedRequests = null == queue ? null : new QueuedStorageService(storageService, queue,
+                notificationProperties.getMaxNotifications(), notificationProperties.getVisibilityTimeout(),
+                notificationProperties.getMaxDeliveries());
+        this.pollInterval = notificationProperties.getPollInterval();
+    }
+
+    @Override
+    public void start() {
+        stopping = false;
+        thread = new Thread(this::run, "renewal-daemon");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        LOG.info("renewal daemon is stopping, the started orders have {} to complete",
+                daemonProperties.getDrainTimeout());
+        stopping = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+
+        try {
+            thread.join(daemonProperties.getDrainTimeout().toMillis());
+            if (thread.isAlive()) {
+                LOG.warn("the started orders have not completed in time and are cancelled");
+                thread.interrupt();
+                thread.join(CANCEL_TIMEOUT.toMillis());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return null != thread && thread.isAlive();
+    }
+
+    private void run() {
+        LOG.info("renewal daemon started");
+        try {
+            final CertBot certBot = renewalProcessor.login();
+            final RenewalPlanner renewalPlanner = renewalProcessor.createRenewalPlanner();
+            renewalProcessor.join();
+            try {
+                run(certBot, renewalPlanner);
+            }
+            finally {
+                renewalProcessor.leave();
+            }
+        }
+        catch (RuntimeException e) {
+            LOG.error("renewal daemon failed", e);
+        }
+        LOG.info("renewal daemon stopped");
+    }
+
+    private void run(CertBot certBot, RenewalPlanner renewalPlanner) {
+        final Sinks.Many<RenewalBatch> batches = Sinks.many().unicast().onBackpressureBuffer();
+        final CompletableFuture<Void> pipeline = renewalProcessor.renew(batches.asFlux(), certBot,
+                        request -> stopping ? DeferralReason.SHUTDOWN : null)
+                // the renewed certificates are queued again by the next reconciliation
+                .doOnNext(result -> {
+                    final CertificateInfo certificateInfo = renewing.remove(
+                            result.certificateRequest().certificateName());
+                    if (result.status() != CertificateResult.Status.ISSUED) {
+                        retry(certificateInfo);
+                    }
+                })
+                .then()
+                .toFuture();
+
+        Instant nextReconciliation = Instant.MIN;
+        Instant nextPoll = null == notifiedRequests ? Instant.MAX : Instant.MIN;
+        while (!stopping && !pipeline.isDone()) {
+            final Instant now = clock.instant();
+            final boolean reconciling = !now.isBefore(nextReconciliation);
+            if (reconciling) {
+                nextReconciliation = reconcile(renewalPlanner) ?
+                        now.plus(daemonProperties.getReconciliationInterval()) :
+                        now.plus(daemonProperties.getRetryDelay());
+            }
+
+            // the new certificate requests are picked up with every reconciliation
+            final List<CertificateInfo> dueCertificates = renewalQueue.pollDue(now);
+            if (reconciling || !dueCertificates.isEmpty()) {
+                dueCertificates.forEach(certificateInfo ->
+                        renewing.put(certificateInfo.certificateName(), certificateInfo));
+                batches.emitNext(new RenewalBatch(storageService, dueCertificates), Sinks.EmitFailureHandler.FAIL_FAST);
+            }
+
+            // and in between from the notifications, whose requests are delivered again after the visibility timeout
+            // if they are not issued
+            final boolean polling = !now.isBefore(nextPoll);
+            if (polling) {
+                nextPoll = now.plus(pollInterval);
+                batches.emitNext(new RenewalBatch(notifiedRequests, List.of()), Sinks.EmitFailureHandler.FAIL_FAST);
+            }
+
+            if (!reconciling && !polling && dueCertificates.isEmpty()) {
+                sleepUntil(nextPoll.isBefore(nextReconciliation) ? nextPoll : nextReconciliation);
+            }
+        }
+
+        // no new orders are admitted anymore, the started ones complete
+        batches.emitComplete(Sinks.EmitFailureHandler.FAIL_FAST);
+        await(pipeline);
+    }
+
+    private void await(CompletableFuture<Void> pipeline) {
+        try {
+            pipeline.get();
+        }
+        catch (InterruptedException e) {
+            // the started orders are cancelled because of the shutdown
+            pipeline.cancel(true);
+            LOG.warn("certificate renewals interrupted");
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            LOG.error("error while processing certificate request", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the certificates and queues them by their renewal time. Returns false if the certificates cannot be read,
+     * the queue is then kept as is.
+     */
+    private boolean reconcile(RenewalPlanner renewalPlanner) {
+        try {
+            final Map<CertificateInfo, Instant> renewalTimes = renewalProcessor.getCertificates(renewalPlanner)
+                    .flatMap(certificateInfo -> renewalPlanner.getRenewalTime(certificateInfo)
+                            .map(renewOn -> Map.entry(certificateInfo, renewOn)))
+                    .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new)
+                    .block(properties.getMaxExecutionTime());
+
+            renewalQueue.reconcile(null == renewalTimes ? Map.of() : renewalTimes);
+            LOG.info("{} certificates queued for renewal, the next renewal is due on {}", renewalQueue.size(),
+                    renewalQueue.getNextRenewalTime());
+            return true;
+        }
+        catch (RuntimeException e) {
+            LOG.error("cannot read the certificates, the renewal queue is kept", e);
+            return false;
+        }
+    }
+
+    private void retry(CertificateInfo certificateInfo) {
+        // the requests without a certificate are picked up again by the next reconciliation
+        if (null != certificateInfo) {
+            synchronized (lock) {
+                renewalQueue.retry(certificateInfo, clock.instant().plus(daemonProperties.getRetryDelay()));
+                // the daemon may sleep past the retry
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void sleepUntil(Instant nextWakeUp) {
+        synchronized (lock) {
+            final Instant nextRenewal = renewalQueue.getNextRenewalTime();
+            final Instant wakeUpOn = null != nextRenewal && nextRenewal.isBefore(nextWakeUp) ?
+                    nextRenewal : nextWakeUp;
+            final long millis = Duration.between(clock.instant(), wakeUpOn).toMillis();
+            if (millis <= 0) {
+                return;
+            }
+
+            LOG.debug("renewal daemon sleeps until {}", wakeUpOn);
+            try {
+                if (!stopping) {
+                    lock.wait(millis);
+                }
+            }
+            catch (InterruptedException e) {
+                stopping = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.certbot.AdmissionPolicy;
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertBot;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.ca.CaHealth;
+import ch.alni.certblues.certbot.ca.CaRouter;
+import ch.alni.certblues.certbot.ca.CertificateAuthorities;
+import ch.alni.certblues.certbot.ca.CertificateAuthority;
+import ch.alni.certblues.certbot.ca.RoutedAuthority;
+import ch.alni.certblues.certbot.impl.CertBotFactory;
+import ch.alni.certblues.certbot.pool.AcmeSessionPool;
+import ch.alni.certblues.certbot.ratelimit.RateLimitLedger;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+import ch.alni.certblues.certbot.renewal.RenewalPlanner;
+import ch.alni.certblues.certbot.scheduling.DeadlineScheduler;
+import ch.alni.certblues.certbot.scheduling.OrderDurationEstimator;
+import ch.alni.certblues.certbot.scheduling.ScheduledRequest;
+import ch.alni.certblues.certbot.sharding.LeaseStore;
+import ch.alni.certblues.certbot.sharding.ShardCoordinator;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The steps of renewing the certificates shared by the single run and the daemon: logging in to the CAs, finding the
+ * certificates due for renewal and passing their requests to the certbot.
+ */
+@Component
+public class RenewalProcessor {
+    private static final Logger LOG = getLogger(RenewalProcessor.class);
+
+    private final CertBotFactory certBotFactory;
+    private final StorageService storageService;
+    private final CertificateStore certificateStore;
+    private final List<SigningKeyPair> accountKeyPairs;
+    private final CertificateAuthorities certificateAuthorities;
+    private final RateLimitStore rateLimitStore;
+    private final CertBluesProperties properties;
+    private final RateLimitProperties rateLimitProperties;
+    private final ShardingProperties shardingProperties;
+    private final Clock clock;
+
+    // null if the requests are not spread over several instances
+    private final ShardCoordinator shardCoordinator;
+
+    public RenewalProcessor(CertBotFactory certBotFactory,
+                            StorageService storageService,
+                            CertificateStore certificateStore,
+                            @Qualifier("accountKeyPairs") List<SigningKeyPair> accountKeyPairs,
+                            CertificateAuthorities certificateAuthorities,
+                            RateLimitStore rateLimitStore,
+                            CertBluesProperties properties,
+                            RateLimitProperties rateLimitProperties,
+                            LeaseStore leaseStore,
+                            ShardingProperties shardingProperties,
+                            Clock clock) {
+        this.certBotFactory = certBotFactory;
+        this.storageService = storageService;
+        this.certificateStore = certificateStore;
+        this.accountKeyPairs = accountKeyPairs;
+        this.certificateAuthorities = certificateAuthorities;
+        this.rateLimitStore = rateLimitStore;
+        this.properties = properties;
+        this.rateLimitProperties = rateLimitProperties;
+        this.shardingProperties = shardingProperties;
+        this.clock = clock;
+        this.shardCoordinator = shardingProperties.isEnabled() ?
+                new ShardCoordinator(leaseStore, shardingProperties.getInstanceId(),
+                        shardingProperties.getShardCount(), shardingProperties.getShardKey(),
+                        shardingProperties.getLeaseDuration(), clock) :
+                null;
+    }
+
+    /**
+     * Logs in to the CAs and returns the certbot that orders the certificates from them.
+     */
+    public CertBot login() {
+        final var accountRequest = AccountRequest.builder().termsOfServiceAgreed(true).build();
+        // the requests are spread over the accounts, so that the throughput is not capped by one account,
+        // and over the CAs, so that the orders fail over to the next CA if one is unavailable
+        final List<RoutedAuthority> authorities = Flux.fromIterable(certificateAuthorities.getAll())
+                .concatMap(authority -> login(authority, accountRequest))
+                .collectList()
+                .block(properties.getMaxExecutionTime());
+        return certBotFactory.create(new CaRouter(Objects.requireNonNull(authorities)));
+    }
+
+    /**
+     * Joins the instances the certificate requests are spread over and takes the share of the shards of this
+     * instance. Nothing is done if the requests are not spread.
+     */
+    public void join() {
+        if (null != shardCoordinator) {
+            shardCoordinator.join(shardingProperties.getSettleTime(), shardingProperties.getHeartbeatInterval())
+                    .block(properties.getMaxExecutionTime());
+        }
+    }
+
+    /**
+     * Releases the shards of this instance, so that the other instances take them over right away.
+     */
+    public void leave() {
+        if (null != shardCoordinator) {
+            shardCoordinator.leave().block(properties.getMaxExecutionTime());
+        }
+    }
+
+    /**
+     * Returns the planner that decides when the certificates are renewed, within the windows suggested by the CAs
+     * if enabled.
+     */
+    public RenewalPlanner createRenewalPlanner() {
+        if (!properties.isRenewalInfoEnabled()) {
+            return RenewalPlanner.ofInterval(properties.getRenewalInterval(), clock);
+        }
+        return new RenewalPlanner(certificateAuthorities.getAll().stream().map(CertificateAuthority::client).toList(),
+                properties.getRenewalInterval(), properties.getRenewalInfoHorizon(), clock);
+    }
+
+    /**
+     * Returns the scheduler of a run: no new orders are admitted if they cannot complete within the execution time.
+     */
+    public DeadlineScheduler createScheduler() {
+        final Instant deadline = Instant.now(clock).plus(properties.getMaxExecutionTime());
+        return new DeadlineScheduler(clock, deadline,
+                new OrderDurationEstimator(properties.getOrderDurationEstimate()));
+    }
+
+    /**
+     * Returns the certificates the planner has to consider for renewal.
+     */
+    public Flux<CertificateInfo> getCertificates(RenewalPlanner renewalPlanner) {
+        return certificateStore.getExpiringCertificates(renewalPlanner.getHorizon());
+    }
+
+    /**
+     * Renews the given certificates and creates the certificates that are requested explicitly. If the requests are
+     * spread over several instances, only the requests of the shards owned by this instance are processed.
+     *
+     * @param certBot         the certbot to order the certificates from
+     * @param dueCertificates the certificates due for renewal
+     * @param scheduler       the scheduler of the run
+     * @param admissionPolicy decides in addition to the scheduler if a request can start
+     */
+    public Flux<CertificateResult> renew(CertBot certBot, List<CertificateInfo> dueCertificates,
+                                         DeadlineScheduler scheduler, AdmissionPolicy admissionPolicy) {
+        final var batchOptions = createBatchOptions(admissionPolicy).build();
+
+        // the shards with requests in flight are not released by the rebalancing
+        final Map<String, CertificateRequest> inFlight = new ConcurrentHashMap<>();
+
+        return findRequests(storageService, dueCertificates)
+                .doOnNext(request -> track(inFlight, request))
+                .map(request -> ScheduledRequest.of(request, dueCertificates))
+                .collectList()
+                // and then pass the requests to the certbot, the soonest expiring first
+                .flatMapMany(requests -> scheduler.schedule(certBot, requests, batchOptions))
+                .concatMap(result -> complete(storageService, result))
+                .doOnNext(result -> untrack(inFlight, result.certificateRequest()))
+                .doFinally(signal -> List.copyOf(inFlight.values()).forEach(request -> untrack(inFlight, request)));
+    }
+
+    /**
+     * Renews the certificates of the given batches in one pipeline that runs until the batches complete. The requests
+     * of a batch are passed to the certbot as soon as the batch arrives, while the orders of the earlier batches are
+     * still running, and the maximum of concurrent orders applies to all batches together. A request still in flight
+     * is not passed again when a later batch finds it. An order that takes longer than the execution time is failed.
+     *
+     * @param batches         the batches to renew, the pipeline ends when they complete
+     * @param certBot         the certbot to order the certificates from
+     * @param admissionPolicy decides if a request can start
+     */
+    public Flux<CertificateResult> renew(Flux<RenewalBatch> batches, CertBot certBot,
+                                         AdmissionPolicy admissionPolicy) {
+        final var batchOptions = createBatchOptions(admissionPolicy)
+                .orderTimeout(properties.getMaxExecutionTime())
+                .build();
+
+        // the source of each request in flight, the requests are completed where they have been found
+        final Map<String, StorageService> requestSources = new ConcurrentHashMap<>();
+        final Map<String, CertificateRequest> inFlight = new ConcurrentHashMap<>();
+
+        final Flux<CertificateRequest> requests = batches.concatMap(batch ->
+                findRequests(batch.requestSource(), batch.dueCertificates())
+                        .filter(request -> null == requestSources.putIfAbsent(request.certificateName(),
+                                batch.requestSource()))
+                        .doOnNext(request -> track(inFlight, request))
+                        .map(request -> ScheduledRequest.of(request, batch.dueCertificates()))
+                        // the soonest expiring of the batch first
+                        .sort(ScheduledRequest.BY_PRIORITY)
+                        .map(ScheduledRequest::certificateRequest)
+                        // a batch that cannot be read does not end the pipeline, it is read again later
+                        .onErrorResume(throwable -> {
+                            LOG.error("cannot read the certificate requests of the batch", throwable);
+                            return Mono.empty();
+                        }));
+
+        return certBot.submitAll(requests, batchOptions)
+                .concatMap(result -> complete(requestSources.get(result.certificateRequest().certificateName()),
+                        result)
+                        .onErrorResume(throwable -> {
+                            LOG.error("cannot complete the certificate request {}", result.certificateRequest(),
+                                    throwable);
+                            return Mono.just(result);
+                        }))
+                .doOnNext(result -> requestSources.remove(result.certificateRequest().certificateName()))
+                .doOnNext(result -> untrack(inFlight, result.certificateRequest()))
+                .doFinally(signal -> List.copyOf(inFlight.values()).forEach(request -> untrack(inFlight, request)));
+    }
+
+    private BatchOptions.Builder createBatchOptions(AdmissionPolicy admissionPolicy) {
+        return BatchOptions.builder()
+                .maxConcurrency(properties.getMaxConcurrentOrders())
+                .laneConcurrency(properties.getLaneConcurrency())
+                // a shard lost in the meantime is left to the instance that has taken it over
+                .admissionPolicy(null != shardCoordinator ? admissionPolicy.and(shardCoordinator) : admissionPolicy);
+    }
+
+    /**
+     * Checks each request against the list of available certificates. The requests of the shards not owned by this
+     * instance are released right away.
+     */
+    private Flux<CertificateRequest> findRequests(StorageService requestSource,
+                                                  List<CertificateInfo> dueCertificates) {
+        return requestSource.getPendingCertificateRequests(dueCertificates)
+                .filterWhen(request -> null == shardCoordinator || shardCoordinator.owns(request) ? Mono.just(true) :
+                        requestSource.release(CertificateResult.deferred(request, DeferralReason.SHARD_NOT_OWNED,
+                                clock.instant())).thenReturn(false))
+                .doOnNext(request -> LOG.info("certificate request found {}", request))
+                .map(request -> RenewalPlanner.withReplaces(request, dueCertificates));
+    }
+
+    /**
+     * The issued requests are not pending anymore, the others are picked up again later.
+     */
+    private Mono<CertificateResult> complete(StorageService requestSource, CertificateResult result) {
+        final Mono<Void> completion = result.status() == CertificateResult.Status.ISSUED ?
+                reset(requestSource, result) :
+                requestSource.release(result);
+
+        return completion.thenReturn(result)
+                .doOnNext(completed -> LOG.info("certificate request {} processed: {} in {}",
+                        completed.certificateRequest(), completed.status(), completed.duration()));
+    }
+
+    /**
+     * Resets the request of the given issued certificate, unless its shard has been taken over by another instance
+     * in the meantime; the request is then left to that instance.
+     */
+    private Mono<Void> reset(StorageService requestSource, CertificateResult result) {
+        if (null == shardCoordinator) {
+            return requestSource.reset(result.certificateRequest());
+        }
+
+        return shardCoordinator.confirmOwnership(result.certificateRequest())
+                .flatMap(owned -> {
+                    if (owned) {
+                        return requestSource.reset(result.certificateRequest());
+                    }
+                    LOG.warn("certificate request {} is not reset, its shard has been taken over by another instance",
+                            result.certificateRequest());
+                    return requestSource.release(result);
+                });
+    }
+
+    private void track(Map<String, CertificateRequest> inFlight, CertificateRequest request) {
+        if (null != shardCoordinator && null == inFlight.putIfAbsent(request.certificateName(), request)) {
+            shardCoordinator.track(request);
+        }
+    }
+
+    private void untrack(Map<String, CertificateRequest> inFlight, CertificateRequest request) {
+        if (null != shardCoordinator && null != inFlight.remove(request.certificateName())) {
+            shardCoordinator.untrack(request);
+        }
+    }
+
+    private Mono<RoutedAuthority> login(CertificateAuthority authority, AccountRequest accountRequest) {
+        return AcmeSessionPool.login(authority.client(), authority.externalAccountBinding(), accountKeyPairs,
+                        accountRequest, account -> loadRateLimitLedger(authority.name() + "." + account))
+                .map(pool -> new RoutedAuthority(authority.name(), pool, new CaHealth(authority.name(), clock)));
+    }
+
+    /**
+     * Loads the events of the account counted against the rate limits by the previous runs. The account is
+     * identified by the name of the CA and the thumbprint of its key. Empty if the rate limits are not accounted for.
+     */
+    private Mono<RateLimitLedger> loadRateLimitLedger(String account) {
+        return rateLimitProperties.isEnabled() ?
+                RateLimitLedger.load(rateLimitStore, account, rateLimitProperties.getMaximums(), clock) :
+                Mono.empty();
+    }
+
+    /**
+     * The certificates due for renewal and the storage service to find their requests in.
+     */
+    public record RenewalBatch(StorageService requestSource, List<CertificateInfo> dueCertificates) {
+    }
+}
@@ -25,47 +25,33 @@
 
 package ch.alni.certblues;
 
-import ch.alni.certblues.acme.facade.AcmeClient;
-import ch.alni.certblues.acme.key.SigningKeyPair;
-import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.certbot.AdmissionPolicy;
 import ch.alni.certblues.certbot.CertBot;
-import ch.alni.certblues.certbot.CertificateStore;
-import ch.alni.certblues.certbot.StorageService;
-import ch.alni.certblues.certbot.impl.CertBotFactory;
+import ch.alni.certblues.certbot.renewal.RenewalPlanner;
+import ch.alni.certblues.certbot.scheduling.DeadlineScheduler;
 import org.slf4j.Logger;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Mono;
-
-import java.time.Duration;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * Entry point for the application.
+ * Entry point for the application: renews the due certificates once and ends. Not used in daemon mode and in
+ * import mode.
  */
 @Component
+@ConditionalOnProperty(prefix = "cert-blues.daemon", name = "enabled", havingValue = "false", matchIfMissing = true)
+@Conditional(ImportRunner.NotImporting.class)
 public class Runner implements CommandLineRunner {
     private static final Logger LOG = getLogger(Runner.class);
 
-    private final CertBotFactory certBotFactory;
-    private final StorageService storageService;
-    private final CertificateStore certificateStore;
-    private final SigningKeyPair accountKeyPair;
-    private final AcmeClient acmeClient;
+    private final RenewalProcessor renewalProcessor;
     private final CertBluesProperties properties;
 
-    public Runner(CertBotFactory certBotFactory,
-                  StorageService storageService,
-                  CertificateStore certificateStore,
-                  SigningKeyPair accountKeyPair,
-                  AcmeClient acmeClient,
-                  CertBluesProperties properties) {
-        this.certBotFactory = certBotFactory;
-        this.storageService = storageService;
-        this.certificateStore = certificateStore;
-        this.accountKeyPair = accountKeyPair;
-        this.acmeClient = acmeClient;
+    public Runner(RenewalProcessor renewalProcessor, CertBluesProperties properties) {
+        this.renewalProcessor = renewalProcessor;
         this.properties = properties;
     }
 
@@ -73,29 +59,34 @@ public class Runner implements CommandLineRunner {
     public void run(String... args) {
         LOG.info("Certificate request processing started");
 
-        final var accountRequest = AccountRequest.builder().termsOfServiceAgreed(true).build();
-        final var acmeSession = acmeClient.login(accountKeyPair, accountRequest);
-        final CertBot certBot = certBotFactory.create(acmeSession);
+        final CertBot certBot = renewalProcessor.login();
+        final DeadlineScheduler scheduler = renewalProcessor.createScheduler();
 
-        // read available certificates
-        final Duration renewalInterval = properties.getRenewalInterval();
+        // read available certificates, the renewal is spread over the windows suggested by the CAs
+        final RenewalPlanner renewalPlanner = renewalProcessor.createRenewalPlanner();
 
-        certificateStore.getExpiringCertificates(renewalInterval)
-                .collectList().flux()
-                // check each request against the list of available certificates
-                .flatMap(storageService::getPendingCertificateRequests)
-                .doOnNext(request -> LOG.info("certificate request found {}", request))
-                // and then pass each remaining request to the certbot
-                .flatMap(request -> certBot.submit(request)
-                        .then(storageService.reset(request))
-                        .then(Mono.just(request)))
-                .onErrorStop()
-                .doOnError(e -> LOG.error("error while processing certificate request", e))
-                .doOnNext(request -> LOG.info("certificate request processed {}", request))
-                .doOnComplete(() -> LOG.info("no more certificates requests found"))
-                .blockLast(properties.getMaxExecutionTime());
+        // and over the instances running at the same time, if configured
+        renewalProcessor.join();
+        try {
+            renewalProcessor.getCertificates(renewalPlanner)
+                    .transform(renewalPlanner::getDue)
+                    .collectList()
+                    .flatMapMany(dueCertificates -> renewalProcessor.renew(certBot, dueCertificates, scheduler,
+                            AdmissionPolicy.admitAll()))
+                    .onErrorStop()
+                    .doOnError(e -> LOG.error("error while processing certificate request", e))
+                    .doOnComplete(() -> LOG.info("no more certificates requests found"))
+                    .blockLast(properties.getMaxExecutionTime());
+        }
+        finally {
+            renewalProcessor.leave();
 
-        LOG.info("Certificate request processing ended");
+            // also if the run has failed or has not completed in the execution time
+            LOG.info("Certificate request processing ended: {}", scheduler.getReport());
+            scheduler.getReport().getDeferred().forEach((certificateName, reason) ->
+                    LOG.info("certificate request {} deferred to the next run: {}", certificateName, reason));
+            // the next run starts from the configured estimate again
+            LOG.info("order duration estimate at the end of the run: {}", scheduler.getOrderDurationEstimate());
+        }
     }
-
 }
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.certbot.sharding.ShardKey;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@ConfigurationProperties(prefix = "cert-blues.sharding")
+public class ShardingProperties {
+
+    /**
+     * If true, the certificate requests are spread over the instances sharing the lease table, each instance only
+     * processes the requests of the shards it holds the lease of.
+     */
+    private final boolean enabled;
+
+    /**
+     * The unique ID of this instance. A random ID is used if not set.
+     */
+    private final String instanceId;
+
+    /**
+     * The number of shards the requests are partitioned into, must be the same for all instances. The throughput
+     * scales with the number of instances up to the number of shards.
+     */
+    private final int shardCount;
+
+    /**
+     * What the requests are partitioned by, must be the same for all instances.
+     */
+    private final ShardKey shardKey;
+
+    /**
+     * How long a lease is held if it is not renewed, i.e. how long the shards of a failed instance are not processed.
+     */
+    private final Duration leaseDuration;
+
+    /**
+     * How often the leases are renewed and the shards are rebalanced, must be well below the lease duration.
+     */
+    private final Duration heartbeatInterval;
+
+    /**
+     * How long to wait after joining for the instances starting at the same time, so that the shards are shared
+     * from the start.
+     */
+    private final Duration settleTime;
+
+    public ShardingProperties(@DefaultValue("false") boolean enabled,
+                              @DefaultValue("") String instanceId,
+                              @DefaultValue("16") int shardCount,
+                              @DefaultValue("CERTIFICATE_NAME") ShardKey shardKey,
+                              @DefaultValue("60s") Duration leaseDuration,
+                              @DefaultValue("15s") Duration heartbeatInterval,
+                              @DefaultValue("10s") Duration settleTime) {
+        this.enabled = enabled;
+        this.instanceId = instanceId.isBlank() ? UUID.randomUUID().toString() : instanceId;
+        this.shardCount = shardCount;
+        this.shardKey = shardKey;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+        this.settleTime = settleTime;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public ShardKey getShardKey() {
+        return shardKey;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public Duration getSettleTime() {
+        return settleTime;
+    }
+}
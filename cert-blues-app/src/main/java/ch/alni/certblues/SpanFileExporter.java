@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.common.json.JsonObjects;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Exports the spans to a file, one JSON object per line, for the analysis of a run without a collector. The times
+ * are in microseconds since the epoch.
+ */
+public final class SpanFileExporter implements SpanExporter {
+
+    private final Writer writer;
+
+    private SpanFileExporter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates a new file, or replaces the existing one, to write the spans to.
+     */
+    public static SpanFileExporter create(Path path) throws IOException {
+        return new SpanFileExporter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (SpanData span : spans) {
+                writer.write(JsonObjects.serialize(toJson(span)));
+                writer.write('\n');
+            }
+            return CompletableResultCode.ofSuccess();
+        }
+        catch (IOException e) {
+            getLogger(SpanFileExporter.class).error("cannot write the spans", e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode flush() {
+        try {
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        }
+        catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        }
+        catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private static Map<String, Object> toJson(SpanData span) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        json.put("parentSpanId", span.getParentSpanContext().isValid() ? span.getParentSpanId() : null);
+        json.put("name", span.getName());
+        json.put("kind", span.getKind().name());
+        json.put("start", span.getStartEpochNanos() / 1000L);
+        json.put("end", span.getEndEpochNanos() / 1000L);
+        json.put("status", span.getStatus().getStatusCode().name());
+        json.put("attributes", toJson(span.getAttributes()));
+
+        final List<Map<String, Object>> events = span.getEvents().stream()
+                .map(SpanFileExporter::toJson)
+                .toList();
+        json.put("events", events);
+        return json;
+    }
+
+    private static Map<String, Object> toJson(EventData event) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("name", event.getName());
+        json.put("time", event.getEpochNanos() / 1000L);
+        json.put("attributes", toJson(event.getAttributes()));
+        return json;
+    }
+
+    private static Map<String, Object> toJson(Attributes attributes) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        attributes.forEach((key, value) -> json.put(key.getKey(), value));
+        return json;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "cert-blues.tracing")
+public class TracingProperties {
+
+    /**
+     * Where the spans are exported to, the spans are not recorded if not set.
+     */
+    private final Exporter exporter;
+
+    /**
+     * The gRPC endpoint of the OpenTelemetry collector, used by the OTLP exporter.
+     */
+    private final String otlpEndpoint;
+
+    /**
+     * The file to write the spans to, one JSON object per line, used by the file exporter.
+     */
+    private final Path file;
+
+    /**
+     * The share of the certificate orders to be traced, between 0 and 1.
+     */
+    private final double samplingRatio;
+
+    public TracingProperties(@Nullable Exporter exporter,
+                             @DefaultValue("http://localhost:4317") String otlpEndpoint,
+                             @DefaultValue("spans.jsonl") Path file,
+                             @DefaultValue("1.0") double samplingRatio) {
+        this.exporter = exporter;
+        this.otlpEndpoint = otlpEndpoint;
+        this.file = file;
+        this.samplingRatio = samplingRatio;
+    }
+
+    @Nullable
+    public Exporter getExporter() {
+        return exporter;
+    }
+
+    public String getOtlpEndpoint() {
+        return otlpEndpoint;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public double getSamplingRatio() {
+        return samplingRatio;
+    }
+
+    public enum Exporter {
+        OTLP, FILE
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues;
+
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyEntry;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyPair;
+import ch.alni.certblues.acme.server.MockAcmeServer;
+import ch.alni.certblues.acme.server.MockAcmeServerOptions;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.KeyType;
+import ch.alni.certblues.certbot.ca.CertificateAuthorities;
+import ch.alni.certblues.certbot.ca.CertificateAuthority;
+import ch.alni.certblues.certbot.impl.CertBotFactory;
+import ch.alni.certblues.certbot.inmemory.BackendBehaviour;
+import ch.alni.certblues.certbot.inmemory.InMemoryCertificateStore;
+import ch.alni.certblues.certbot.inmemory.InMemoryChallengeProvisioner;
+import ch.alni.certblues.certbot.inmemory.InMemoryLeaseStore;
+import ch.alni.certblues.certbot.inmemory.InMemoryStorageService;
+import ch.alni.certblues.certbot.queue.RequestNotificationQueue;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+
+class RenewalDaemonTest {
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .certificateName("daemon")
+            .storageEndpointUrl("https://daemon.blob.test")
+            .keyType(KeyType.RSA)
+            .keySize(2048)
+            .subjectDn("CN=daemon.test")
+            .dnsNames(List.of("daemon.test"))
+            .dnsZone("test")
+            .dnsZoneResourceGroup("daemon")
+            .validityInMonths(3)
+            .forceRequestCreation(false)
+            .build();
+
+    // the properties of the daemon under test, reconciling the certificates every 100ms
+    private static final Map<String, String> PROPERTIES = Map.of(
+            "cert-blues.renewal-interval", "30d",
+            "cert-blues.max-execution-time", "1m",
+            "cert-blues.max-concurrent-orders", "1",
+            "cert-blues.daemon.enabled", "true",
+            "cert-blues.daemon.reconciliation-interval", "100ms",
+            "cert-blues.daemon.retry-delay", "100ms",
+            "cert-blues.daemon.drain-timeout", "30s",
+            "cert-blues.sharding.instance-id", "daemon-test"
+    );
+
+    private final Clock clock = Clock.systemUTC();
+
+    @Test
+    void shouldOrderTheSameRequestAgainAfterRenewalAndFailure() throws Exception {
+        // the certificates are issued for less than the renewal interval, so each is due again right away
+        try (var server = MockAcmeServer.start(MockAcmeServerOptions.builder()
+                .certificateValidity(Duration.ofDays(1))
+                .build())) {
+
+            final var inMemoryStore = new InMemoryCertificateStore(generateKeyPair(), BackendBehaviour.ideal(), clock);
+            inMemoryStore.put(CERTIFICATE_REQUEST.certificateName(), clock.instant().plus(Duration.ofDays(1)));
+            // the first order fails, the renewal is retried with the same request
+            final var certificateStore = new FailingOnceCertificateStore(inMemoryStore);
+
+            final var storageService = new InMemoryStorageService(BackendBehaviour.ideal());
+            storageService.put(CERTIFICATE_REQUEST);
+
+            final var certBotFactory = new CertBotFactory(certificateStore,
+                    new InMemoryChallengeProvisioner(BackendBehaviour.ideal(), BackendBehaviour.ideal()));
+            final var daemon = createDaemon(server, certBotFactory, certificateStore, storageService, Map.of());
+
+            daemon.start();
+            try {
+                await().atMost(Duration.ofMinutes(1)).until(() -> server.getIssuedCertificateCount() >= 2);
+            }
+            finally {
+                daemon.stop();
+                certBotFactory.destroy();
+            }
+
+            // the failed order and two renewals, each of them ordered anew by the same certbot
+            assertThat(certificateStore.getCsrCount()).isGreaterThanOrEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldOrderNewRequestWhileEarlierOrderIsRunning() throws Exception {
+        try (var server = MockAcmeServer.start(MockAcmeServerOptions.builder().build())) {
+            final var stuckRequest = CERTIFICATE_REQUEST.toBuilder()
+                    .certificateName("stuck")
+                    .forceRequestCreation(true)
+                    .build();
+            final var inMemoryStore = new InMemoryCertificateStore(generateKeyPair(), BackendBehaviour.ideal(), clock);
+            // the key vault does not answer for the first request, its order keeps running until the shutdown
+            final var certificateStore = new StuckCertificateStore(inMemoryStore, stuckRequest.certificateName());
+
+            final var storageService = new InMemoryStorageService(BackendBehaviour.ideal());
+            storageService.put(stuckRequest);
+
+            final var certBotFactory = new CertBotFactory(certificateStore,
+                    new InMemoryChallengeProvisioner(BackendBehaviour.ideal(), BackendBehaviour.ideal()));
+            final var daemon = createDaemon(server, certBotFactory, certificateStore, storageService, Map.of(
+                    "cert-blues.max-concurrent-orders", "2",
+                    "cert-blues.daemon.drain-timeout", "1s"
+            ));
+
+            daemon.start();
+            try {
+                await().atMost(Duration.ofSeconds(30)).until(() -> certificateStore.getStuckCount() == 1);
+
+                // the new request is picked up by the next reconciliation while the first order is still running
+                storageService.put(CERTIFICATE_REQUEST.toBuilder().forceRequestCreation(true).build());
+                await().atMost(Duration.ofSeconds(30))
+                        .until(() -> inMemoryStore.getUploadedCertificate(CERTIFICATE_REQUEST.certificateName())
+                                .isPresent());
+            }
+            finally {
+                daemon.stop();
+                certBotFactory.destroy();
+            }
+
+            assertThat(certificateStore.getStuckCount()).isEqualTo(1);
+            assertThat(inMemoryStore.getUploadedCertificate(stuckRequest.certificateName())).isEmpty();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RenewalDaemon createDaemon(MockAcmeServer server, CertBotFactory certBotFactory,
+                                       CertificateStore certificateStore, InMemoryStorageService storageService,
+                                       Map<String, String> overrides) throws NoSuchAlgorithmException {
+        final Map<String, String> properties = new HashMap<>(PROPERTIES);
+        properties.putAll(overrides);
+        final var binder = new Binder(new MapConfigurationPropertySource(properties));
+        final var certBluesProperties = binder.bindOrCreate("cert-blues", CertBluesProperties.class);
+
+        final var renewalProcessor = new RenewalProcessor(certBotFactory, storageService, certificateStore,
+                List.of(new SimpleRsaKeyPair(new SimpleRsaKeyEntry(generateKeyPair()))),
+                CertificateAuthorities.of(new CertificateAuthority("mock",
+                        new AcmeClient(HttpClient.create(), server.getDirectoryUrl()), null)),
+                RateLimitStore.none(), certBluesProperties,
+                binder.bindOrCreate("cert-blues.rate-limits", RateLimitProperties.class),
+                new InMemoryLeaseStore(), binder.bindOrCreate("cert-blues.sharding", ShardingProperties.class),
+                clock);
+
+        return new RenewalDaemon(renewalProcessor, certBluesProperties,
+                binder.bindOrCreate("cert-blues.daemon", DaemonProperties.class), storageService,
+                mock(ObjectProvider.class), binder.bindOrCreate("cert-blues.notifications",
+                NotificationProperties.class), clock);
+    }
+
+    private static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static class FailingOnceCertificateStore implements CertificateStore {
+        private final CertificateStore certificateStore;
+        private final AtomicInteger csrCount = new AtomicInteger();
+
+        FailingOnceCertificateStore(CertificateStore certificateStore) {
+            this.certificateStore = certificateStore;
+        }
+
+        @Override
+        public Mono<byte[]> createCsr(CertificateRequest certificateRequest) {
+            return csrCount.getAndIncrement() == 0 ?
+                    Mono.error(new IllegalStateException("the key vault is not available")) :
+                    certificateStore.createCsr(certificateRequest);
+        }
+
+        @Override
+        public Mono<Void> upload(String name, String certificate) {
+            return certificateStore.upload(name, certificate);
+        }
+
+        @Override
+        public Flux<CertificateInfo> getExpiringCertificates(Duration renewalInterval) {
+            return certificateStore.getExpiringCertificates(renewalInterval);
+        }
+
+        int getCsrCount() {
+            return csrCount.get();
+        }
+    }
+
+    private static class StuckCertificateStore implements CertificateStore {
+        private final CertificateStore certificateStore;
+        private final String stuckName;
+        private final AtomicInteger stuckCount = new AtomicInteger();
+
+        StuckCertificateStore(CertificateStore certificateStore, String stuckName) {
+            this.certificateStore = certificateStore;
+            this.stuckName = stuckName;
+        }
+
+        @Override
+        public Mono<byte[]> createCsr(CertificateRequest certificateRequest) {
+            if (!certificateRequest.certificateName().equals(stuckName)) {
+                return certificateStore.createCsr(certificateRequest);
+            }
+            return Mono.<byte[]>never().doOnSubscribe(subscription -> stuckCount.incrementAndGet());
+        }
+
+        @Override
+        public Mono<Void> upload(String name, String certificate) {
+            return certificateStore.upload(name, certificate);
+        }
+
+        @Override
+        public Flux<CertificateInfo> getExpiringCertificates(Duration renewalInterval) {
+            return certificateStore.getExpiringCertificates(renewalInterval);
+        }
+
+        int getStuckCount() {
+            return stuckCount.get();
+        }
+    }
+}
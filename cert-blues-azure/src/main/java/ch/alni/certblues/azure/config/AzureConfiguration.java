@@ -29,25 +29,47 @@ package ch.alni.certblues.azure.config;
 import ch.alni.certblues.acme.facade.DnsChallengeProvisioner;
 import ch.alni.certblues.acme.facade.HttpChallengeProvisioner;
 import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.azure.http.AzureCallStatistics;
+import ch.alni.certblues.azure.http.AzureHttpOptions;
+import ch.alni.certblues.azure.http.ConcurrencyLimitPolicy;
+import ch.alni.certblues.azure.http.InstrumentationPolicy;
+import ch.alni.certblues.azure.http.MetricsPolicy;
+import ch.alni.certblues.azure.http.PipelineHttpClient;
+import ch.alni.certblues.azure.http.TracingPolicy;
 import ch.alni.certblues.azure.keyvault.AzureKeyVaultCertificate;
 import ch.alni.certblues.azure.keyvault.AzureKeyVaultKey;
 import ch.alni.certblues.azure.provision.AuthenticatedDnsZoneManager;
 import ch.alni.certblues.azure.provision.AzureDnsChallengeProvisioner;
 import ch.alni.certblues.azure.provision.AzureHttpChallengeProvisioner;
+import ch.alni.certblues.azure.storage.AzureLeaseStore;
+import ch.alni.certblues.azure.storage.AzureRateLimitStore;
+import ch.alni.certblues.azure.storage.AzureRequestQueue;
 import ch.alni.certblues.azure.storage.AzureStorage;
+import ch.alni.certblues.azure.traffic.TrafficRecordingPolicy;
 import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
 import ch.alni.certblues.certbot.CertificateRequest;
 import ch.alni.certblues.certbot.CertificateStore;
 import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.queue.RequestNotificationQueue;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+import ch.alni.certblues.certbot.sharding.LeaseStore;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
 import com.azure.core.credential.TokenCredential;
 import com.azure.core.http.HttpClient;
 import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.azure.core.http.policy.HttpPipelinePolicy;
 import com.azure.identity.DefaultAzureCredentialBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configures the Azure-based implementation of the components used by the cert bot.
@@ -70,39 +92,106 @@ public class AzureConfiguration {
         return new DefaultAzureCredentialBuilder().build();
     }
 
+    /**
+     * Collects the statistics of the calls of all Azure SDK clients and logs them at the end of the run.
+     */
+    @Bean(destroyMethod = "logSummary")
+    public AzureCallStatistics azureCallStatistics() {
+        return new AzureCallStatistics();
+    }
+
+    @Bean
+    public HttpClient httpClient(@Qualifier("azureHttpClient") reactor.netty.http.client.HttpClient azureHttpClient,
+                                 AzureCallStatistics azureCallStatistics,
+                                 ObjectProvider<TrafficRecorder> trafficRecorder) {
+        final HttpClient httpClient = new NettyAsyncHttpClientBuilder(azureHttpClient).build();
+
+        final List<HttpPipelinePolicy> policies = new ArrayList<>();
+        // the limiter comes first, so that the other policies do not count the time spent waiting for it
+        policies.add(new ConcurrencyLimitPolicy(properties.getConcurrency().initialLimit(),
+                properties.getConcurrency().maxLimit(), clock, Schedulers.parallel()));
+        policies.add(new MetricsPolicy(azureCallStatistics));
+        policies.add(new TracingPolicy());
+
+        // the traffic is only recorded if a recorder is configured
+        trafficRecorder.ifAvailable(recorder -> policies.add(new TrafficRecordingPolicy(recorder)));
+
+        return new PipelineHttpClient(httpClient, policies);
+    }
+
+    /**
+     * Provides the options that all SDK clients are built with: the shared HTTP client and the policy that sees each
+     * call of a client as a whole.
+     */
     @Bean
-    public HttpClient httpClient(reactor.netty.http.client.HttpClient baseHttpClient) {
-        return new NettyAsyncHttpClientBuilder(baseHttpClient).build();
+    public AzureHttpOptions azureHttpOptions(HttpClient httpClient, AzureCallStatistics azureCallStatistics) {
+        return new AzureHttpOptions(httpClient, List.of(new InstrumentationPolicy(azureCallStatistics)));
     }
 
     @Bean
-    public SigningKeyPair signingKeyPair(TokenCredential credential, HttpClient httpClient) {
-        return new AzureKeyVaultKey(credential, httpClient,
+    public SigningKeyPair signingKeyPair(TokenCredential credential, AzureHttpOptions httpOptions) {
+        return new AzureKeyVaultKey(credential, httpOptions,
                 properties.getAccountKey().id(), properties.getAccountKey().signatureAlg());
     }
 
+    /**
+     * Provides the keys of all ACME accounts the certificate requests are spread over, the account key first.
+     */
     @Bean
-    public StorageService storageService(TokenCredential credential, HttpClient httpClient) {
-        return new AzureStorage(credential, httpClient, properties.getTableStorage().serviceUrl(),
+    public List<SigningKeyPair> accountKeyPairs(SigningKeyPair signingKeyPair, TokenCredential credential,
+                                                AzureHttpOptions httpOptions) {
+        final List<SigningKeyPair> accountKeyPairs = new ArrayList<>();
+        accountKeyPairs.add(signingKeyPair);
+        properties.getAdditionalAccountKeys().forEach(accountKey -> accountKeyPairs.add(
+                new AzureKeyVaultKey(credential, httpOptions, accountKey.id(), accountKey.signatureAlg())));
+        return accountKeyPairs;
+    }
+
+    @Bean
+    public StorageService storageService(TokenCredential credential, AzureHttpOptions httpOptions) {
+        return new AzureStorage(credential, httpOptions, properties.getTableStorage().serviceUrl(),
                 properties.getTableStorage().requestTableName()
         );
     }
 
     @Bean
-    public CertificateStore certificateStore(TokenCredential credential, HttpClient httpClient) {
-        return new AzureKeyVaultCertificate(clock, credential, httpClient, properties.getCertificateKeyVault().url());
+    public RateLimitStore rateLimitStore(TokenCredential credential, AzureHttpOptions httpOptions) {
+        return new AzureRateLimitStore(credential, httpOptions, properties.getTableStorage().serviceUrl(),
+                properties.getTableStorage().rateLimitTableName()
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "azure.request-queue", name = "service-url")
+    public RequestNotificationQueue requestNotificationQueue(TokenCredential credential,
+                                                             AzureHttpOptions httpOptions) {
+        return new AzureRequestQueue(credential, httpOptions, properties.getRequestQueue().serviceUrl(),
+                properties.getRequestQueue().queueName(), properties.getRequestQueue().poisonQueueName()
+        );
+    }
+
+    @Bean
+    public LeaseStore leaseStore(TokenCredential credential, AzureHttpOptions httpOptions) {
+        return new AzureLeaseStore(credential, httpOptions, properties.getTableStorage().serviceUrl(),
+                properties.getTableStorage().leaseTableName()
+        );
+    }
+
+    @Bean
+    public CertificateStore certificateStore(TokenCredential credential, AzureHttpOptions httpOptions) {
+        return new AzureKeyVaultCertificate(clock, credential, httpOptions, properties.getCertificateKeyVault().url());
     }
 
     @Bean
-    public AuthorizationProvisionerFactory provisionerFactory(TokenCredential credential, HttpClient httpClient) {
-        final AuthenticatedDnsZoneManager dnsZoneManager = new AuthenticatedDnsZoneManager(credential);
+    public AuthorizationProvisionerFactory provisionerFactory(TokenCredential credential, AzureHttpOptions httpOptions) {
+        final AuthenticatedDnsZoneManager dnsZoneManager = new AuthenticatedDnsZoneManager(credential, httpOptions);
 
         return new AuthorizationProvisionerFactory() {
 
             @Override
             public HttpChallengeProvisioner createHttpChallengeProvisioner(CertificateRequest certificateRequest) {
                 if (certificateRequest.storageEndpointUrl() != null) {
-                    return new AzureHttpChallengeProvisioner(credential, httpClient,
+                    return new AzureHttpChallengeProvisioner(credential, httpOptions,
                             certificateRequest.storageEndpointUrl());
                 }
                 else {
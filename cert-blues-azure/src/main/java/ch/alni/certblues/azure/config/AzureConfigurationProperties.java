@@ -27,6 +27,9 @@ package ch.alni.certblues.azure.config;
 
 import com.azure.security.keyvault.keys.cryptography.models.SignatureAlgorithm;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
 
 /**
  * Properties to configure Azure-based components.
@@ -36,21 +39,42 @@ public class AzureConfigurationProperties {
 
     private final AccountKeyProperties accountKey;
 
+    private final List<AccountKeyProperties> additionalAccountKeys;
+
     private final KeyVaultProperties certificateKeyVault;
 
     private final TableStorageProperties tableStorage;
 
-    public AzureConfigurationProperties(AccountKeyProperties accountKey, KeyVaultProperties certificateKeyVault,
-                                        TableStorageProperties tableStorage) {
+    private final ConcurrencyProperties concurrency;
+
+    private final RequestQueueProperties requestQueue;
+
+    public AzureConfigurationProperties(AccountKeyProperties accountKey,
+                                        @DefaultValue List<AccountKeyProperties> additionalAccountKeys,
+                                        KeyVaultProperties certificateKeyVault,
+                                        TableStorageProperties tableStorage,
+                                        @DefaultValue ConcurrencyProperties concurrency,
+                                        RequestQueueProperties requestQueue) {
         this.accountKey = accountKey;
+        this.additionalAccountKeys = additionalAccountKeys;
         this.certificateKeyVault = certificateKeyVault;
         this.tableStorage = tableStorage;
+        this.concurrency = concurrency;
+        this.requestQueue = requestQueue;
     }
 
     public AccountKeyProperties getAccountKey() {
         return accountKey;
     }
 
+    /**
+     * The keys of the further ACME accounts the certificate requests are spread over, so that the throughput is not
+     * capped by the rate limits of a single account. Empty if only the account key is used.
+     */
+    public List<AccountKeyProperties> getAdditionalAccountKeys() {
+        return additionalAccountKeys;
+    }
+
     public KeyVaultProperties getCertificateKeyVault() {
         return certificateKeyVault;
     }
@@ -59,6 +83,18 @@ public class AzureConfigurationProperties {
         return tableStorage;
     }
 
+    public ConcurrencyProperties getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * The queue of the notifications of the added or changed certificate requests. Null if the requests are only
+     * found by reading the request table.
+     */
+    public RequestQueueProperties getRequestQueue() {
+        return requestQueue;
+    }
+
     public record AccountKeyProperties(String id, String signatureAlg) {
 
         /**
@@ -92,9 +128,12 @@ public class AzureConfigurationProperties {
     }
 
     /**
-     * Properties for the storage account to hold the certificate requests.
+     * Properties for the storage account to hold the certificate requests and the events counted against the rate
+     * limits of the ACME server.
      */
-    public record TableStorageProperties(String serviceUrl, String requestTableName) {
+    public record TableStorageProperties(String serviceUrl, String requestTableName,
+                                         @DefaultValue("ratelimits") String rateLimitTableName,
+                                         @DefaultValue("leases") String leaseTableName) {
 
         /**
          * The service URL of the storage account.
@@ -111,5 +150,75 @@ public class AzureConfigurationProperties {
         public String requestTableName() {
             return requestTableName;
         }
+
+        /**
+         * The name of the table that holds the events counted against the rate limits.
+         */
+        @Override
+        public String rateLimitTableName() {
+            return rateLimitTableName;
+        }
+
+        /**
+         * The name of the table that holds the leases of the shards when the requests are spread over several
+         * instances.
+         */
+        @Override
+        public String leaseTableName() {
+            return leaseTableName;
+        }
+    }
+
+    /**
+     * Properties of the adaptive limits of the concurrent requests to each Azure service.
+     */
+    public record ConcurrencyProperties(@DefaultValue("8") int initialLimit, @DefaultValue("64") int maxLimit) {
+
+        /**
+         * The number of concurrent requests to a service at the start of the run.
+         */
+        @Override
+        public int initialLimit() {
+            return initialLimit;
+        }
+
+        /**
+         * The number of concurrent requests to a service the limit never grows beyond.
+         */
+        @Override
+        public int maxLimit() {
+            return maxLimit;
+        }
+    }
+
+    /**
+     * Properties of the queue of the notifications of the certificate requests.
+     */
+    public record RequestQueueProperties(String serviceUrl, @DefaultValue("requests") String queueName,
+                                         @DefaultValue("requests-poison") String poisonQueueName) {
+
+        /**
+         * The service URL of the storage account.
+         */
+        @Override
+        public String serviceUrl() {
+            return serviceUrl;
+        }
+
+        /**
+         * The name of the queue that holds the notifications.
+         */
+        @Override
+        public String queueName() {
+            return queueName;
+        }
+
+        /**
+         * The name of the queue the notifications that cannot be processed are moved to.
+         */
+        @Override
+        public String poisonQueueName() {
+            return poisonQueueName;
+        }
     }
 }
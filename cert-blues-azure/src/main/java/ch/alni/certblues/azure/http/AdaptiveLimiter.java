@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of concurrent requests to a service by additive increase and multiplicative decrease (AIMD). The
+ * limit grows by one for every limit-many successful requests, and shrinks by half when the service throttles and by
+ * a tenth when the latency grows to twice the baseline. The baseline is kept per operation, since the operations of
+ * a service take very different times; a slow operation is only compared with its earlier calls. A throttled
+ * response with a retry delay pauses all requests to the service until the delay has passed, so that the retries of
+ * the SDK clients do not run into the same limit again. The requests beyond the limit wait in the order they have
+ * arrived.
+ */
+public class AdaptiveLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    // how fast the baseline follows the latencies that are higher than the baseline
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+
+    // the lowest latency of each operation, drifting slowly towards the higher latencies; guarded by this
+    private final Map<String, Double> baselineNanos = new HashMap<>();
+
+    // guarded by this
+    private double limit;
+    private int inFlight;
+    private Instant pausedUntil = Instant.MIN;
+    private boolean drainScheduled;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, Clock clock, Scheduler scheduler) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the mono that emits the permit to send a request once the limit allows it. The permit must be released
+     * when the response has been received. A permit that is granted but not handed over because the mono has been
+     * cancelled in between is released right away.
+     */
+    public Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            final Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> cancel(waiter));
+
+            final Permit permit;
+            synchronized (this) {
+                if (waiter.cancelled) {
+                    return;
+                }
+                if (waiting.isEmpty() && canSend()) {
+                    permit = grant(waiter);
+                }
+                else {
+                    permit = null;
+                    waiting.addLast(waiter);
+                }
+            }
+
+            if (null != permit) {
+                sink.success(permit);
+            }
+            else {
+                drain();
+            }
+        });
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private boolean canSend() {
+        return inFlight < (int) limit && !clock.instant().isBefore(pausedUntil);
+    }
+
+    // guarded by this
+    private Permit grant(Waiter waiter) {
+        inFlight++;
+        waiter.permit = new Permit();
+        return waiter.permit;
+    }
+
+    private void cancel(Waiter waiter) {
+        final Permit permit;
+        synchronized (this) {
+            waiter.cancelled = true;
+            if (waiting.remove(waiter)) {
+                return;
+            }
+            permit = waiter.permit;
+        }
+
+        // the permit has been granted, but the subscriber has gone before it has been handed over
+        if (null != permit) {
+            permit.dropped();
+        }
+    }
+
+    private void onSuccess(String operation, Duration latency) {
+        synchronized (this) {
+            inFlight--;
+
+            final double nanos = latency.toNanos();
+            final double baseline = baselineNanos.merge(operation, nanos, (current, sample) -> sample < current ?
+                    sample : current + (sample - current) * BASELINE_DRIFT);
+
+            if (nanos > baseline * LATENCY_TOLERANCE) {
+                limit = Math.max(minLimit, limit * LATENCY_BACKOFF_RATIO);
+            }
+            else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+        drain();
+    }
+
+    private void onThrottled(Duration retryAfter) {
+        synchronized (this) {
+            inFlight--;
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+
+            final Instant resumeOn = clock.instant().plus(retryAfter);
+            if (resumeOn.isAfter(pausedUntil)) {
+                pausedUntil = resumeOn;
+            }
+        }
+        drain();
+    }
+
+    private void onDropped() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private void drain() {
+        final List<Waiter> granted = new ArrayList<>();
+        Duration pause = Duration.ZERO;
+
+        synchronized (this) {
+            while (!waiting.isEmpty() && canSend()) {
+                final Waiter waiter = waiting.pollFirst();
+                grant(waiter);
+                granted.add(waiter);
+            }
+
+            // wake up the waiting requests when the pause is over
+            if (!waiting.isEmpty() && inFlight < (int) limit && !drainScheduled) {
+                final Duration remaining = Duration.between(clock.instant(), pausedUntil);
+                if (!remaining.isNegative() && !remaining.isZero()) {
+                    pause = remaining;
+                    drainScheduled = true;
+                }
+            }
+        }
+
+        if (!pause.isZero()) {
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                drain();
+            }, pause.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        // the requests are sent outside the lock, they may complete synchronously
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    /**
+     * A request for a permit, guarded by the limiter.
+     */
+    private final class Waiter {
+        private final MonoSink<Permit> sink;
+        private Permit permit;
+        private boolean cancelled;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * The permit to send one request. Only the first release counts.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Releases the permit of a request that the service has answered in the given time.
+         *
+         * @param operation the operation of the request, its latency is compared with the earlier calls of it
+         * @param latency   how long the service has taken to answer
+         */
+        public void success(String operation, Duration latency) {
+            if (released.compareAndSet(false, true)) {
+                onSuccess(operation, latency);
+            }
+        }
+
+        /**
+         * Releases the permit of a request that the service has throttled.
+         *
+         * @param retryAfter how long the service asks to wait before the next request
+         */
+        public void throttled(Duration retryAfter) {
+            if (released.compareAndSet(false, true)) {
+                onThrottled(retryAfter);
+            }
+        }
+
+        /**
+         * Releases the permit of a request that has failed or has been cancelled without telling anything about the
+         * capacity of the service.
+         */
+        public void dropped() {
+            if (released.compareAndSet(false, true)) {
+                onDropped();
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Statistics of the calls of the Azure SDK clients during a run, per service and operation. A call includes all the
+ * attempts made by the retry policy of the client. The summary shows which Azure service limits the throughput.
+ */
+public class AzureCallStatistics {
+
+    private static final Logger LOG = getLogger(AzureCallStatistics.class);
+
+    private final Map<Key, Counters> operations = new ConcurrentHashMap<>();
+
+    // the lowest remaining limit reported by the services, by service and header
+    private final Map<Key, AtomicLong> rateLimitRemaining = new ConcurrentHashMap<>();
+
+    void recordCall(String service, String operation, Duration duration, int attempts, boolean failed) {
+        final Counters counters = getCounters(service, operation);
+        counters.calls.increment();
+        counters.retries.add(Math.max(0, attempts - 1));
+        counters.totalNanos.add(duration.toNanos());
+        counters.maxNanos.accumulateAndGet(duration.toNanos(), Math::max);
+        if (failed) {
+            counters.failures.increment();
+        }
+    }
+
+    void recordThrottled(String service, String operation) {
+        getCounters(service, operation).throttled.increment();
+    }
+
+    void recordRateLimitRemaining(String service, String header, long remaining) {
+        rateLimitRemaining.computeIfAbsent(new Key(service, header), key -> new AtomicLong(Long.MAX_VALUE))
+                .accumulateAndGet(remaining, Math::min);
+    }
+
+    /**
+     * Returns the statistics per service and operation, the slowest operations in total first.
+     */
+    public List<Entry> getEntries() {
+        return operations.entrySet().stream()
+                .map(entry -> entry.getValue().toEntry(entry.getKey()))
+                .sorted(Comparator.comparing(Entry::total).reversed())
+                .toList();
+    }
+
+    /**
+     * Returns the lowest values of the {@code x-ms-ratelimit-remaining-*} headers, by service and header name.
+     */
+    public Map<String, Long> getRateLimitRemaining() {
+        final Map<String, Long> result = new TreeMap<>();
+        rateLimitRemaining.forEach((key, value) -> result.put(key.service() + " " + key.name(), value.get()));
+        return result;
+    }
+
+    /**
+     * Formats the statistics as a table with the durations in milliseconds.
+     */
+    public String format() {
+        final var builder = new StringBuilder();
+        builder.append(String.format("%-16s %-32s %7s %7s %7s %9s %9s %9s %11s%n",
+                "service", "operation", "calls", "failed", "retries", "throttled", "mean ms", "max ms", "total ms"));
+
+        for (Entry entry : getEntries()) {
+            builder.append(String.format("%-16s %-32s %7d %7d %7d %9d %9d %9d %11d%n",
+                    entry.service(), entry.operation(), entry.calls(), entry.failures(), entry.retries(),
+                    entry.throttled(), entry.mean().toMillis(), entry.max().toMillis(), entry.total().toMillis()));
+        }
+
+        getRateLimitRemaining().forEach((name, remaining) ->
+                builder.append(String.format("lowest %s: %d%n", name, remaining)));
+        return builder.toString();
+    }
+
+    /**
+     * Logs the statistics, called at the end of the run.
+     */
+    public void logSummary() {
+        if (!operations.isEmpty()) {
+            LOG.info("Azure calls of the run:\n{}", format());
+        }
+    }
+
+    private Counters getCounters(String service, String operation) {
+        return operations.computeIfAbsent(new Key(service, operation), key -> new Counters());
+    }
+
+    /**
+     * The statistics of an operation of a service.
+     */
+    public record Entry(String service, String operation, long calls, long failures, long retries, long throttled,
+                        Duration mean, Duration max, Duration total) {
+    }
+
+    private record Key(String service, String name) {
+    }
+
+    private static final class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Entry toEntry(Key key) {
+            final long callCount = calls.sum();
+            final long total = totalNanos.sum();
+            return new Entry(key.service(), key.name(), callCount, failures.sum(), retries.sum(), throttled.sum(),
+                    Duration.ofNanos(callCount == 0 ? 0 : total / callCount), Duration.ofNanos(maxNanos.get()),
+                    Duration.ofNanos(total));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import com.azure.core.client.traits.HttpTrait;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.resourcemanager.resources.fluentcore.arm.AzureConfigurable;
+
+import java.util.List;
+
+/**
+ * The HTTP client and the additional pipeline policies that all Azure SDK clients of the application are built with.
+ *
+ * @param httpClient the HTTP client shared by the clients, null to let each client create its own
+ * @param policies   the policies added to the pipeline of every client
+ */
+public record AzureHttpOptions(HttpClient httpClient, List<HttpPipelinePolicy> policies) {
+
+    /**
+     * Returns the options of the SDK clients built without the application context.
+     */
+    public static AzureHttpOptions defaults() {
+        return new AzureHttpOptions(null, List.of());
+    }
+
+    /**
+     * Applies the options to the builder of a data plane client.
+     */
+    public <T extends HttpTrait<T>> T configure(T builder) {
+        builder.httpClient(httpClient);
+        policies.forEach(builder::addPolicy);
+        return builder;
+    }
+
+    /**
+     * Applies the options to the configuration of a resource manager.
+     */
+    public <T extends AzureConfigurable<T>> T configureManager(T configurable) {
+        if (null != httpClient) {
+            configurable.withHttpClient(httpClient);
+        }
+        policies.forEach(configurable::withPolicy);
+        return configurable;
+    }
+}
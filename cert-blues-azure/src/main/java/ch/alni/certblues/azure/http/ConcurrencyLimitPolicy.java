@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pipeline policy that limits the concurrent requests to each Azure service with an {@link AdaptiveLimiter}, so that
+ * the runs slow down instead of failing when a service throttles. The policy is part of the shared HTTP client and sees
+ * every attempt of the SDK clients. The current limits are exposed as gauges.
+ */
+public class ConcurrencyLimitPolicy implements HttpPipelinePolicy {
+
+    /**
+     * The current concurrency limit, tagged by service.
+     */
+    public static final String LIMIT = "azure.client.concurrency.limit";
+
+    /**
+     * The requests being sent, tagged by service.
+     */
+    public static final String IN_FLIGHT = "azure.client.concurrency.inflight";
+
+    /**
+     * The requests waiting for the limit, tagged by service.
+     */
+    public static final String WAITING = "azure.client.concurrency.waiting";
+
+    // used if a throttled response does not tell how long to wait
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private static final HttpHeaderName X_MS_RETRY_AFTER_MS = HttpHeaderName.fromString("x-ms-retry-after-ms");
+    private static final HttpHeaderName RETRY_AFTER_MS = HttpHeaderName.fromString("retry-after-ms");
+
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final int initialLimit;
+    private final int maxLimit;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    public ConcurrencyLimitPolicy(int initialLimit, int maxLimit, Clock clock, Scheduler scheduler) {
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        final String service = MetricsPolicy.getService(context.getHttpRequest().getUrl().getHost());
+        final AdaptiveLimiter limiter = getLimiter(service);
+        final String operation = context.getHttpRequest().getHttpMethod() + " " + MetricsPolicy.getOperation(context);
+
+        return limiter.acquire().flatMap(permit -> {
+            final long started = System.nanoTime();
+            return next.process()
+                    .doOnSuccess(response -> {
+                        if (null != response && MetricsPolicy.isThrottled(response.getStatusCode())) {
+                            permit.throttled(getRetryAfter(response.getHeaders()));
+                        }
+                        else if (null != response && response.getStatusCode() < 500) {
+                            permit.success(operation, Duration.ofNanos(System.nanoTime() - started));
+                        }
+                        else {
+                            permit.dropped();
+                        }
+                    })
+                    .doOnError(throwable -> permit.dropped())
+                    .doOnCancel(permit::dropped);
+        });
+    }
+
+    /**
+     * Returns the limiter of the given service, for example "keyVault".
+     */
+    public AdaptiveLimiter getLimiter(String service) {
+        return limiters.computeIfAbsent(service, this::createLimiter);
+    }
+
+    /**
+     * Returns the delay requested by the service, from the headers in the order the SDK retry policies read them.
+     */
+    Duration getRetryAfter(HttpHeaders headers) {
+        final Duration retryAfterMillis = parseMillis(headers.getValue(X_MS_RETRY_AFTER_MS));
+        if (null != retryAfterMillis) {
+            return retryAfterMillis;
+        }
+
+        final Duration retryAfterMs = parseMillis(headers.getValue(RETRY_AFTER_MS));
+        if (null != retryAfterMs) {
+            return retryAfterMs;
+        }
+
+        final String retryAfter = headers.getValue(HttpHeaderName.RETRY_AFTER);
+        if (null != retryAfter) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+            }
+            catch (NumberFormatException e) {
+                // the value can also be an HTTP date
+                try {
+                    final Instant retryOn = DateTimeFormatter.RFC_1123_DATE_TIME
+                            .parse(retryAfter.trim(), Instant::from);
+                    final Duration delay = Duration.between(clock.instant(), retryOn);
+                    return delay.isNegative() ? Duration.ZERO : delay;
+                }
+                catch (DateTimeParseException ignored) {
+                    // fall back to the default
+                }
+            }
+        }
+        return DEFAULT_RETRY_AFTER;
+    }
+
+    private static Duration parseMillis(String value) {
+        if (null == value) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Long.parseLong(value.trim()));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private AdaptiveLimiter createLimiter(String service) {
+        final var limiter = new AdaptiveLimiter(initialLimit, 1, maxLimit, clock, scheduler);
+
+        Gauge.builder(LIMIT, limiter, AdaptiveLimiter::getLimit)
+                .tag("service", service)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(IN_FLIGHT, limiter, AdaptiveLimiter::getInFlight)
+                .tag("service", service)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(WAITING, limiter, AdaptiveLimiter::getWaiting)
+                .tag("service", service)
+                .register(Metrics.globalRegistry);
+        return limiter;
+    }
+}
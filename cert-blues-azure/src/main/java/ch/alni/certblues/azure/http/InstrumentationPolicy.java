@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline policy that is added to the pipeline of every Azure SDK client, before its retry policy. It sees each call
+ * of a client as a whole, including the retries, and counts the attempts that the {@link MetricsPolicy} of the
+ * shared HTTP client reports back through the call context.
+ */
+public class InstrumentationPolicy implements HttpPipelinePolicy {
+
+    /**
+     * Every call of an Azure SDK client, tagged by service, operation and the status of the last attempt.
+     */
+    public static final String CALLS = "azure.client.calls";
+
+    /**
+     * The number of retries of each call, tagged by service and operation.
+     */
+    public static final String RETRIES = "azure.client.retries";
+
+    /**
+     * The key of the attempt counter in the call context.
+     */
+    static final String ATTEMPTS_KEY = "cert-blues-attempts";
+
+    private final AzureCallStatistics statistics;
+
+    public InstrumentationPolicy(AzureCallStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition() {
+        return HttpPipelinePosition.PER_CALL;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        final String service = MetricsPolicy.getService(context.getHttpRequest().getUrl().getHost());
+        final String operation = MetricsPolicy.getOperation(context);
+
+        return Mono.defer(() -> {
+            final AtomicInteger attempts = new AtomicInteger();
+            context.setData(ATTEMPTS_KEY, attempts);
+
+            final long started = System.nanoTime();
+            return next.process()
+                    .doOnSuccess(response -> record(service, operation, started, attempts.get(),
+                            null != response ? String.valueOf(response.getStatusCode()) : "none",
+                            null == response || response.getStatusCode() >= 400))
+                    .doOnError(throwable -> record(service, operation, started, attempts.get(),
+                            throwable.getClass().getSimpleName(), true));
+        });
+    }
+
+    private void record(String service, String operation, long started, int attempts, String status, boolean failed) {
+        final Duration duration = Duration.ofNanos(System.nanoTime() - started);
+        statistics.recordCall(service, operation, duration, attempts, failed);
+
+        Timer.builder(CALLS)
+                .tag("service", service)
+                .tag("operation", operation)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(duration);
+
+        DistributionSummary.builder(RETRIES)
+                .tag("service", service)
+                .tag("operation", operation)
+                .register(Metrics.globalRegistry)
+                .record(Math.max(0, attempts - 1));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import com.azure.core.http.HttpHeader;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline policy that times the calls of the Azure SDK clients, tagged by service, HTTP method and status code. The
+ * timers are registered in the global registry of Micrometer. The policy sees every attempt of a call, so it also
+ * counts the throttled responses and keeps the remaining limits the services report in the
+ * {@code x-ms-ratelimit-remaining-*} headers.
+ */
+public class MetricsPolicy implements HttpPipelinePolicy {
+
+    /**
+     * Every request to an Azure service. The retries of the SDK clients are separate requests.
+     */
+    public static final String REQUESTS = "azure.client.requests";
+
+    /**
+     * Every throttled response, tagged by service, operation and status code.
+     */
+    public static final String THROTTLED = "azure.client.throttled";
+
+    /**
+     * The last remaining limit reported by a service, tagged by service and header.
+     */
+    public static final String RATE_LIMIT_REMAINING = "azure.client.ratelimit.remaining";
+
+    private static final String RATE_LIMIT_REMAINING_PREFIX = "x-ms-ratelimit-remaining-";
+
+    // the method name of the service interface of the SDK, set by the SDK in the call context
+    private static final String CALLER_METHOD_KEY = "caller-method";
+
+    private final AzureCallStatistics statistics;
+
+    // the values of the gauges, the registry only keeps weak references to them
+    private final Map<String, AtomicLong> rateLimitGauges = new ConcurrentHashMap<>();
+
+    public MetricsPolicy(AzureCallStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        final String service = getService(context.getHttpRequest().getUrl().getHost());
+        final String method = context.getHttpRequest().getHttpMethod().name();
+        final String operation = getOperation(context);
+
+        return Mono.defer(() -> {
+            context.getData(InstrumentationPolicy.ATTEMPTS_KEY)
+                    .ifPresent(attempts -> ((AtomicInteger) attempts).incrementAndGet());
+
+            final Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+            return next.process()
+                    .doOnSuccess(response -> {
+                        sample.stop(timer(service, method,
+                                null != response ? String.valueOf(response.getStatusCode()) : "none"));
+                        if (null != response) {
+                            recordLimits(service, operation, response);
+                        }
+                    })
+                    .doOnError(throwable -> sample.stop(timer(service, method, throwable.getClass().getSimpleName())));
+        });
+    }
+
+    /**
+     * Returns the operation of the SDK client, for example "getSecret", or the HTTP method if it is not known.
+     */
+    static String getOperation(HttpPipelineCallContext context) {
+        return context.getData(CALLER_METHOD_KEY)
+                .map(Object::toString)
+                .map(callerMethod -> callerMethod.substring(callerMethod.lastIndexOf('.') + 1))
+                .orElseGet(() -> context.getHttpRequest().getHttpMethod().name());
+    }
+
+    /**
+     * Key Vault and the resource manager throttle with 429, the storage services with 503 (server busy).
+     */
+    static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * Returns the Azure service by the host name; the names of the vaults and the accounts are left out to keep the
+     * number of the time series small.
+     */
+    static String getService(String host) {
+        final String value = host.toLowerCase(Locale.ROOT);
+        if (value.endsWith(".vault.azure.net")) {
+            return "keyVault";
+        }
+        else if (value.endsWith(".table.core.windows.net")) {
+            return "tableStorage";
+        }
+        else if (value.endsWith(".blob.core.windows.net") || value.endsWith(".web.core.windows.net")) {
+            return "blobStorage";
+        }
+        else if (value.equals("management.azure.com")) {
+            return "resourceManager";
+        }
+        else if (value.equals("login.microsoftonline.com")) {
+            return "identity";
+        }
+        else {
+            return "other";
+        }
+    }
+
+    private void recordLimits(String service, String operation, HttpResponse response) {
+        if (isThrottled(response.getStatusCode())) {
+            statistics.recordThrottled(service, operation);
+            Counter.builder(THROTTLED)
+                    .tag("service", service)
+                    .tag("operation", operation)
+                    .tag("status", String.valueOf(response.getStatusCode()))
+                    .register(Metrics.globalRegistry)
+                    .increment();
+        }
+
+        for (HttpHeader header : response.getHeaders()) {
+            final String name = header.getName().toLowerCase(Locale.ROOT);
+            if (name.startsWith(RATE_LIMIT_REMAINING_PREFIX)) {
+                try {
+                    final long remaining = Long.parseLong(header.getValue().trim());
+                    statistics.recordRateLimitRemaining(service, name, remaining);
+                    getRateLimitGauge(service, name).set(remaining);
+                }
+                catch (NumberFormatException e) {
+                    // some resource providers report a list of limits, they are not tracked
+                }
+            }
+        }
+    }
+
+    private AtomicLong getRateLimitGauge(String service, String header) {
+        return rateLimitGauges.computeIfAbsent(service + " " + header, key -> Metrics.globalRegistry.gauge(
+                RATE_LIMIT_REMAINING, Tags.of("service", service, "header", header), new AtomicLong()));
+    }
+
+    private static Timer timer(String service, String method, String status) {
+        return Timer.builder(REQUESTS)
+                .tag("service", service)
+                .tag("method", method)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+}
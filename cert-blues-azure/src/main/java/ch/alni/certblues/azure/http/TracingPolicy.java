@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import ch.alni.certblues.common.tracing.Tracing;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import reactor.core.publisher.Mono;
+
+/**
+ * Pipeline policy that creates a span for every call of the Azure SDK clients. The spans become children of the span
+ * found in the Reactor context of the caller, so that the calls made on behalf of an order are part of its trace.
+ */
+public class TracingPolicy implements HttpPipelinePolicy {
+
+    static final AttributeKey<String> SERVICE = AttributeKey.stringKey("azure.service");
+    static final AttributeKey<String> METHOD = AttributeKey.stringKey("http.request.method");
+    static final AttributeKey<String> URL = AttributeKey.stringKey("url.full");
+    static final AttributeKey<Long> STATUS_CODE = AttributeKey.longKey("http.response.status_code");
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        final String service = MetricsPolicy.getService(context.getHttpRequest().getUrl().getHost());
+        final String method = context.getHttpRequest().getHttpMethod().name();
+        // the query may contain SAS tokens
+        final String url = context.getHttpRequest().getUrl().toString().split("\\?", 2)[0];
+
+        return Mono.deferContextual(contextView -> {
+            final Context parent = Tracing.getContext(contextView);
+            final Span span = Tracing.getTracer().spanBuilder("azure " + service + " " + method)
+                    .setParent(parent)
+                    .setSpanKind(SpanKind.CLIENT)
+                    .setAttribute(SERVICE, service)
+                    .setAttribute(METHOD, method)
+                    .setAttribute(URL, url)
+                    .startSpan();
+
+            return next.process()
+                    .doOnSuccess(response -> {
+                        if (null != response) {
+                            span.setAttribute(STATUS_CODE, (long) response.getStatusCode());
+                            if (response.getStatusCode() >= 500) {
+                                span.setStatus(StatusCode.ERROR);
+                            }
+                        }
+                        span.end();
+                    })
+                    .doOnError(throwable -> Tracing.end(span, throwable))
+                    .doOnCancel(span::end);
+        });
+    }
+}
@@ -25,13 +25,15 @@
 
 package ch.alni.certblues.azure.keyvault;
 
+import ch.alni.certblues.acme.protocol.CertificateIdentifiers;
+import ch.alni.certblues.azure.http.AzureHttpOptions;
 import ch.alni.certblues.certbot.CertificateInfo;
 import ch.alni.certblues.certbot.CertificateRequest;
 import ch.alni.certblues.certbot.CertificateStore;
 import ch.alni.certblues.certbot.KeyType;
+import ch.alni.certblues.common.jfr.JfrEvents;
 import com.azure.core.credential.TokenCredential;
 import com.azure.core.exception.HttpResponseException;
-import com.azure.core.http.HttpClient;
 import com.azure.security.keyvault.certificates.CertificateAsyncClient;
 import com.azure.security.keyvault.certificates.CertificateClientBuilder;
 import com.azure.security.keyvault.certificates.models.*;
@@ -55,23 +57,26 @@ public class AzureKeyVaultCertificate implements CertificateStore {
 
     private static final String SERVER_CERTIFICATE_KEY_USAGE = "1.3.6.1.5.5.7.3.1";
 
+    private static final int DISABLE_VERSIONS_CONCURRENCY = 4;
+
+    private static final int GET_CERTIFICATES_CONCURRENCY = 8;
+
     private final Clock clock;
 
     private final CertificateAsyncClient client;
 
     public AzureKeyVaultCertificate(Clock clock, TokenCredential credential,
-                                    HttpClient httpClient,
+                                    AzureHttpOptions httpOptions,
                                     String keyVaultUrl) {
         this.clock = clock;
-        this.client = new CertificateClientBuilder()
+        this.client = httpOptions.configure(new CertificateClientBuilder())
                 .credential(credential)
                 .vaultUrl(keyVaultUrl)
-                .httpClient(httpClient)
                 .buildAsyncClient();
     }
 
     public AzureKeyVaultCertificate(TokenCredential credential, String keyVaultUrl, Clock clock) {
-        this(clock, credential, null, keyVaultUrl);
+        this(clock, credential, AzureHttpOptions.defaults(), keyVaultUrl);
     }
 
     private static boolean isCertificateCreated(Throwable throwable) {
@@ -102,6 +107,7 @@ public class AzureKeyVaultCertificate implements CertificateStore {
                 .then(mergeCertificateMono)
                 // disable the previous versions if any
                 .then(disablePreviousVersionsMono(certificateName))
+                .transform(JfrEvents.recorded(() -> new KeyVaultCertificateEvent("upload", certificateName)))
                 .onErrorResume(throwable -> Mono.empty());
     }
 
@@ -111,12 +117,11 @@ public class AzureKeyVaultCertificate implements CertificateStore {
         final Instant earliestValidity = now.plus(renewalInterval);
 
         return client.listPropertiesOfCertificates()
-                .map(certificateProperties -> CertificateInfo.builder()
-                        .certificateName(certificateProperties.getName())
-                        .expiresOn(certificateProperties.getExpiresOn().toInstant())
-                        .build())
                 // certificates that will expire earlier than 20 days from now
-                .filter(certificateInfo -> certificateInfo.expiresOn().isBefore(earliestValidity));
+                .filter(certificateProperties -> certificateProperties.getExpiresOn().toInstant().isBefore(earliestValidity))
+                // the properties do not include the certificate that identifies it in the renewal information
+                .flatMap(this::toCertificateInfo, GET_CERTIFICATES_CONCURRENCY)
+                .transform(JfrEvents.recordedMany(() -> new KeyVaultCertificateEvent("getExpiringCertificates", null)));
     }
 
     @Override
@@ -147,7 +152,46 @@ public class AzureKeyVaultCertificate implements CertificateStore {
                 // if the attempt to create a new certificate version fails
                 .onErrorResume(throwable -> certificateOperationFlux)
                 .next()
-                .map(response -> response.getValue().getCsr());
+                .map(response -> response.getValue().getCsr())
+                .transform(JfrEvents.recorded(() -> new KeyVaultCertificateEvent("createCsr", certificateName)));
+    }
+
+    @Override
+    public Mono<Void> cancelCsr(CertificateRequest certificateRequest) {
+        final String certificateName = certificateRequest.certificateName();
+
+        // the operation is deleted together with its pending key, the current version stays as it is
+        return client.cancelCertificateOperation(certificateName)
+                .then(client.deleteCertificateOperation(certificateName))
+                .doOnSuccess(operation -> LOG.info("pending operation of certificate {} cancelled", certificateName))
+                .then()
+                .transform(JfrEvents.recorded(() -> new KeyVaultCertificateEvent("cancelCsr", certificateName)))
+                .onErrorResume(throwable -> {
+                    LOG.warn("cannot cancel the pending operation of certificate {}: {}", certificateName,
+                            throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<CertificateInfo> toCertificateInfo(CertificateProperties certificateProperties) {
+        final String certificateName = certificateProperties.getName();
+        final Mono<CertificateInfo> withoutIdMono = Mono.fromSupplier(() -> CertificateInfo.builder()
+                .certificateName(certificateName)
+                .expiresOn(certificateProperties.getExpiresOn().toInstant())
+                .build());
+
+        return client.getCertificate(certificateName)
+                .map(certificate -> CertificateInfo.builder()
+                        .certificateName(certificateName)
+                        .expiresOn(certificateProperties.getExpiresOn().toInstant())
+                        .certificateId(CertificateIdentifiers.of(certificate.getCer()))
+                        .build())
+                // the certificate is then renewed after the renewal interval
+                .onErrorResume(throwable -> {
+                    LOG.warn("cannot identify certificate {} for the renewal information: {}", certificateName,
+                            throwable.getMessage());
+                    return withoutIdMono;
+                });
     }
 
     private Mono<Void> disablePreviousVersionsMono(String certificateName) {
@@ -157,7 +201,8 @@ public class AzureKeyVaultCertificate implements CertificateStore {
                         .filter(CertificateProperties::isEnabled)
                         // exclude the current version
                         .filter(properties -> !properties.getVersion().equals(current.getProperties().getVersion()))
-                        .flatMap(this::disableCertificateVersionMono)
+                        // a certificate can have many versions, they are disabled a few at a time
+                        .flatMap(this::disableCertificateVersionMono, DISABLE_VERSIONS_CONCURRENCY)
                         .then()
                 );
     }
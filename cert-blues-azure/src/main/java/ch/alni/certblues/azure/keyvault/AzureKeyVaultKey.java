@@ -26,7 +26,6 @@
 package ch.alni.certblues.azure.keyvault;
 
 import com.azure.core.credential.TokenCredential;
-import com.azure.core.http.HttpClient;
 import com.azure.security.keyvault.keys.KeyAsyncClient;
 import com.azure.security.keyvault.keys.KeyClientBuilder;
 import com.azure.security.keyvault.keys.cryptography.models.SignatureAlgorithm;
@@ -46,6 +45,7 @@ import ch.alni.certblues.acme.key.PublicJwk;
 import ch.alni.certblues.acme.key.RsaPublicJwk;
 import ch.alni.certblues.acme.key.SigningKeyPair;
 import ch.alni.certblues.acme.key.Thumbprints;
+import ch.alni.certblues.azure.http.AzureHttpOptions;
 import reactor.core.publisher.Mono;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -66,13 +66,12 @@ public class AzureKeyVaultKey implements SigningKeyPair {
     private final String keyVersion;
 
     public AzureKeyVaultKey(TokenCredential credential, String keyId, String alg) {
-        this(credential, null, keyId, alg);
+        this(credential, AzureHttpOptions.defaults(), keyId, alg);
     }
 
-    public AzureKeyVaultKey(TokenCredential credential, HttpClient httpClient, String keyId, String alg) {
+    public AzureKeyVaultKey(TokenCredential credential, AzureHttpOptions httpOptions, String keyId, String alg) {
         final KeyVaultKeyIdentifier keyIdentifier = new KeyVaultKeyIdentifier(keyId);
-        this.client = new KeyClientBuilder()
-                .httpClient(httpClient)
+        this.client = httpOptions.configure(new KeyClientBuilder())
                 .vaultUrl(keyIdentifier.getVaultUrl())
                 .credential(credential)
                 .buildAsyncClient();
@@ -25,6 +25,7 @@
 
 package ch.alni.certblues.azure.provision;
 
+import ch.alni.certblues.azure.http.AzureHttpOptions;
 import com.azure.core.credential.TokenCredential;
 import com.azure.core.management.AzureEnvironment;
 import com.azure.core.management.profile.AzureProfile;
@@ -35,9 +36,14 @@ public class AuthenticatedDnsZoneManager {
     private final DnsZoneManager dnsZoneManager;
 
     public AuthenticatedDnsZoneManager(TokenCredential credential) {
+        this(credential, AzureHttpOptions.defaults());
+    }
+
+    public AuthenticatedDnsZoneManager(TokenCredential credential, AzureHttpOptions httpOptions) {
         final var profile = new AzureProfile(AzureEnvironment.AZURE);
 
-        this.dnsZoneManager = DnsZoneManager.authenticate(credential, profile);
+        this.dnsZoneManager = httpOptions.configureManager(DnsZoneManager.configure())
+                .authenticate(credential, profile);
     }
 
     public DnsZoneManager getDnsZoneManager() {
@@ -26,7 +26,6 @@
 package ch.alni.certblues.azure.provision;
 
 import com.azure.core.credential.TokenCredential;
-import com.azure.core.http.HttpClient;
 import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobContainerAsyncClient;
@@ -34,6 +33,7 @@ import com.azure.storage.blob.BlobContainerClientBuilder;
 import com.azure.storage.blob.models.BlockBlobItem;
 
 import ch.alni.certblues.acme.facade.HttpChallengeProvisioner;
+import ch.alni.certblues.azure.http.AzureHttpOptions;
 import reactor.core.publisher.Mono;
 
 /**
@@ -45,13 +45,13 @@ public class AzureHttpChallengeProvisioner implements HttpChallengeProvisioner {
     private final BlobContainerAsyncClient blobContainerClient;
 
     public AzureHttpChallengeProvisioner(TokenCredential credential, String containerEndpointUrl) {
-        this(credential, null, containerEndpointUrl);
+        this(credential, AzureHttpOptions.defaults(), containerEndpointUrl);
     }
 
-    public AzureHttpChallengeProvisioner(TokenCredential credential, HttpClient httpClient, String containerEndpointUrl) {
-        blobContainerClient = new BlobContainerClientBuilder()
+    public AzureHttpChallengeProvisioner(TokenCredential credential, AzureHttpOptions httpOptions,
+                                         String containerEndpointUrl) {
+        blobContainerClient = httpOptions.configure(new BlobContainerClientBuilder())
                 .credential(credential)
-                .httpClient(httpClient)
                 .endpoint(containerEndpointUrl)
                 .buildAsyncClient();
     }
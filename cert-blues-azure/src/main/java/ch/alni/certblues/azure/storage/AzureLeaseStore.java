@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.storage;
+
+import ch.alni.certblues.azure.http.AzureHttpOptions;
+import ch.alni.certblues.certbot.sharding.Lease;
+import ch.alni.certblues.certbot.sharding.LeaseStore;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.rest.Response;
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.TableServiceClientBuilder;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+/**
+ * Keeps the leases in a table, one row per lease in a single partition. The ETag of the row is the version of the
+ * lease: a lease is created only if the row does not exist and updated or deleted only if the row has not changed
+ * since it has been read, so that only one of the instances racing for a lease gets it.
+ */
+public class AzureLeaseStore implements LeaseStore {
+
+    private static final String PARTITION_KEY = "lease";
+
+    private static final String ETAG = "odata.etag";
+
+    // the row exists already, has been changed or has been deleted by another instance
+    private static final Set<Integer> CONFLICTS = Set.of(404, 409, 412);
+
+    private final TableAsyncClient leaseTableClient;
+
+    public AzureLeaseStore(TokenCredential credential,
+                           AzureHttpOptions httpOptions,
+                           String tableServiceUrl,
+                           String leaseTableName) {
+        leaseTableClient = httpOptions.configure(new TableServiceClientBuilder())
+                .credential(credential).endpoint(tableServiceUrl)
+                .buildAsyncClient()
+                .getTableClient(leaseTableName);
+    }
+
+    private static Lease toLease(TableEntity tableEntity) {
+        return new Lease(
+                tableEntity.getRowKey(),
+                (String) tableEntity.getProperty("owner"),
+                ((OffsetDateTime) tableEntity.getProperty("expiresOn")).toInstant(),
+                tableEntity.getETag()
+        );
+    }
+
+    private static boolean isConflict(Throwable throwable) {
+        return throwable instanceof HttpResponseException &&
+                CONFLICTS.contains(((HttpResponseException) throwable).getResponse().getStatusCode());
+    }
+
+    @Override
+    public Flux<Lease> getLeases() {
+        return leaseTableClient.listEntities().map(AzureLeaseStore::toLease);
+    }
+
+    @Override
+    public Mono<Lease> getLease(String name) {
+        return leaseTableClient.getEntity(PARTITION_KEY, name)
+                .map(AzureLeaseStore::toLease)
+                .onErrorResume(throwable -> throwable instanceof HttpResponseException &&
+                        ((HttpResponseException) throwable).getResponse().getStatusCode() == 404,
+                        throwable -> Mono.empty());
+    }
+
+    @Override
+    public Mono<Lease> acquire(String name, String owner, Instant expiresOn, Lease current) {
+        final var tableEntity = new TableEntity(PARTITION_KEY, name)
+                .addProperty("owner", owner)
+                .addProperty("expiresOn", OffsetDateTime.ofInstant(expiresOn, ZoneOffset.UTC));
+
+        final Mono<Response<Void>> response;
+        if (null == current) {
+            response = leaseTableClient.createEntityWithResponse(tableEntity);
+        }
+        else {
+            tableEntity.addProperty(ETAG, current.version());
+            response = leaseTableClient.updateEntityWithResponse(tableEntity, TableEntityUpdateMode.REPLACE, true);
+        }
+
+        return response
+                .map(result -> new Lease(name, owner, expiresOn, result.getHeaders().getValue(HttpHeaderName.ETAG)))
+                .onErrorResume(AzureLeaseStore::isConflict, throwable -> Mono.empty());
+    }
+
+    @Override
+    public Mono<Void> release(Lease lease) {
+        final var tableEntity = new TableEntity(PARTITION_KEY, lease.name()).addProperty(ETAG, lease.version());
+
+        return leaseTableClient.deleteEntityWithResponse(tableEntity, true)
+                .then()
+                .onErrorResume(AzureLeaseStore::isConflict, throwable -> Mono.empty());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.storage;
+
+import ch.alni.certblues.azure.http.AzureHttpOptions;
+import ch.alni.certblues.certbot.ratelimit.RateLimit;
+import ch.alni.certblues.certbot.ratelimit.RateLimitEntry;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+import com.azure.core.credential.TokenCredential;
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.TableServiceClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import org.slf4j.Logger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the events counted against the rate limits in a table, one partition per ACME account. The row keys start
+ * with the instant of the event, so that the events are listed in the order they have happened.
+ */
+public class AzureRateLimitStore implements RateLimitStore {
+    private static final Logger LOG = getLogger(AzureRateLimitStore.class);
+
+    private static final int LIST_CONCURRENCY = 8;
+
+    private final TableAsyncClient rateLimitTableClient;
+
+    public AzureRateLimitStore(TokenCredential credential,
+                               AzureHttpOptions httpOptions,
+                               String tableServiceUrl,
+                               String rateLimitTableName) {
+        rateLimitTableClient = httpOptions.configure(new TableServiceClientBuilder())
+                .credential(credential).endpoint(tableServiceUrl)
+                .buildAsyncClient()
+                .getTableClient(rateLimitTableName);
+    }
+
+    static String toRowKey(RateLimitEntry entry) {
+        return String.format("%019d-%s", entry.countedOn().toEpochMilli(), UUID.randomUUID());
+    }
+
+    private static RateLimitEntry toEntry(TableEntity tableEntity) {
+        return new RateLimitEntry(
+                RateLimit.valueOf((String) tableEntity.getProperty("limit")),
+                (String) tableEntity.getProperty("key"),
+                ((OffsetDateTime) tableEntity.getProperty("countedOn")).toInstant()
+        );
+    }
+
+    @Override
+    public Flux<RateLimitEntry> load(String account, Instant since) {
+        final var options = new ListEntitiesOptions()
+                .setFilter("PartitionKey eq '" + account.replace("'", "''") + "'");
+
+        return rateLimitTableClient.listEntities(options)
+                .flatMap(tableEntity -> {
+                    final RateLimitEntry entry = toEntry(tableEntity);
+                    if (entry.countedOn().isBefore(since)) {
+                        // the event does not count against any limit anymore, the cleanup is best-effort and is
+                        // tried again with the next load
+                        return rateLimitTableClient.deleteEntity(tableEntity)
+                                .onErrorResume(throwable -> {
+                                    LOG.warn("cannot delete the expired rate limit entry {}: {}",
+                                            tableEntity.getRowKey(), throwable.getMessage());
+                                    return Mono.empty();
+                                })
+                                .then(Mono.<RateLimitEntry>empty());
+                    }
+                    return Mono.just(entry);
+                }, LIST_CONCURRENCY);
+    }
+
+    @Override
+    public Mono<Void> save(String account, RateLimitEntry entry) {
+        final var tableEntity = new TableEntity(account, toRowKey(entry))
+                .addProperty("limit", entry.limit().name())
+                .addProperty("key", entry.key())
+                .addProperty("countedOn", OffsetDateTime.ofInstant(entry.countedOn(), ZoneOffset.UTC));
+
+        return rateLimitTableClient.createEntity(tableEntity);
+    }
+}
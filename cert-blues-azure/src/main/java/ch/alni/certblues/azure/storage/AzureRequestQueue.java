@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.storage;
+
+import ch.alni.certblues.azure.http.AzureHttpOptions;
+import ch.alni.certblues.certbot.queue.RequestNotification;
+import ch.alni.certblues.certbot.queue.RequestNotificationQueue;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.exception.HttpResponseException;
+import com.azure.storage.queue.QueueAsyncClient;
+import com.azure.storage.queue.QueueClientBuilder;
+import com.azure.storage.queue.QueueMessageEncoding;
+import com.azure.storage.queue.models.QueueMessageItem;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Receives the notifications of the certificate requests from a storage queue. The text of a message is the name of
+ * the certificate whose request has been added or changed, Base64 encoded like the messages of the Azure Functions
+ * queue bindings. The notifications that cannot be processed are moved to the poison queue.
+ */
+public class AzureRequestQueue implements RequestNotificationQueue {
+
+    // the queue service does not return more messages with one call
+    private static final int MAX_MESSAGES = 32;
+
+    private final QueueAsyncClient queueClient;
+    private final QueueAsyncClient poisonQueueClient;
+
+    public AzureRequestQueue(TokenCredential credential,
+                             AzureHttpOptions httpOptions,
+                             String queueServiceUrl,
+                             String queueName,
+                             String poisonQueueName) {
+        queueClient = createClient(credential, httpOptions, queueServiceUrl, queueName);
+        poisonQueueClient = createClient(credential, httpOptions, queueServiceUrl, poisonQueueName);
+    }
+
+    private static QueueAsyncClient createClient(TokenCredential credential, AzureHttpOptions httpOptions,
+                                                 String queueServiceUrl, String queueName) {
+        return httpOptions.configure(new QueueClientBuilder())
+                .credential(credential).endpoint(queueServiceUrl).queueName(queueName)
+                .messageEncoding(QueueMessageEncoding.BASE64)
+                .buildAsyncClient();
+    }
+
+    private static RequestNotification toNotification(QueueMessageItem messageItem) {
+        return new RequestNotification(messageItem.getMessageId(), messageItem.getPopReceipt(),
+                messageItem.getBody().toString().trim(), messageItem.getDequeueCount());
+    }
+
+    private static boolean isNotFound(Throwable throwable) {
+        return throwable instanceof HttpResponseException &&
+                ((HttpResponseException) throwable).getResponse().getStatusCode() == 404;
+    }
+
+    @Override
+    public Flux<RequestNotification> receive(int maxNotifications, Duration visibilityTimeout) {
+        return queueClient.receiveMessages(Math.min(maxNotifications, MAX_MESSAGES), visibilityTimeout)
+                .map(AzureRequestQueue::toNotification);
+    }
+
+    @Override
+    public Mono<Void> delete(RequestNotification notification) {
+        // the message has been deleted already or has been received again by another instance
+        return queueClient.deleteMessage(notification.messageId(), notification.receipt())
+                .onErrorResume(AzureRequestQueue::isNotFound, throwable -> Mono.empty());
+    }
+
+    @Override
+    public Mono<Void> requeue(RequestNotification notification, Duration delay) {
+        return queueClient.sendMessageWithResponse(notification.certificateName(), delay, null)
+                .then(delete(notification));
+    }
+
+    @Override
+    public Mono<Void> deadLetter(RequestNotification notification) {
+        return poisonQueueClient.sendMessage(notification.certificateName())
+                .then(delete(notification));
+    }
+}
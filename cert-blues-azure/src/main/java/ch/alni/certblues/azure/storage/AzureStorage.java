@@ -25,15 +25,20 @@
 
 package ch.alni.certblues.azure.storage;
 
+import ch.alni.certblues.azure.http.AzureHttpOptions;
 import ch.alni.certblues.certbot.CertificateInfo;
 import ch.alni.certblues.certbot.CertificateRequest;
 import ch.alni.certblues.certbot.KeyType;
 import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.importing.RequestWriter;
 import com.azure.core.credential.TokenCredential;
-import com.azure.core.http.HttpClient;
+import com.azure.core.exception.HttpResponseException;
 import com.azure.data.tables.TableAsyncClient;
 import com.azure.data.tables.TableServiceAsyncClient;
 import com.azure.data.tables.TableServiceClientBuilder;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -41,16 +46,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 
-public class AzureStorage implements StorageService {
+public class AzureStorage implements StorageService, RequestWriter {
+
+    private static final String PARTITION_KEY = "certificateRequest";
+
+    // the maximum number of operations in a transaction of the table storage
+    private static final int MAX_BATCH_SIZE = 100;
 
     private final TableAsyncClient requestTableClient;
 
     public AzureStorage(TokenCredential credential,
-                        HttpClient httpClient,
+                        AzureHttpOptions httpOptions,
                         String tableServiceUrl,
                         String requestTableName) {
-        TableServiceAsyncClient tableServiceClient = new TableServiceClientBuilder()
-                .credential(credential).httpClient(httpClient).endpoint(tableServiceUrl)
+        TableServiceAsyncClient tableServiceClient = httpOptions.configure(new TableServiceClientBuilder())
+                .credential(credential).endpoint(tableServiceUrl)
                 .buildAsyncClient();
 
         requestTableClient = tableServiceClient.getTableClient(requestTableName);
@@ -59,7 +69,7 @@ public class AzureStorage implements StorageService {
     public AzureStorage(TokenCredential credential,
                         String tableServiceUrl,
                         String requestTableName) {
-        this(credential, null, tableServiceUrl, requestTableName);
+        this(credential, AzureHttpOptions.defaults(), tableServiceUrl, requestTableName);
     }
 
     private static List<String> toDnsNames(String value) {
@@ -72,6 +82,43 @@ public class AzureStorage implements StorageService {
         return result;
     }
 
+    private static CertificateRequest toCertificateRequest(TableEntity tableEntity) {
+        return CertificateRequest.builder()
+                .certificateName(tableEntity.getRowKey())
+                .keySize((Integer) tableEntity.getProperty("keySize"))
+                .keyType(KeyType.valueOf((String) tableEntity.getProperty("keyType")))
+                .subjectDn((String) tableEntity.getProperty("subjectDn"))
+                .validityInMonths((Integer) tableEntity.getProperty("validityInMonths"))
+                .dnsNames(toDnsNames((String) tableEntity.getProperty("dnsNames")))
+                .dnsZoneResourceGroup((String) tableEntity.getProperty("dnsZoneResourceGroup"))
+                .dnsZone((String) tableEntity.getProperty("dnsZone"))
+                .storageEndpointUrl((String) tableEntity.getProperty("storageEndpointUrl"))
+                .forceRequestCreation((Boolean) tableEntity.getProperty("forceRequestCreation"))
+                .build();
+    }
+
+    private static TableEntity toTableEntity(CertificateRequest request) {
+        final TableEntity tableEntity = new TableEntity(PARTITION_KEY, request.certificateName())
+                .addProperty("keySize", request.keySize())
+                .addProperty("keyType", request.keyType().name())
+                .addProperty("subjectDn", request.subjectDn())
+                .addProperty("validityInMonths", request.validityInMonths())
+                .addProperty("dnsNames", String.join(",", request.dnsNames()))
+                .addProperty("forceRequestCreation", request.forceRequestCreation());
+
+        // the optional properties are left out rather than stored as null
+        if (request.dnsZoneResourceGroup() != null) {
+            tableEntity.addProperty("dnsZoneResourceGroup", request.dnsZoneResourceGroup());
+        }
+        if (request.dnsZone() != null) {
+            tableEntity.addProperty("dnsZone", request.dnsZone());
+        }
+        if (request.storageEndpointUrl() != null) {
+            tableEntity.addProperty("storageEndpointUrl", request.storageEndpointUrl());
+        }
+        return tableEntity;
+    }
+
     static boolean shouldBeIncluded(CertificateRequest request, List<CertificateInfo> certificateInfos) {
         return request.forceRequestCreation() || certificateInfos.stream()
                 .anyMatch(certificateInfo -> certificateInfo.certificateName().equals(request.certificateName()));
@@ -79,8 +126,8 @@ public class AzureStorage implements StorageService {
 
     @Override
     public Mono<Void> reset(CertificateRequest certificateRequest) {
-        return requestTableClient.getEntity("certificateRequest", certificateRequest.certificateName())
-                .map(tableEntity -> tableEntity.addProperty("forceRequestCreation", true))
+        return requestTableClient.getEntity(PARTITION_KEY, certificateRequest.certificateName())
+                .map(tableEntity -> tableEntity.addProperty("forceRequestCreation", false))
                 .flatMap(requestTableClient::updateEntity)
                 .then();
     }
@@ -88,19 +135,35 @@ public class AzureStorage implements StorageService {
     @Override
     public Flux<CertificateRequest> getPendingCertificateRequests(List<CertificateInfo> expiringCertificates) {
         return requestTableClient.listEntities()
-                .map(tableEntity -> CertificateRequest.builder()
-                        .certificateName(tableEntity.getRowKey())
-                        .keySize((Integer) tableEntity.getProperty("keySize"))
-                        .keyType(KeyType.valueOf((String) tableEntity.getProperty("keyType")))
-                        .subjectDn((String) tableEntity.getProperty("subjectDn"))
-                        .validityInMonths((Integer) tableEntity.getProperty("validityInMonths"))
-                        .dnsNames(toDnsNames((String) tableEntity.getProperty("dnsNames")))
-                        .dnsZoneResourceGroup((String) tableEntity.getProperty("dnsZoneResourceGroup"))
-                        .dnsZone((String) tableEntity.getProperty("dnsZone"))
-                        .storageEndpointUrl((String) tableEntity.getProperty("storageEndpointUrl"))
-                        .forceRequestCreation((Boolean) tableEntity.getProperty("forceRequestCreation"))
-                        .build())
+                .map(AzureStorage::toCertificateRequest)
                 .filter(certificateRequest -> shouldBeIncluded(certificateRequest, expiringCertificates));
     }
 
+    @Override
+    public Mono<CertificateRequest> getCertificateRequest(String certificateName) {
+        return requestTableClient.getEntity(PARTITION_KEY, certificateName)
+                .map(AzureStorage::toCertificateRequest)
+                .onErrorResume(e -> e instanceof HttpResponseException &&
+                        ((HttpResponseException) e).getResponse().getStatusCode() == 404, e -> Mono.empty());
+    }
+
+    @Override
+    public String getPartition(CertificateRequest certificateRequest) {
+        return PARTITION_KEY;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public Mono<Void> upsert(List<CertificateRequest> certificateRequests) {
+        final List<TableTransactionAction> actions = certificateRequests.stream()
+                .map(request -> new TableTransactionAction(TableTransactionActionType.UPSERT_REPLACE,
+                        toTableEntity(request)))
+                .toList();
+
+        return requestTableClient.submitTransaction(actions).then();
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.traffic;
+
+import ch.alni.certblues.common.traffic.TrafficExchange;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
+import com.azure.core.http.HttpHeader;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.util.BinaryData;
+import org.slf4j.Logger;
+import reactor.core.publisher.Mono;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Pipeline policy that passes the exchanges with the Azure services to a traffic recorder. The response is buffered,
+ * so that the recorded latency includes the body, but only while the recorder is enabled.
+ * <p>
+ * The bodies of the key vault and of the token endpoints hold certificates, keys, CSRs and access tokens; they are
+ * neither buffered nor recorded. The other bodies are recorded up to a maximum size.
+ */
+public class TrafficRecordingPolicy implements HttpPipelinePolicy {
+
+    private static final Logger LOG = getLogger(TrafficRecordingPolicy.class);
+
+    private static final String TRAFFIC_SOURCE = "azure";
+
+    // larger bodies, like uploads and long listings, are not recorded
+    private static final long MAX_RECORDED_BODY = 64 * 1024;
+
+    private final TrafficRecorder trafficRecorder;
+
+    public TrafficRecordingPolicy(TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    /**
+     * Returns true if the bodies of the exchanges with the given URL must not be recorded: the key vaults (and
+     * managed HSMs) of all clouds, the Entra ID token endpoints and the managed identity endpoints.
+     */
+    static boolean hasSensitiveBody(URL url) {
+        final String host = url.getHost().toLowerCase(Locale.ROOT);
+        final String path = url.getPath().toLowerCase(Locale.ROOT);
+
+        return host.contains(".vault.") || host.contains(".managedhsm.") || host.startsWith("login.") ||
+                path.contains("/oauth2/") || path.contains("/metadata/identity") || path.contains("/msi/token");
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        if (!trafficRecorder.isEnabled()) {
+            return next.process();
+        }
+
+        final HttpRequest request = context.getHttpRequest();
+        final boolean sensitive = hasSensitiveBody(request.getUrl());
+        final String requestBody = sensitive ? getRedactedBody(request) : getRecordedBody(request);
+
+        final Instant startedOn = Instant.now();
+        final long started = System.nanoTime();
+
+        return next.process()
+                .flatMap(response -> {
+                    if (sensitive || getContentLength(response) > MAX_RECORDED_BODY) {
+                        record(request, requestBody, startedOn, started, response,
+                                sensitive ? TrafficExchange.REDACTED : null);
+                        return Mono.just(response);
+                    }
+
+                    final HttpResponse bufferedResponse = response.buffer();
+                    return bufferedResponse.getBodyAsString()
+                            .defaultIfEmpty("")
+                            .map(responseBody -> {
+                                record(request, requestBody, startedOn, started, bufferedResponse,
+                                        responseBody.isEmpty() || responseBody.length() > MAX_RECORDED_BODY ?
+                                                null : responseBody);
+                                return bufferedResponse;
+                            });
+                });
+    }
+
+    private void record(HttpRequest request, String requestBody, Instant startedOn, long started,
+                        HttpResponse response, String responseBody) {
+        final long latencyMicros = (System.nanoTime() - started) / 1000;
+
+        try {
+            trafficRecorder.record(new TrafficExchange(TRAFFIC_SOURCE, startedOn, latencyMicros,
+                    request.getHttpMethod().name(), request.getUrl().toString(),
+                    TrafficExchange.redact(toMap(request.getHeaders())), requestBody,
+                    response.getStatusCode(), TrafficExchange.redact(toMap(response.getHeaders())), responseBody));
+        }
+        catch (RuntimeException e) {
+            LOG.warn("cannot record the exchange with {}", request.getUrl(), e);
+        }
+    }
+
+    private static long getContentLength(HttpResponse response) {
+        final String contentLength = response.getHeaderValue(HttpHeaderName.CONTENT_LENGTH);
+        try {
+            return null == contentLength ? -1 : Long.parseLong(contentLength);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getRedactedBody(HttpRequest request) {
+        final BinaryData body = request.getBodyAsBinaryData();
+        return null == body || Long.valueOf(0).equals(body.getLength()) ? null : TrafficExchange.REDACTED;
+    }
+
+    private static String getRecordedBody(HttpRequest request) {
+        final BinaryData body = request.getBodyAsBinaryData();
+        if (null == body || null == body.getLength() || body.getLength() > MAX_RECORDED_BODY) {
+            return null;
+        }
+
+        // reading the body must not consume it for the next policies
+        final BinaryData replayableBody = body.isReplayable() ? body : body.toReplayableBinaryData();
+        request.setBody(replayableBody);
+        return replayableBody.toString();
+    }
+
+    private static Map<String, String> toMap(HttpHeaders headers) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (HttpHeader header : headers) {
+            result.put(header.getName(), header.getValue());
+        }
+        return result;
+    }
+}
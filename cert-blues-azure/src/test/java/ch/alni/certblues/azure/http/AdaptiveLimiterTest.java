@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveLimiterTest {
+
+    private static final String OPERATION = "GET getCertificate";
+
+    private final AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 4, Clock.systemUTC(), Schedulers.parallel());
+
+    @Test
+    void shouldQueueRequestsBeyondLimit() {
+        final AdaptiveLimiter.Permit first = limiter.acquire().block();
+        final AdaptiveLimiter.Permit second = limiter.acquire().block();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+
+        // the third request waits until one of the others has been answered
+        StepVerifier.create(limiter.acquire())
+                .then(() -> assertThat(limiter.getWaiting()).isEqualTo(1))
+                .then(() -> first.success(OPERATION, Duration.ofMillis(10)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        second.success(OPERATION, Duration.ofMillis(10));
+        assertThat(limiter.getWaiting()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReleasePermitsThatAreNotHandedOver() {
+        // the permit is granted right away, but the subscriber cancels before it has requested it
+        final BaseSubscriber<AdaptiveLimiter.Permit> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+        };
+        limiter.acquire().subscribe(subscriber);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+
+        subscriber.dispose();
+        assertThat(limiter.getInFlight()).isZero();
+
+        // a waiting request that is cancelled is not granted
+        final AdaptiveLimiter.Permit first = limiter.acquire().block();
+        limiter.acquire().block();
+        limiter.acquire().subscribe().dispose();
+        first.success(OPERATION, Duration.ofMillis(10));
+
+        assertThat(limiter.getWaiting()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShrinkAndPauseWhenThrottled() {
+        final AdaptiveLimiter.Permit permit = limiter.acquire().block();
+        permit.throttled(Duration.ofMillis(200));
+
+        // released twice, but counted once
+        permit.dropped();
+
+        assertThat(limiter.getLimit()).isEqualTo(1);
+        assertThat(limiter.getInFlight()).isZero();
+
+        final long started = System.nanoTime();
+        StepVerifier.create(limiter.acquire())
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+    }
+
+    @Test
+    void shouldGrowWhileLatencyIsStable() {
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire().block().success(OPERATION, Duration.ofMillis(10));
+        }
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        // the latency grows beyond twice the baseline
+        limiter.acquire().block().success(OPERATION, Duration.ofMillis(50));
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldCompareLatencyWithSameOperation() {
+        // a slow operation does not count as a grown latency of the fast ones
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire().block().success(OPERATION, Duration.ofMillis(10));
+            limiter.acquire().block().success("POST beginCreateCertificate", Duration.ofMillis(200));
+        }
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        // the latency of the slow operation grows beyond twice its own baseline
+        limiter.acquire().block().success("POST beginCreateCertificate", Duration.ofMillis(500));
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+}
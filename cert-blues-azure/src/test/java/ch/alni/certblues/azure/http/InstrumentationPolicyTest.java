@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.http;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.FixedDelay;
+import com.azure.core.http.policy.RetryPolicy;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstrumentationPolicyTest {
+
+    private static final String VAULT_URL = "https://cert-blues-test.vault.azure.net/keys/account-key/sign";
+
+    private final AzureCallStatistics statistics = new AzureCallStatistics();
+
+    @Test
+    void shouldCountRetriesAndThrottledResponsesOfCall() {
+        // the first attempt is throttled, the second one succeeds
+        final var attempts = new AtomicInteger();
+        final HttpClient httpClient = request -> Mono.just(attempts.getAndIncrement() == 0
+                ? new TestResponse(request, 429, new HttpHeaders().set(HttpHeaderName.RETRY_AFTER, "0"))
+                : new TestResponse(request, 200, new HttpHeaders()
+                .set(HttpHeaderName.fromString("x-ms-ratelimit-remaining-subscription-reads"), "11999")));
+
+        // the pipeline of a client, with the policies in the order the client builders put them
+        final HttpPipeline pipeline = new HttpPipelineBuilder()
+                .policies(new InstrumentationPolicy(statistics), new RetryPolicy(new FixedDelay(3, Duration.ZERO)))
+                .httpClient(new PipelineHttpClient(httpClient, List.of(new MetricsPolicy(statistics))))
+                .build();
+
+        StepVerifier.create(pipeline.send(new HttpRequest(HttpMethod.POST, VAULT_URL)))
+                .assertNext(response -> assertThat(response.getStatusCode()).isEqualTo(200))
+                .verifyComplete();
+
+        assertThat(statistics.getEntries()).singleElement().satisfies(entry -> {
+            assertThat(entry.service()).isEqualTo("keyVault");
+            assertThat(entry.operation()).isEqualTo("POST");
+            assertThat(entry.calls()).isEqualTo(1);
+            assertThat(entry.retries()).isEqualTo(1);
+            assertThat(entry.throttled()).isEqualTo(1);
+            assertThat(entry.failures()).isZero();
+        });
+        assertThat(statistics.getRateLimitRemaining())
+                .isEqualTo(Map.of("keyVault x-ms-ratelimit-remaining-subscription-reads", 11999L));
+        assertThat(statistics.format()).contains("keyVault", "lowest");
+    }
+
+    private static final class TestResponse extends HttpResponse {
+        private final int statusCode;
+        private final HttpHeaders headers;
+
+        private TestResponse(HttpRequest request, int statusCode, HttpHeaders headers) {
+            super(request);
+            this.statusCode = statusCode;
+            this.headers = headers;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeaderValue(HttpHeaderName headerName) {
+            return headers.getValue(headerName);
+        }
+
+        // still abstract in the HttpResponse of this azure-core version
+        @Override
+        @Deprecated
+        public String getHeaderValue(String name) {
+            return getHeaderValue(HttpHeaderName.fromString(name));
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return Mono.just(new byte[0]);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString() {
+            return Mono.just("");
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset) {
+            return Mono.just("");
+        }
+    }
+}
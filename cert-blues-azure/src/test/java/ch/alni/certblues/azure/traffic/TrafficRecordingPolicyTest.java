@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.traffic;
+
+import ch.alni.certblues.common.traffic.TrafficExchange;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrafficRecordingPolicyTest {
+
+    private final List<TrafficExchange> exchanges = new ArrayList<>();
+
+    private HttpPipeline pipeline(String responseBody) {
+        return new HttpPipelineBuilder()
+                .policies(new TrafficRecordingPolicy(exchanges::add))
+                .httpClient(request -> Mono.just(new TestResponse(request, responseBody)))
+                .build();
+    }
+
+    @Test
+    void shouldNotRecordBodiesOfKeyVault() {
+        final HttpRequest request = new HttpRequest(HttpMethod.POST,
+                "https://certblues.vault.azure.net/certificates/test/create?api-version=7.4")
+                .setBody("{\"policy\":{}}");
+
+        final HttpResponse response = pipeline("{\"csr\":\"MIIC\"}").send(request).block();
+
+        assertThat(response).isNotNull();
+        assertThat(response.getBodyAsString().block()).isEqualTo("{\"csr\":\"MIIC\"}");
+        assertThat(exchanges).singleElement().satisfies(exchange -> {
+            assertThat(exchange.requestBody()).isEqualTo(TrafficExchange.REDACTED);
+            assertThat(exchange.responseBody()).isEqualTo(TrafficExchange.REDACTED);
+        });
+    }
+
+    @Test
+    void shouldRecordBodiesUpToMaximumSize() {
+        final String url = "https://certblues.table.core.windows.net/requests";
+
+        pipeline("{\"value\":[]}").send(new HttpRequest(HttpMethod.GET, url)).block();
+        pipeline("x".repeat(100 * 1024)).send(new HttpRequest(HttpMethod.GET, url)).block();
+
+        assertThat(exchanges).extracting(TrafficExchange::responseBody).containsExactly("{\"value\":[]}", null);
+    }
+
+    @Test
+    void shouldNotCaptureWhenRecorderIsDisabled() {
+        final HttpPipeline pipeline = new HttpPipelineBuilder()
+                .policies(new TrafficRecordingPolicy(new DisabledRecorder()))
+                .httpClient(request -> Mono.just(new TestResponse(request, "{}")))
+                .build();
+
+        final HttpResponse response = pipeline.send(new HttpRequest(HttpMethod.GET, "https://test.azure.net")).block();
+
+        // the response is passed on as it is, without buffering
+        assertThat(response).isInstanceOf(TestResponse.class);
+    }
+
+    private static final class DisabledRecorder implements TrafficRecorder {
+
+        @Override
+        public void record(TrafficExchange exchange) {
+            throw new IllegalStateException("must not be called");
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    }
+
+    private static final class TestResponse extends HttpResponse {
+        private final byte[] body;
+        private final HttpHeaders headers;
+
+        private TestResponse(HttpRequest request, String body) {
+            super(request);
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            this.headers = new HttpHeaders().set(HttpHeaderName.CONTENT_TYPE, "application/json");
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        @Deprecated
+        public String getHeaderValue(String name) {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return Flux.just(ByteBuffer.wrap(body));
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return Mono.just(body);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString() {
+            return Mono.just(new String(body, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(Charset charset) {
+            return Mono.just(new String(body, charset));
+        }
+    }
+}
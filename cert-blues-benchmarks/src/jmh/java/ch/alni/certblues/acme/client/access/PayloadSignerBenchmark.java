@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.client.access;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import ch.alni.certblues.acme.jws.JwsObject;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyEntry;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyPair;
+import ch.alni.certblues.acme.protocol.Identifier;
+import ch.alni.certblues.acme.protocol.OrderRequest;
+
+/**
+ * Signing of the requests to the ACME server with a local RSA key. Most of the time is spent in the RSA signature
+ * itself, the rest is the serialization and encoding of the header and payload.
+ */
+@State(Scope.Benchmark)
+public class PayloadSignerBenchmark {
+
+    private static final String REQUEST_URL = "https://example.com/acme/new-order";
+    private static final String KEY_ID = "https://example.com/acme/acct/evOfKhNU60wg";
+    private static final String NONCE = "oFvnlFP1wIhRlYS2jTaXbA";
+
+    private PayloadSigner payloadSigner;
+    private OrderRequest orderRequest;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+
+        payloadSigner = new PayloadSigner(
+                new SimpleRsaKeyPair(new SimpleRsaKeyEntry(keyPairGenerator.generateKeyPair()))
+        );
+
+        orderRequest = OrderRequest.builder()
+                .identifiers(List.of(
+                        Identifier.builder().type(Identifier.TYPE_DNS).value("www.example.org").build(),
+                        Identifier.builder().type(Identifier.TYPE_DNS).value("example.org").build()
+                ))
+                .build();
+    }
+
+    @Benchmark
+    public JwsObject signWithJwk() {
+        return payloadSigner.sign(REQUEST_URL, orderRequest, NONCE).block();
+    }
+
+    @Benchmark
+    public JwsObject signWithKeyId() {
+        return payloadSigner.sign(REQUEST_URL, KEY_ID, orderRequest, NONCE).block();
+    }
+}
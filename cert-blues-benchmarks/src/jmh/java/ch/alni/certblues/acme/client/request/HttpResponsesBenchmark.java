@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.client.request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import ch.alni.certblues.acme.protocol.Order;
+import ch.alni.certblues.benchmarks.Payloads;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Parsing of the responses of the ACME server: payload, nonce, location and problem documents.
+ */
+@State(Scope.Benchmark)
+public class HttpResponsesBenchmark {
+
+    private final HttpHeaders headers = new DefaultHttpHeaders()
+            .add("Content-Type", "application/json")
+            .add("Replay-Nonce", "oFvnlFP1wIhRlYS2jTaXbA")
+            .add("Location", "https://example.com/acme/order/TOlocE8rfgo")
+            .add("Link", "<https://example.com/acme/directory>;rel=\"index\"");
+
+    private final HttpHeaders problemHeaders = new DefaultHttpHeaders()
+            .add("Content-Type", "application/problem+json")
+            .add("Replay-Nonce", "oFvnlFP1wIhRlYS2jTaXbA");
+
+    @Benchmark
+    public Order getPayload() {
+        return HttpResponses.getPayload(201, headers, Payloads.ORDER, Order.class);
+    }
+
+    @Benchmark
+    public void getNonceAndLocation(Blackhole blackhole) {
+        blackhole.consume(HttpResponses.getNonce(201, headers));
+        blackhole.consume(HttpResponses.getLocation(headers));
+    }
+
+    @Benchmark
+    public Object getProblem() {
+        try {
+            return HttpResponses.getPayload(400, problemHeaders, Payloads.PROBLEM, Order.class);
+        }
+        catch (AcmeServerException e) {
+            return e;
+        }
+    }
+}
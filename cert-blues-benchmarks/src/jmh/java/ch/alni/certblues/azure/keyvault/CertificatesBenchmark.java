@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.azure.keyvault;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaMiscPEMGenerator;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.io.pem.PemWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Decoding of the issued certificate chain before it is merged into the key vault.
+ */
+@State(Scope.Benchmark)
+public class CertificatesBenchmark {
+
+    private String certificateChain;
+
+    private static String toPem(X509v3CertificateBuilder builder, KeyPair signingKeyPair) throws Exception {
+        final var signer = new JcaContentSignerBuilder("SHA256withRSA").build(signingKeyPair.getPrivate());
+
+        final var writer = new StringWriter();
+        try (PemWriter pemWriter = new PemWriter(writer)) {
+            pemWriter.writeObject(new JcaMiscPEMGenerator(builder.build(signer)));
+        }
+        return writer.toString();
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+
+        final KeyPair issuerKeyPair = keyPairGenerator.generateKeyPair();
+        final KeyPair subjectKeyPair = keyPairGenerator.generateKeyPair();
+
+        final var issuer = new X500Name("CN=Benchmark Issuer");
+        final var subject = new X500Name("CN=www.example.org");
+        final var notBefore = Date.from(Instant.now());
+        final var notAfter = Date.from(Instant.now().plus(Duration.ofDays(90)));
+
+        final String leaf = toPem(new JcaX509v3CertificateBuilder(
+                issuer, BigInteger.TWO, notBefore, notAfter, subject, subjectKeyPair.getPublic()
+        ), issuerKeyPair);
+        final String intermediate = toPem(new JcaX509v3CertificateBuilder(
+                issuer, BigInteger.ONE, notBefore, notAfter, issuer, issuerKeyPair.getPublic()
+        ), issuerKeyPair);
+
+        certificateChain = leaf + intermediate;
+    }
+
+    @Benchmark
+    public List<byte[]> getEncodedCertificates() {
+        return Certificates.getEncodedCertificates(certificateChain);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.benchmarks;
+
+/**
+ * Typical payloads returned by an ACME server, taken from RFC 8555.
+ */
+public final class Payloads {
+
+    public static final String DIRECTORY = """
+            {
+              "newNonce": "https://example.com/acme/new-nonce",
+              "newAccount": "https://example.com/acme/new-account",
+              "newOrder": "https://example.com/acme/new-order",
+              "newAuthz": "https://example.com/acme/new-authz",
+              "revokeCert": "https://example.com/acme/revoke-cert",
+              "keyChange": "https://example.com/acme/key-change",
+              "meta": {
+                "termsOfService": "https://example.com/acme/terms/2017-5-30",
+                "website": "https://www.example.com/",
+                "caaIdentities": ["example.com"],
+                "externalAccountRequired": false
+              }
+            }
+            """;
+
+    public static final String ORDER = """
+            {
+              "status": "pending",
+              "expires": "2016-01-05T14:09:07.99Z",
+              "notBefore": "2016-01-01T00:00:00Z",
+              "notAfter": "2016-01-08T00:00:00Z",
+              "identifiers": [
+                { "type": "dns", "value": "www.example.org" },
+                { "type": "dns", "value": "example.org" }
+              ],
+              "authorizations": [
+                "https://example.com/acme/authz/PAniVnsZcis",
+                "https://example.com/acme/authz/r4HqLzrSrpI"
+              ],
+              "finalize": "https://example.com/acme/order/TOlocE8rfgo/finalize"
+            }
+            """;
+
+    public static final String AUTHORIZATION = """
+            {
+              "status": "pending",
+              "expires": "2016-01-02T14:09:30Z",
+              "identifier": {
+                "type": "dns",
+                "value": "www.example.org"
+              },
+              "challenges": [
+                {
+                  "type": "http-01",
+                  "status": "pending",
+                  "url": "https://example.com/acme/chall/prV_B7yEyA4",
+                  "token": "DGyRejmCefe7v4NfDGDKfA"
+                },
+                {
+                  "type": "dns-01",
+                  "status": "pending",
+                  "url": "https://example.com/acme/chall/Rg5dV14Gh1Q",
+                  "token": "evaGxfADs6pSRb2LAv9IZf17Dt3juxGJ-PCt92wr-oA"
+                }
+              ]
+            }
+            """;
+
+    public static final String JWS_OBJECT = """
+            {
+              "protected": "eyJhbGciOiJFUzI1NiIsImp3ayI6ey4uLn0sIm5vbmNlIjoiNm1SR2I2SWxZNE5KT1h6THBXZHhMdyIsInVybCI6Imh0dHBzOi8vZXhhbXBsZS5jb20vYWNtZS9uZXctYWNjb3VudCJ9",
+              "payload": "eyJ0ZXJtc09mU2VydmljZUFncmVlZCI6dHJ1ZSwiY29udGFjdCI6WyJtYWlsdG86Y2VydC1hZG1pbkBleGFtcGxlLm9yZyJdfQ",
+              "signature": "RZPOnYoPs1PhjszF4HlGY8Bd2ArSxKbTPfaPmUDmEw0ZQnRqVedNHHL79Ux7kNeGwyOQe8Ld3R04bnOvqvxqJ"
+            }
+            """;
+
+    public static final String PROBLEM = """
+            {
+              "type": "urn:ietf:params:acme:error:badNonce",
+              "detail": "JWS has an invalid anti-replay nonce",
+              "status": 400
+            }
+            """;
+
+    private Payloads() {
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.alni.certblues.acme.jws.JwsObject;
+import ch.alni.certblues.acme.protocol.Authorization;
+import ch.alni.certblues.acme.protocol.Directory;
+import ch.alni.certblues.acme.protocol.Order;
+import ch.alni.certblues.benchmarks.Payloads;
+
+/**
+ * Serialization and deserialization of the protocol objects exchanged with the ACME server.
+ */
+@State(Scope.Benchmark)
+public class JsonObjectsBenchmark {
+
+    private Order order;
+    private Authorization authorization;
+    private Directory directory;
+    private JwsObject jwsObject;
+
+    @Setup
+    public void setUp() {
+        order = JsonObjects.deserialize(Payloads.ORDER, Order.class);
+        authorization = JsonObjects.deserialize(Payloads.AUTHORIZATION, Authorization.class);
+        directory = JsonObjects.deserialize(Payloads.DIRECTORY, Directory.class);
+        jwsObject = JsonObjects.deserialize(Payloads.JWS_OBJECT, JwsObject.class);
+    }
+
+    @Benchmark
+    public Order deserializeOrder() {
+        return JsonObjects.deserialize(Payloads.ORDER, Order.class);
+    }
+
+    @Benchmark
+    public Authorization deserializeAuthorization() {
+        return JsonObjects.deserialize(Payloads.AUTHORIZATION, Authorization.class);
+    }
+
+    @Benchmark
+    public Directory deserializeDirectory() {
+        return JsonObjects.deserialize(Payloads.DIRECTORY, Directory.class);
+    }
+
+    @Benchmark
+    public JwsObject deserializeJwsObject() {
+        return JsonObjects.deserialize(Payloads.JWS_OBJECT, JwsObject.class);
+    }
+
+    @Benchmark
+    public String serializeOrder() {
+        return JsonObjects.serialize(order);
+    }
+
+    @Benchmark
+    public String serializeAuthorization() {
+        return JsonObjects.serialize(authorization);
+    }
+
+    @Benchmark
+    public String serializeDirectory() {
+        return JsonObjects.serialize(directory);
+    }
+
+    @Benchmark
+    public String serializeJwsObject() {
+        return JsonObjects.serialize(jwsObject);
+    }
+}
@@ -56,7 +56,7 @@ public class CertBotTestConfiguration {
     private static final int CHALL_TEST_SRV_MGMT_PORT = 8055;
 
     @Bean
-    HttpClient httpClient() {
+    HttpClient acmeHttpClient() {
         final ConnectionProvider connectionProvider = ConnectionProvider.builder("custom")
                 .maxIdleTime(Duration.ofSeconds(45))
                 .maxLifeTime(Duration.ofSeconds(60))
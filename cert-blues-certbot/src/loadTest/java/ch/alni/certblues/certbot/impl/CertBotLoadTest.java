@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.facade.DnsChallengeProvisioner;
+import ch.alni.certblues.acme.facade.HttpChallengeProvisioner;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyEntry;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyPair;
+import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.acme.server.MockAcmeServer;
+import ch.alni.certblues.acme.server.MockAcmeServerOptions;
+import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.KeyType;
+import ch.alni.certblues.certbot.certificate.SimpleCertEntry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs thousands of orders through the cert bot against the in-process mock ACME server and reports the throughput
+ * and the latency percentiles, overall and per state of the orders.
+ * <p>
+ * The size of the run can be changed with the system properties {@code loadTest.orders} and
+ * {@code loadTest.concurrency}, see the {@code loadTest} task.
+ */
+class CertBotLoadTest {
+
+    private static final int ORDERS = Integer.getInteger("loadTest.orders", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 100);
+
+    private MockAcmeServer server;
+    private Scheduler stateMachineScheduler;
+
+    @BeforeEach
+    void setUp() {
+        server = MockAcmeServer.start(MockAcmeServerOptions.builder()
+                .latency(Duration.ofMillis(5))
+                .badNonceRate(0.01)
+                .build());
+        stateMachineScheduler = CertBotFactory.newStateMachineScheduler();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stateMachineScheduler.dispose();
+        server.close();
+    }
+
+    @Test
+    void shouldIssueAllCertificates() throws Exception {
+        final var connectionProvider = ConnectionProvider.builder("load-test")
+                .maxConnections(CONCURRENCY * 2)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        final var acmeClient = new AcmeClient(HttpClient.create(connectionProvider), server.getDirectoryUrl());
+
+        final var accountKeyPair = new SimpleRsaKeyPair(new SimpleRsaKeyEntry(generateKeyPair()));
+        final var session = acmeClient.login(accountKeyPair,
+                AccountRequest.builder().termsOfServiceAgreed(true).build());
+
+        final var certBot = new CertBotImpl(session, new SimpleCertEntry(generateKeyPair()), new NoOpProvisioners(),
+                stateMachineScheduler, Schedulers.boundedElastic(), Duration.ofMillis(50));
+
+        final var options = BatchOptions.builder().maxConcurrency(CONCURRENCY).build();
+        final Flux<CertificateRequest> requests = Flux.fromStream(IntStream.range(0, ORDERS).mapToObj(this::request));
+
+        final long started = System.nanoTime();
+        final List<CertificateResult> results = certBot.submitAll(requests, options)
+                .collectList()
+                .block(Duration.ofMinutes(10));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+
+        assertThat(results).hasSize(ORDERS);
+        assertThat(results).allSatisfy(result ->
+                assertThat(result.status()).as(result.failureReason()).isEqualTo(CertificateResult.Status.ISSUED));
+
+        report(results, elapsed);
+    }
+
+    private void report(List<CertificateResult> results, Duration elapsed) {
+        System.out.printf("%d orders with concurrency %d in %d ms, %.1f orders/s%n", results.size(), CONCURRENCY,
+                elapsed.toMillis(), results.size() * 1000.0 / Math.max(1, elapsed.toMillis()));
+        System.out.printf("%d signed requests, %d injected errors%n",
+                server.getRequestCount(), server.getInjectedErrorCount());
+
+        System.out.println(percentiles("total", results.stream().map(CertificateResult::duration).toList()));
+
+        final Map<String, List<Duration>> phases = new TreeMap<>();
+        results.forEach(result -> result.phaseDurations().forEach((phase, duration) ->
+                phases.computeIfAbsent(phase, key -> new ArrayList<>()).add(duration)));
+        phases.forEach((phase, durations) -> System.out.println(percentiles(phase, durations)));
+    }
+
+    private static String percentiles(String name, List<Duration> durations) {
+        final List<Duration> sorted = durations.stream().sorted(Comparator.naturalOrder()).toList();
+        return String.format("%-12s p50 %6d ms, p99 %6d ms, max %6d ms", name,
+                percentile(sorted, 0.5).toMillis(), percentile(sorted, 0.99).toMillis(),
+                sorted.get(sorted.size() - 1).toMillis());
+    }
+
+    private static Duration percentile(List<Duration> sorted, double percentile) {
+        final int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private CertificateRequest request(int index) {
+        final String host = "host" + index + ".load.test";
+        return CertificateRequest.builder()
+                .certificateName("load-test-" + index)
+                .storageEndpointUrl("does-not-matter")
+                .keyType(KeyType.RSA)
+                .keySize(2048)
+                .subjectDn("CN=" + host)
+                .dnsNames(List.of(host))
+                .validityInMonths(12)
+                .build();
+    }
+
+    private static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    /**
+     * The mock server accepts every challenge, so nothing needs to be provisioned.
+     */
+    private static final class NoOpProvisioners
+            implements AuthorizationProvisionerFactory, HttpChallengeProvisioner, DnsChallengeProvisioner {
+
+        @Override
+        public HttpChallengeProvisioner createHttpChallengeProvisioner(CertificateRequest certificateRequest) {
+            return this;
+        }
+
+        @Override
+        public DnsChallengeProvisioner createDnsChallengeProvisioner(CertificateRequest certificateRequest) {
+            return this;
+        }
+
+        @Override
+        public Mono<Void> provisionHttp(String token, String keyAuth) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> provisionDns(String host, String value) {
+            return Mono.empty();
+        }
+    }
+}
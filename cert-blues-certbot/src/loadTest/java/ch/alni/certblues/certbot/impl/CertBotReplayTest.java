@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyEntry;
+import ch.alni.certblues.acme.key.rsa.SimpleRsaKeyPair;
+import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.acme.server.MockAcmeServer;
+import ch.alni.certblues.acme.server.MockAcmeServerOptions;
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.KeyType;
+import ch.alni.certblues.certbot.certificate.SimpleCertEntry;
+import ch.alni.certblues.certbot.inmemory.BackendBehaviour;
+import ch.alni.certblues.certbot.inmemory.InMemoryChallengeProvisioner;
+import ch.alni.certblues.common.traffic.TrafficExchange;
+import ch.alni.certblues.common.traffic.TrafficFile;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
+import ch.alni.certblues.common.traffic.TrafficReplayServer;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Records a run of the cert bot against the mock ACME server and replays it.
+ */
+class CertBotReplayTest {
+
+    private static final int ORDERS = 5;
+
+    @TempDir
+    Path tempDir;
+
+    private Scheduler stateMachineScheduler;
+
+    @BeforeEach
+    void setUp() {
+        stateMachineScheduler = CertBotFactory.newStateMachineScheduler();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stateMachineScheduler.dispose();
+    }
+
+    @Test
+    void shouldReplayRecordedRun() throws Exception {
+        final Path recordingFile = tempDir.resolve("traffic.jsonl.gz");
+
+        try (var server = MockAcmeServer.start(MockAcmeServerOptions.builder().latency(Duration.ofMillis(20)).build());
+             var trafficFile = TrafficFile.create(recordingFile)) {
+
+            assertThat(run(server.getDirectoryUrl(), trafficFile)).hasSize(ORDERS);
+        }
+
+        final List<TrafficExchange> recording = TrafficFile.read(recordingFile);
+        assertThat(recording).isNotEmpty();
+        assertThat(recording).allSatisfy(exchange -> assertThat(exchange.latency()).isPositive());
+
+        final String directoryUrl = recording.get(0).url();
+        try (var replayServer = TrafficReplayServer.start(recording)) {
+            final List<CertificateResult> results = run(replayServer.toReplayUrl(directoryUrl), null);
+
+            assertThat(results).hasSize(ORDERS);
+            assertThat(replayServer.getMissedCount()).isZero();
+        }
+    }
+
+    private List<CertificateResult> run(String directoryUrl, TrafficRecorder trafficRecorder) throws Exception {
+        final var acmeClient = new AcmeClient(HttpClient.create(), directoryUrl, trafficRecorder);
+        final var session = acmeClient.login(new SimpleRsaKeyPair(new SimpleRsaKeyEntry(generateKeyPair())),
+                AccountRequest.builder().termsOfServiceAgreed(true).build());
+
+        final var certBot = new CertBotImpl(session, new SimpleCertEntry(generateKeyPair()),
+                new InMemoryChallengeProvisioner(BackendBehaviour.ideal(), BackendBehaviour.ideal()),
+                stateMachineScheduler, Schedulers.boundedElastic(), Duration.ofMillis(50));
+
+        // one order at a time, so that the orders are created in the recorded order
+        final var options = BatchOptions.builder().maxConcurrency(1).build();
+        final List<CertificateResult> results = certBot.submitAll(Flux.fromStream(IntStream.range(0, ORDERS)
+                        .mapToObj(CertBotReplayTest::request)), options)
+                .collectList()
+                .block(Duration.ofMinutes(1));
+
+        assertThat(results).allSatisfy(result ->
+                assertThat(result.status()).as(result.failureReason()).isEqualTo(CertificateResult.Status.ISSUED));
+        return results;
+    }
+
+    private static CertificateRequest request(int index) {
+        final String host = "host" + index + ".replay.test";
+        return CertificateRequest.builder()
+                .certificateName("replay-test-" + index)
+                .storageEndpointUrl("does-not-matter")
+                .keyType(KeyType.RSA)
+                .keySize(2048)
+                .subjectDn("CN=" + host)
+                .dnsNames(List.of(host))
+                .validityInMonths(12)
+                .build();
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+}
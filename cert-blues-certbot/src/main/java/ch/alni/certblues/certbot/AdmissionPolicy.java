@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot;
+
+import org.jetbrains.annotations.Nullable;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Decides if a certificate request can be submitted now. The decision is made at the moment the request would
+ * start.
+ */
+@FunctionalInterface
+public interface AdmissionPolicy {
+
+    /**
+     * Returns the policy that admits all requests.
+     */
+    static AdmissionPolicy admitAll() {
+        return certificateRequest -> null;
+    }
+
+    /**
+     * Checks if the given request can be submitted now.
+     *
+     * @param certificateRequest the request to check
+     * @return null if the request can be submitted, or the reason why it must be deferred
+     */
+    @Nullable
+    DeferralReason check(CertificateRequest certificateRequest);
+
+    /**
+     * Confirms that the given request admitted by {@link #check(CertificateRequest)} can still be submitted, for the
+     * policies that have to ask a remote store before the request is submitted. Admits the request by default.
+     *
+     * @param certificateRequest the request to confirm
+     * @return empty mono if the request can be submitted, or the reason why it must be deferred
+     */
+    default Mono<DeferralReason> confirm(CertificateRequest certificateRequest) {
+        return Mono.empty();
+    }
+
+    /**
+     * Returns the policy that admits the requests admitted by both this and the other policy.
+     */
+    default AdmissionPolicy and(AdmissionPolicy other) {
+        final AdmissionPolicy first = this;
+        return new AdmissionPolicy() {
+            @Override
+            public @Nullable DeferralReason check(CertificateRequest certificateRequest) {
+                final DeferralReason reason = first.check(certificateRequest);
+                return null != reason ? reason : other.check(certificateRequest);
+            }
+
+            @Override
+            public Mono<DeferralReason> confirm(CertificateRequest certificateRequest) {
+                return first.confirm(certificateRequest)
+                        .switchIfEmpty(Mono.defer(() -> other.confirm(certificateRequest)));
+            }
+        };
+    }
+}
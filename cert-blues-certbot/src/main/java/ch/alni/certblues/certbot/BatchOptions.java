@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot;
+
+import com.google.auto.value.AutoValue;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.scheduling.LaneDispatcher;
+
+/**
+ * How to process a batch of certificate requests.
+ */
+@AutoValue
+public abstract class BatchOptions {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+    public static Builder builder() {
+        return new AutoValue_BatchOptions.Builder()
+                .maxConcurrency(DEFAULT_MAX_CONCURRENCY)
+                .laneConcurrency(Integer.MAX_VALUE)
+                .laneKey(LaneDispatcher::getChallengeResource)
+                .admissionPolicy(AdmissionPolicy.admitAll())
+                .clock(Clock.systemUTC());
+    }
+
+    /**
+     * How many orders can be processed at the same time. Default is 10.
+     */
+    public abstract int maxConcurrency();
+
+    /**
+     * How many orders can be processed at the same time within one lane. Default is unlimited.
+     */
+    public abstract int laneConcurrency();
+
+    /**
+     * How to select the lane of a certificate request. Default is the resource used to provision the challenges.
+     */
+    public abstract Function<CertificateRequest, String> laneKey();
+
+    /**
+     * Decides if a request can start when a slot becomes free. Default is to admit all requests.
+     */
+    public abstract AdmissionPolicy admissionPolicy();
+
+    /**
+     * How long an order can take before it is failed. Null if the orders are not timed out.
+     */
+    @Nullable
+    public abstract Duration orderTimeout();
+
+    /**
+     * The clock to measure the timings of the orders.
+     */
+    public abstract Clock clock();
+
+    public abstract Builder toBuilder();
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+
+        public abstract Builder maxConcurrency(int value);
+
+        public abstract Builder laneConcurrency(int value);
+
+        public abstract Builder laneKey(Function<CertificateRequest, String> value);
+
+        public abstract Builder admissionPolicy(AdmissionPolicy value);
+
+        public abstract Builder orderTimeout(Duration value);
+
+        public abstract Builder clock(Clock value);
+
+        public abstract BatchOptions build();
+    }
+}
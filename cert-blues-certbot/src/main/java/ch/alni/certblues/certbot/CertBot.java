@@ -25,6 +25,7 @@
 
 package ch.alni.certblues.certbot;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -33,4 +34,13 @@ import reactor.core.publisher.Mono;
 public interface CertBot {
 
     Mono<String> submit(CertificateRequest certificateRequest);
+
+    /**
+     * Submits a batch of certificate requests. The failure of one order does not affect the other orders.
+     *
+     * @param certificateRequests the requests in the order of their priority
+     * @param options             how to process the batch
+     * @return flux over the results of all requests in the order of completion
+     */
+    Flux<CertificateResult> submitAll(Flux<CertificateRequest> certificateRequests, BatchOptions options);
 }
@@ -27,6 +27,8 @@ package ch.alni.certblues.certbot;
 
 import com.google.auto.value.AutoValue;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.time.Instant;
 
 /**
@@ -49,6 +51,13 @@ public abstract class CertificateInfo {
      */
     public abstract String certificateName();
 
+    /**
+     * The identifier of this certificate in the renewal information of the CA (RFC 9773). Null if unknown, the
+     * certificate is then renewed after the renewal interval.
+     */
+    @Nullable
+    public abstract String certificateId();
+
     @AutoValue.Builder
     public static abstract class Builder {
 
@@ -56,6 +65,8 @@ public abstract class CertificateInfo {
 
         public abstract Builder certificateName(String value);
 
+        public abstract Builder certificateId(String value);
+
         public abstract CertificateInfo build();
     }
 }
@@ -137,6 +137,13 @@ public abstract class CertificateRequest implements JsonTransform {
      */
     public abstract boolean forceRequestCreation();
 
+    /**
+     * The identifier of the certificate in the renewal information of the CA that the new certificate replaces, null
+     * if it does not replace any. It is not stored with the request, it is set for each renewal.
+     */
+    @Nullable
+    public abstract String replaces();
+
     public abstract Builder toBuilder();
 
     @AutoValue.Builder
@@ -178,6 +185,8 @@ public abstract class CertificateRequest implements JsonTransform {
         @JsonSetter
         public abstract Builder forceRequestCreation(boolean value);
 
+        public abstract Builder replaces(String value);
+
         public abstract CertificateRequest build();
     }
 }
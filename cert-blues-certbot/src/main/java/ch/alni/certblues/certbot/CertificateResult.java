@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The outcome of a single certificate request submitted as part of a batch.
+ */
+@AutoValue
+public abstract class CertificateResult {
+
+    public static CertificateResult issued(CertificateRequest certificateRequest, String certificate,
+                                           Instant startedOn, Duration duration) {
+        return new AutoValue_CertificateResult(certificateRequest, Status.ISSUED, certificate, null, null,
+                startedOn, duration, ImmutableMap.of());
+    }
+
+    public static CertificateResult failed(CertificateRequest certificateRequest, Throwable throwable,
+                                           Instant startedOn, Duration duration) {
+        final String failureReason = null != throwable.getMessage() ?
+                throwable.getMessage() : throwable.getClass().getName();
+
+        return new AutoValue_CertificateResult(certificateRequest, Status.FAILED, null, failureReason, null,
+                startedOn, duration, ImmutableMap.of());
+    }
+
+    public static CertificateResult deferred(CertificateRequest certificateRequest, DeferralReason deferralReason,
+                                             Instant checkedOn) {
+        return new AutoValue_CertificateResult(certificateRequest, Status.DEFERRED, null, null, deferralReason,
+                checkedOn, Duration.ZERO, ImmutableMap.of());
+    }
+
+    public abstract CertificateRequest certificateRequest();
+
+    public abstract Status status();
+
+    /**
+     * The issued certificate chain in PEM format. Null if the certificate has not been issued.
+     */
+    @Nullable
+    public abstract String certificate();
+
+    /**
+     * Why the order has failed. Null if the order has not failed.
+     */
+    @Nullable
+    public abstract String failureReason();
+
+    /**
+     * Why the request has not been submitted. Null if the request has not been deferred.
+     */
+    @Nullable
+    public abstract DeferralReason deferralReason();
+
+    /**
+     * When the order has been started, or when the request has been deferred.
+     */
+    public abstract Instant startedOn();
+
+    /**
+     * How long the order has taken.
+     */
+    public abstract Duration duration();
+
+    /**
+     * How long the order has spent in each of its states, keyed by the name of the state. Empty if the request has
+     * been deferred or the implementation does not track the states.
+     */
+    public abstract ImmutableMap<String, Duration> phaseDurations();
+
+    /**
+     * Returns a copy of this result with the given phase durations.
+     */
+    public CertificateResult withPhaseDurations(Map<String, Duration> phaseDurations) {
+        return new AutoValue_CertificateResult(certificateRequest(), status(), certificate(), failureReason(),
+                deferralReason(), startedOn(), duration(), ImmutableMap.copyOf(phaseDurations));
+    }
+
+    public enum Status {
+        ISSUED, FAILED, DEFERRED
+    }
+}
@@ -38,6 +38,16 @@ public interface CertificateStore {
      */
     Mono<byte[]> createCsr(CertificateRequest certificateRequest);
 
+    /**
+     * Discards the pending certificate sign request of the given request, after its order has failed. Does nothing
+     * if there is none.
+     *
+     * @return empty mono if completed
+     */
+    default Mono<Void> cancelCsr(CertificateRequest certificateRequest) {
+        return Mono.empty();
+    }
+
     /**
      * Uploads certificate in PEM format to this certificate store.
      *
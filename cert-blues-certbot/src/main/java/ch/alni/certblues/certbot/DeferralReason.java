@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot;
+
+/**
+ * Why a certificate request has not been submitted to the ACME server.
+ */
+public enum DeferralReason {
+
+    /**
+     * The order is not expected to complete before the end of the run.
+     */
+    DEADLINE,
+
+    /**
+     * The order would exceed one of the rate limits of the ACME server.
+     */
+    RATE_LIMIT,
+
+    /**
+     * None of the certificate authorities is available.
+     */
+    CA_UNAVAILABLE,
+
+    /**
+     * The application is shutting down, only the started orders are completed.
+     */
+    SHUTDOWN,
+
+    /**
+     * The request belongs to a shard that is not owned by this instance anymore, it is left to the instance that
+     * owns the shard now.
+     */
+    SHARD_NOT_OWNED
+}
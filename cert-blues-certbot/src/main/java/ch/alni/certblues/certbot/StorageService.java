@@ -40,6 +40,17 @@ public interface StorageService {
      */
     Mono<Void> reset(CertificateRequest certificateRequest);
 
+    /**
+     * Releases the request of the given result that has failed or has been deferred; the request stays pending and
+     * is picked up again by a later run.
+     *
+     * @param certificateResult the result of the request, not issued
+     * @return empty mono if completed
+     */
+    default Mono<Void> release(CertificateResult certificateResult) {
+        return Mono.empty();
+    }
+
     /**
      * Returns a flux over the pending certificate requests. The available certificate requests will be checked
      * against the given list of expiring certificates.
@@ -48,4 +59,12 @@ public interface StorageService {
      */
     Flux<CertificateRequest> getPendingCertificateRequests(List<CertificateInfo> expiringCertificates);
 
+    /**
+     * Returns the certificate request with the given name, pending or not.
+     *
+     * @param certificateName the name of the certificate
+     * @return the request or empty mono if there is none
+     */
+    Mono<CertificateRequest> getCertificateRequest(String certificateName);
+
 }
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ca;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import ch.alni.certblues.acme.protocol.AcmeClientException;
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import reactor.core.Exceptions;
+
+/**
+ * Tells the failures of the CA apart from the failures of the orders, for example a failed validation.
+ */
+public final class CaFailures {
+
+    // the errors that say nothing about the order but about the state of the CA
+    private static final Set<String> CA_ERROR_TYPES = Set.of(
+            "urn:ietf:params:acme:error:serverInternal",
+            "urn:ietf:params:acme:error:rateLimited",
+            "urn:ietf:params:acme:error:badNonce"
+    );
+
+    private CaFailures() {
+    }
+
+    /**
+     * Returns true if the given failure is caused by the CA being unavailable or overloaded, so that the order can be
+     * placed with another CA.
+     */
+    public static boolean isCaFailure(Throwable throwable) {
+        final Throwable failure = Exceptions.isRetryExhausted(throwable) && null != throwable.getCause() ?
+                throwable.getCause() : throwable;
+
+        if (failure instanceof AcmeServerException serverException) {
+            // without a problem document the response has not come from the ACME server itself
+            return null == serverException.getError() || CA_ERROR_TYPES.contains(serverException.getError().type());
+        }
+        return failure instanceof IOException || failure instanceof TimeoutException ||
+                failure instanceof AcmeClientException;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ca;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The health of a CA scored from the outcomes of its orders. The error rate and the order latency are moving averages
+ * that weight the recent orders most. A CA whose error rate or latency gets too high is taken out of the routing for a
+ * cool-down, after which a single probe order decides if it comes back; every failed probe doubles the cool-down.
+ */
+public class CaHealth {
+    private static final Logger LOG = getLogger(CaHealth.class);
+
+    // the weight of the newest outcome in the moving averages
+    private static final double ALPHA = 0.2;
+
+    // the averages are not trusted before this number of outcomes
+    private static final int MIN_OUTCOMES = 3;
+
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    // how many times slower than the best seen latency the orders can get
+    private static final double MAX_LATENCY_RATIO = 4.0;
+
+    private static final Duration INITIAL_COOL_DOWN = Duration.ofMinutes(1);
+    private static final Duration MAX_COOL_DOWN = Duration.ofMinutes(15);
+
+    private final String name;
+    private final Clock clock;
+
+    private State state = State.HEALTHY;
+    private double errorRate;
+    private int outcomes;
+    private double latencyMillis = Double.NaN;
+    private double baselineMillis = Double.NaN;
+    private int latencies;
+    private Instant unavailableUntil = Instant.MIN;
+    private Duration coolDown = INITIAL_COOL_DOWN;
+
+    public CaHealth(String name, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns true if an order can be sent to the CA now. If the cool-down of an unhealthy CA is over, the first call
+     * gets the permit for the probe order and the others are refused until the probe has ended.
+     */
+    public synchronized boolean tryAcquire() {
+        return switch (state) {
+            case HEALTHY -> true;
+            case PROBING -> false;
+            case UNAVAILABLE -> {
+                if (clock.instant().isBefore(unavailableUntil)) {
+                    yield false;
+                }
+                LOG.info("certificate authority {} is probed after a cool-down of {}", name, coolDown);
+                state = State.PROBING;
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Returns the permit that has not been used to send an order, so that the next call can probe the CA.
+     */
+    public synchronized void release() {
+        if (state == State.PROBING) {
+            state = State.UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Returns true if the CA is healthy or its cool-down is over.
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.HEALTHY || state == State.UNAVAILABLE && !clock.instant().isBefore(unavailableUntil);
+    }
+
+    /**
+     * Records an order the CA has handled, the order may have failed for reasons that are not the CA's fault.
+     *
+     * @param latency how long the order has taken, null if the order has not been issued
+     */
+    public synchronized void onSuccess(@Nullable Duration latency) {
+        errorRate = average(errorRate, 0.0);
+        outcomes++;
+
+        if (null != latency) {
+            latencyMillis = Double.isNaN(latencyMillis) ? latency.toMillis() : average(latencyMillis, latency.toMillis());
+            latencies++;
+            if (latencies >= MIN_OUTCOMES) {
+                baselineMillis = Double.isNaN(baselineMillis) ? latencyMillis : Math.min(baselineMillis, latencyMillis);
+            }
+        }
+
+        if (state == State.PROBING) {
+            LOG.info("certificate authority {} is healthy again", name);
+            state = State.HEALTHY;
+            coolDown = INITIAL_COOL_DOWN;
+            errorRate = 0.0;
+            outcomes = 0;
+            // the latency of the CA may have changed for good
+            latencyMillis = Double.NaN;
+            latencies = 0;
+        }
+        else if (state == State.HEALTHY && getLatencyRatio() > MAX_LATENCY_RATIO) {
+            markUnavailable("the orders take " + Math.round(getLatencyRatio()) + " times longer than usual");
+        }
+    }
+
+    /**
+     * Records an order that has failed because of the CA, for example an internal error or an unreachable server.
+     */
+    public synchronized void onFailure() {
+        errorRate = average(errorRate, 1.0);
+        outcomes++;
+
+        if (state == State.PROBING) {
+            coolDown = min(coolDown.multipliedBy(2), MAX_COOL_DOWN);
+            markUnavailable("the probe order has failed");
+        }
+        else if (state == State.HEALTHY && outcomes >= MIN_OUTCOMES && errorRate > MAX_ERROR_RATE) {
+            markUnavailable("the error rate is " + Math.round(errorRate * 100) + "%");
+        }
+    }
+
+    /**
+     * Returns the score of the CA between 0 and 1: the share of orders without errors, lowered by how much slower
+     * than usual the orders are. An unavailable CA has the score 0.
+     */
+    public synchronized double getScore() {
+        if (state != State.HEALTHY) {
+            return 0.0;
+        }
+        return (1.0 - errorRate) / Math.max(1.0, getLatencyRatio());
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private double getLatencyRatio() {
+        return Double.isNaN(baselineMillis) || Double.isNaN(latencyMillis) || baselineMillis <= 0 ?
+                1.0 : latencyMillis / baselineMillis;
+    }
+
+    private void markUnavailable(String reason) {
+        LOG.warn("certificate authority {} is unavailable for {}: {}", name, coolDown, reason);
+        state = State.UNAVAILABLE;
+        unavailableUntil = clock.instant().plus(coolDown);
+    }
+
+    private static double average(double average, double value) {
+        return ALPHA * value + (1.0 - ALPHA) * average;
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    public enum State {
+        /**
+         * The CA gets new orders.
+         */
+        HEALTHY,
+        /**
+         * The CA gets no new orders until its cool-down is over.
+         */
+        UNAVAILABLE,
+        /**
+         * A single order is sent to the CA to check if it is healthy again.
+         */
+        PROBING
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ca;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Set;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.pool.AcmeSessionPool;
+import ch.alni.certblues.certbot.pool.PooledAccount;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Routes the new orders to the first CA in the order of preference that is healthy and whose accounts can take the
+ * order. The health of each CA is published as the gauge {@value #HEALTH}, tagged by the name of the CA.
+ */
+public class CaRouter {
+    private static final Logger LOG = getLogger(CaRouter.class);
+
+    /**
+     * The health score of a CA between 0 and 1, see {@link CaHealth#getScore()}.
+     */
+    public static final String HEALTH = "certbot.ca.health";
+
+    private final List<RoutedAuthority> authorities;
+
+    /**
+     * Creates a new router over the given CAs in the order of preference.
+     */
+    public CaRouter(List<RoutedAuthority> authorities) {
+        if (authorities.isEmpty()) {
+            throw new IllegalArgumentException("at least one certificate authority is required");
+        }
+        this.authorities = List.copyOf(authorities);
+
+        this.authorities.forEach(authority -> Gauge.builder(HEALTH, authority.health(), CaHealth::getScore)
+                .tag("ca", authority.name())
+                .register(Metrics.globalRegistry));
+    }
+
+    /**
+     * Creates a router with a single CA.
+     */
+    public static CaRouter of(String name, AcmeSessionPool pool, Clock clock) {
+        return new CaRouter(List.of(new RoutedAuthority(name, pool, new CaHealth(name, clock))));
+    }
+
+    public List<RoutedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * Selects the CA and the account to place an order for the given request with, counting the request against the
+     * rate limits of the account.
+     *
+     * @param certificateRequest the request to place the order for
+     * @param excluded           the names of the CAs that have already failed the request
+     * @return the selected CA and account, or null if no CA is available or the request would exceed the rate limits
+     * of all accounts
+     */
+    @Nullable
+    public CaAssignment admit(CertificateRequest certificateRequest, Set<String> excluded) {
+        for (RoutedAuthority authority : authorities) {
+            if (excluded.contains(authority.name()) || !authority.health().tryAcquire()) {
+                continue;
+            }
+
+            final PooledAccount account = authority.pool().admit(certificateRequest);
+            if (null != account) {
+                return new CaAssignment(authority, account);
+            }
+            authority.health().release();
+        }
+        return null;
+    }
+
+    /**
+     * Selects the CA and the account to place an order for the given request with, without checking the rate limits.
+     * If no CA is available, the most preferred one that has not failed the request is selected.
+     *
+     * @return the selected CA and account, or null if all CAs have failed the request
+     */
+    @Nullable
+    public CaAssignment route(CertificateRequest certificateRequest, Set<String> excluded) {
+        RoutedAuthority fallback = null;
+        for (RoutedAuthority authority : authorities) {
+            if (excluded.contains(authority.name())) {
+                continue;
+            }
+            if (authority.health().tryAcquire()) {
+                return new CaAssignment(authority, authority.pool().route(certificateRequest));
+            }
+            if (null == fallback) {
+                fallback = authority;
+            }
+        }
+
+        if (null == fallback) {
+            return null;
+        }
+        LOG.info("no certificate authority is available, routing {} to {}", certificateRequest.certificateName(),
+                fallback.name());
+        return new CaAssignment(fallback, fallback.pool().route(certificateRequest));
+    }
+
+    /**
+     * Returns true if any of the CAs can get new orders now.
+     */
+    public boolean isAnyAvailable() {
+        return authorities.stream().anyMatch(authority -> authority.health().isAvailable());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ca;
+
+import java.util.List;
+
+/**
+ * The ACME servers in the order of preference. The new orders go to the first available one.
+ */
+public final class CertificateAuthorities {
+
+    private final List<CertificateAuthority> authorities;
+
+    private CertificateAuthorities(List<CertificateAuthority> authorities) {
+        if (authorities.isEmpty()) {
+            throw new IllegalArgumentException("at least one certificate authority is required");
+        }
+        this.authorities = List.copyOf(authorities);
+    }
+
+    public static CertificateAuthorities of(List<CertificateAuthority> authorities) {
+        return new CertificateAuthorities(authorities);
+    }
+
+    public static CertificateAuthorities of(CertificateAuthority... authorities) {
+        return new CertificateAuthorities(List.of(authorities));
+    }
+
+    public List<CertificateAuthority> getAll() {
+        return authorities;
+    }
+}
@@ -25,25 +25,58 @@
 
 package ch.alni.certblues.certbot.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.jws.ExternalAccountBinding;
+import ch.alni.certblues.certbot.ca.CertificateAuthorities;
+import ch.alni.certblues.certbot.ca.CertificateAuthority;
+import ch.alni.certblues.common.traffic.TrafficRecorder;
 import reactor.netty.http.client.HttpClient;
 
 @Configuration
-@EnableConfigurationProperties(LetsEncryptProperties.class)
+@EnableConfigurationProperties({LetsEncryptProperties.class, CertificateAuthorityProperties.class})
 public class CertBotConfiguration {
 
+    private static final String LETS_ENCRYPT = "lets-encrypt";
+
     private final LetsEncryptProperties letsEncryptProperties;
+    private final CertificateAuthorityProperties certificateAuthorityProperties;
 
-    public CertBotConfiguration(LetsEncryptProperties letsEncryptProperties) {
+    public CertBotConfiguration(LetsEncryptProperties letsEncryptProperties,
+                                CertificateAuthorityProperties certificateAuthorityProperties) {
         this.letsEncryptProperties = letsEncryptProperties;
+        this.certificateAuthorityProperties = certificateAuthorityProperties;
     }
 
     @Bean
-    public AcmeClient acmeClient(HttpClient httpClient) {
-        return new AcmeClient(httpClient, letsEncryptProperties.getDirectoryUrl());
+    public AcmeClient acmeClient(@Qualifier("acmeHttpClient") HttpClient httpClient,
+                                 ObjectProvider<TrafficRecorder> trafficRecorder) {
+        // the traffic is only recorded if a recorder is configured
+        return new AcmeClient(httpClient, letsEncryptProperties.getDirectoryUrl(), trafficRecorder.getIfAvailable());
+    }
+
+    /**
+     * Provides the ACME servers in the order of preference, only Let's Encrypt if no servers are configured.
+     */
+    @Bean
+    public CertificateAuthorities certificateAuthorities(AcmeClient acmeClient,
+                                                         @Qualifier("acmeHttpClient") HttpClient httpClient,
+                                                         ObjectProvider<TrafficRecorder> trafficRecorder) {
+        final var authorities = certificateAuthorityProperties.getCertificateAuthorities();
+        if (authorities.isEmpty()) {
+            return CertificateAuthorities.of(new CertificateAuthority(LETS_ENCRYPT, acmeClient, null));
+        }
+
+        return CertificateAuthorities.of(authorities.stream()
+                .map(authority -> new CertificateAuthority(authority.name(),
+                        new AcmeClient(httpClient, authority.directoryUrl(), trafficRecorder.getIfAvailable()),
+                        null != authority.eabKeyId() && null != authority.eabMacKey() ?
+                                new ExternalAccountBinding(authority.eabKeyId(), authority.eabMacKey()) : null))
+                .toList());
     }
 }
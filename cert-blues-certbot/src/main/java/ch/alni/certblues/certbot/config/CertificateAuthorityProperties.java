@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.config;
+
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * The ACME servers to order the certificates from, in the order of preference. Only the server of Let's Encrypt is
+ * used if none is configured.
+ */
+@ConfigurationProperties(prefix = "acme")
+public class CertificateAuthorityProperties {
+
+    private final List<AuthorityProperties> certificateAuthorities;
+
+    public CertificateAuthorityProperties(@DefaultValue List<AuthorityProperties> certificateAuthorities) {
+        this.certificateAuthorities = certificateAuthorities;
+    }
+
+    public List<AuthorityProperties> getCertificateAuthorities() {
+        return certificateAuthorities;
+    }
+
+    /**
+     * Properties of a single ACME server.
+     */
+    public record AuthorityProperties(String name, String directoryUrl, @Nullable String eabKeyId,
+                                      @Nullable String eabMacKey) {
+
+        /**
+         * The name of the CA used in the logs and the metrics, also part of the keys of its rate limit ledgers.
+         */
+        @Override
+        public String name() {
+            return name;
+        }
+
+        /**
+         * URL of the ACME directory of the CA.
+         */
+        @Override
+        public String directoryUrl() {
+            return directoryUrl;
+        }
+
+        /**
+         * The key identifier of the external account binding, null if the CA does not require it.
+         */
+        @Override
+        @Nullable
+        public String eabKeyId() {
+            return eabKeyId;
+        }
+
+        /**
+         * The base64url-encoded MAC key of the external account binding, null if the CA does not require it.
+         */
+        @Override
+        @Nullable
+        public String eabMacKey() {
+            return eabMacKey;
+        }
+    }
+}
@@ -25,20 +25,32 @@
 
 package ch.alni.certblues.certbot.impl;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 
+import java.time.Clock;
+
 import ch.alni.certblues.acme.facade.AcmeSession;
 import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
 import ch.alni.certblues.certbot.CertBot;
 import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.ca.CaRouter;
+import ch.alni.certblues.certbot.pool.AcmeSessionPool;
+import ch.alni.certblues.certbot.ratelimit.RateLimitLedger;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 @Component
-public class CertBotFactory {
+public class CertBotFactory implements DisposableBean {
+
+    private static final int MAX_STATE_MACHINE_THREADS = 4;
 
     private final CertificateStore certificateStore;
 
     private final AuthorizationProvisionerFactory provisionerFactory;
 
+    private final Scheduler stateMachineScheduler = newStateMachineScheduler();
+
     public CertBotFactory(CertificateStore certificateStore, AuthorizationProvisionerFactory provisionerFactory) {
         this.certificateStore = certificateStore;
         this.provisionerFactory = provisionerFactory;
@@ -48,6 +60,48 @@ public class CertBotFactory {
      * Creates a new cert bot with the given session against the ACME server.
      */
     public CertBot create(AcmeSession session) {
-        return new CertBotImpl(session, certificateStore, provisionerFactory);
+        return new CertBotImpl(session, certificateStore, provisionerFactory,
+                stateMachineScheduler, Schedulers.boundedElastic());
+    }
+
+    /**
+     * Creates a new cert bot with the given session that defers the certificate requests which would exceed the
+     * rate limits of the ACME server.
+     */
+    public CertBot create(AcmeSession session, RateLimitLedger rateLimitLedger) {
+        return new CertBotImpl(session, certificateStore, provisionerFactory,
+                stateMachineScheduler, Schedulers.boundedElastic(), CertBotImpl.DEFAULT_ORDER_CHECK_INTERVAL,
+                rateLimitLedger);
+    }
+
+    /**
+     * Creates a new cert bot that submits each certificate request with the account selected by the given pool.
+     */
+    public CertBot create(AcmeSessionPool pool) {
+        return create(CaRouter.of("default", pool, Clock.systemUTC()));
+    }
+
+    /**
+     * Creates a new cert bot that submits each certificate request with the CA and the account selected by the given
+     * router, and places the orders failed by a CA again with the next available CA.
+     */
+    public CertBot create(CaRouter router) {
+        return new PooledCertBot(router, account -> new CertBotImpl(account.session(), certificateStore,
+                provisionerFactory, stateMachineScheduler, Schedulers.boundedElastic(),
+                CertBotImpl.DEFAULT_ORDER_CHECK_INTERVAL, account.rateLimitLedger()));
+    }
+
+    @Override
+    public void destroy() {
+        stateMachineScheduler.dispose();
+    }
+
+    /**
+     * Creates the scheduler for the state transitions of the orders. The transitions do not block and are short, so
+     * a few threads are enough. The threads are marked as non-blocking.
+     */
+    static Scheduler newStateMachineScheduler() {
+        final int parallelism = Math.min(MAX_STATE_MACHINE_THREADS, Runtime.getRuntime().availableProcessors());
+        return Schedulers.newParallel("cert-bot-state", parallelism, true);
     }
 }
@@ -25,34 +25,46 @@
 
 package ch.alni.certblues.certbot.impl;
 
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.time.Duration;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import ch.alni.certblues.acme.client.request.CreatedResource;
 import ch.alni.certblues.acme.facade.AcmeSession;
 import ch.alni.certblues.acme.facade.AuthorizationProvisioningStrategy;
 import ch.alni.certblues.acme.protocol.Authorization;
+import ch.alni.certblues.acme.protocol.AuthorizationStatus;
 import ch.alni.certblues.acme.protocol.Challenge;
 import ch.alni.certblues.acme.protocol.Order;
 import ch.alni.certblues.acme.protocol.OrderFinalizationRequest;
 import ch.alni.certblues.acme.protocol.OrderRequest;
 import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
+import ch.alni.certblues.certbot.BatchOptions;
 import ch.alni.certblues.certbot.CertBot;
 import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
 import ch.alni.certblues.certbot.CertificateStore;
 import ch.alni.certblues.certbot.events.OrderCheckNeededEvent;
 import ch.alni.certblues.certbot.events.OrderCreatedEvent;
 import ch.alni.certblues.certbot.events.OrderReadyEvent;
 import ch.alni.certblues.certbot.events.OrderStateListener;
 import ch.alni.certblues.certbot.events.OrderValidEvent;
+import ch.alni.certblues.certbot.ratelimit.RateLimitLedger;
+import ch.alni.certblues.certbot.scheduling.Batches;
+import ch.alni.certblues.common.tracing.Tracing;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -61,15 +73,30 @@ class CertBotImpl implements CertBot {
 
     private static final Logger LOG = getLogger(CertBotImpl.class);
 
-    // a workaround around warnings in IntelliJ
-    private final Scheduler internal = Schedulers.immediate();
+    static final Duration DEFAULT_ORDER_CHECK_INTERVAL = Duration.ofSeconds(2L);
 
-    private final Map<CertificateRequest, OrderProcess> requests = new ConcurrentHashMap<>();
+    // the running orders, so that the same request submitted again while its order runs does not start another one
+    private final Map<CertificateRequest, StartedOrder> requests = new ConcurrentHashMap<>();
+
+    // the CSRs are created while the challenges are validated, and consumed when the orders are finalized
+    private final Map<CertificateRequest, CompletableFuture<byte[]>> csrs = new ConcurrentHashMap<>();
 
     private final AcmeSession session;
     private final CertificateStore certificateStore;
     private final AuthorizationProvisionerFactory provisionerFactory;
 
+    // the state transitions are short and must not run on the event loops of the HTTP clients
+    private final Scheduler stateMachineScheduler;
+    // the certificate store and the provisioners are pluggable and may block
+    private final Scheduler blockingScheduler;
+
+    // how long to wait before the status of a pending order is checked again
+    private final Duration orderCheckInterval;
+
+    // accounts for the rate limits of the ACME server, null if the limits are not accounted for
+    @Nullable
+    private final RateLimitLedger rateLimitLedger;
+
     private final OrderStateListener listener = new OrderStateListener() {
 
         @Override
@@ -78,20 +105,27 @@ class CertBotImpl implements CertBot {
             final var certificateRequest = process.getCertificateRequest();
             final var order = event.getOrder();
 
-            final var httpChallengeProvisioner = provisionerFactory.createHttpChallengeProvisioner(certificateRequest);
-            final var dnsChallengeProvisioner = provisionerFactory.createDnsChallengeProvisioner(certificateRequest);
-            final var strategy = AuthorizationProvisioningStrategy.of(
-                    httpChallengeProvisioner, dnsChallengeProvisioner
-            );
+            // the certificate store may take as long as the validation of the challenges, so it is not waited for
+            csrs.computeIfAbsent(certificateRequest, request -> startCsr(process));
+
+            // creating the provisioners may involve blocking calls of the SDK clients
+            final Mono<AuthorizationProvisioningStrategy> strategyMono = Mono.fromCallable(() ->
+                            AuthorizationProvisioningStrategy.of(
+                                    provisionerFactory.createHttpChallengeProvisioner(certificateRequest),
+                                    provisionerFactory.createDnsChallengeProvisioner(certificateRequest)
+                            ))
+                    .subscribeOn(blockingScheduler);
 
-            final Mono<List<Challenge>> authorizationMono = session.provision(order.authorizations(), strategy)
+            final Mono<List<Challenge>> authorizationMono = strategyMono
+                    .flatMapMany(strategy -> session.provision(order.authorizations(), strategy))
                     // submit the returned challenges
                     .flatMap(session::submitChallenge)
                     // and collect them as list
                     .collectList();
 
             authorizationMono
-                    .subscribeOn(internal)
+                    .publishOn(stateMachineScheduler)
+                    .contextWrite(Tracing.withContext(process.getTraceContext()))
                     .subscribe(
                             challenges -> process.onOrderProvisioned(),
                             throwable -> {
@@ -107,9 +141,13 @@ class CertBotImpl implements CertBot {
             final var process = event.getProcess();
 
             Mono.just(orderUrl)
-                    .delayElement(Duration.ofSeconds(2L))
+                    .delayElement(orderCheckInterval, stateMachineScheduler)
                     .flatMap(session::getOrderWithAuthorizations)
-                    .subscribeOn(internal)
+                    .flatMap(orderWithAuthorizations -> recordRateLimits(ledger -> ledger.onValidationFailed(
+                            process.getNewInvalidIdentifiers(getInvalidIdentifiers(orderWithAuthorizations.getT2()))
+                    )).thenReturn(orderWithAuthorizations))
+                    .publishOn(stateMachineScheduler)
+                    .contextWrite(Tracing.withContext(process.getTraceContext()))
                     .subscribe(process::onOrderChanged,
                             throwable -> {
                                 LOG.error("error while checking order status", throwable);
@@ -123,7 +161,10 @@ class CertBotImpl implements CertBot {
             final var finalizeUrl = event.getFinalizeUrl();
             final var certificateRequest = process.getCertificateRequest();
 
-            final var finalizationRequestMono = certificateStore.createCsr(certificateRequest)
+            // the CSR has been started when the order was created, unless the order was ready right away
+            final var csrFuture = csrs.computeIfAbsent(certificateRequest, request -> startCsr(process));
+
+            final var finalizationRequestMono = Mono.fromFuture(csrFuture)
                     .map(csr -> Base64.getUrlEncoder().withoutPadding().encodeToString(csr))
                     .map(encodedCsr -> OrderFinalizationRequest.builder().csr(encodedCsr).build());
 
@@ -132,7 +173,8 @@ class CertBotImpl implements CertBot {
                     .flatMap(order -> session.getOrderWithAuthorizations(event.getOrderUrl()));
 
             orderMono
-                    .subscribeOn(internal)
+                    .publishOn(stateMachineScheduler)
+                    .contextWrite(Tracing.withContext(process.getTraceContext()))
                     .subscribe(process::onOrderChanged,
                             throwable -> {
                                 LOG.error("error while finalizing order", throwable);
@@ -148,13 +190,17 @@ class CertBotImpl implements CertBot {
 
             // download the certificate and upload it to the certificate store
             final Mono<String> certMono = session.downloadCertificate(certificateUrl)
-                    .flatMap(s -> certificateStore
-                            .upload(certificateRequest.certificateName(), s)
+                    .flatMap(s -> recordRateLimits(ledger -> ledger.onCertificateIssued(certificateRequest))
+                            .thenReturn(s))
+                    .flatMap(s -> Mono.defer(() -> certificateStore.upload(certificateRequest.certificateName(), s))
+                            .subscribeOn(blockingScheduler)
+                            .transform(Tracing.traced("certificate store upload", SpanKind.INTERNAL, Attributes.empty()))
                             // return the downloaded certificate
                             .then(Mono.just(s)));
 
             certMono
-                    .subscribeOn(internal)
+                    .publishOn(stateMachineScheduler)
+                    .contextWrite(Tracing.withContext(process.getTraceContext()))
                     .subscribe(
                             process::onCertificateDownloaded,
                             throwable -> {
@@ -166,28 +212,191 @@ class CertBotImpl implements CertBot {
     };
 
     CertBotImpl(AcmeSession session, CertificateStore certificateStore,
-                AuthorizationProvisionerFactory provisionerFactory) {
+                AuthorizationProvisionerFactory provisionerFactory,
+                Scheduler stateMachineScheduler, Scheduler blockingScheduler) {
+        this(session, certificateStore, provisionerFactory, stateMachineScheduler, blockingScheduler,
+                DEFAULT_ORDER_CHECK_INTERVAL);
+    }
+
+    CertBotImpl(AcmeSession session, CertificateStore certificateStore,
+                AuthorizationProvisionerFactory provisionerFactory,
+                Scheduler stateMachineScheduler, Scheduler blockingScheduler, Duration orderCheckInterval) {
+        this(session, certificateStore, provisionerFactory, stateMachineScheduler, blockingScheduler,
+                orderCheckInterval, null);
+    }
+
+    CertBotImpl(AcmeSession session, CertificateStore certificateStore,
+                AuthorizationProvisionerFactory provisionerFactory,
+                Scheduler stateMachineScheduler, Scheduler blockingScheduler, Duration orderCheckInterval,
+                @Nullable RateLimitLedger rateLimitLedger) {
         this.session = session;
         this.certificateStore = certificateStore;
         this.provisionerFactory = provisionerFactory;
+        this.stateMachineScheduler = stateMachineScheduler;
+        this.blockingScheduler = blockingScheduler;
+        this.orderCheckInterval = orderCheckInterval;
+        this.rateLimitLedger = rateLimitLedger;
+    }
+
+    private static List<String> getInvalidIdentifiers(List<Authorization> authorizations) {
+        return authorizations.stream()
+                .filter(authorization -> authorization.status() == AuthorizationStatus.INVALID)
+                .map(authorization -> authorization.identifier().value())
+                .toList();
     }
 
     @Override
     public Mono<String> submit(CertificateRequest certificateRequest) {
+        return start(certificateRequest).certificate();
+    }
+
+    /**
+     * Returns the running order of the given request, or starts a new order. The order is forgotten when it ends, so
+     * that the request submitted again afterwards is ordered again.
+     */
+    StartedOrder start(CertificateRequest certificateRequest) {
         LOG.info("submitting a new certificate request {}", certificateRequest);
 
-        final OrderProcess orderProcess = requests.computeIfAbsent(certificateRequest, this::create);
-        return orderProcess.getCertificate();
+        // the order is only run once it is in the map, since ending it right away removes it from the map again
+        final StartedOrder[] created = new StartedOrder[1];
+        final StartedOrder startedOrder = requests.computeIfAbsent(certificateRequest,
+                request -> created[0] = create(request));
+        if (startedOrder == created[0]) {
+            run(startedOrder);
+        }
+        return startedOrder;
     }
 
-    private OrderProcess create(CertificateRequest certificateRequest) {
+    @Override
+    public Flux<CertificateResult> submitAll(Flux<CertificateRequest> certificateRequests, BatchOptions options) {
+        // the processes of the submitted requests until their results are reported
+        final Map<CertificateRequest, OrderProcess> submitted = new ConcurrentHashMap<>();
+        final Function<CertificateRequest, Mono<String>> submitter = certificateRequest -> {
+            final StartedOrder startedOrder = start(certificateRequest);
+            submitted.put(certificateRequest, startedOrder.process());
+            return startedOrder.certificate();
+        };
+
+        if (null == rateLimitLedger) {
+            return Batches.submitAll(certificateRequests, options, submitter)
+                    .map(result -> withPhaseDurations(result, submitted.remove(result.certificateRequest())));
+        }
+
+        // the ledger is asked last, so that it only counts the requests admitted by the other policies
+        final BatchOptions batchOptions = options.toBuilder()
+                .admissionPolicy(options.admissionPolicy().and(rateLimitLedger))
+                .build();
+
+        return Batches.submitAll(certificateRequests, batchOptions, submitter)
+                .doOnNext(result -> rateLimitLedger.release(result.certificateRequest()))
+                .map(result -> withPhaseDurations(result, submitted.remove(result.certificateRequest())));
+    }
+
+    private Mono<Void> recordRateLimits(Function<RateLimitLedger, Mono<Void>> recording) {
+        return null == rateLimitLedger ? Mono.empty() : recording.apply(rateLimitLedger);
+    }
+
+    /**
+     * Adds the time spent in each state by the given process to the result of its order. The result is returned as
+     * is if no order has been started for it.
+     */
+    static CertificateResult withPhaseDurations(CertificateResult result, @Nullable OrderProcess orderProcess) {
+        if (null == orderProcess) {
+            return result;
+        }
+
+        final Map<String, Duration> phaseDurations = new LinkedHashMap<>();
+        orderProcess.getPhaseDurations().forEach((state, duration) -> phaseDurations.put(state.name(), duration));
+        return result.withPhaseDurations(phaseDurations);
+    }
+
+    /**
+     * Starts creating the CSR for the order of the given process. A failure of the certificate store fails the order
+     * right away rather than when it is ready to be finalized.
+     */
+    private CompletableFuture<byte[]> startCsr(OrderProcess process) {
+        final CompletableFuture<byte[]> csrFuture = Mono.defer(() -> certificateStore.createCsr(
+                        process.getCertificateRequest()))
+                .subscribeOn(blockingScheduler)
+                .transform(Tracing.traced("certificate store createCsr", SpanKind.INTERNAL, Attributes.empty()))
+                .contextWrite(Tracing.withContext(process.getTraceContext()))
+                .toFuture();
+
+        csrFuture.whenComplete((csr, throwable) -> {
+            if (null != throwable) {
+                LOG.error("CSR for the certificate order {} cannot be created", process.getCertificateRequest());
+                process.fail(throwable);
+            }
+        });
+        return csrFuture;
+    }
+
+    /**
+     * Releases the CSR of the given order once it has ended, and then forgets the order.
+     */
+    private Mono<Void> end(OrderProcess orderProcess, boolean failed) {
+        final CertificateRequest certificateRequest = orderProcess.getCertificateRequest();
+        return endCsr(certificateRequest, failed)
+                .then(Mono.fromRunnable(() -> requests.computeIfPresent(certificateRequest,
+                        (request, startedOrder) -> startedOrder.process() == orderProcess ? null : startedOrder)));
+    }
+
+    /**
+     * Releases the CSR of the given request once its order has ended. If the order has failed, the pending CSR is
+     * discarded by the certificate store once its creation has completed or failed, since a creation still running
+     * could otherwise leave a pending CSR behind after it has been discarded.
+     *
+     * @return mono that completes when the pending CSR has been discarded
+     */
+    private Mono<Void> endCsr(CertificateRequest certificateRequest, boolean failed) {
+        final CompletableFuture<byte[]> csrFuture = csrs.remove(certificateRequest);
+        if (null == csrFuture || !failed) {
+            return Mono.empty();
+        }
+
+        return Mono.fromFuture(csrFuture, true)
+                .onErrorResume(throwable -> Mono.empty())
+                .then(Mono.defer(() -> certificateStore.cancelCsr(certificateRequest)))
+                .subscribeOn(blockingScheduler)
+                .onErrorResume(throwable -> {
+                    LOG.warn("CSR of the failed certificate order {} cannot be cancelled", certificateRequest,
+                            throwable);
+                    return Mono.empty();
+                });
+    }
+
+    private StartedOrder create(CertificateRequest certificateRequest) {
         final OrderProcess orderProcess = new OrderProcess(certificateRequest, listener);
 
+        // the failure is only reported once the CSR has been discarded, so that the request can be placed again right
+        // away, also with another CA, without the cancellation discarding the CSR of the next order
+        final Mono<String> certificateMono = orderProcess.getCertificate()
+                .flatMap(certificate -> end(orderProcess, false).thenReturn(certificate))
+                .onErrorResume(throwable -> end(orderProcess, true).then(Mono.error(throwable)))
+                .cache();
+
+        return new StartedOrder(orderProcess, certificateMono);
+    }
+
+    /**
+     * Creates the ACME order of the given started order.
+     */
+    private void run(StartedOrder startedOrder) {
+        final OrderProcess orderProcess = startedOrder.process();
+        final CertificateRequest certificateRequest = orderProcess.getCertificateRequest();
+
+        // the order ends even if no one waits for its certificate anymore
+        startedOrder.certificate().subscribe(null, throwable -> LOG.debug("certificate order {} has ended with {}",
+                certificateRequest, throwable.toString()));
+
         final OrderRequest orderRequest = OrderRequests.toOrderRequest(certificateRequest);
-        final Mono<CreatedResource<Order>> orderResourceMono = session.createOrder(orderRequest);
+        final Mono<CreatedResource<Order>> orderResourceMono = session.createOrder(orderRequest)
+                .flatMap(order -> recordRateLimits(ledger -> ledger.onOrderCreated(certificateRequest))
+                        .thenReturn(order));
 
         orderResourceMono
-                .subscribeOn(internal)
+                .publishOn(stateMachineScheduler)
+                .contextWrite(Tracing.withContext(orderProcess.getTraceContext()))
                 .subscribe(
                         order -> orderProcess.onOrderCreated(order.getResource(), order.getResourceUrl()),
                         throwable -> {
@@ -195,7 +404,15 @@ class CertBotImpl implements CertBot {
                             orderProcess.fail(throwable);
                         }
                 );
+    }
 
-        return orderProcess;
+    /**
+     * Order started by this certbot.
+     *
+     * @param process     the state machine of the order
+     * @param certificate the certificate issued by the order, a failure is only reported once the CSR of the order has
+     *                    been discarded
+     */
+    record StartedOrder(OrderProcess process, Mono<String> certificate) {
     }
 }
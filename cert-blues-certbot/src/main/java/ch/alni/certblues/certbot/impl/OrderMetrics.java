@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers of the order processes, registered in the global registry of Micrometer.
+ */
+final class OrderMetrics {
+
+    /**
+     * The time an order has spent in a state, tagged by the state and the state the order has moved to.
+     */
+    static final String PHASES = "certbot.order.phases";
+
+    /**
+     * The time from the submission of an order until it has been issued or has failed, tagged by the outcome.
+     */
+    static final String ORDERS = "certbot.orders";
+
+    private OrderMetrics() {
+    }
+
+    static void recordPhase(OrderState state, OrderState next, Duration duration) {
+        Timer.builder(PHASES)
+                .tag("phase", toTagValue(state))
+                .tag("next", toTagValue(next))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(duration);
+    }
+
+    static void recordOrder(OrderState outcome, Duration duration) {
+        Timer.builder(ORDERS)
+                .tag("outcome", toTagValue(outcome))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(duration);
+    }
+
+    private static String toTagValue(OrderState state) {
+        return state.name().toLowerCase(Locale.ROOT);
+    }
+}
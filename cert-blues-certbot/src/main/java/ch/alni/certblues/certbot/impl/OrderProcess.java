@@ -25,11 +25,19 @@
 
 package ch.alni.certblues.certbot.impl;
 
-import com.google.common.base.Preconditions;
-
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.alni.certblues.acme.protocol.Authorization;
 import ch.alni.certblues.acme.protocol.Order;
@@ -41,14 +49,19 @@ import ch.alni.certblues.certbot.events.OrderReadyEvent;
 import ch.alni.certblues.certbot.events.OrderStateEvent;
 import ch.alni.certblues.certbot.events.OrderStateListener;
 import ch.alni.certblues.certbot.events.OrderValidEvent;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
 import reactor.util.function.Tuple2;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * The process of ordering a certificate.
+ * The process of ordering a certificate. The inputs of the process can come from any thread; they are put into a
+ * queue and applied one by one by the thread that finds the queue idle, so that the transitions never overlap and
+ * never run nested in each other. The allowed transitions are defined by {@link OrderState}.
  */
 public class OrderProcess {
     private static final Logger LOG = getLogger(OrderProcess.class);
@@ -56,17 +69,48 @@ public class OrderProcess {
     private final Sinks.One<String> subject = Sinks.one();
     private final Mono<String> certificateMono = subject.asMono().cache();
 
+    private final Queue<Transition> transitions = Queues.<Transition>unboundedMultiproducer().get();
+    private final AtomicInteger wip = new AtomicInteger();
+
     private final OrderStateListener listener;
     private final CertificateRequest certificateRequest;
+    private final Clock clock;
+
+    // the span of the whole order, the spans of the requests made on behalf of the order are its children
+    private final Span span;
+    private final Context traceContext;
+
+    // the fields below are only accessed by the draining thread, except the volatile ones
+    private final Map<OrderState, Instant> enteredOn = new EnumMap<>(OrderState.class);
+    private final Map<OrderState, Duration> timeSpent = new EnumMap<>(OrderState.class);
 
+    // an invalid authorization is seen by every check of the order until the order becomes invalid
+    private final Set<String> countedInvalidIdentifiers = ConcurrentHashMap.newKeySet();
+
+    private volatile OrderState state = OrderState.CREATING;
+    private volatile Map<OrderState, Instant> stateTimestamps;
+    private volatile Map<OrderState, Duration> phaseDurations = Map.of();
+
+    private Instant stateEnteredOn;
     private String orderUrl;
 
     /**
      * Create a new certificate ordering process.
      */
     OrderProcess(CertificateRequest certificateRequest, OrderStateListener listener) {
+        this(certificateRequest, listener, Clock.systemUTC());
+    }
+
+    OrderProcess(CertificateRequest certificateRequest, OrderStateListener listener, Clock clock) {
         this.listener = listener;
         this.certificateRequest = certificateRequest;
+        this.clock = clock;
+        this.span = OrderTracing.startOrder(certificateRequest);
+        this.traceContext = Context.root().with(span);
+
+        this.stateEnteredOn = clock.instant();
+        this.enteredOn.put(OrderState.CREATING, stateEnteredOn);
+        this.stateTimestamps = Map.copyOf(enteredOn);
     }
 
     /**
@@ -80,86 +124,198 @@ public class OrderProcess {
         return certificateRequest;
     }
 
-    public synchronized void onOrderCreated(Order order, String orderUrl) {
-        this.orderUrl = orderUrl;
-
-        switch (order.status()) {
-            case PENDING:
-                LOG.info("certificate order created {}, order URL {}", order, orderUrl);
-                publish(new OrderCreatedEvent(this, order));
-                break;
-            case INVALID:
-                LOG.info("error while creating the order {}", order);
-                subject.tryEmitError(new CertBotException("order creation error: " + order.error()));
-                break;
-            case PROCESSING:
-                LOG.info("waiting for certificate issue with the order {}", order);
-                publish(new OrderCheckNeededEvent(this, orderUrl));
-                break;
-            case READY:
-                LOG.info("all authorizations are valid for {}", order);
-                publish(new OrderReadyEvent(this, order.finalizeUrl(), orderUrl));
-                break;
-            case VALID:
-                LOG.info("certificate issued and is ready for download for {}", order);
-                publish(new OrderValidEvent(this, order.certificate()));
-                break;
-            default:
-                throw new IllegalArgumentException("unknown status " + order.status());
-        }
+    /**
+     * Returns the trace context of this process, so that the requests made on behalf of the order can be traced as
+     * a part of it.
+     */
+    public Context getTraceContext() {
+        return traceContext;
     }
 
-    public synchronized void onOrderProvisioned() {
-        Preconditions.checkNotNull(orderUrl, "order URL is not known");
+    public OrderState getState() {
+        return state;
+    }
 
-        LOG.info("order provisioned and submitted for URL {}", orderUrl);
-        publish(new OrderCheckNeededEvent(this, orderUrl));
+    /**
+     * Returns when the process has entered each state for the first time.
+     */
+    public Map<OrderState, Instant> getStateTimestamps() {
+        return stateTimestamps;
     }
 
-    public synchronized void onOrderChanged(Tuple2<Order, List<Authorization>> orderWithAuthorizations) {
-        Preconditions.checkNotNull(orderUrl, "order URL is not known");
+    /**
+     * Returns how long the process has spent in each of the states it has left.
+     */
+    public Map<OrderState, Duration> getPhaseDurations() {
+        return phaseDurations;
+    }
+
+    public void onOrderCreated(Order order, String orderUrl) {
+        final OrderState target = OrderState.onOrderCreated(order.status());
+        if (target == OrderState.FAILED) {
+            LOG.info("error while creating the order {}", order);
+        }
+
+        enqueue(new Transition(target, order, orderUrl, null,
+                target == OrderState.FAILED ? new CertBotException("order creation error: " + order.error()) : null));
+    }
 
+    public void onOrderProvisioned() {
+        enqueue(new Transition(OrderState.WAITING, null, null, null, null));
+    }
+
+    public void onOrderChanged(Tuple2<Order, List<Authorization>> orderWithAuthorizations) {
         final Order order = orderWithAuthorizations.getT1();
         final List<Authorization> authorizations = orderWithAuthorizations.getT2();
 
-        switch (order.status()) {
-            case PENDING:
-                LOG.info("order is processing {}", order);
-                publish(new OrderCheckNeededEvent(this, orderUrl));
-                break;
-            case INVALID:
-                LOG.error("error while processing the order {}\nAuthorizations: {}", order, authorizations);
-                subject.tryEmitError(new CertBotException("order processing error: " + order.error()));
-                break;
-            case PROCESSING:
-                LOG.info("waiting for certificate issue with the order {}", order);
-                publish(new OrderCheckNeededEvent(this, orderUrl));
-                break;
-            case READY:
-                LOG.info("all authorizations are valid for {}", order);
-                publish(new OrderReadyEvent(this, order.finalizeUrl(), orderUrl));
-                break;
-            case VALID:
-                LOG.info("certificate is issued and ready for download for {}", order);
-                publish(new OrderValidEvent(this, order.certificate()));
-                break;
-            default:
-                throw new IllegalArgumentException("unknown status " + order.status());
+        final OrderState target = OrderState.onOrderChanged(order.status());
+        if (target == OrderState.FAILED) {
+            LOG.error("error while processing the order {}\nAuthorizations: {}", order, authorizations);
         }
+
+        enqueue(new Transition(target, order, null, null,
+                target == OrderState.FAILED ? new CertBotException("order processing error: " + order.error()) : null));
     }
 
-    public synchronized void onCertificateDownloaded(String certificate) {
-        Preconditions.checkNotNull(orderUrl, "order URL is not known");
+    public void onCertificateDownloaded(String certificate) {
+        enqueue(new Transition(OrderState.ISSUED, null, null, certificate, null));
+    }
 
-        LOG.info("certificate has been issued for order with URL {}", orderUrl);
-        subject.tryEmitValue(certificate);
+    /**
+     * Returns those of the given identifiers with invalid authorizations that have not been returned before, so that
+     * each failed validation is counted once against the rate limits.
+     */
+    List<String> getNewInvalidIdentifiers(List<String> invalidIdentifiers) {
+        return invalidIdentifiers.stream()
+                .filter(countedInvalidIdentifiers::add)
+                .toList();
     }
 
     void publish(OrderStateEvent event) {
         event.accept(listener);
     }
 
-    synchronized void fail(Throwable throwable) {
-        subject.tryEmitError(throwable);
+    void fail(Throwable throwable) {
+        enqueue(new Transition(OrderState.FAILED, null, null, null, throwable));
+    }
+
+    private void enqueue(Transition transition) {
+        transitions.offer(transition);
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            // another thread is draining and will pick up the transition
+            return;
+        }
+
+        int missed = 1;
+        do {
+            Transition transition;
+            while ((transition = transitions.poll()) != null) {
+                apply(transition);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void apply(Transition transition) {
+        final OrderState current = state;
+        final OrderState target = transition.target;
+
+        if (current.isTerminal()) {
+            LOG.debug("order {} has already ended with {}, ignoring transition to {}",
+                    certificateRequest.certificateName(), current, target);
+            return;
+        }
+
+        if (!current.canMoveTo(target)) {
+            LOG.error("order {} cannot move from {} to {}", certificateRequest.certificateName(), current, target);
+            apply(new Transition(OrderState.FAILED, null, null, null,
+                    new IllegalStateException("order cannot move from " + current + " to " + target)));
+            return;
+        }
+
+        if (null != transition.orderUrl) {
+            orderUrl = transition.orderUrl;
+            span.setAttribute(OrderTracing.ORDER_URL, orderUrl);
+        }
+
+        enter(target);
+
+        switch (target) {
+            case PROVISIONING -> {
+                LOG.info("certificate order created {}, order URL {}", transition.order, orderUrl);
+                publish(new OrderCreatedEvent(this, transition.order));
+            }
+            case WAITING -> {
+                LOG.info("waiting for the order with URL {}", orderUrl);
+                publish(new OrderCheckNeededEvent(this, orderUrl));
+            }
+            case FINALIZING -> {
+                LOG.info("all authorizations are valid for {}", transition.order);
+                publish(new OrderReadyEvent(this, transition.order.finalizeUrl(), orderUrl));
+            }
+            case DOWNLOADING -> {
+                LOG.info("certificate is issued and ready for download for {}", transition.order);
+                publish(new OrderValidEvent(this, transition.order.certificate()));
+            }
+            case ISSUED -> {
+                LOG.info("certificate has been issued for order with URL {} in {}", orderUrl, phaseDurations);
+                OrderTracing.endOrder(span, target, null);
+                subject.tryEmitValue(transition.certificate);
+            }
+            case FAILED -> {
+                LOG.info("order with URL {} has failed after {}", orderUrl, phaseDurations);
+                OrderTracing.endOrder(span, target, transition.error);
+                subject.tryEmitError(transition.error);
+            }
+            default -> throw new IllegalArgumentException("unexpected state " + target);
+        }
+    }
+
+    private void enter(OrderState target) {
+        final Instant now = clock.instant();
+
+        final Duration spent = Duration.between(stateEnteredOn, now);
+        timeSpent.merge(state, spent, Duration::plus);
+        enteredOn.putIfAbsent(target, now);
+
+        OrderMetrics.recordPhase(state, target, spent);
+        OrderTracing.recordPhase(span, target);
+        if (target.isTerminal()) {
+            OrderMetrics.recordOrder(target, Duration.between(enteredOn.get(OrderState.CREATING), now));
+        }
+
+        stateEnteredOn = now;
+        state = target;
+
+        stateTimestamps = Map.copyOf(enteredOn);
+        phaseDurations = Map.copyOf(timeSpent);
+    }
+
+    /**
+     * An input of the process together with the state it leads to.
+     */
+    private static final class Transition {
+        private final OrderState target;
+        @Nullable
+        private final Order order;
+        @Nullable
+        private final String orderUrl;
+        @Nullable
+        private final String certificate;
+        @Nullable
+        private final Throwable error;
+
+        private Transition(OrderState target, @Nullable Order order, @Nullable String orderUrl,
+                           @Nullable String certificate, @Nullable Throwable error) {
+            this.target = target;
+            this.order = order;
+            this.orderUrl = orderUrl;
+            this.certificate = certificate;
+            this.error = error;
+        }
     }
 }
@@ -41,6 +41,7 @@ final class OrderRequests {
                 .identifiers(request.dnsNames().stream()
                         .map(dnsName -> Identifier.builder().type("dns").value(dnsName).build())
                         .collect(Collectors.toList()))
+                .replaces(request.replaces())
                 .build();
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import ch.alni.certblues.acme.protocol.OrderStatus;
+
+/**
+ * States of the process of ordering a certificate.
+ */
+public enum OrderState {
+
+    /**
+     * The order is being created on the ACME server.
+     */
+    CREATING,
+
+    /**
+     * The challenges of the authorizations are being provisioned and submitted.
+     */
+    PROVISIONING,
+
+    /**
+     * The ACME server is validating the authorizations or issuing the certificate.
+     */
+    WAITING,
+
+    /**
+     * The CSR is being created and submitted to the ACME server.
+     */
+    FINALIZING,
+
+    /**
+     * The certificate is being downloaded and uploaded to the certificate store.
+     */
+    DOWNLOADING,
+
+    /**
+     * The certificate has been issued.
+     */
+    ISSUED,
+
+    /**
+     * The order has failed.
+     */
+    FAILED;
+
+    private static final Map<OrderState, Set<OrderState>> TRANSITIONS = new EnumMap<>(Map.of(
+            CREATING, EnumSet.of(PROVISIONING, WAITING, FINALIZING, DOWNLOADING, FAILED),
+            PROVISIONING, EnumSet.of(WAITING, FAILED),
+            WAITING, EnumSet.of(WAITING, FINALIZING, DOWNLOADING, FAILED),
+            FINALIZING, EnumSet.of(WAITING, FINALIZING, DOWNLOADING, FAILED),
+            DOWNLOADING, EnumSet.of(ISSUED, FAILED),
+            ISSUED, EnumSet.noneOf(OrderState.class),
+            FAILED, EnumSet.noneOf(OrderState.class)
+    ));
+
+    // the state to move to when the order has been created with the given status
+    private static final Map<OrderStatus, OrderState> ON_ORDER_CREATED = new EnumMap<>(Map.of(
+            OrderStatus.PENDING, PROVISIONING,
+            OrderStatus.PROCESSING, WAITING,
+            OrderStatus.READY, FINALIZING,
+            OrderStatus.VALID, DOWNLOADING,
+            OrderStatus.INVALID, FAILED
+    ));
+
+    // the state to move to when the order has been checked and has the given status
+    private static final Map<OrderStatus, OrderState> ON_ORDER_CHANGED = new EnumMap<>(Map.of(
+            OrderStatus.PENDING, WAITING,
+            OrderStatus.PROCESSING, WAITING,
+            OrderStatus.READY, FINALIZING,
+            OrderStatus.VALID, DOWNLOADING,
+            OrderStatus.INVALID, FAILED
+    ));
+
+    static OrderState onOrderCreated(OrderStatus status) {
+        return ON_ORDER_CREATED.get(status);
+    }
+
+    static OrderState onOrderChanged(OrderStatus status) {
+        return ON_ORDER_CHANGED.get(status);
+    }
+
+    /**
+     * Returns true if the process can move from this state to the given one.
+     */
+    public boolean canMoveTo(OrderState state) {
+        return TRANSITIONS.get(this).contains(state);
+    }
+
+    /**
+     * Returns true if the process cannot leave this state anymore.
+     */
+    public boolean isTerminal() {
+        return TRANSITIONS.get(this).isEmpty();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.common.tracing.Tracing;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+
+/**
+ * Spans of the order processes. Each certificate request gets its own trace; the spans of the ACME requests, the
+ * signatures and the calls of the certificate store become children of the span of the order.
+ */
+final class OrderTracing {
+
+    static final AttributeKey<String> CERTIFICATE_NAME = AttributeKey.stringKey("certblues.certificate.name");
+    static final AttributeKey<String> ORDER_URL = AttributeKey.stringKey("acme.order.url");
+    static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("certblues.order.outcome");
+
+    private OrderTracing() {
+    }
+
+    static Span startOrder(CertificateRequest certificateRequest) {
+        return Tracing.getTracer().spanBuilder("certificate order")
+                .setNoParent()
+                .setSpanKind(SpanKind.INTERNAL)
+                .setAttribute(CERTIFICATE_NAME, certificateRequest.certificateName())
+                .setAttribute(AttributeKey.stringArrayKey("certblues.dns.names"), certificateRequest.dnsNames())
+                .startSpan();
+    }
+
+    /**
+     * Marks the moment the order has entered the given state.
+     */
+    static void recordPhase(Span span, OrderState state) {
+        span.addEvent(toValue(state));
+    }
+
+    static void endOrder(Span span, OrderState outcome, @Nullable Throwable error) {
+        span.setAttribute(OUTCOME, toValue(outcome));
+        if (null != error) {
+            Tracing.end(span, error);
+        }
+        else {
+            span.end();
+        }
+    }
+
+    private static String toValue(OrderState state) {
+        return state.name().toLowerCase(Locale.ROOT);
+    }
+}
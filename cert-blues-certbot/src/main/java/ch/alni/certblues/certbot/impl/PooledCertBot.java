@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.AdmissionPolicy;
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertBot;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.ca.CaAssignment;
+import ch.alni.certblues.certbot.ca.CaFailures;
+import ch.alni.certblues.certbot.ca.CaHealth;
+import ch.alni.certblues.certbot.ca.CaRouter;
+import ch.alni.certblues.certbot.pool.PooledAccount;
+import ch.alni.certblues.certbot.scheduling.Batches;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Submits each certificate request with the CA and the account selected by the {@link CaRouter}. Every account has its
+ * own {@link CertBotImpl}, which records the events of its orders in the rate limit ledger of the account. An order
+ * that fails because of the CA is placed again with the next available CA.
+ */
+class PooledCertBot implements CertBot {
+    private static final Logger LOG = getLogger(PooledCertBot.class);
+
+    /**
+     * The orders placed again with another CA, tagged by the name of the CA that has failed them.
+     */
+    static final String FAILOVERS = "certbot.ca.failovers";
+
+    private final CaRouter router;
+
+    // the bots of all accounts of all CAs
+    private final Map<PooledAccount, CertBotImpl> certBots = new ConcurrentHashMap<>();
+
+    // the CAs and accounts selected for the admitted requests, until their results are reported
+    private final Map<CertificateRequest, CaAssignment> assignments = new ConcurrentHashMap<>();
+
+    // the processes of the last orders of the admitted requests, until their results are reported
+    private final Map<CertificateRequest, OrderProcess> processes = new ConcurrentHashMap<>();
+
+    PooledCertBot(CaRouter router, Function<PooledAccount, CertBotImpl> certBotFactory) {
+        this.router = router;
+        router.getAuthorities().forEach(authority -> authority.pool().getAccounts()
+                .forEach(account -> certBots.put(account, certBotFactory.apply(account))));
+    }
+
+    @Override
+    public Mono<String> submit(CertificateRequest certificateRequest) {
+        // the requests submitted one by one are not admitted by the router, they go to their preferred account
+        final CaAssignment assigned = assignments.get(certificateRequest);
+        if (null != assigned) {
+            return submit(certificateRequest, assigned, Set.of(), true);
+        }
+
+        final CaAssignment routed = router.route(certificateRequest, Set.of());
+        if (null == routed) {
+            return Mono.error(new IllegalStateException("no certificate authority to submit the request to"));
+        }
+        return submit(certificateRequest, routed, Set.of(), false);
+    }
+
+    @Override
+    public Flux<CertificateResult> submitAll(Flux<CertificateRequest> certificateRequests, BatchOptions options) {
+        // the router is asked last, so that it only counts the requests admitted by the other policies
+        final AdmissionPolicy routing = certificateRequest -> {
+            final CaAssignment assignment = router.admit(certificateRequest, Set.of());
+            if (null == assignment) {
+                return router.isAnyAvailable() ? DeferralReason.RATE_LIMIT : DeferralReason.CA_UNAVAILABLE;
+            }
+            assignments.put(certificateRequest, assignment);
+            return null;
+        };
+
+        final BatchOptions batchOptions = options.toBuilder()
+                .admissionPolicy(options.admissionPolicy().and(routing))
+                .build();
+
+        return Batches.submitAll(certificateRequests, batchOptions, this::submit)
+                .map(this::onResult)
+                .doOnComplete(() -> router.getAuthorities().forEach(authority ->
+                        LOG.info("certificate authority {}: {}, new orders left per account: {}", authority.name(),
+                                authority.health().getState(), authority.pool().getOrderHeadroom())));
+    }
+
+    private Mono<String> submit(CertificateRequest certificateRequest, CaAssignment assignment, Set<String> failed,
+                                boolean admitted) {
+        final CaHealth health = assignment.authority().health();
+        final long startedOn = System.nanoTime();
+
+        final CertBotImpl.StartedOrder startedOrder = certBots.get(assignment.account()).start(certificateRequest);
+        if (admitted) {
+            processes.put(certificateRequest, startedOrder.process());
+        }
+
+        // a failed order has discarded its CSR already, so it is safe to place the request with another CA
+        return startedOrder.certificate()
+                .doOnNext(certificate -> health.onSuccess(Duration.ofNanos(System.nanoTime() - startedOn)))
+                .onErrorResume(throwable -> {
+                    if (!CaFailures.isCaFailure(throwable)) {
+                        // the CA has answered, the order itself has failed
+                        health.onSuccess(null);
+                        return Mono.error(throwable);
+                    }
+                    health.onFailure();
+                    release(certificateRequest, assignment, admitted);
+
+                    final Set<String> failedAuthorities = new HashSet<>(failed);
+                    failedAuthorities.add(assignment.authority().name());
+
+                    final CaAssignment next = admitted ?
+                            router.admit(certificateRequest, failedAuthorities) :
+                            router.route(certificateRequest, failedAuthorities);
+                    if (null == next) {
+                        return Mono.error(throwable);
+                    }
+
+                    LOG.warn("certificate request {} has failed with {}, placing it with {}",
+                            certificateRequest.certificateName(), assignment.authority().name(),
+                            next.authority().name(), throwable);
+                    Metrics.counter(FAILOVERS, "ca", assignment.authority().name()).increment();
+                    if (admitted) {
+                        assignments.put(certificateRequest, next);
+                    }
+                    return submit(certificateRequest, next, failedAuthorities, admitted);
+                });
+    }
+
+    private static void release(CertificateRequest certificateRequest, CaAssignment assignment, boolean admitted) {
+        if (admitted && null != assignment.account().rateLimitLedger()) {
+            assignment.account().rateLimitLedger().release(certificateRequest);
+        }
+    }
+
+    private CertificateResult onResult(CertificateResult result) {
+        final CaAssignment assignment = assignments.remove(result.certificateRequest());
+        if (null == assignment) {
+            return result;
+        }
+
+        release(result.certificateRequest(), assignment, true);
+        return CertBotImpl.withPhaseDurations(result, processes.remove(result.certificateRequest()));
+    }
+}
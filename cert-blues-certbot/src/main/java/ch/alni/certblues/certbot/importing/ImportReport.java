@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.importing;
+
+import java.time.Duration;
+
+/**
+ * Result of a bulk import.
+ *
+ * @param imported the number of requests written
+ * @param rejected the number of lines that are not valid requests
+ * @param skipped  the number of lines skipped because they were imported by a previous run
+ * @param elapsed  how long the import took
+ */
+public record ImportReport(long imported, long rejected, long skipped, Duration elapsed) {
+
+    /**
+     * Returns the number of requests written per second.
+     */
+    public double getThroughput() {
+        final long millis = Math.max(1, elapsed.toMillis());
+        return imported * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests imported in %s (%.1f/s), %d lines rejected, %d lines skipped",
+                imported, elapsed, getThroughput(), rejected, skipped);
+    }
+}
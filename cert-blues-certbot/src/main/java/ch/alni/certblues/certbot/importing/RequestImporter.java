@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.importing;
+
+import com.google.common.collect.Lists;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Imports the certificate requests of a file with one request as JSON per line.
+ * <p>
+ * The file is streamed in windows of lines. The lines of a window are validated in parallel, grouped by partition
+ * and written in batches of the maximum size of the writer, with a bounded number of batches written at the same
+ * time. A line appearing again within a window replaces the earlier one. The number of the last line of each
+ * completed window is kept in a progress file, so that an interrupted import resumes after it; the progress file is
+ * removed when the import completes.
+ */
+public class RequestImporter {
+    private static final Logger LOG = getLogger(RequestImporter.class);
+
+    // the names allowed by the key vault
+    private static final Pattern CERTIFICATE_NAME = Pattern.compile("[0-9a-zA-Z-]{1,127}");
+
+    private final RequestWriter writer;
+    private final int concurrency;
+    private final int windowSize;
+    private final Clock clock;
+
+    /**
+     * @param writer      where to write the requests to
+     * @param concurrency how many batches are written at the same time
+     * @param windowSize  how many lines are validated and written before the progress is saved
+     * @param clock       the clock to measure the duration of the import with
+     */
+    public RequestImporter(RequestWriter writer, int concurrency, int windowSize, Clock clock) {
+        this.writer = writer;
+        this.concurrency = Math.max(1, concurrency);
+        this.windowSize = Math.max(1, windowSize);
+        this.clock = clock;
+    }
+
+    /**
+     * Parses and validates the given line.
+     *
+     * @throws IllegalArgumentException if the line is not a valid certificate request
+     */
+    static CertificateRequest parse(String line) {
+        final CertificateRequest request;
+        try {
+            request = CertificateRequest.of(line);
+        }
+        catch (IllegalArgumentException e) {
+            // the first line of the message of the parser tells what is wrong, the others where
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            final String message = Objects.requireNonNullElse(cause.getMessage(), "invalid JSON");
+            throw new IllegalArgumentException(message.lines().findFirst().orElse(message), e);
+        }
+
+        if (!CERTIFICATE_NAME.matcher(request.certificateName()).matches()) {
+            throw new IllegalArgumentException("invalid certificate name: " + request.certificateName());
+        }
+        if (request.dnsNames().isEmpty()) {
+            throw new IllegalArgumentException("no DNS names");
+        }
+        if (request.keySize() <= 0 || request.validityInMonths() <= 0) {
+            throw new IllegalArgumentException("the key size and the validity must be positive");
+        }
+        return request;
+    }
+
+    private static long readProgress(Path progressFile) {
+        try {
+            return Files.exists(progressFile) ? Long.parseLong(Files.readString(progressFile).trim()) : 0;
+        }
+        catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("cannot read the progress of the import from " + progressFile, e);
+        }
+    }
+
+    private static void writeProgress(Path progressFile, long lineNumber) {
+        final Path temporary = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporary, Long.toString(lineNumber), StandardCharsets.UTF_8);
+            Files.move(temporary, progressFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("cannot write the progress of the import to " + progressFile, e);
+        }
+    }
+
+    /**
+     * Imports the requests of the given file, after the lines that have been imported according to the progress
+     * file.
+     *
+     * @param file         the file with one request as JSON per line
+     * @param progressFile the file to keep the progress in
+     * @return the report of the import, or error if the requests cannot be written
+     */
+    public Mono<ImportReport> importFile(Path file, Path progressFile) {
+        return Mono.defer(() -> {
+            final Instant startedOn = clock.instant();
+            final long skipped = readProgress(progressFile);
+            if (skipped > 0) {
+                LOG.info("import of {} resumed after line {}", file, skipped);
+            }
+
+            return Flux.using(() -> Files.lines(file, StandardCharsets.UTF_8), Flux::fromStream, Stream::close)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .index((index, text) -> new Line(index + 1, text))
+                    .skip(skipped)
+                    .buffer(windowSize)
+                    .concatMap(window -> importWindow(window)
+                            .doOnNext(result -> writeProgress(progressFile, window.get(window.size() - 1).number())))
+                    .reduce(new WindowResult(0, 0), WindowResult::add)
+                    .map(total -> new ImportReport(total.imported(), total.rejected(), skipped,
+                            Duration.between(startedOn, clock.instant())))
+                    .doOnNext(report -> {
+                        deleteProgress(progressFile);
+                        LOG.info("import of {} completed: {}", file, report);
+                    });
+        });
+    }
+
+    private void deleteProgress(Path progressFile) {
+        try {
+            Files.deleteIfExists(progressFile);
+        }
+        catch (IOException e) {
+            LOG.warn("cannot delete the progress file {} of the completed import", progressFile, e);
+        }
+    }
+
+    private Mono<WindowResult> importWindow(List<Line> window) {
+        return Flux.fromIterable(window)
+                .filter(line -> !line.text().isBlank())
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .map(Line::validate)
+                .sequential()
+                .collectList()
+                .flatMap(lines -> {
+                    // validated in any order, the later lines replace the earlier ones
+                    lines.sort((first, second) -> Long.compare(first.number(), second.number()));
+
+                    final Map<String, Map<String, CertificateRequest>> partitions = new LinkedHashMap<>();
+                    long rejected = 0;
+                    for (Line line : lines) {
+                        if (line.request() == null) {
+                            LOG.warn("line {} rejected: {}", line.number(), line.error());
+                            rejected++;
+                        }
+                        else {
+                            partitions.computeIfAbsent(writer.getPartition(line.request()), p -> new LinkedHashMap<>())
+                                    .put(line.request().certificateName(), line.request());
+                        }
+                    }
+
+                    final List<List<CertificateRequest>> batches = new ArrayList<>();
+                    partitions.values().forEach(requests ->
+                            batches.addAll(Lists.partition(List.copyOf(requests.values()), writer.getMaxBatchSize())));
+
+                    final long rejectedLines = rejected;
+                    return Flux.fromIterable(batches)
+                            .flatMap(batch -> writer.upsert(batch).thenReturn(batch.size()), concurrency)
+                            .reduce(0L, Long::sum)
+                            .map(imported -> new WindowResult(imported, rejectedLines));
+                });
+    }
+
+    private record Line(long number, String text, @Nullable CertificateRequest request, @Nullable String error) {
+
+        Line(long number, String text) {
+            this(number, text, null, null);
+        }
+
+        Line validate() {
+            try {
+                return new Line(number, text, parse(text), null);
+            }
+            catch (RuntimeException e) {
+                return new Line(number, text, null, e.getMessage());
+            }
+        }
+    }
+
+    private record WindowResult(long imported, long rejected) {
+
+        WindowResult add(WindowResult other) {
+            return new WindowResult(imported + other.imported, rejected + other.rejected);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.importing;
+
+import java.util.List;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes the certificate requests in batches, as the bulk import does. A batch is written all together or not at
+ * all, and only holds the requests of a single partition.
+ */
+public interface RequestWriter {
+
+    /**
+     * Returns the partition the given request is stored in.
+     */
+    String getPartition(CertificateRequest certificateRequest);
+
+    /**
+     * Returns the maximum number of requests in a batch.
+     */
+    int getMaxBatchSize();
+
+    /**
+     * Adds the given requests or replaces the stored ones with the same names.
+     *
+     * @param certificateRequests requests of the same partition with distinct names, not more than the maximum
+     * @return empty mono if completed
+     */
+    Mono<Void> upsert(List<CertificateRequest> certificateRequests);
+}
@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.pool;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.jws.ExternalAccountBinding;
+import ch.alni.certblues.acme.key.SigningKeyPair;
+import ch.alni.certblues.acme.protocol.AccountRequest;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.ratelimit.RateLimit;
+import ch.alni.certblues.certbot.ratelimit.RateLimitLedger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Spreads the certificate requests over several ACME accounts, so that the throughput is not capped by the limit of
+ * new orders per account.
+ * <p>
+ * The requests are routed by consistent hashing of the certificate name, so that the renewals of a certificate go to
+ * the same account and can reuse its valid authorizations, and adding an account only moves a share of the
+ * certificates. The loads are bounded: an account that has used clearly more of its order limit than the average is
+ * skipped in favour of the next account on the ring.
+ */
+public class AcmeSessionPool {
+    private static final Logger LOG = getLogger(AcmeSessionPool.class);
+
+    // the points of each account on the ring, more points spread the certificates more evenly
+    private static final int VIRTUAL_NODES = 64;
+
+    // how much more than the average load an account can take before it is skipped
+    private static final double LOAD_FACTOR = 1.25;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final List<PooledAccount> accounts;
+    private final NavigableMap<Long, PooledAccount> ring = new TreeMap<>();
+
+    /**
+     * Creates a new pool of the given accounts.
+     */
+    public AcmeSessionPool(List<PooledAccount> accounts) {
+        if (accounts.isEmpty()) {
+            throw new IllegalArgumentException("the pool needs at least one account");
+        }
+        this.accounts = List.copyOf(accounts);
+
+        for (PooledAccount account : this.accounts) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(account.account() + "#" + i), account);
+            }
+        }
+    }
+
+    /**
+     * Logs in with each of the given account keys.
+     *
+     * @param acmeClient             the client of the ACME server
+     * @param externalAccountBinding the credentials to bind new accounts with, null if the CA does not require it
+     * @param accountKeyPairs        the keys of the accounts
+     * @param accountRequest         the request to create the accounts if they do not exist yet
+     * @param ledgerLoader           loads the rate limit ledger of an account by its key, empty if the rate limits
+     *                               are not accounted for
+     * @return mono over the pool of the accounts
+     */
+    public static Mono<AcmeSessionPool> login(AcmeClient acmeClient,
+                                              @Nullable ExternalAccountBinding externalAccountBinding,
+                                              List<SigningKeyPair> accountKeyPairs,
+                                              AccountRequest accountRequest,
+                                              Function<String, Mono<RateLimitLedger>> ledgerLoader) {
+        return Flux.fromIterable(accountKeyPairs)
+                .map(accountKeyPair -> acmeClient.login(accountKeyPair, accountRequest, externalAccountBinding))
+                .concatMap(session -> session.getPublicKeyThumbprint().flatMap(account -> ledgerLoader.apply(account)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .map(ledger -> new PooledAccount(account, session, ledger.orElse(null)))))
+                .collectList()
+                .map(AcmeSessionPool::new)
+                .doOnNext(pool -> LOG.info("logged in with {} ACME accounts", pool.getAccounts().size()));
+    }
+
+    private static long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    public List<PooledAccount> getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * Returns the accounts in the order of preference for the given request: the owner of the certificate name on
+     * the ring first, then the next accounts clockwise.
+     */
+    public List<PooledAccount> getPreferenceList(CertificateRequest certificateRequest) {
+        final long hash = hash(certificateRequest.certificateName());
+
+        final Set<PooledAccount> preferenceList = new LinkedHashSet<>();
+        for (PooledAccount account : ring.tailMap(hash, true).values()) {
+            preferenceList.add(account);
+        }
+        for (PooledAccount account : ring.headMap(hash, false).values()) {
+            preferenceList.add(account);
+        }
+        return new ArrayList<>(preferenceList);
+    }
+
+    /**
+     * Returns the account to submit the given request with, without checking the rate limits.
+     */
+    public PooledAccount route(CertificateRequest certificateRequest) {
+        final List<PooledAccount> preferenceList = getPreferenceList(certificateRequest);
+        return preferenceList.stream()
+                .filter(this::hasCapacity)
+                .findFirst()
+                .orElse(preferenceList.get(0));
+    }
+
+    /**
+     * Selects the account to submit the given request with and counts the request against its rate limits. The
+     * accounts within the load bound are tried first in the order of preference, then the others.
+     *
+     * @return the selected account, or null if the request would exceed the rate limits of all accounts
+     */
+    @Nullable
+    public synchronized PooledAccount admit(CertificateRequest certificateRequest) {
+        // the limits of the registered domains and of the duplicate certificates apply to all accounts together
+        if (exceedsSharedLimits(certificateRequest)) {
+            return null;
+        }
+
+        final List<PooledAccount> preferenceList = getPreferenceList(certificateRequest);
+        final List<PooledAccount> candidates = new ArrayList<>();
+        preferenceList.stream().filter(this::hasCapacity).forEach(candidates::add);
+        preferenceList.stream().filter(account -> !candidates.contains(account)).forEach(candidates::add);
+
+        for (PooledAccount account : candidates) {
+            if (null == account.rateLimitLedger() || null == account.rateLimitLedger().check(certificateRequest)) {
+                return account;
+            }
+        }
+
+        LOG.info("certificate request {} would exceed the rate limits of all {} accounts",
+                certificateRequest.certificateName(), accounts.size());
+        return null;
+    }
+
+    /**
+     * Returns how many new orders each account can still create, by the key of the account. The accounts whose
+     * rate limits are not accounted for are left out.
+     */
+    public Map<String, Integer> getOrderHeadroom() {
+        final Map<String, Integer> headroom = new TreeMap<>();
+        accounts.stream()
+                .filter(account -> null != account.rateLimitLedger())
+                .forEach(account -> headroom.put(account.account(), account.rateLimitLedger().getOrderHeadroom()));
+        return headroom;
+    }
+
+    private boolean hasCapacity(PooledAccount account) {
+        if (null == account.rateLimitLedger()) {
+            return true;
+        }
+
+        // consistent hashing with bounded loads, the load being the used share of the order limit
+        final double averageLoad = accounts.stream()
+                .filter(other -> null != other.rateLimitLedger())
+                .mapToDouble(AcmeSessionPool::getLoad)
+                .average()
+                .orElse(0.0);
+        // one more order is always within the bound, so that the owner is kept while all accounts are idle
+        final double slack = 1.0 / account.rateLimitLedger().getMaximum(RateLimit.NEW_ORDERS);
+        return getLoad(account) <= LOAD_FACTOR * averageLoad + slack;
+    }
+
+    private static double getLoad(PooledAccount account) {
+        final RateLimitLedger ledger = account.rateLimitLedger();
+        final int maximum = ledger.getMaximum(RateLimit.NEW_ORDERS);
+        return (double) (maximum - ledger.getOrderHeadroom()) / maximum;
+    }
+
+    private boolean exceedsSharedLimits(CertificateRequest certificateRequest) {
+        final List<RateLimitLedger> ledgers = accounts.stream()
+                .map(PooledAccount::rateLimitLedger)
+                .filter(ledger -> null != ledger)
+                .toList();
+        if (ledgers.size() < 2) {
+            // a single ledger checks the limits by itself
+            return false;
+        }
+
+        for (String registeredDomain : RateLimitLedger.getRegisteredDomains(certificateRequest)) {
+            if (exceeds(ledgers, RateLimit.CERTIFICATES_PER_DOMAIN, registeredDomain)) {
+                return true;
+            }
+        }
+        return exceeds(ledgers, RateLimit.DUPLICATE_CERTIFICATES, RateLimitLedger.getNameSet(certificateRequest));
+    }
+
+    private static boolean exceeds(List<RateLimitLedger> ledgers, RateLimit limit, String key) {
+        final int usage = ledgers.stream().mapToInt(ledger -> ledger.getUsage(limit, key)).sum();
+        if (usage >= ledgers.get(0).getMaximum(limit)) {
+            LOG.info("the rate limit {} is reached for {} by all accounts together", limit, key);
+            return true;
+        }
+        return false;
+    }
+}
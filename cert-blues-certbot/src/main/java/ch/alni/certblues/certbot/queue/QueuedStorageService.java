@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.queue;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.StorageService;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Storage service that finds the pending certificate requests from the notifications of a queue instead of reading
+ * all requests, so that the new and the forced requests are picked up right away.
+ * <p>
+ * The notifications of a certificate are processed once per batch however often it has been notified. They are
+ * deleted when the request is reset after its certificate has been issued, or right away if the request is not
+ * pending. The notifications of a failed order are delivered again after the visibility timeout, which must
+ * therefore be longer than an order takes. A notification delivered more often than the maximum is moved to the
+ * dead-letter queue. The notifications of a deferred request are replaced with a new one instead, so that only the
+ * failed orders count towards the dead-letter queue.
+ */
+public class QueuedStorageService implements StorageService {
+    private static final Logger LOG = getLogger(QueuedStorageService.class);
+
+    /**
+     * The number of the received notifications, tagged by the outcome (pending, ignored or poisoned).
+     */
+    public static final String NOTIFICATIONS = "certbot.queue.notifications";
+
+    private static final int CONCURRENCY = 8;
+
+    private final StorageService storageService;
+    private final RequestNotificationQueue queue;
+    private final int maxNotifications;
+    private final Duration visibilityTimeout;
+    private final int maxDeliveries;
+
+    // the notifications of the requests being processed by certificate name, until the requests are reset or released
+    private final Map<String, Collection<RequestNotification>> received = new ConcurrentHashMap<>();
+
+    /**
+     * @param storageService    the storage service to read and reset the requests with
+     * @param queue             the queue of the notifications
+     * @param maxNotifications  the maximum number of notifications received per batch
+     * @param visibilityTimeout how long the notifications of a batch are hidden from the other receivers
+     * @param maxDeliveries     how often a notification is delivered before it is moved to the dead-letter queue
+     */
+    public QueuedStorageService(StorageService storageService, RequestNotificationQueue queue,
+                                int maxNotifications, Duration visibilityTimeout, int maxDeliveries) {
+        this.storageService = storageService;
+        this.queue = queue;
+        this.maxNotifications = maxNotifications;
+        this.visibilityTimeout = visibilityTimeout;
+        this.maxDeliveries = maxDeliveries;
+    }
+
+    private static void count(String outcome, int count) {
+        Metrics.counter(NOTIFICATIONS, "outcome", outcome).increment(count);
+    }
+
+    @Override
+    public Mono<Void> reset(CertificateRequest certificateRequest) {
+        final Collection<RequestNotification> notifications = received.remove(certificateRequest.certificateName());
+        return storageService.reset(certificateRequest)
+                .then(null == notifications ? Mono.empty() : delete(notifications));
+    }
+
+    /**
+     * Forgets the notifications of the given request that has not been issued. The notifications of a failed order
+     * are delivered again after the visibility timeout. The notifications of a deferred request are replaced with a
+     * new one, which is delivered right away if another instance can take the request over, and after the visibility
+     * timeout otherwise.
+     */
+    @Override
+    public Mono<Void> release(CertificateResult certificateResult) {
+        final Collection<RequestNotification> notifications =
+                received.remove(certificateResult.certificateRequest().certificateName());
+        if (null == notifications || certificateResult.status() != CertificateResult.Status.DEFERRED) {
+            return Mono.empty();
+        }
+
+        final DeferralReason deferralReason = certificateResult.deferralReason();
+        final Duration delay = deferralReason == DeferralReason.SHARD_NOT_OWNED ||
+                deferralReason == DeferralReason.SHUTDOWN ? Duration.ZERO : visibilityTimeout;
+
+        final List<RequestNotification> replaced = List.copyOf(notifications);
+        return queue.requeue(replaced.get(0), delay)
+                .then(delete(replaced.subList(1, replaced.size())));
+    }
+
+    /**
+     * Returns the pending requests of the next batch of notifications. The requests of the given expiring
+     * certificates are pending as well as the forced ones.
+     */
+    @Override
+    public Flux<CertificateRequest> getPendingCertificateRequests(List<CertificateInfo> expiringCertificates) {
+        final Set<String> expiringNames = expiringCertificates.stream()
+                .map(CertificateInfo::certificateName)
+                .collect(Collectors.toSet());
+
+        return queue.receive(maxNotifications, visibilityTimeout)
+                .filterWhen(notification -> {
+                    if (notification.dequeueCount() <= maxDeliveries) {
+                        return Mono.just(true);
+                    }
+                    LOG.warn("notification {} of certificate {} has been delivered {} times and is dead-lettered",
+                            notification.messageId(), notification.certificateName(), notification.dequeueCount());
+                    count("poisoned", 1);
+                    return queue.deadLetter(notification).thenReturn(false);
+                })
+                .collectMultimap(RequestNotification::certificateName)
+                .flatMapIterable(Map::entrySet)
+                .flatMap(entry -> storageService.getCertificateRequest(entry.getKey())
+                        .filter(request -> request.forceRequestCreation() ||
+                                expiringNames.contains(request.certificateName()))
+                        .doOnNext(request -> {
+                            // the notifications delivered again replace the earlier ones, whose receipts are void
+                            received.put(entry.getKey(), entry.getValue());
+                            count("pending", entry.getValue().size());
+                        })
+                        // nothing to do for the requests that are not pending or have been deleted
+                        .switchIfEmpty(Mono.defer(() -> {
+                            count("ignored", entry.getValue().size());
+                            return delete(entry.getValue()).then(Mono.empty());
+                        })), CONCURRENCY);
+    }
+
+    @Override
+    public Mono<CertificateRequest> getCertificateRequest(String certificateName) {
+        return storageService.getCertificateRequest(certificateName);
+    }
+
+    private Mono<Void> delete(Collection<RequestNotification> notifications) {
+        return Flux.fromIterable(notifications)
+                .flatMap(queue::delete)
+                .then();
+    }
+}
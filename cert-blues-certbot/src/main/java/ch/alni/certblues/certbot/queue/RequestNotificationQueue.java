@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.queue;
+
+import java.time.Duration;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Queue of the notifications of added or changed certificate requests. The delivery is at least once: a received
+ * notification is hidden from the other receivers for the visibility timeout and delivered again after that unless
+ * it has been deleted.
+ */
+public interface RequestNotificationQueue {
+
+    /**
+     * Receives the next notifications.
+     *
+     * @param maxNotifications  the maximum number of notifications to receive
+     * @param visibilityTimeout how long the received notifications are hidden from the other receivers
+     * @return the received notifications, empty if there are none
+     */
+    Flux<RequestNotification> receive(int maxNotifications, Duration visibilityTimeout);
+
+    /**
+     * Deletes the given notification, it is not delivered again.
+     */
+    Mono<Void> delete(RequestNotification notification);
+
+    /**
+     * Replaces the given notification with a new one of the same certificate, so that its deliveries are counted
+     * anew.
+     *
+     * @param notification the notification to replace
+     * @param delay        how long the new notification is hidden from the receivers
+     */
+    Mono<Void> requeue(RequestNotification notification, Duration delay);
+
+    /**
+     * Moves the given notification to the queue of the notifications that cannot be processed, for an operator to
+     * look at.
+     */
+    Mono<Void> deadLetter(RequestNotification notification);
+}
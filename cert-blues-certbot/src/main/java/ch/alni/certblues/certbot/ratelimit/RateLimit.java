@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ratelimit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The rate limits of the ACME server that are accounted for by the {@link RateLimitLedger}. The default maximums and
+ * windows are the ones of Let's Encrypt.
+ */
+public enum RateLimit {
+
+    /**
+     * New orders per account.
+     */
+    NEW_ORDERS(300, Duration.ofHours(3)),
+
+    /**
+     * Certificates per registered domain, for example "example.com" for "www.example.com".
+     */
+    CERTIFICATES_PER_DOMAIN(50, Duration.ofDays(7)),
+
+    /**
+     * Certificates for exactly the same set of DNS names.
+     */
+    DUPLICATE_CERTIFICATES(5, Duration.ofDays(7)),
+
+    /**
+     * Failed validations per account and DNS name.
+     */
+    FAILED_VALIDATIONS(5, Duration.ofHours(1));
+
+    private final int defaultMax;
+    private final Duration window;
+
+    RateLimit(int defaultMax, Duration window) {
+        this.defaultMax = defaultMax;
+        this.window = window;
+    }
+
+    /**
+     * Returns the maximums of all limits as enforced by Let's Encrypt.
+     */
+    public static Map<RateLimit, Integer> defaults() {
+        final Map<RateLimit, Integer> maximums = new EnumMap<>(RateLimit.class);
+        for (RateLimit limit : values()) {
+            maximums.put(limit, limit.defaultMax);
+        }
+        return maximums;
+    }
+
+    /**
+     * Returns the longest window of all limits, the events older than that are not counted anymore.
+     */
+    public static Duration getLongestWindow() {
+        return Arrays.stream(values()).map(RateLimit::getWindow).max(Comparator.naturalOrder()).orElseThrow();
+    }
+
+    /**
+     * How many events are allowed within the window by default.
+     */
+    public int getDefaultMax() {
+        return defaultMax;
+    }
+
+    /**
+     * The sliding window the events are counted in.
+     */
+    public Duration getWindow() {
+        return window;
+    }
+}
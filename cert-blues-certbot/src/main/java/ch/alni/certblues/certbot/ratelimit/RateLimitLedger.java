@@ -0,0 +1,329 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ratelimit;
+
+import com.google.common.net.InternetDomainName;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import ch.alni.certblues.certbot.AdmissionPolicy;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Counts the events of one ACME account against the rate limits of the server in sliding windows, and defers the
+ * certificate requests that would exceed any of the limits.
+ * <p>
+ * A request admitted by this ledger counts against the limits until its order ends, so that the orders running at the
+ * same time cannot exceed a limit together. Its own events are counted once they are recorded by the cert bot. The
+ * renewals are counted against the limit of certificates per registered domain as well, which is conservative.
+ */
+public class RateLimitLedger implements AdmissionPolicy {
+    private static final Logger LOG = getLogger(RateLimitLedger.class);
+
+    private final RateLimitStore store;
+    private final String account;
+    private final Map<RateLimit, Integer> maximums;
+    private final Clock clock;
+
+    // the instants of the counted events per limit and key, the oldest first
+    private final Map<RateLimit, Map<String, Deque<Instant>>> windows = new EnumMap<>(RateLimit.class);
+    // the admitted requests whose orders have not ended, true once the order has been created
+    private final Map<CertificateRequest, Boolean> admitted = new HashMap<>();
+
+    /**
+     * Creates a new ledger without any events counted yet.
+     *
+     * @param store    the store to persist the counted events to
+     * @param account  the key of the ACME account the events are counted for
+     * @param maximums how many events are allowed within the window of each limit
+     * @param clock    the clock to take the instants of the events from
+     */
+    public RateLimitLedger(RateLimitStore store, String account, Map<RateLimit, Integer> maximums, Clock clock) {
+        this.store = store;
+        this.account = account;
+        this.maximums = new EnumMap<>(maximums);
+        this.clock = clock;
+
+        for (RateLimit limit : RateLimit.values()) {
+            windows.put(limit, new HashMap<>());
+        }
+    }
+
+    /**
+     * Creates a new ledger with the events of the account that are still within the windows of their limits.
+     */
+    public static Mono<RateLimitLedger> load(RateLimitStore store, String account, Map<RateLimit, Integer> maximums,
+                                             Clock clock) {
+        final var ledger = new RateLimitLedger(store, account, maximums, clock);
+
+        return store.load(account, clock.instant().minus(RateLimit.getLongestWindow()))
+                .sort(Comparator.comparing(RateLimitEntry::countedOn))
+                .doOnNext(ledger::count)
+                .then(Mono.fromSupplier(() -> {
+                    LOG.info("rate limit ledger of account {} loaded: {}", account, ledger.getCounts());
+                    return ledger;
+                }));
+    }
+
+    /**
+     * Returns the key of the registered domain of the given DNS name, for example "example.com" for
+     * "*.www.example.com". Names that are not under a public suffix are their own registered domain.
+     */
+    public static String getRegisteredDomain(String dnsName) {
+        final String name = dnsName.startsWith("*.") ? dnsName.substring(2) : dnsName;
+        try {
+            final InternetDomainName domainName = InternetDomainName.from(name);
+            return domainName.isUnderPublicSuffix() ? domainName.topPrivateDomain().toString() : domainName.toString();
+        }
+        catch (IllegalArgumentException e) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Returns the key of the set of DNS names of the given request, which is the same for the same names in any
+     * order.
+     */
+    public static String getNameSet(CertificateRequest certificateRequest) {
+        return certificateRequest.dnsNames().stream()
+                .map(dnsName -> dnsName.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toCollection(TreeSet::new))
+                .stream()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Returns the keys of the registered domains of the DNS names of the given request.
+     */
+    public static Set<String> getRegisteredDomains(CertificateRequest certificateRequest) {
+        return certificateRequest.dnsNames().stream()
+                .map(RateLimitLedger::getRegisteredDomain)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Admits the given request if neither its order nor its certificate would exceed any of the limits. The admitted
+     * request counts against the limits until {@link #release(CertificateRequest)} is called for it.
+     */
+    @Nullable
+    @Override
+    public synchronized DeferralReason check(CertificateRequest certificateRequest) {
+        final RateLimit exceeded = findExceeded(certificateRequest);
+        if (null != exceeded) {
+            LOG.info("deferring certificate request {} to the next run, it would exceed the rate limit {} of {} " +
+                            "per {}", certificateRequest.certificateName(), exceeded, maximums.get(exceeded),
+                    exceeded.getWindow());
+            return DeferralReason.RATE_LIMIT;
+        }
+
+        admitted.put(certificateRequest, false);
+        return null;
+    }
+
+    /**
+     * Stops counting the given admitted request against the limits, its recorded events are still counted.
+     */
+    public synchronized void release(CertificateRequest certificateRequest) {
+        admitted.remove(certificateRequest);
+    }
+
+    /**
+     * Records that an order has been created for the given request.
+     */
+    public Mono<Void> onOrderCreated(CertificateRequest certificateRequest) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                admitted.computeIfPresent(certificateRequest, (request, created) -> true);
+            }
+            return record(RateLimit.NEW_ORDERS, account);
+        });
+    }
+
+    /**
+     * Records that a certificate has been issued for the given request.
+     */
+    public Mono<Void> onCertificateIssued(CertificateRequest certificateRequest) {
+        return Flux.fromIterable(getRegisteredDomains(certificateRequest))
+                .concatMap(registeredDomain -> record(RateLimit.CERTIFICATES_PER_DOMAIN, registeredDomain))
+                .then(Mono.defer(() -> record(RateLimit.DUPLICATE_CERTIFICATES, getNameSet(certificateRequest))));
+    }
+
+    /**
+     * Records that the validation of the given DNS names has failed.
+     */
+    public Mono<Void> onValidationFailed(Collection<String> dnsNames) {
+        return Flux.fromIterable(dnsNames)
+                .map(dnsName -> dnsName.toLowerCase(Locale.ROOT))
+                .concatMap(dnsName -> record(RateLimit.FAILED_VALIDATIONS, dnsName))
+                .then();
+    }
+
+    /**
+     * Returns how many events are counted against the given limit for the given key within its window.
+     */
+    public synchronized int getCount(RateLimit limit, String key) {
+        return getWindow(limit, key).size();
+    }
+
+    /**
+     * Returns how much of the given limit is used for the given key: the events counted within its window and the
+     * admitted requests that are going to add an event.
+     */
+    public synchronized int getUsage(RateLimit limit, String key) {
+        final long pending = switch (limit) {
+            case NEW_ORDERS -> admitted.values().stream().filter(created -> !created).count();
+            case CERTIFICATES_PER_DOMAIN -> admitted.keySet().stream()
+                    .filter(request -> getRegisteredDomains(request).contains(key))
+                    .count();
+            case DUPLICATE_CERTIFICATES -> admitted.keySet().stream()
+                    .filter(request -> getNameSet(request).equals(key))
+                    .count();
+            case FAILED_VALIDATIONS -> 0;
+        };
+        return getWindow(limit, key).size() + (int) pending;
+    }
+
+    /**
+     * Returns how many new orders the account can still create within the window.
+     */
+    public synchronized int getOrderHeadroom() {
+        return Math.max(0, getMaximum(RateLimit.NEW_ORDERS) - getUsage(RateLimit.NEW_ORDERS, account));
+    }
+
+    /**
+     * Returns how many events are allowed within the window of the given limit.
+     */
+    public int getMaximum(RateLimit limit) {
+        return maximums.get(limit);
+    }
+
+    /**
+     * Returns the key of the account the events are counted for.
+     */
+    public String getAccount() {
+        return account;
+    }
+
+    /**
+     * Returns how many events are counted against each limit within its window, summed over all keys.
+     */
+    public synchronized Map<RateLimit, Integer> getCounts() {
+        final Map<RateLimit, Integer> counts = new LinkedHashMap<>();
+        // sliding the windows removes the keys without events
+        windows.forEach((limit, keys) -> counts.put(limit, List.copyOf(keys.keySet()).stream()
+                .mapToInt(key -> getWindow(limit, key).size())
+                .sum()));
+        return counts;
+    }
+
+    private Mono<Void> record(RateLimit limit, String key) {
+        return Mono.defer(() -> {
+            final var entry = new RateLimitEntry(limit, key, clock.instant());
+            count(entry);
+
+            // the event stays counted in this run even if it cannot be persisted
+            return store.save(account, entry)
+                    .onErrorResume(throwable -> {
+                        LOG.warn("cannot persist the rate limit entry {}", entry, throwable);
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    private synchronized void count(RateLimitEntry entry) {
+        final Deque<Instant> window = windows.get(entry.limit()).computeIfAbsent(entry.key(), key -> new ArrayDeque<>());
+        // the entries mostly come in order, the few late ones only make the window a bit longer
+        window.addLast(entry.countedOn());
+    }
+
+    @Nullable
+    private RateLimit findExceeded(CertificateRequest certificateRequest) {
+        if (getUsage(RateLimit.NEW_ORDERS, account) >= getMaximum(RateLimit.NEW_ORDERS)) {
+            return RateLimit.NEW_ORDERS;
+        }
+
+        for (String registeredDomain : getRegisteredDomains(certificateRequest)) {
+            if (getUsage(RateLimit.CERTIFICATES_PER_DOMAIN, registeredDomain) >=
+                    getMaximum(RateLimit.CERTIFICATES_PER_DOMAIN)) {
+                return RateLimit.CERTIFICATES_PER_DOMAIN;
+            }
+        }
+
+        if (getUsage(RateLimit.DUPLICATE_CERTIFICATES, getNameSet(certificateRequest)) >=
+                getMaximum(RateLimit.DUPLICATE_CERTIFICATES)) {
+            return RateLimit.DUPLICATE_CERTIFICATES;
+        }
+
+        for (String dnsName : certificateRequest.dnsNames()) {
+            if (getUsage(RateLimit.FAILED_VALIDATIONS, dnsName.toLowerCase(Locale.ROOT)) >=
+                    getMaximum(RateLimit.FAILED_VALIDATIONS)) {
+                return RateLimit.FAILED_VALIDATIONS;
+            }
+        }
+
+        return null;
+    }
+
+    private Deque<Instant> getWindow(RateLimit limit, String key) {
+        final Map<String, Deque<Instant>> keys = windows.get(limit);
+        final Deque<Instant> window = keys.get(key);
+        if (null == window) {
+            return new ArrayDeque<>();
+        }
+
+        // slide the window forward
+        final Instant start = clock.instant().minus(limit.getWindow());
+        while (!window.isEmpty() && !window.peekFirst().isAfter(start)) {
+            window.removeFirst();
+        }
+        if (window.isEmpty()) {
+            keys.remove(key);
+        }
+        return window;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ratelimit;
+
+import java.time.Instant;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Persists the events counted against the rate limits, so that the limits are accounted for across the runs.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Returns the store that keeps nothing, the limits are then only accounted for within the run.
+     */
+    static RateLimitStore none() {
+        return new RateLimitStore() {
+
+            @Override
+            public Flux<RateLimitEntry> load(String account, Instant since) {
+                return Flux.empty();
+            }
+
+            @Override
+            public Mono<Void> save(String account, RateLimitEntry entry) {
+                return Mono.empty();
+            }
+        };
+    }
+
+    /**
+     * Returns the events of the given account that have happened since the given instant. The older events may be
+     * removed from the store.
+     */
+    Flux<RateLimitEntry> load(String account, Instant since);
+
+    /**
+     * Saves the given event of the given account.
+     */
+    Mono<Void> save(String account, RateLimitEntry entry);
+}
@@ -0,0 +1,258 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.renewal;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.alni.certblues.acme.client.request.RetrievedResource;
+import ch.alni.certblues.acme.facade.AcmeClient;
+import ch.alni.certblues.acme.protocol.RenewalInfo;
+import ch.alni.certblues.acme.protocol.SuggestedWindow;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Decides which certificates are due for renewal. If a CA provides the renewal information of a certificate
+ * (RFC 9773), the certificate is due once a time picked at random within the window suggested by the CA has come, so
+ * that the certificates issued together do not renew together. Otherwise it is due if it expires within the renewal
+ * interval.
+ * <p>
+ * The suggested windows are cached for as long as the CA asks with the Retry-After header. The time within a window
+ * is derived from the certificate and the window, so that it does not change between the runs until the CA moves the
+ * window.
+ */
+public class RenewalPlanner {
+    private static final Logger LOG = getLogger(RenewalPlanner.class);
+
+    /**
+     * The number of certificates checked for renewal, tagged by how the decision is taken (ari or interval) and if
+     * the certificate is due.
+     */
+    public static final String DECISIONS = "certbot.renewal.decisions";
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofHours(6);
+    private static final Duration MIN_RETRY_AFTER = Duration.ofMinutes(1);
+    private static final Duration MAX_RETRY_AFTER = Duration.ofDays(1);
+
+    // how many renewal information requests can be sent at the same time
+    private static final int CONCURRENCY = 8;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final List<AcmeClient> acmeClients;
+    private final Duration renewalInterval;
+    private final Duration horizon;
+    private final Clock clock;
+
+    private final Map<String, CachedWindow> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param acmeClients     the clients of the CAs asked for the renewal information in the given order, empty to
+     *                        renew after the renewal interval only
+     * @param renewalInterval how long before the expiry the certificates without renewal information are renewed
+     * @param horizon         how long before the expiry the CAs are asked for the renewal information
+     * @param clock           the clock
+     */
+    public RenewalPlanner(List<AcmeClient> acmeClients, Duration renewalInterval, Duration horizon, Clock clock) {
+        this.acmeClients = List.copyOf(acmeClients);
+        this.renewalInterval = renewalInterval;
+        this.horizon = acmeClients.isEmpty() || horizon.compareTo(renewalInterval) < 0 ? renewalInterval : horizon;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns a planner that renews the certificates after the renewal interval only.
+     */
+    public static RenewalPlanner ofInterval(Duration renewalInterval, Clock clock) {
+        return new RenewalPlanner(List.of(), renewalInterval, renewalInterval, clock);
+    }
+
+    /**
+     * Sets the identifier of the current certificate in the given request, so that the CA knows that the new
+     * certificate replaces it.
+     */
+    public static CertificateRequest withReplaces(CertificateRequest certificateRequest,
+                                                  List<CertificateInfo> certificates) {
+        return certificates.stream()
+                .filter(certificateInfo -> certificateInfo.certificateName().equals(certificateRequest.certificateName()))
+                .map(CertificateInfo::certificateId)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .map(certificateId -> certificateRequest.toBuilder().replaces(certificateId).build())
+                .orElse(certificateRequest);
+    }
+
+    /**
+     * Picks the time within the given window for the certificate, the same time for the same certificate and window.
+     */
+    static Instant selectTime(String certificateId, Instant start, Instant end) {
+        if (!end.isAfter(start)) {
+            return start;
+        }
+        final long seed = HASH_FUNCTION.newHasher()
+                .putString(certificateId, StandardCharsets.UTF_8)
+                .putLong(start.toEpochMilli())
+                .putLong(end.toEpochMilli())
+                .hash()
+                .asLong();
+        final double fraction = new SplittableRandom(seed).nextDouble();
+        return start.plusMillis((long) (fraction * Duration.between(start, end).toMillis()));
+    }
+
+    private static Duration clamp(@Nullable Duration retryAfter) {
+        if (null == retryAfter) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        if (retryAfter.compareTo(MIN_RETRY_AFTER) < 0) {
+            return MIN_RETRY_AFTER;
+        }
+        return retryAfter.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : retryAfter;
+    }
+
+    private static void count(String source, boolean due) {
+        Counter.builder(DECISIONS)
+                .tag("source", source)
+                .tag("due", String.valueOf(due))
+                .register(Metrics.globalRegistry)
+                .increment();
+    }
+
+    /**
+     * How long before the expiry the certificates have to be passed to {@link #getDue(Flux)}.
+     */
+    public Duration getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Returns the given certificates that are due for renewal.
+     */
+    public Flux<CertificateInfo> getDue(Flux<CertificateInfo> certificates) {
+        return certificates
+                .flatMap(certificateInfo -> isDue(certificateInfo)
+                        .filter(Boolean::booleanValue)
+                        .map(due -> certificateInfo), CONCURRENCY);
+    }
+
+    /**
+     * Returns true if the given certificate is due for renewal.
+     */
+    public Mono<Boolean> isDue(CertificateInfo certificateInfo) {
+        final Instant now = clock.instant();
+        return getRenewalTime(certificateInfo, now).map(renewalTime -> {
+            final boolean due = !renewalTime.renewOn().isAfter(now);
+            count(renewalTime.source(), due);
+            return due;
+        });
+    }
+
+    /**
+     * Returns when the given certificate is due for renewal, a time in the past if it is due already.
+     */
+    public Mono<Instant> getRenewalTime(CertificateInfo certificateInfo) {
+        return getRenewalTime(certificateInfo, clock.instant()).map(RenewalTime::renewOn);
+    }
+
+    private Mono<RenewalTime> getRenewalTime(CertificateInfo certificateInfo, Instant now) {
+        final String certificateId = certificateInfo.certificateId();
+        final Mono<RenewalTime> byIntervalMono = Mono.fromSupplier(() ->
+                new RenewalTime(certificateInfo.expiresOn().minus(renewalInterval), "interval"));
+        if (null == certificateId || acmeClients.isEmpty() || !certificateInfo.expiresOn().isAfter(now)) {
+            return byIntervalMono;
+        }
+
+        return getWindow(certificateId, now)
+                .map(window -> {
+                    final Instant renewOn = selectTime(certificateId, window.start().toInstant(),
+                            window.end().toInstant());
+                    LOG.debug("certificate {} is renewed on {} within the suggested window from {} to {}",
+                            certificateInfo.certificateName(), renewOn, window.start(), window.end());
+                    return new RenewalTime(renewOn, "ari");
+                })
+                .switchIfEmpty(byIntervalMono);
+    }
+
+    /**
+     * Returns the cached window, or asks the CAs in turn for the renewal information. The cached window is kept if
+     * no CA answers, the CAs may be unavailable for a while.
+     */
+    private Mono<SuggestedWindow> getWindow(String certificateId, Instant now) {
+        final CachedWindow cached = windows.get(certificateId);
+        if (null != cached && now.isBefore(cached.refreshOn())) {
+            return Mono.just(cached.window());
+        }
+
+        return Flux.fromIterable(acmeClients)
+                .concatMap(acmeClient -> acmeClient.getRenewalInfo(certificateId)
+                        .onErrorResume(throwable -> {
+                            LOG.info("no renewal information for certificate {}: {}", certificateId,
+                                    throwable.getMessage());
+                            return Mono.empty();
+                        }))
+                .next()
+                .map(renewalInfo -> cache(certificateId, renewalInfo, now))
+                .switchIfEmpty(Mono.justOrEmpty(cached).map(CachedWindow::window));
+    }
+
+    private SuggestedWindow cache(String certificateId, RetrievedResource<RenewalInfo> renewalInfo, Instant now) {
+        final RenewalInfo resource = renewalInfo.getResource();
+        if (null != resource.explanationUrl()) {
+            LOG.info("the CA has moved the renewal window of certificate {}: {}", certificateId,
+                    resource.explanationUrl());
+        }
+        windows.put(certificateId, new CachedWindow(resource.suggestedWindow(),
+                now.plus(clamp(renewalInfo.getRetryAfter()))));
+        return resource.suggestedWindow();
+    }
+
+    private record RenewalTime(Instant renewOn, String source) {
+    }
+
+    private record CachedWindow(SuggestedWindow window, Instant refreshOn) {
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Submits batches of certificate requests with the limits given by {@link BatchOptions}. Every request ends up in
+ * exactly one {@link CertificateResult}, so that a failing order does not cancel the other orders of the batch.
+ */
+public final class Batches {
+    private static final Logger LOG = getLogger(Batches.class);
+
+    private Batches() {
+    }
+
+    /**
+     * Submits the given requests.
+     *
+     * @param requests  the requests to submit in the order of their priority, each is submitted as soon as it arrives
+     *                  and there is a free slot
+     * @param options   how to process the batch
+     * @param submitter how to submit a single request, returns the issued certificate
+     * @return flux over the results in the order of completion
+     */
+    public static Flux<CertificateResult> submitAll(Flux<CertificateRequest> requests, BatchOptions options,
+                                                    Function<CertificateRequest, Mono<String>> submitter) {
+        final var dispatcher = new LaneDispatcher(
+                options.maxConcurrency(), options.laneConcurrency(), options.laneKey()
+        );
+
+        return dispatcher.dispatch(requests, request -> submit(request, options, submitter));
+    }
+
+    private static Mono<CertificateResult> submit(CertificateRequest certificateRequest, BatchOptions options,
+                                                  Function<CertificateRequest, Mono<String>> submitter) {
+        return Mono.defer(() -> {
+            final Instant startedOn = options.clock().instant();
+
+            // the request is started only when there is a free slot, so admission is decided at the start time
+            final DeferralReason deferralReason = options.admissionPolicy().check(certificateRequest);
+            if (null != deferralReason) {
+                return Mono.just(CertificateResult.deferred(certificateRequest, deferralReason, startedOn));
+            }
+
+            // the policies asking a remote store confirm the admission right before the order is created
+            return options.admissionPolicy().confirm(certificateRequest)
+                    .map(reason -> CertificateResult.deferred(certificateRequest, reason, startedOn))
+                    .switchIfEmpty(Mono.defer(() -> order(certificateRequest, options, submitter, startedOn)));
+        });
+    }
+
+    private static Mono<CertificateResult> order(CertificateRequest certificateRequest, BatchOptions options,
+                                                 Function<CertificateRequest, Mono<String>> submitter,
+                                                 Instant startedOn) {
+        final Mono<String> certificateMono = null != options.orderTimeout() ?
+                submitter.apply(certificateRequest).timeout(options.orderTimeout()) :
+                submitter.apply(certificateRequest);
+
+        return certificateMono
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("no certificate has been issued")))
+                .map(certificate -> CertificateResult.issued(
+                        certificateRequest, certificate, startedOn, since(startedOn, options)
+                ))
+                .onErrorResume(throwable -> {
+                    LOG.error("certificate request {} has failed", certificateRequest.certificateName(), throwable);
+                    return Mono.just(CertificateResult.failed(
+                            certificateRequest, throwable, startedOn, since(startedOn, options)
+                    ));
+                });
+    }
+
+    private static Duration since(Instant startedOn, BatchOptions options) {
+        return Duration.between(startedOn, options.clock().instant());
+    }
+}
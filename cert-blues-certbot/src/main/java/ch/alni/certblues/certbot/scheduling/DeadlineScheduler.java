@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.slf4j.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import ch.alni.certblues.certbot.AdmissionPolicy;
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertBot;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.publisher.Flux;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Submits certificate requests in the order of their priority (see {@link ScheduledRequest#BY_PRIORITY}) and stops
+ * admitting new orders once they are not expected to complete before the deadline. The requests that are not admitted
+ * stay pending in the storage and are picked up again by the next run.
+ */
+public class DeadlineScheduler implements AdmissionPolicy {
+    private static final Logger LOG = getLogger(DeadlineScheduler.class);
+
+    private final Clock clock;
+    private final Instant deadline;
+    private final OrderDurationEstimator estimator;
+
+    private final SchedulingReport report = new SchedulingReport();
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param clock     the clock to check the deadline against
+     * @param deadline  no order is admitted if it is not expected to complete before this instant
+     * @param estimator the estimator of the order duration
+     */
+    public DeadlineScheduler(Clock clock, Instant deadline, OrderDurationEstimator estimator) {
+        this.clock = clock;
+        this.deadline = deadline;
+        this.estimator = estimator;
+    }
+
+    /**
+     * Submits the given requests to the bot in the order of their priority.
+     *
+     * @param certBot  the bot to submit the requests to
+     * @param requests the requests to submit
+     * @param options  how to process the batch, the deadline is checked in addition to its admission policy
+     * @return flux over the results of all requests
+     */
+    public Flux<CertificateResult> schedule(CertBot certBot, List<ScheduledRequest> requests, BatchOptions options) {
+        final Flux<CertificateRequest> orderedRequests = Flux.fromStream(requests.stream()
+                .sorted(ScheduledRequest.BY_PRIORITY)
+                .map(ScheduledRequest::certificateRequest));
+
+        final BatchOptions batchOptions = options.toBuilder()
+                .admissionPolicy(options.admissionPolicy().and(this))
+                .clock(clock)
+                .build();
+
+        return certBot.submitAll(orderedRequests, batchOptions).doOnNext(this::onResult);
+    }
+
+    @Override
+    public DeferralReason check(CertificateRequest certificateRequest) {
+        final Duration estimate = estimator.estimate();
+
+        if (clock.instant().plus(estimate).isAfter(deadline)) {
+            LOG.info("deferring certificate request {} to the next run, it is expected to take {} and cannot " +
+                    "complete before {}", certificateRequest.certificateName(), estimate, deadline);
+            return DeferralReason.DEADLINE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current estimate of the duration of one order.
+     */
+    public Duration getOrderDurationEstimate() {
+        return estimator.estimate();
+    }
+
+    /**
+     * Returns the report of this scheduler.
+     */
+    public SchedulingReport getReport() {
+        return report;
+    }
+
+    private void onResult(CertificateResult result) {
+        if (result.status() == CertificateResult.Status.ISSUED) {
+            estimator.record(result.duration());
+        }
+        report.onResult(result);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+/**
+ * Partitions certificate requests into lanes and processes them with a concurrency limit per lane and a global one.
+ * The free slots are given to the lanes in round-robin order, so that a single DNS zone or storage endpoint with many
+ * requests cannot take over all slots while the requests for other resources wait. Within a lane the requests are
+ * processed in the order they are given.
+ */
+public class LaneDispatcher {
+
+    private static final String DEFAULT_LANE = "";
+
+    private final int maxConcurrency;
+    private final int laneConcurrency;
+    private final Function<CertificateRequest, String> laneKey;
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param maxConcurrency  how many requests can be processed at the same time over all lanes
+     * @param laneConcurrency how many requests can be processed at the same time within one lane
+     * @param laneKey         how to select the lane of a certificate request
+     */
+    public LaneDispatcher(int maxConcurrency, int laneConcurrency, Function<CertificateRequest, String> laneKey) {
+        Preconditions.checkArgument(maxConcurrency > 0, "max concurrency must be positive");
+        Preconditions.checkArgument(laneConcurrency > 0, "lane concurrency must be positive");
+        this.maxConcurrency = maxConcurrency;
+        this.laneConcurrency = laneConcurrency;
+        this.laneKey = laneKey;
+    }
+
+    /**
+     * Creates a dispatcher with one lane per resource used to provision the challenges: the storage endpoint for HTTP
+     * challenges (that take precedence) or the DNS zone for DNS challenges.
+     */
+    public static LaneDispatcher byChallengeResource(int maxConcurrency, int laneConcurrency) {
+        return new LaneDispatcher(maxConcurrency, laneConcurrency, LaneDispatcher::getChallengeResource);
+    }
+
+    /**
+     * Returns the resource used to provision the challenges of the given request, or an empty string if there is none.
+     */
+    public static String getChallengeResource(CertificateRequest certificateRequest) {
+        if (certificateRequest.storageEndpointUrl() != null) {
+            return certificateRequest.storageEndpointUrl();
+        }
+        else if (certificateRequest.dnsZone() != null) {
+            return certificateRequest.dnsZone();
+        }
+        else {
+            return DEFAULT_LANE;
+        }
+    }
+
+    /**
+     * Processes the given requests.
+     *
+     * @param requests  the requests to process in the order of their priority
+     * @param processor how to process a single request
+     * @param <R>       the type of the processing result
+     * @return flux over the processing results in the order of completion
+     */
+    public <R> Flux<R> dispatch(List<CertificateRequest> requests, Function<CertificateRequest, Mono<R>> processor) {
+        return dispatch(Flux.fromIterable(requests), processor);
+    }
+
+    /**
+     * Processes the given requests as they arrive, a request is started as soon as its lane has a free slot. The
+     * returned flux completes when the given one has completed and all its requests have been processed.
+     *
+     * @param requests  the requests to process in the order of their priority
+     * @param processor how to process a single request
+     * @param <R>       the type of the processing result
+     * @return flux over the processing results in the order of completion
+     */
+    public <R> Flux<R> dispatch(Flux<CertificateRequest> requests, Function<CertificateRequest, Mono<R>> processor) {
+        return Flux.create(sink -> new Dispatch<>(processor, sink).subscribe(requests));
+    }
+
+    /**
+     * State of a single dispatch.
+     */
+    private final class Dispatch<R> {
+        private final Map<String, Deque<CertificateRequest>> queues = new LinkedHashMap<>();
+        private final Map<String, Integer> active = new HashMap<>();
+        private final List<String> lanes = new ArrayList<>();
+
+        private final Function<CertificateRequest, Mono<R>> processor;
+        private final FluxSink<R> sink;
+        private final Disposable.Composite running = Disposables.composite();
+
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private int totalActive;
+        private int cursor;
+        private boolean inputCompleted;
+        private boolean terminated;
+
+        Dispatch(Function<CertificateRequest, Mono<R>> processor, FluxSink<R> sink) {
+            this.processor = processor;
+            this.sink = sink;
+
+            sink.onDispose(running);
+        }
+
+        void subscribe(Flux<CertificateRequest> requests) {
+            // the requests given right away are all queued before any is started, so that the lanes share the slots
+            wip.getAndIncrement();
+            running.add(requests.subscribe(
+                    this::add,
+                    this::fail,
+                    () -> {
+                        synchronized (this) {
+                            inputCompleted = true;
+                        }
+                        drain();
+                    }
+            ));
+            drainLoop();
+        }
+
+        private void add(CertificateRequest request) {
+            synchronized (this) {
+                queues.computeIfAbsent(laneKey.apply(request), key -> {
+                            lanes.add(key);
+                            return new ArrayDeque<>();
+                        })
+                        .add(request);
+            }
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            synchronized (this) {
+                terminated = true;
+            }
+            sink.error(throwable);
+        }
+
+        void drain() {
+            // requests completing synchronously call this method again, loop instead of recursing
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            drainLoop();
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                final List<CertificateRequest> started = new ArrayList<>();
+                final boolean completed;
+                synchronized (this) {
+                    if (terminated) {
+                        return;
+                    }
+
+                    CertificateRequest next;
+                    while (totalActive < maxConcurrency && (next = pollNext()) != null) {
+                        started.add(next);
+                    }
+
+                    // nothing is running, nothing could be started and nothing more arrives, so all queues are empty
+                    completed = started.isEmpty() && totalActive == 0 && inputCompleted;
+                    terminated = completed;
+                }
+
+                if (completed) {
+                    sink.complete();
+                    return;
+                }
+
+                // subscribe outside the lock because the processor may complete synchronously
+                started.forEach(this::start);
+
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        private CertificateRequest pollNext() {
+            for (int i = 0; i < lanes.size(); i++) {
+                final int index = (cursor + i) % lanes.size();
+                final String lane = lanes.get(index);
+                final Deque<CertificateRequest> queue = queues.get(lane);
+
+                if (!queue.isEmpty() && active.getOrDefault(lane, 0) < laneConcurrency) {
+                    // the next free slot goes to the lane after this one
+                    cursor = (index + 1) % lanes.size();
+                    active.merge(lane, 1, Integer::sum);
+                    totalActive++;
+                    return queue.poll();
+                }
+            }
+            return null;
+        }
+
+        private void start(CertificateRequest request) {
+            final String lane = laneKey.apply(request);
+            running.add(processor.apply(request).subscribe(
+                    sink::next,
+                    this::fail,
+                    () -> {
+                        synchronized (this) {
+                            active.merge(lane, -1, Integer::sum);
+                            totalActive--;
+                        }
+                        drain();
+                    }
+            ));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import java.time.Duration;
+
+/**
+ * Estimates how long a certificate order takes from the durations of the orders completed so far. The estimate is
+ * the smoothed mean plus twice the smoothed deviation, so that a few slow orders quickly make it more conservative.
+ */
+public class OrderDurationEstimator {
+
+    private static final double MEAN_GAIN = 0.125;
+    private static final double DEVIATION_GAIN = 0.25;
+
+    private double meanMillis;
+    private double deviationMillis;
+
+    /**
+     * Creates a new estimator.
+     *
+     * @param initialEstimate the estimate to use before any order has completed
+     */
+    public OrderDurationEstimator(Duration initialEstimate) {
+        this.meanMillis = initialEstimate.toMillis();
+        this.deviationMillis = 0;
+    }
+
+    /**
+     * Returns the current estimate of the duration of one order.
+     */
+    public synchronized Duration estimate() {
+        return Duration.ofMillis(Math.round(meanMillis + 2 * deviationMillis));
+    }
+
+    /**
+     * Updates the estimate with the duration of a completed order.
+     */
+    public synchronized void record(Duration duration) {
+        final double sample = duration.toMillis();
+        deviationMillis += DEVIATION_GAIN * (Math.abs(sample - meanMillis) - deviationMillis);
+        meanMillis += MEAN_GAIN * (sample - meanMillis);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+
+/**
+ * The certificates ordered by the time they are due for renewal, so that a long-running process can sleep until the
+ * next renewal is due.
+ * <p>
+ * The queue is rebuilt from the inventory of the certificates from time to time. A certificate whose renewal has
+ * failed is retried after a delay, which the rebuild keeps.
+ */
+public class RenewalQueue {
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing(Entry::renewOn));
+
+    // the current entry of each certificate, the entries replaced in the queue are skipped when polled
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    // the certificates that cannot be retried before the given time
+    private final Map<String, Instant> retries = new HashMap<>();
+
+    /**
+     * Replaces the queued certificates with the given ones.
+     *
+     * @param renewalTimes the certificates with the time they are due for renewal
+     */
+    public synchronized void reconcile(Map<CertificateInfo, Instant> renewalTimes) {
+        queue.clear();
+        entries.clear();
+        retries.keySet().retainAll(renewalTimes.keySet().stream().map(CertificateInfo::certificateName).toList());
+
+        renewalTimes.forEach((certificateInfo, renewOn) -> {
+            final Instant retryOn = retries.get(certificateInfo.certificateName());
+            add(certificateInfo, null != retryOn && retryOn.isAfter(renewOn) ? retryOn : renewOn);
+        });
+    }
+
+    /**
+     * Removes the certificates that are due at the given time from the queue and returns them.
+     */
+    public synchronized List<CertificateInfo> pollDue(Instant now) {
+        final List<CertificateInfo> due = new ArrayList<>();
+        while (!queue.isEmpty() && !queue.peek().renewOn().isAfter(now)) {
+            final Entry entry = queue.poll();
+            if (entries.remove(entry.certificateInfo().certificateName(), entry)) {
+                due.add(entry.certificateInfo());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Queues the given certificate again, its renewal is retried not before the given time.
+     */
+    public synchronized void retry(CertificateInfo certificateInfo, Instant retryOn) {
+        retries.put(certificateInfo.certificateName(), retryOn);
+        add(certificateInfo, retryOn);
+    }
+
+    /**
+     * Returns when the next certificate is due, null if the queue is empty.
+     */
+    @Nullable
+    public synchronized Instant getNextRenewalTime() {
+        // drop the replaced entries, so that the time is the one of a current entry
+        while (!queue.isEmpty() && entries.get(queue.peek().certificateInfo().certificateName()) != queue.peek()) {
+            queue.poll();
+        }
+        return queue.isEmpty() ? null : queue.peek().renewOn();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void add(CertificateInfo certificateInfo, Instant renewOn) {
+        final var entry = new Entry(certificateInfo, renewOn);
+        entries.put(certificateInfo.certificateName(), entry);
+        queue.add(entry);
+    }
+
+    private record Entry(CertificateInfo certificateInfo, Instant renewOn) {
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import com.google.auto.value.AutoValue;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+
+/**
+ * Certificate request together with the expiry of the certificate it renews.
+ */
+@AutoValue
+public abstract class ScheduledRequest {
+
+    /**
+     * Forced requests go first, then the certificates expiring the soonest.
+     */
+    public static final Comparator<ScheduledRequest> BY_PRIORITY = Comparator
+            .comparing((ScheduledRequest value) -> !value.certificateRequest().forceRequestCreation())
+            .thenComparing(ScheduledRequest::expiresOn, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    public static ScheduledRequest of(CertificateRequest certificateRequest, @Nullable Instant expiresOn) {
+        return new AutoValue_ScheduledRequest(certificateRequest, expiresOn);
+    }
+
+    /**
+     * Looks up the expiry of the certificate in the given list. The expiry remains unknown if the certificate does
+     * not exist yet.
+     */
+    public static ScheduledRequest of(CertificateRequest certificateRequest, List<CertificateInfo> certificates) {
+        final Instant expiresOn = certificates.stream()
+                .filter(certificateInfo -> certificateInfo.certificateName().equals(certificateRequest.certificateName()))
+                .map(CertificateInfo::expiresOn)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+
+        return of(certificateRequest, expiresOn);
+    }
+
+    public abstract CertificateRequest certificateRequest();
+
+    /**
+     * When the current certificate expires. Null if there is no current certificate.
+     */
+    @Nullable
+    public abstract Instant expiresOn();
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+
+/**
+ * Summary of one scheduling run: how many requests have been admitted and completed, and which have been deferred to
+ * the next run and why.
+ */
+public class SchedulingReport {
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final Map<String, DeferralReason> deferred = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    void onResult(CertificateResult result) {
+        switch (result.status()) {
+            case ISSUED -> completed.incrementAndGet();
+            case FAILED -> failed.incrementAndGet();
+            case DEFERRED -> deferred.put(result.certificateRequest().certificateName(), result.deferralReason());
+        }
+    }
+
+    public int getAdmitted() {
+        return getCompleted() + getFailed();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the names of the deferred certificates together with the reason of the deferral.
+     */
+    public Map<String, DeferralReason> getDeferred() {
+        synchronized (deferred) {
+            return Map.copyOf(deferred);
+        }
+    }
+
+    /**
+     * Returns the number of the deferred requests per reason.
+     */
+    public Map<DeferralReason, Integer> getDeferredCounts() {
+        final Map<DeferralReason, Integer> counts = new EnumMap<>(DeferralReason.class);
+        getDeferred().values().forEach(reason -> counts.merge(reason, 1, Integer::sum));
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "admitted=" + getAdmitted() +
+                ", completed=" + getCompleted() +
+                ", failed=" + getFailed() +
+                ", deferred=" + getDeferred().size() + " " + getDeferredCounts();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.sharding;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the leases shared by the instances. The updates are conditional on the version of the lease, so that only one
+ * of the instances racing for a lease gets it.
+ */
+public interface LeaseStore {
+
+    /**
+     * Returns all leases, the expired ones included.
+     */
+    Flux<Lease> getLeases();
+
+    /**
+     * Returns the lease with the given name as it is in the store now, or empty if there is none.
+     */
+    Mono<Lease> getLease(String name);
+
+    /**
+     * Acquires or renews the lease with the given name.
+     *
+     * @param name      the name of the lease
+     * @param owner     the instance that acquires the lease
+     * @param expiresOn when the lease expires
+     * @param current   the lease as last read from the store, or null if there was none
+     * @return the acquired lease, or empty if the lease has been changed by another instance in the meantime
+     */
+    Mono<Lease> acquire(String name, String owner, Instant expiresOn, @Nullable Lease current);
+
+    /**
+     * Releases the given lease. Nothing is done if the lease has been changed by another instance in the meantime.
+     */
+    Mono<Void> release(Lease lease);
+}
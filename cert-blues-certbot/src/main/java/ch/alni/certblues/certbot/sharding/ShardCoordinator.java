@@ -0,0 +1,411 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.sharding;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import ch.alni.certblues.certbot.AdmissionPolicy;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Spreads the certificate requests over several instances. The requests are partitioned into a fixed number of
+ * shards by the hash of their key, and each instance only processes the requests of the shards it holds the lease of.
+ * <p>
+ * Each instance holds a membership lease as long as it runs, the live members share the shards evenly. The shards
+ * are rebalanced cooperatively with every heartbeat: an instance that holds more than its share releases the shards
+ * without started orders, and an instance that holds less takes the shards that are free or whose lease has expired.
+ * The shards are not taken away from a live instance whose leases are renewed.
+ * <p>
+ * A lease is only relied on until a quarter of its duration before it expires, so that the latency of the store and
+ * the skew between the clocks of the instances do not let an instance start a request of a shard that another one
+ * has already taken over. The work of a request is fenced with the lease in addition: the lease is read from the
+ * store and compared by its version with the lease this instance holds right before the order is created and
+ * before the request is reset. If the leases cannot be renewed for longer than three quarters of their duration,
+ * for example because the store is not reachable, another instance can take the shards over while the orders
+ * started before are still running; their requests are then left to the instance that owns the shards now.
+ */
+public class ShardCoordinator implements AdmissionPolicy {
+    private static final Logger LOG = getLogger(ShardCoordinator.class);
+
+    private static final String SHARD_PREFIX = "shard.";
+    private static final String MEMBER_PREFIX = "member.";
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32_fixed();
+
+    private final LeaseStore leaseStore;
+    private final String owner;
+    private final int shardCount;
+    private final ShardKey shardKey;
+    private final Duration leaseDuration;
+    private final Duration safetyMargin;
+    private final Clock clock;
+
+    // guarded by this
+    private final Map<Integer, Lease> ownedShards = new HashMap<>();
+    private final Map<Integer, Integer> inFlight = new HashMap<>();
+    private @Nullable Lease membership;
+
+    private volatile Disposable heartbeat;
+
+    /**
+     * @param leaseStore    the store of the leases shared by the instances
+     * @param owner         the unique ID of this instance
+     * @param shardCount    the number of shards, must be the same for all instances
+     * @param shardKey      what the requests are partitioned by, must be the same for all instances
+     * @param leaseDuration how long a lease is held if it is not renewed
+     * @param clock         the clock to get the current time from
+     */
+    public ShardCoordinator(LeaseStore leaseStore, String owner, int shardCount, ShardKey shardKey,
+                            Duration leaseDuration, Clock clock) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("the number of shards must be positive: " + shardCount);
+        }
+        this.leaseStore = leaseStore;
+        this.owner = owner;
+        this.shardCount = shardCount;
+        this.shardKey = shardKey;
+        this.leaseDuration = leaseDuration;
+        this.safetyMargin = leaseDuration.dividedBy(4);
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the shard of the given key.
+     */
+    public static int getShard(String key, int shardCount) {
+        return Math.floorMod(HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt(), shardCount);
+    }
+
+    private static String toShardName(int shard) {
+        return SHARD_PREFIX + shard;
+    }
+
+    /**
+     * Returns the shard of the given request.
+     */
+    public int getShard(CertificateRequest certificateRequest) {
+        return getShard(shardKey.getKey(certificateRequest), shardCount);
+    }
+
+    /**
+     * Returns the shards this instance holds the lease of.
+     */
+    public synchronized Set<Integer> getOwnedShards() {
+        return new TreeSet<>(ownedShards.keySet());
+    }
+
+    /**
+     * Checks if this instance holds a valid lease of the shard of the given request.
+     */
+    public boolean owns(CertificateRequest certificateRequest) {
+        final Lease lease;
+        synchronized (this) {
+            lease = ownedShards.get(getShard(certificateRequest));
+        }
+        return null != lease && clock.instant().isBefore(lease.expiresOn().minus(safetyMargin));
+    }
+
+    @Override
+    public @Nullable DeferralReason check(CertificateRequest certificateRequest) {
+        return owns(certificateRequest) ? null : DeferralReason.SHARD_NOT_OWNED;
+    }
+
+    @Override
+    public Mono<DeferralReason> confirm(CertificateRequest certificateRequest) {
+        return confirmOwnership(certificateRequest)
+                .flatMap(owned -> owned ? Mono.empty() : Mono.just(DeferralReason.SHARD_NOT_OWNED));
+    }
+
+    /**
+     * Checks with the lease store if this instance still holds a valid lease of the shard of the given request: the
+     * lease in the store must have the version of the lease this instance has acquired or renewed last, so that it
+     * has not been taken over by another instance in the meantime.
+     *
+     * @return mono that emits true if the lease is held, false otherwise
+     */
+    public Mono<Boolean> confirmOwnership(CertificateRequest certificateRequest) {
+        final int shard = getShard(certificateRequest);
+
+        return leaseStore.getLease(toShardName(shard))
+                .map(lease -> {
+                    final Lease owned;
+                    synchronized (this) {
+                        owned = ownedShards.get(shard);
+                    }
+                    return null != owned && owned.version().equals(lease.version()) &&
+                            clock.instant().isBefore(owned.expiresOn().minus(safetyMargin));
+                })
+                .defaultIfEmpty(false)
+                .doOnNext(owned -> {
+                    if (!owned) {
+                        LOG.warn("instance {} does not hold the lease of the shard {} of the certificate request {} " +
+                                "anymore", owner, shard, certificateRequest.certificateName());
+                    }
+                });
+    }
+
+    /**
+     * Counts the given request as in flight, its shard is not released until the request is untracked.
+     */
+    public synchronized void track(CertificateRequest certificateRequest) {
+        inFlight.merge(getShard(certificateRequest), 1, Integer::sum);
+    }
+
+    /**
+     * Counts the given request as not in flight anymore.
+     */
+    public synchronized void untrack(CertificateRequest certificateRequest) {
+        inFlight.computeIfPresent(getShard(certificateRequest), (shard, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Registers this instance as a member, waits for the instances starting at the same time to register too, takes
+     * its share of the shards and keeps rebalancing them with the given interval until the instance leaves.
+     *
+     * @param settleTime        how long to wait for the other instances to register
+     * @param heartbeatInterval how often the leases are renewed and the shards rebalanced, must be well below the
+     *                          lease duration
+     * @return the shards owned after joining
+     */
+    public Mono<Set<Integer>> join(Duration settleTime, Duration heartbeatInterval) {
+        return leaseStore.getLeases()
+                .collectMap(Lease::name)
+                .flatMap(leases -> renewMembership(leases.get(getMemberName()), clock.instant().plus(leaseDuration)))
+                .then(Mono.delay(settleTime))
+                .then(rebalance())
+                .doOnNext(shards -> {
+                    LOG.info("instance {} joined and owns the shards {}", owner, shards);
+                    startHeartbeat(heartbeatInterval);
+                });
+    }
+
+    /**
+     * Stops the heartbeat and releases the shards and the membership, so that the other instances take over the
+     * shards without waiting for the leases to expire.
+     */
+    public Mono<Void> leave() {
+        if (null != heartbeat) {
+            heartbeat.dispose();
+        }
+
+        final List<Lease> leases;
+        synchronized (this) {
+            leases = new ArrayList<>(ownedShards.values());
+            if (null != membership) {
+                leases.add(membership);
+            }
+            ownedShards.clear();
+            membership = null;
+        }
+
+        return Flux.fromIterable(leases)
+                .flatMap(leaseStore::release)
+                .then()
+                .doOnSuccess(nothing -> LOG.info("instance {} left", owner));
+    }
+
+    /**
+     * Renews the leases of this instance and rebalances the shards according to the number of the live members.
+     *
+     * @return the shards owned after rebalancing
+     */
+    public Mono<Set<Integer>> rebalance() {
+        return leaseStore.getLeases()
+                .collectMap(Lease::name)
+                .flatMap(this::rebalance);
+    }
+
+    private Mono<Set<Integer>> rebalance(Map<String, Lease> leases) {
+        final Instant now = clock.instant();
+        final Instant expiresOn = now.plus(leaseDuration);
+
+        final long members = 1 + leases.values().stream()
+                .filter(lease -> lease.name().startsWith(MEMBER_PREFIX))
+                .filter(lease -> !lease.isExpired(now) && !lease.owner().equals(owner))
+                .count();
+        final int share = (int) ((shardCount + members - 1) / members);
+
+        return renewMembership(leases.get(getMemberName()), expiresOn)
+                .then(renewShards(leases, expiresOn))
+                .then(Mono.defer(() -> releaseShards(share)))
+                .then(Mono.defer(() -> acquireShards(leases, now, expiresOn, share)))
+                .then(Mono.fromSupplier(this::getOwnedShards))
+                .doOnNext(shards -> LOG.debug("instance {} of {} owns {} of {} shards", owner, members,
+                        shards.size(), shardCount));
+    }
+
+    private String getMemberName() {
+        return MEMBER_PREFIX + owner;
+    }
+
+    private Mono<Void> renewMembership(@Nullable Lease current, Instant expiresOn) {
+        return leaseStore.acquire(getMemberName(), owner, expiresOn, current)
+                .doOnNext(lease -> {
+                    synchronized (this) {
+                        membership = lease;
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(() ->
+                        LOG.warn("membership of instance {} has been changed by another instance", owner)))
+                .then();
+    }
+
+    private Mono<Void> renewShards(Map<String, Lease> leases, Instant expiresOn) {
+        final Map<Integer, Lease> renewed;
+        synchronized (this) {
+            renewed = new HashMap<>(ownedShards);
+        }
+
+        return Flux.fromIterable(renewed.entrySet())
+                .concatMap(entry -> {
+                    final int shard = entry.getKey();
+                    final Lease current = leases.get(toShardName(shard));
+                    // the lease is lost if another instance has taken it over in the meantime
+                    final Mono<Lease> renewal = null != current && current.version().equals(entry.getValue().version()) ?
+                            leaseStore.acquire(toShardName(shard), owner, expiresOn, current) : Mono.empty();
+
+                    return renewal
+                            .doOnNext(lease -> updateOwnedShard(shard, lease))
+                            .switchIfEmpty(Mono.fromRunnable(() -> loseShard(shard)));
+                })
+                .then();
+    }
+
+    /**
+     * Releases the shards over the share of this instance, the shards without requests in flight only.
+     */
+    private Mono<Void> releaseShards(int share) {
+        final List<Lease> released = new ArrayList<>();
+        synchronized (this) {
+            final List<Integer> candidates = ownedShards.keySet().stream()
+                    .filter(shard -> !inFlight.containsKey(shard))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+
+            for (int shard : candidates) {
+                if (ownedShards.size() <= share) {
+                    break;
+                }
+                released.add(ownedShards.remove(shard));
+            }
+        }
+
+        return Flux.fromIterable(released)
+                .doOnNext(lease -> LOG.info("instance {} releases the lease {}", owner, lease.name()))
+                .concatMap(leaseStore::release)
+                .then();
+    }
+
+    /**
+     * Takes the free shards up to the share of this instance. The shards are tried in random order, so that the
+     * instances joining together do not race for the same shards.
+     */
+    private Mono<Void> acquireShards(Map<String, Lease> leases, Instant now, Instant expiresOn, int share) {
+        final Set<Integer> owned = getOwnedShards();
+        final List<Integer> candidates = new ArrayList<>(IntStream.range(0, shardCount)
+                .filter(shard -> !owned.contains(shard))
+                .filter(shard -> {
+                    final Lease lease = leases.get(toShardName(shard));
+                    return null == lease || lease.isExpired(now);
+                })
+                .boxed()
+                .toList());
+        Collections.shuffle(candidates);
+
+        return Flux.fromIterable(candidates)
+                .concatMap(shard -> Mono.defer(() -> hasShare(share) ? Mono.<Lease>empty() :
+                        leaseStore.acquire(toShardName(shard), owner, expiresOn, leases.get(toShardName(shard)))
+                                .doOnNext(lease -> {
+                                    LOG.info("instance {} acquired the lease {}", owner, lease.name());
+                                    updateOwnedShard(shard, lease);
+                                })))
+                .then();
+    }
+
+    private synchronized boolean hasShare(int share) {
+        return ownedShards.size() >= share;
+    }
+
+    private synchronized void updateOwnedShard(int shard, Lease lease) {
+        ownedShards.put(shard, lease);
+    }
+
+    private synchronized void loseShard(int shard) {
+        if (null != ownedShards.remove(shard)) {
+            LOG.warn("instance {} has lost the lease of the shard {}", owner, shard);
+        }
+    }
+
+    private void startHeartbeat(Duration heartbeatInterval) {
+        heartbeat = Flux.interval(heartbeatInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rebalance().onErrorResume(throwable -> {
+                    // the leases are renewed with the next heartbeat, they are relied on for a while longer
+                    LOG.warn("cannot rebalance the shards of instance {}", owner, throwable);
+                    warnOfLapsedShards();
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    /**
+     * Logs the shards with requests in flight whose leases are not relied on anymore, the other instances may take
+     * them over before the requests have completed.
+     */
+    private synchronized void warnOfLapsedShards() {
+        final Instant now = clock.instant();
+        ownedShards.forEach((shard, lease) -> {
+            if (inFlight.containsKey(shard) && !now.isBefore(lease.expiresOn().minus(safetyMargin))) {
+                LOG.error("the lease of the shard {} has not been renewed in time, its {} requests in flight may " +
+                        "be taken over by another instance", shard, inFlight.get(shard));
+            }
+        });
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.sharding;
+
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.scheduling.LaneDispatcher;
+
+/**
+ * What the certificate requests are partitioned by.
+ */
+public enum ShardKey {
+
+    /**
+     * Each certificate is assigned to a shard on its own, which spreads the requests evenly.
+     */
+    CERTIFICATE_NAME(CertificateRequest::certificateName),
+
+    /**
+     * The certificates whose challenges are provisioned in the same DNS zone or storage account are assigned to the
+     * same shard, so that the challenge records of a zone are only written by one instance. The certificates without
+     * such a resource are assigned by their name.
+     */
+    CHALLENGE_RESOURCE(certificateRequest -> {
+        final String challengeResource = LaneDispatcher.getChallengeResource(certificateRequest);
+        return challengeResource.isEmpty() ? certificateRequest.certificateName() : challengeResource;
+    });
+
+    private final Function<CertificateRequest, String> keyFunction;
+
+    ShardKey(Function<CertificateRequest, String> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * Returns the key of the given request.
+     */
+    public String getKey(CertificateRequest certificateRequest) {
+        return keyFunction.apply(certificateRequest);
+    }
+}
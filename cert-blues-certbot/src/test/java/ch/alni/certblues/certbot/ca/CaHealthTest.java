@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ca;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CaHealthTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    private final CaHealth health = new CaHealth("test", clock);
+
+    @Test
+    void shouldProbeAfterCoolDownAndRecover() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(health.tryAcquire()).isTrue();
+            health.onFailure();
+        }
+        assertThat(health.getState()).isEqualTo(CaHealth.State.UNAVAILABLE);
+        assertThat(health.isAvailable()).isFalse();
+        assertThat(health.tryAcquire()).isFalse();
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(health.isAvailable()).isTrue();
+
+        // only one probe at a time
+        assertThat(health.tryAcquire()).isTrue();
+        assertThat(health.tryAcquire()).isFalse();
+
+        health.onSuccess(Duration.ofSeconds(10));
+        assertThat(health.getState()).isEqualTo(CaHealth.State.HEALTHY);
+        assertThat(health.getScore()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldDoubleCoolDownAfterFailedProbe() {
+        for (int i = 0; i < 4; i++) {
+            health.onFailure();
+        }
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(health.tryAcquire()).isTrue();
+        health.onFailure();
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(health.tryAcquire()).isFalse();
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldTripWhenOrdersGetSlow() {
+        for (int i = 0; i < 3; i++) {
+            health.onSuccess(Duration.ofSeconds(10));
+        }
+        assertThat(health.getScore()).isEqualTo(1.0);
+
+        for (int i = 0; i < 20 && health.getState() == CaHealth.State.HEALTHY; i++) {
+            health.onSuccess(Duration.ofMinutes(5));
+        }
+        assertThat(health.getState()).isEqualTo(CaHealth.State.UNAVAILABLE);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2023-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
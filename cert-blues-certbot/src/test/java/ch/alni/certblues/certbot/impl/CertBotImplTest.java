@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.alni.certblues.acme.client.request.CreatedResource;
+import ch.alni.certblues.acme.facade.AcmeSession;
+import ch.alni.certblues.acme.protocol.Challenge;
+import ch.alni.certblues.acme.protocol.Order;
+import ch.alni.certblues.acme.protocol.OrderStatus;
+import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateStore;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the order state machine with BlockHound installed, so that any blocking call on the state machine threads
+ * or on the threads delivering the responses fails the order. The tests run in a JVM of their own with the
+ * blockHoundTest task.
+ */
+@Tag("blockHound")
+class CertBotImplTest {
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .subjectDn("CN=test.cloudalni.com")
+            .certificateName("cloudalni")
+            .dnsNames(List.of("test.cloudalni.com"))
+            .build();
+
+    private static final Order VALID_ORDER = Order.builder()
+            .status(OrderStatus.VALID)
+            .identifiers(List.of())
+            .finalizeUrl("https://acme.test/finalize/1")
+            .certificate("https://acme.test/cert/1")
+            .build();
+
+    private final Scheduler stateMachineScheduler = CertBotFactory.newStateMachineScheduler();
+
+    // stands in for the event loop of the HTTP client
+    private final Scheduler eventLoop = Schedulers.newParallel("event-loop", 1);
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stateMachineScheduler.dispose();
+        eventLoop.dispose();
+    }
+
+    @Test
+    void shouldRunBlockingCertificateStoreOffTheEventLoop() {
+        final AcmeSession session = mock(AcmeSession.class);
+        when(session.createOrder(any())).thenReturn(
+                Mono.just(new CreatedResource<>(VALID_ORDER, "https://acme.test/order/1")).publishOn(eventLoop)
+        );
+        when(session.downloadCertificate(anyString())).thenReturn(
+                Mono.just("certificate").publishOn(eventLoop)
+        );
+
+        // a certificate store that blocks, like a synchronous SDK client would do
+        final CertificateStore certificateStore = mock(CertificateStore.class);
+        when(certificateStore.upload(anyString(), anyString())).thenReturn(Mono.fromRunnable(() -> sleep()));
+
+        final var certBot = new CertBotImpl(session, certificateStore, mock(AuthorizationProvisionerFactory.class),
+                stateMachineScheduler, Schedulers.boundedElastic());
+
+        assertThat(certBot.submit(CERTIFICATE_REQUEST).block(Duration.ofSeconds(10))).isEqualTo("certificate");
+    }
+
+    @Test
+    void shouldCancelCsrOfFailedOrderOnceCreated() {
+        final AcmeSession session = mock(AcmeSession.class);
+        when(session.createOrder(any())).thenReturn(
+                Mono.just(new CreatedResource<>(VALID_ORDER.toBuilder().status(OrderStatus.PENDING).build(),
+                        "https://acme.test/order/1")).publishOn(eventLoop)
+        );
+        when(session.provision(anyList(), any())).thenReturn(
+                Flux.<Challenge>error(new IllegalStateException("challenge rejected")).publishOn(eventLoop)
+        );
+
+        // the CSR is still being created when the order fails
+        final AtomicBoolean csrCreated = new AtomicBoolean();
+        final AtomicBoolean csrCreatedBeforeCancel = new AtomicBoolean();
+        final CertificateStore certificateStore = mock(CertificateStore.class);
+        when(certificateStore.createCsr(any())).thenReturn(Mono.delay(Duration.ofMillis(500))
+                .map(tick -> new byte[0])
+                .doOnNext(csr -> csrCreated.set(true)));
+        when(certificateStore.cancelCsr(any())).thenReturn(
+                Mono.fromRunnable(() -> csrCreatedBeforeCancel.set(csrCreated.get()))
+        );
+
+        final var certBot = new CertBotImpl(session, certificateStore, mock(AuthorizationProvisionerFactory.class),
+                stateMachineScheduler, Schedulers.boundedElastic());
+
+        assertThatThrownBy(() -> certBot.submit(CERTIFICATE_REQUEST).block(Duration.ofSeconds(10)))
+                .hasMessageContaining("challenge rejected");
+        verify(certificateStore).cancelCsr(CERTIFICATE_REQUEST);
+        assertThat(csrCreatedBeforeCancel).isTrue();
+    }
+
+    @Test
+    void shouldSubmitAgainOrderFailedWhileStarted() {
+        final AcmeSession session = mock(AcmeSession.class);
+        when(session.createOrder(any())).thenReturn(Mono.error(new IllegalStateException("order rejected")));
+
+        // the order fails while it is started, before the certbot returns it
+        final var certBot = new CertBotImpl(session, mock(CertificateStore.class),
+                mock(AuthorizationProvisionerFactory.class), Schedulers.immediate(), Schedulers.immediate());
+
+        assertThatThrownBy(() -> certBot.submit(CERTIFICATE_REQUEST).block(Duration.ofSeconds(10)))
+                .hasMessageContaining("order rejected");
+        assertThatThrownBy(() -> certBot.submit(CERTIFICATE_REQUEST).block(Duration.ofSeconds(10)))
+                .hasMessageContaining("order rejected");
+        verify(session, times(2)).createOrder(any());
+    }
+
+    @Test
+    void shouldDetectBlockingCallOnStateMachineThread() {
+        final Mono<Void> blockingMono = Mono.<Void>fromRunnable(() -> sleep()).subscribeOn(stateMachineScheduler);
+
+        assertThatThrownBy(blockingMono::block).hasMessageContaining("Blocking call");
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10L);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
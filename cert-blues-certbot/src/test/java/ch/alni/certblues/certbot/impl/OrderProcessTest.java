@@ -0,0 +1,208 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.alni.certblues.acme.protocol.Order;
+import ch.alni.certblues.acme.protocol.OrderStatus;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.events.OrderCheckNeededEvent;
+import ch.alni.certblues.certbot.events.OrderCreatedEvent;
+import ch.alni.certblues.certbot.events.OrderReadyEvent;
+import ch.alni.certblues.certbot.events.OrderStateListener;
+import ch.alni.certblues.certbot.events.OrderValidEvent;
+import reactor.util.function.Tuples;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderProcessTest {
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .subjectDn("CN=test.cloudalni.com")
+            .certificateName("cloudalni")
+            .dnsNames(List.of("test.cloudalni.com"))
+            .build();
+
+    private static Order order(OrderStatus status) {
+        return Order.builder()
+                .status(status)
+                .identifiers(List.of())
+                .finalizeUrl("https://acme.test/finalize/1")
+                .certificate("https://acme.test/cert/1")
+                .build();
+    }
+
+    @Test
+    void shouldApplyTransitionsWithoutNesting() {
+        final List<String> events = new ArrayList<>();
+        final AtomicInteger depth = new AtomicInteger();
+
+        // the listener reacts synchronously, as it happens with the cached responses
+        final var listener = new OrderStateListener() {
+            @Override
+            public void on(OrderCreatedEvent event) {
+                record("created", () -> event.getProcess().onOrderProvisioned());
+            }
+
+            @Override
+            public void on(OrderCheckNeededEvent event) {
+                record("check", () -> event.getProcess().onOrderChanged(Tuples.of(order(OrderStatus.READY), List.of())));
+            }
+
+            @Override
+            public void on(OrderReadyEvent event) {
+                record("ready", () -> event.getProcess().onOrderChanged(Tuples.of(order(OrderStatus.VALID), List.of())));
+            }
+
+            @Override
+            public void on(OrderValidEvent event) {
+                record("valid", () -> event.getProcess().onCertificateDownloaded("certificate"));
+            }
+
+            private void record(String event, Runnable next) {
+                assertThat(depth.incrementAndGet()).isEqualTo(1);
+                events.add(event);
+                next.run();
+                depth.decrementAndGet();
+            }
+        };
+
+        final var process = new OrderProcess(CERTIFICATE_REQUEST, listener);
+        process.onOrderCreated(order(OrderStatus.PENDING), "https://acme.test/order/1");
+
+        assertThat(process.getCertificate().block(Duration.ofSeconds(1))).isEqualTo("certificate");
+        assertThat(events).containsExactly("created", "check", "ready", "valid");
+        assertThat(process.getState()).isEqualTo(OrderState.ISSUED);
+        assertThat(process.getStateTimestamps()).containsOnlyKeys(
+                OrderState.CREATING, OrderState.PROVISIONING, OrderState.WAITING, OrderState.FINALIZING,
+                OrderState.DOWNLOADING, OrderState.ISSUED
+        );
+        assertThat(process.getPhaseDurations()).containsOnlyKeys(
+                OrderState.CREATING, OrderState.PROVISIONING, OrderState.WAITING, OrderState.FINALIZING,
+                OrderState.DOWNLOADING
+        );
+    }
+
+    @Test
+    void shouldFailOnUnexpectedTransition() {
+        final var process = new OrderProcess(CERTIFICATE_REQUEST, new IgnoringListener());
+        process.onCertificateDownloaded("certificate");
+
+        assertThat(process.getState()).isEqualTo(OrderState.FAILED);
+        assertThatThrownBy(() -> process.getCertificate().block(Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalStateException.class);
+
+        // the inputs arriving after the end are ignored
+        process.onOrderCreated(order(OrderStatus.VALID), "https://acme.test/order/1");
+        assertThat(process.getState()).isEqualTo(OrderState.FAILED);
+    }
+
+    @Test
+    void shouldReturnInvalidIdentifiersOnce() {
+        final var process = new OrderProcess(CERTIFICATE_REQUEST, new IgnoringListener());
+
+        assertThat(process.getNewInvalidIdentifiers(List.of("a.cloudalni.com"))).containsExactly("a.cloudalni.com");
+        // the next check of the order sees the same invalid authorization again
+        assertThat(process.getNewInvalidIdentifiers(List.of("a.cloudalni.com", "b.cloudalni.com")))
+                .containsExactly("b.cloudalni.com");
+    }
+
+    @Test
+    void shouldSerializeConcurrentInputs() throws InterruptedException {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger checks = new AtomicInteger();
+
+        final var listener = new IgnoringListener() {
+            @Override
+            public void on(OrderCheckNeededEvent event) {
+                if (active.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                checks.incrementAndGet();
+                active.decrementAndGet();
+            }
+        };
+
+        final var process = new OrderProcess(CERTIFICATE_REQUEST, listener);
+        process.onOrderCreated(order(OrderStatus.PROCESSING), "https://acme.test/order/1");
+
+        final int threads = 8;
+        final int inputsPerThread = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int j = 0; j < inputsPerThread; j++) {
+                    process.onOrderChanged(Tuples.of(order(OrderStatus.PROCESSING), List.of()));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(overlaps.get()).isZero();
+        assertThat(checks.get()).isEqualTo(threads * inputsPerThread + 1);
+        assertThat(process.getState()).isEqualTo(OrderState.WAITING);
+    }
+
+    private static class IgnoringListener implements OrderStateListener {
+
+        @Override
+        public void on(OrderCreatedEvent event) {
+        }
+
+        @Override
+        public void on(OrderCheckNeededEvent event) {
+        }
+
+        @Override
+        public void on(OrderReadyEvent event) {
+        }
+
+        @Override
+        public void on(OrderValidEvent event) {
+        }
+    }
+}
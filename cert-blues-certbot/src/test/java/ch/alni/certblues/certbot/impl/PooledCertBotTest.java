@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.alni.certblues.acme.client.request.CreatedResource;
+import ch.alni.certblues.acme.facade.AcmeSession;
+import ch.alni.certblues.acme.protocol.AcmeServerException;
+import ch.alni.certblues.acme.protocol.Challenge;
+import ch.alni.certblues.acme.protocol.Error;
+import ch.alni.certblues.acme.protocol.Order;
+import ch.alni.certblues.acme.protocol.OrderStatus;
+import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.ca.CaHealth;
+import ch.alni.certblues.certbot.ca.CaRouter;
+import ch.alni.certblues.certbot.ca.RoutedAuthority;
+import ch.alni.certblues.certbot.pool.AcmeSessionPool;
+import ch.alni.certblues.certbot.pool.PooledAccount;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PooledCertBotTest {
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .subjectDn("CN=test.cloudalni.com")
+            .certificateName("cloudalni")
+            .dnsNames(List.of("test.cloudalni.com"))
+            .build();
+
+    private static final Order VALID_ORDER = Order.builder()
+            .status(OrderStatus.VALID)
+            .identifiers(List.of())
+            .finalizeUrl("https://acme.test/finalize/1")
+            .certificate("https://acme.test/cert/1")
+            .build();
+
+    private final Scheduler stateMachineScheduler = CertBotFactory.newStateMachineScheduler();
+
+    @AfterEach
+    void tearDown() {
+        stateMachineScheduler.dispose();
+    }
+
+    @Test
+    void shouldDiscardCsrBeforeFailingOver() {
+        // the first CA fails the order while its CSR is being created
+        final AcmeSession failingSession = mock(AcmeSession.class);
+        when(failingSession.createOrder(any())).thenReturn(Mono.just(new CreatedResource<>(
+                VALID_ORDER.toBuilder().status(OrderStatus.PENDING).build(), "https://first.test/order/1")));
+        when(failingSession.provision(anyList(), any())).thenReturn(Flux.<Challenge>error(new AcmeServerException(
+                Error.builder().type("urn:ietf:params:acme:error:serverInternal").detail("unavailable").status(500)
+                        .build())));
+
+        // discarding the CSR takes a while, like the cancellation of a key vault operation does
+        final AtomicBoolean csrDiscarded = new AtomicBoolean();
+        final CertificateStore certificateStore = mock(CertificateStore.class);
+        when(certificateStore.createCsr(any())).thenReturn(Mono.delay(Duration.ofMillis(100)).map(tick -> new byte[0]));
+        when(certificateStore.cancelCsr(any())).thenReturn(Mono.delay(Duration.ofMillis(200))
+                .then(Mono.fromRunnable(() -> csrDiscarded.set(true))));
+        when(certificateStore.upload(anyString(), anyString())).thenReturn(Mono.empty());
+
+        // the second CA takes the request over
+        final AtomicBoolean discardedBeforeFailover = new AtomicBoolean();
+        final AcmeSession session = mock(AcmeSession.class);
+        when(session.createOrder(any())).thenReturn(Mono.fromCallable(() -> {
+            discardedBeforeFailover.set(csrDiscarded.get());
+            return new CreatedResource<>(VALID_ORDER, "https://second.test/order/1");
+        }));
+        when(session.downloadCertificate(anyString())).thenReturn(Mono.just("certificate"));
+
+        final var certBot = new PooledCertBot(
+                new CaRouter(List.of(authority("first", failingSession), authority("second", session))),
+                account -> new CertBotImpl(account.session(), certificateStore,
+                        mock(AuthorizationProvisionerFactory.class), stateMachineScheduler,
+                        Schedulers.boundedElastic()));
+
+        assertThat(certBot.submit(CERTIFICATE_REQUEST).block(Duration.ofSeconds(10))).isEqualTo("certificate");
+        assertThat(discardedBeforeFailover).isTrue();
+    }
+
+    private static RoutedAuthority authority(String name, AcmeSession session) {
+        final var pool = new AcmeSessionPool(List.of(new PooledAccount(name + "-account", session, null)));
+        return new RoutedAuthority(name, pool, new CaHealth(name, Clock.systemUTC()));
+    }
+}
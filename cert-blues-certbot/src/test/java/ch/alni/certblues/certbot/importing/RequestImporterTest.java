@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.importing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.inmemory.BackendBehaviour;
+import ch.alni.certblues.certbot.inmemory.InMemoryStorageService;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestImporterTest {
+
+    private final InMemoryStorageService storageService = new InMemoryStorageService(BackendBehaviour.ideal());
+
+    @TempDir
+    Path directory;
+
+    private static String line(int index) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=test" + index + ".cloudalni.com")
+                .certificateName("test" + index)
+                .dnsNames(List.of("test" + index + ".cloudalni.com"))
+                .build()
+                .toJson();
+    }
+
+    @Test
+    void rejectsInvalidLinesAndResumesAfterFailure() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            lines.add(line(i));
+        }
+        lines.set(10, "{\"certificateName\":");
+        lines.set(20, line(20).replace("test20", "test_20"));
+        lines.set(30, "");
+        // the same request again replaces the earlier line
+        lines.set(40, line(41));
+
+        final Path file = directory.resolve("requests.jsonl");
+        final Path progressFile = directory.resolve("requests.jsonl.progress");
+        Files.write(file, lines);
+
+        // the second window cannot be written
+        final RequestWriter failingWriter = new RequestWriter() {
+            @Override
+            public String getPartition(CertificateRequest certificateRequest) {
+                return storageService.getPartition(certificateRequest);
+            }
+
+            @Override
+            public int getMaxBatchSize() {
+                return storageService.getMaxBatchSize();
+            }
+
+            @Override
+            public Mono<Void> upsert(List<CertificateRequest> certificateRequests) {
+                return certificateRequests.stream().anyMatch(request -> request.certificateName().equals("test150"))
+                        ? Mono.error(new IllegalStateException("unavailable"))
+                        : storageService.upsert(certificateRequests);
+            }
+        };
+
+        assertThatThrownBy(() -> new RequestImporter(failingWriter, 4, 100, Clock.systemUTC())
+                .importFile(file, progressFile).block())
+                .hasMessageContaining("unavailable");
+        assertThat(Files.readString(progressFile)).isEqualTo("100");
+        assertThat(storageService.getRequestCount()).isEqualTo(96);
+
+        final ImportReport report = new RequestImporter(storageService, 4, 100, Clock.systemUTC())
+                .importFile(file, progressFile).block();
+
+        assertThat(report).isNotNull();
+        assertThat(report.skipped()).isEqualTo(100);
+        assertThat(report.imported()).isEqualTo(150);
+        assertThat(report.rejected()).isZero();
+        assertThat(storageService.getRequestCount()).isEqualTo(246);
+        assertThat(progressFile).doesNotExist();
+    }
+
+    @Test
+    void validatesRequests() {
+        assertThat(RequestImporter.parse(line(1)).certificateName()).isEqualTo("test1");
+
+        assertThatThrownBy(() -> RequestImporter.parse("{\"certificateName\":\"test\"}"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RequestImporter.parse(line(1).replace("[\"test1.cloudalni.com\"]", "[]")))
+                .hasMessage("no DNS names");
+    }
+}
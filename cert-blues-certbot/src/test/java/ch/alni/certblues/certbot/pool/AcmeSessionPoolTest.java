@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import ch.alni.certblues.acme.facade.AcmeSession;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.ratelimit.RateLimit;
+import ch.alni.certblues.certbot.ratelimit.RateLimitLedger;
+import ch.alni.certblues.certbot.ratelimit.RateLimitStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class AcmeSessionPoolTest {
+
+    private static CertificateRequest certificateRequest(String name, String dnsName) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + dnsName)
+                .certificateName(name)
+                .dnsNames(List.of(dnsName))
+                .build();
+    }
+
+    private static PooledAccount account(String account) {
+        return new PooledAccount(account, mock(AcmeSession.class), null);
+    }
+
+    private static PooledAccount account(String account, Map<RateLimit, Integer> maximums) {
+        return new PooledAccount(account, mock(AcmeSession.class),
+                new RateLimitLedger(RateLimitStore.none(), account, maximums, Clock.systemUTC()));
+    }
+
+    private static Map<RateLimit, Integer> maximums(RateLimit limit, int max) {
+        final Map<RateLimit, Integer> maximums = RateLimit.defaults();
+        maximums.put(limit, max);
+        return maximums;
+    }
+
+    @Test
+    void shouldMoveOnlyShareOfCertificatesWhenAccountIsAdded() {
+        final List<PooledAccount> accounts = new ArrayList<>(List.of(account("a"), account("b"), account("c")));
+        final var pool = new AcmeSessionPool(accounts);
+
+        final List<CertificateRequest> requests = IntStream.range(0, 1000)
+                .mapToObj(i -> certificateRequest("cert" + i, "www" + i + ".cloudalni.com"))
+                .toList();
+
+        final List<String> before = requests.stream().map(request -> pool.route(request).account()).toList();
+        assertThat(new HashSet<>(before)).containsExactlyInAnyOrder("a", "b", "c");
+        // the routing is stable
+        assertThat(requests.stream().map(request -> pool.route(request).account()).toList()).isEqualTo(before);
+
+        accounts.add(account("d"));
+        final var grownPool = new AcmeSessionPool(accounts);
+        final List<String> after = requests.stream().map(request -> grownPool.route(request).account()).toList();
+
+        final long moved = IntStream.range(0, requests.size())
+                .filter(i -> !before.get(i).equals(after.get(i)))
+                .count();
+        // only the certificates taken over by the new account move, about a quarter of them
+        assertThat(moved).isBetween(150L, 350L);
+        IntStream.range(0, requests.size())
+                .filter(i -> !before.get(i).equals(after.get(i)))
+                .forEach(i -> assertThat(after.get(i)).isEqualTo("d"));
+    }
+
+    @Test
+    void shouldSpreadOrdersWhenOwnerRunsOutOfHeadroom() {
+        final var pool = new AcmeSessionPool(List.of(
+                account("a", maximums(RateLimit.NEW_ORDERS, 4)),
+                account("b", maximums(RateLimit.NEW_ORDERS, 4))
+        ));
+
+        final Set<String> selected = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            final PooledAccount account = pool.admit(certificateRequest("same", "www" + i + ".cloudalni" + i + ".com"));
+            assertThat(account).isNotNull();
+            selected.add(account.account());
+        }
+
+        assertThat(selected).containsExactlyInAnyOrder("a", "b");
+        assertThat(pool.getOrderHeadroom()).isEqualTo(Map.of("a", 0, "b", 0));
+        assertThat(pool.admit(certificateRequest("same", "www.other.com"))).isNull();
+    }
+
+    @Test
+    void shouldCountRegisteredDomainAcrossAccounts() {
+        final var pool = new AcmeSessionPool(List.of(
+                account("a", maximums(RateLimit.CERTIFICATES_PER_DOMAIN, 1)),
+                account("b", maximums(RateLimit.CERTIFICATES_PER_DOMAIN, 1))
+        ));
+
+        assertThat(pool.admit(certificateRequest("first", "www.cloudalni.com"))).isNotNull();
+        // another account would admit it, but the limit applies to the domain and not to the account
+        assertThat(pool.admit(certificateRequest("second", "test.cloudalni.com"))).isNull();
+        assertThat(pool.admit(certificateRequest("third", "www.example.com"))).isNotNull();
+    }
+}
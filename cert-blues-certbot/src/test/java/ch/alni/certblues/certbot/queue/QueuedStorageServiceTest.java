@@ -0,0 +1,165 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.inmemory.BackendBehaviour;
+import ch.alni.certblues.certbot.inmemory.InMemoryRequestQueue;
+import ch.alni.certblues.certbot.inmemory.InMemoryStorageService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueuedStorageServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static final Duration VISIBILITY_TIMEOUT = Duration.ofMinutes(10);
+
+    private final MutableClock clock = new MutableClock();
+    private final InMemoryStorageService storageService = new InMemoryStorageService(BackendBehaviour.ideal());
+    private final InMemoryRequestQueue queue = new InMemoryRequestQueue(clock);
+    private final QueuedStorageService queuedStorageService =
+            new QueuedStorageService(storageService, queue, 32, VISIBILITY_TIMEOUT, 2);
+
+    private static CertificateRequest request(String name, boolean forced) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + name + ".cloudalni.com")
+                .certificateName(name)
+                .dnsNames(List.of(name + ".cloudalni.com"))
+                .forceRequestCreation(forced)
+                .build();
+    }
+
+    @Test
+    void shouldProcessEachPendingRequestOnce() {
+        storageService.put(request("forced", true));
+        storageService.put(request("idle", false));
+        queue.send("forced");
+        queue.send("idle");
+        queue.send("forced");
+        queue.send("deleted");
+
+        final List<CertificateRequest> requests = queuedStorageService.getPendingCertificateRequests(List.of())
+                .collectList().block();
+        assertThat(requests).extracting(CertificateRequest::certificateName).containsExactly("forced");
+
+        // the notifications of the requests that are not pending are deleted right away
+        assertThat(queue.size()).isEqualTo(2);
+
+        queuedStorageService.reset(requests.get(0)).block();
+        assertThat(queue.size()).isZero();
+        assertThat(storageService.getCertificateRequest("forced").block().forceRequestCreation()).isFalse();
+    }
+
+    @Test
+    void shouldDeliverAgainUntilDeadLettered() {
+        storageService.put(request("failing", true));
+        queue.send("failing");
+
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).hasSize(1);
+        // hidden while the request is processed
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).isEmpty();
+
+        clock.advance(VISIBILITY_TIMEOUT);
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).hasSize(1);
+
+        clock.advance(VISIBILITY_TIMEOUT);
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).isEmpty();
+        assertThat(queue.getDeadLetters()).containsExactly("failing");
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    void shouldNotDeadLetterDeferredRequest() {
+        storageService.put(request("deferred", true));
+        queue.send("deferred");
+        queue.send("deferred");
+
+        // deferred more often than a notification can be delivered
+        for (int i = 0; i < 4; i++) {
+            final List<CertificateRequest> requests = queuedStorageService.getPendingCertificateRequests(List.of())
+                    .collectList().block();
+            assertThat(requests).hasSize(1);
+
+            queuedStorageService.release(CertificateResult.deferred(requests.get(0), DeferralReason.RATE_LIMIT,
+                    clock.instant())).block();
+            assertThat(queue.size()).isEqualTo(1);
+
+            // the new notification is delivered once the visibility timeout has passed
+            assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).isEmpty();
+            clock.advance(VISIBILITY_TIMEOUT);
+        }
+        assertThat(queue.getDeadLetters()).isEmpty();
+    }
+
+    @Test
+    void shouldDeliverFailedRequestAgain() {
+        storageService.put(request("failing", true));
+        queue.send("failing");
+
+        final List<CertificateRequest> requests = queuedStorageService.getPendingCertificateRequests(List.of())
+                .collectList().block();
+        queuedStorageService.release(CertificateResult.failed(requests.get(0), new IllegalStateException("failed"),
+                clock.instant(), Duration.ZERO)).block();
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).isEmpty();
+
+        clock.advance(VISIBILITY_TIMEOUT);
+        assertThat(queuedStorageService.getPendingCertificateRequests(List.of()).collectList().block()).hasSize(1);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitLedgerTest {
+
+    private static final Instant NOW = Instant.parse("2023-01-01T00:00:00Z");
+
+    private static final String ACCOUNT = "account";
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .subjectDn("CN=test.cloudalni.com")
+            .certificateName("cloudalni")
+            .dnsNames(List.of("test.cloudalni.com", "www.cloudalni.com"))
+            .build();
+
+    private final MutableClock clock = new MutableClock();
+
+    private final RecordingStore store = new RecordingStore();
+
+    private static Map<RateLimit, Integer> maximums(RateLimit limit, int max) {
+        final Map<RateLimit, Integer> maximums = RateLimit.defaults();
+        maximums.put(limit, max);
+        return maximums;
+    }
+
+    @Test
+    void shouldDeferDuplicatesUntilWindowSlides() {
+        final var ledger = new RateLimitLedger(store, ACCOUNT, maximums(RateLimit.DUPLICATE_CERTIFICATES, 2), clock);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(ledger.check(CERTIFICATE_REQUEST)).isNull();
+            ledger.onOrderCreated(CERTIFICATE_REQUEST).then(ledger.onCertificateIssued(CERTIFICATE_REQUEST)).block();
+            ledger.release(CERTIFICATE_REQUEST);
+            clock.advance(Duration.ofDays(1));
+        }
+
+        // the same names in another order are a duplicate
+        final var reordered = CERTIFICATE_REQUEST.toBuilder()
+                .dnsNames(List.of("WWW.cloudalni.com", "test.cloudalni.com"))
+                .build();
+        assertThat(ledger.check(reordered)).isEqualTo(DeferralReason.RATE_LIMIT);
+
+        // the first certificate leaves the window after 7 days
+        clock.advance(Duration.ofDays(5).plusSeconds(1));
+        assertThat(ledger.check(reordered)).isNull();
+
+        assertThat(store.entries).extracting(RateLimitEntry::limit).containsExactly(
+                RateLimit.NEW_ORDERS, RateLimit.CERTIFICATES_PER_DOMAIN, RateLimit.DUPLICATE_CERTIFICATES,
+                RateLimit.NEW_ORDERS, RateLimit.CERTIFICATES_PER_DOMAIN, RateLimit.DUPLICATE_CERTIFICATES
+        );
+    }
+
+    @Test
+    void shouldCountAdmittedRequestsUntilReleased() {
+        final var ledger = new RateLimitLedger(store, ACCOUNT, maximums(RateLimit.NEW_ORDERS, 2), clock);
+
+        final var first = CERTIFICATE_REQUEST.toBuilder().certificateName("first").build();
+        final var second = CERTIFICATE_REQUEST.toBuilder().certificateName("second").build();
+        final var third = CERTIFICATE_REQUEST.toBuilder().certificateName("third").build();
+
+        assertThat(ledger.check(first)).isNull();
+        assertThat(ledger.check(second)).isNull();
+        // neither of the orders has been created yet, but both are going to be
+        assertThat(ledger.check(third)).isEqualTo(DeferralReason.RATE_LIMIT);
+
+        // the order of the first request could not be created
+        ledger.release(first);
+        assertThat(ledger.check(third)).isNull();
+
+        ledger.onOrderCreated(second).block();
+        assertThat(ledger.getCount(RateLimit.NEW_ORDERS, ACCOUNT)).isEqualTo(1);
+        assertThat(ledger.check(first)).isEqualTo(DeferralReason.RATE_LIMIT);
+    }
+
+    @Test
+    void shouldLoadEntriesOfPreviousRuns() {
+        store.entries.add(new RateLimitEntry(RateLimit.CERTIFICATES_PER_DOMAIN, "cloudalni.com",
+                NOW.minus(Duration.ofDays(2))));
+        store.entries.add(new RateLimitEntry(RateLimit.FAILED_VALIDATIONS, "test.cloudalni.com",
+                NOW.minus(Duration.ofMinutes(10))));
+
+        final var ledger = RateLimitLedger.load(store, ACCOUNT, maximums(RateLimit.CERTIFICATES_PER_DOMAIN, 1), clock)
+                .block();
+
+        assertThat(ledger).isNotNull();
+        assertThat(ledger.getCounts()).containsEntry(RateLimit.CERTIFICATES_PER_DOMAIN, 1)
+                .containsEntry(RateLimit.FAILED_VALIDATIONS, 1);
+        assertThat(ledger.check(CERTIFICATE_REQUEST)).isEqualTo(DeferralReason.RATE_LIMIT);
+
+        final var otherDomain = CERTIFICATE_REQUEST.toBuilder().dnsNames(List.of("*.test.example.co.uk")).build();
+        assertThat(ledger.check(otherDomain)).isNull();
+    }
+
+    @Test
+    void shouldFindRegisteredDomain() {
+        assertThat(RateLimitLedger.getRegisteredDomain("www.cloudalni.com")).isEqualTo("cloudalni.com");
+        assertThat(RateLimitLedger.getRegisteredDomain("*.a.b.example.co.uk")).isEqualTo("example.co.uk");
+        assertThat(RateLimitLedger.getRegisteredDomain("localhost")).isEqualTo("localhost");
+    }
+
+    private static class RecordingStore implements RateLimitStore {
+        private final List<RateLimitEntry> entries = new ArrayList<>();
+
+        @Override
+        public Flux<RateLimitEntry> load(String account, Instant since) {
+            return Flux.fromIterable(entries).filter(entry -> entry.countedOn().isAfter(since));
+        }
+
+        @Override
+        public Mono<Void> save(String account, RateLimitEntry entry) {
+            return Mono.fromRunnable(() -> entries.add(entry));
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.renewal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenewalPlannerTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @Test
+    void shouldSpreadRenewalsOverWindow() {
+        final Instant start = NOW.plus(Duration.ofDays(1));
+        final Instant end = start.plus(Duration.ofDays(2));
+
+        final Set<Long> days = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            final Instant renewOn = RenewalPlanner.selectTime("certificate-" + i, start, end);
+            assertThat(renewOn).isBetween(start, end);
+            // the same time on every run
+            assertThat(RenewalPlanner.selectTime("certificate-" + i, start, end)).isEqualTo(renewOn);
+            days.add(Duration.between(start, renewOn).toHours() / 12);
+        }
+        // every half day of the window gets some of the renewals
+        assertThat(days).containsExactlyInAnyOrder(0L, 1L, 2L, 3L);
+    }
+
+    @Test
+    void shouldRenewAfterIntervalWithoutRenewalInfo() {
+        final var planner = RenewalPlanner.ofInterval(Duration.ofDays(30), clock);
+
+        final var expiring = CertificateInfo.builder()
+                .certificateName("expiring")
+                .expiresOn(NOW.plus(Duration.ofDays(29)))
+                .certificateId("aYhba4dGQEHhs3uEe6CuLN4ByNQ.AIdlQyE")
+                .build();
+        final var valid = CertificateInfo.builder()
+                .certificateName("valid")
+                .expiresOn(NOW.plus(Duration.ofDays(31)))
+                .build();
+
+        assertThat(planner.isDue(expiring).block()).isTrue();
+        assertThat(planner.isDue(valid).block()).isFalse();
+    }
+
+    @Test
+    void shouldSetReplacedCertificate() {
+        final var request = CertificateRequest.builder()
+                .subjectDn("CN=test.cloudalni.com")
+                .certificateName("cloudalni")
+                .dnsNames(List.of("test.cloudalni.com"))
+                .build();
+        final var certificate = CertificateInfo.builder()
+                .certificateName("cloudalni")
+                .expiresOn(NOW)
+                .certificateId("aYhba4dGQEHhs3uEe6CuLN4ByNQ.AIdlQyE")
+                .build();
+
+        assertThat(RenewalPlanner.withReplaces(request, List.of(certificate)).replaces())
+                .isEqualTo("aYhba4dGQEHhs3uEe6CuLN4ByNQ.AIdlQyE");
+        assertThat(RenewalPlanner.withReplaces(request, List.of()).replaces()).isNull();
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertBot;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineSchedulerTest {
+
+    private static final Instant NOW = Instant.parse("2023-01-01T00:00:00Z");
+
+    private static final CertificateRequest CERTIFICATE_REQUEST = CertificateRequest.builder()
+            .subjectDn("CN=test.cloudalni.com")
+            .certificateName("cloudalni")
+            .dnsNames(List.of("test.cloudalni.com"))
+            .build();
+
+    private static final BatchOptions SEQUENTIAL = BatchOptions.builder().maxConcurrency(1).build();
+
+    private final MutableClock clock = new MutableClock();
+
+    private static ScheduledRequest scheduledRequest(String name, Instant expiresOn, boolean forced) {
+        return ScheduledRequest.of(CERTIFICATE_REQUEST.toBuilder()
+                .certificateName(name)
+                .forceRequestCreation(forced)
+                .build(), expiresOn);
+    }
+
+    @Test
+    void shouldProcessSoonestExpiringFirst() {
+        final var scheduler = new DeadlineScheduler(clock, NOW.plus(Duration.ofHours(1)),
+                new OrderDurationEstimator(Duration.ofMinutes(1)));
+
+        final List<String> processed = new ArrayList<>();
+        final CertBot certBot = new BatchCertBot(request -> Mono.fromSupplier(() -> {
+            processed.add(request.certificateName());
+            return "certificate";
+        }));
+
+        scheduler.schedule(certBot, List.of(
+                        scheduledRequest("late", NOW.plus(Duration.ofDays(20)), false),
+                        scheduledRequest("soon", NOW.plus(Duration.ofDays(2)), false),
+                        scheduledRequest("forced", null, true)
+                ), SEQUENTIAL)
+                .blockLast();
+
+        assertThat(processed).containsExactly("forced", "soon", "late");
+        assertThat(scheduler.getReport().getCompleted()).isEqualTo(3);
+        assertThat(scheduler.getReport().getDeferred()).isEmpty();
+    }
+
+    @Test
+    void shouldDeferOrdersThatCannotCompleteBeforeDeadline() {
+        final var scheduler = new DeadlineScheduler(clock, NOW.plus(Duration.ofMinutes(5)),
+                new OrderDurationEstimator(Duration.ofMinutes(2)));
+
+        // every order takes two minutes, so only two of them fit before the deadline
+        final CertBot certBot = new BatchCertBot(request -> Mono.fromSupplier(() -> {
+            clock.advance(Duration.ofMinutes(2));
+            return "certificate";
+        }));
+
+        final List<String> processed = scheduler.schedule(certBot, List.of(
+                        scheduledRequest("first", NOW.plus(Duration.ofDays(1)), false),
+                        scheduledRequest("second", NOW.plus(Duration.ofDays(2)), false),
+                        scheduledRequest("third", NOW.plus(Duration.ofDays(3)), false)
+                ), SEQUENTIAL)
+                .filter(result -> result.status() == CertificateResult.Status.ISSUED)
+                .map(result -> result.certificateRequest().certificateName())
+                .collectList()
+                .block();
+
+        assertThat(processed).containsExactly("first", "second");
+        assertThat(scheduler.getReport().getDeferred()).isEqualTo(Map.of("third", DeferralReason.DEADLINE));
+    }
+
+    @Test
+    void shouldNotAbortBatchWhenOrderFails() {
+        final var scheduler = new DeadlineScheduler(clock, NOW.plus(Duration.ofHours(1)),
+                new OrderDurationEstimator(Duration.ofMinutes(1)));
+
+        final CertBot certBot = new BatchCertBot(request -> "broken".equals(request.certificateName()) ?
+                Mono.error(new IllegalStateException("order is invalid")) :
+                Mono.just("certificate"));
+
+        final List<CertificateResult> results = scheduler.schedule(certBot, List.of(
+                        scheduledRequest("broken", NOW.plus(Duration.ofDays(1)), false),
+                        scheduledRequest("healthy", NOW.plus(Duration.ofDays(2)), false)
+                ), SEQUENTIAL)
+                .collectList()
+                .block();
+
+        assertThat(results).extracting(CertificateResult::status)
+                .containsExactly(CertificateResult.Status.FAILED, CertificateResult.Status.ISSUED);
+        assertThat(results.get(0).failureReason()).isEqualTo("order is invalid");
+        assertThat(scheduler.getReport().getFailed()).isEqualTo(1);
+        assertThat(scheduler.getReport().getCompleted()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLearnOrderDuration() {
+        final var estimator = new OrderDurationEstimator(Duration.ofMinutes(1));
+        for (int i = 0; i < 50; i++) {
+            estimator.record(Duration.ofMinutes(5));
+        }
+
+        assertThat(estimator.estimate()).isBetween(Duration.ofMinutes(4), Duration.ofMinutes(6));
+    }
+
+    private static class BatchCertBot implements CertBot {
+        private final Function<CertificateRequest, Mono<String>> submitter;
+
+        BatchCertBot(Function<CertificateRequest, Mono<String>> submitter) {
+            this.submitter = submitter;
+        }
+
+        @Override
+        public Mono<String> submit(CertificateRequest certificateRequest) {
+            return submitter.apply(certificateRequest);
+        }
+
+        @Override
+        public Flux<CertificateResult> submitAll(Flux<CertificateRequest> certificateRequests, BatchOptions options) {
+            return Batches.submitAll(certificateRequests, options, this::submit);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
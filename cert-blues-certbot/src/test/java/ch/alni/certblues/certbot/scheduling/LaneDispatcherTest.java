@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LaneDispatcherTest {
+
+    private final Map<String, Sinks.Empty<Void>> running = new LinkedHashMap<>();
+    private final List<String> started = new ArrayList<>();
+
+    private static CertificateRequest request(String name, String dnsZone) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + name)
+                .certificateName(name)
+                .dnsNames(List.of(name))
+                .dnsZone(dnsZone)
+                .build();
+    }
+
+    private Mono<String> process(CertificateRequest request) {
+        final Sinks.Empty<Void> sink = Sinks.empty();
+        running.put(request.certificateName(), sink);
+        started.add(request.certificateName());
+        return sink.asMono().thenReturn(request.certificateName());
+    }
+
+    private void complete(String name) {
+        running.remove(name).tryEmitEmpty();
+    }
+
+    @Test
+    void shouldShareSlotsBetweenLanes() {
+        final var dispatcher = LaneDispatcher.byChallengeResource(3, 2);
+
+        final var requests = List.of(
+                request("a1", "a.com"), request("a2", "a.com"), request("a3", "a.com"), request("a4", "a.com"),
+                request("b1", "b.com"),
+                request("c1", "c.com")
+        );
+
+        StepVerifier.create(dispatcher.dispatch(requests, this::process))
+                .then(() -> assertThat(started).containsExactly("a1", "b1", "c1"))
+                .then(() -> complete("b1"))
+                .expectNext("b1")
+                // the hot lane gets the free slot, but not more than its own limit
+                .then(() -> assertThat(started).containsExactly("a1", "b1", "c1", "a2"))
+                .then(() -> complete("c1"))
+                .expectNext("c1")
+                .then(() -> assertThat(running).containsOnlyKeys("a1", "a2"))
+                .then(() -> complete("a1"))
+                .expectNext("a1")
+                .then(() -> assertThat(running).containsOnlyKeys("a2", "a3"))
+                .then(() -> complete("a2"))
+                .expectNext("a2")
+                .then(() -> complete("a3"))
+                .expectNext("a3")
+                .then(() -> complete("a4"))
+                .expectNext("a4")
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldProcessRequestsAsTheyArrive() {
+        final var dispatcher = LaneDispatcher.byChallengeResource(2, 1);
+        final Sinks.Many<CertificateRequest> requests = Sinks.many().unicast().onBackpressureBuffer();
+
+        StepVerifier.create(dispatcher.dispatch(requests.asFlux(), this::process))
+                .then(() -> requests.tryEmitNext(request("a1", "a.com")))
+                .then(() -> assertThat(started).containsExactly("a1"))
+                .then(() -> complete("a1"))
+                // the results are emitted before the input completes
+                .expectNext("a1")
+                .then(() -> requests.tryEmitNext(request("a2", "a.com")))
+                .then(() -> requests.tryEmitNext(request("a3", "a.com")))
+                .then(() -> assertThat(running).containsOnlyKeys("a2"))
+                .then(requests::tryEmitComplete)
+                .then(() -> complete("a2"))
+                .expectNext("a2")
+                .then(() -> complete("a3"))
+                .expectNext("a3")
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldCompleteWithoutRequests() {
+        StepVerifier.create(LaneDispatcher.byChallengeResource(1, 1).dispatch(List.of(), this::process))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenewalQueueTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static CertificateInfo certificate(String name) {
+        return CertificateInfo.builder().certificateName(name).expiresOn(NOW.plus(Duration.ofDays(30))).build();
+    }
+
+    @Test
+    void shouldPollCertificatesWhenDue() {
+        final var queue = new RenewalQueue();
+        final Map<CertificateInfo, Instant> renewalTimes = new LinkedHashMap<>();
+        renewalTimes.put(certificate("later"), NOW.plus(Duration.ofHours(2)));
+        renewalTimes.put(certificate("sooner"), NOW.plus(Duration.ofHours(1)));
+        renewalTimes.put(certificate("overdue"), NOW.minus(Duration.ofHours(1)));
+        queue.reconcile(renewalTimes);
+
+        assertThat(queue.pollDue(NOW)).extracting(CertificateInfo::certificateName).containsExactly("overdue");
+        assertThat(queue.getNextRenewalTime()).isEqualTo(NOW.plus(Duration.ofHours(1)));
+        assertThat(queue.pollDue(NOW.plus(Duration.ofHours(2))))
+                .extracting(CertificateInfo::certificateName)
+                .containsExactly("sooner", "later");
+        assertThat(queue.getNextRenewalTime()).isNull();
+    }
+
+    @Test
+    void shouldKeepRetryDelayOverReconciliation() {
+        final var queue = new RenewalQueue();
+        final var certificate = certificate("failing");
+        queue.reconcile(Map.of(certificate, NOW));
+        assertThat(queue.pollDue(NOW)).containsExactly(certificate);
+
+        queue.retry(certificate, NOW.plus(Duration.ofMinutes(10)));
+        queue.reconcile(Map.of(certificate, NOW));
+
+        assertThat(queue.pollDue(NOW)).isEmpty();
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(queue.getNextRenewalTime()).isEqualTo(NOW.plus(Duration.ofMinutes(10)));
+    }
+}
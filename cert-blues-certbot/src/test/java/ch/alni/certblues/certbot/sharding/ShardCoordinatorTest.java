@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import ch.alni.certblues.certbot.BatchOptions;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateResult;
+import ch.alni.certblues.certbot.DeferralReason;
+import ch.alni.certblues.certbot.inmemory.InMemoryLeaseStore;
+import ch.alni.certblues.certbot.scheduling.Batches;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardCoordinatorTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static final int SHARD_COUNT = 16;
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(60);
+
+    private final MutableClock clock = new MutableClock();
+    private final InMemoryLeaseStore leaseStore = new InMemoryLeaseStore();
+
+    private static CertificateRequest request(String name) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + name + ".cloudalni.com")
+                .certificateName(name)
+                .dnsNames(List.of(name + ".cloudalni.com"))
+                .build();
+    }
+
+    private ShardCoordinator coordinator(String owner) {
+        return new ShardCoordinator(leaseStore, owner, SHARD_COUNT, ShardKey.CERTIFICATE_NAME, LEASE_DURATION, clock);
+    }
+
+    @Test
+    void shouldShareShardsBetweenInstances() {
+        final var first = coordinator("first");
+        final var second = coordinator("second");
+
+        assertThat(first.rebalance().block()).hasSize(SHARD_COUNT);
+        // the shards are not taken away from the first instance, it releases them itself
+        assertThat(second.rebalance().block()).isEmpty();
+        assertThat(first.rebalance().block()).hasSize(SHARD_COUNT / 2);
+        assertThat(second.rebalance().block()).hasSize(SHARD_COUNT / 2);
+
+        final Set<Integer> shards = new HashSet<>(first.getOwnedShards());
+        shards.addAll(second.getOwnedShards());
+        assertThat(shards).hasSize(SHARD_COUNT);
+
+        // each request is processed by exactly one of the instances
+        IntStream.range(0, 100).mapToObj(i -> request("certificate" + i)).forEach(request -> {
+            assertThat(first.owns(request)).isNotEqualTo(second.owns(request));
+            assertThat(first.check(request)).isEqualTo(first.owns(request) ? null : DeferralReason.SHARD_NOT_OWNED);
+        });
+    }
+
+    @Test
+    void shouldKeepShardsInFlightAndTakeOverExpiredLeases() {
+        final var first = coordinator("first");
+        final var second = coordinator("second");
+        first.rebalance().block();
+
+        final var request = IntStream.range(0, 100).mapToObj(i -> request("certificate" + i))
+                .filter(candidate -> first.getShard(candidate) == SHARD_COUNT - 1)
+                .findFirst()
+                .orElseThrow();
+        first.track(request);
+
+        second.rebalance().block();
+        first.rebalance().block();
+        assertThat(first.owns(request)).isTrue();
+
+        // the first instance fails, its leases are not relied on before they expire and then taken over
+        clock.advance(LEASE_DURATION.minus(Duration.ofSeconds(10)));
+        assertThat(first.owns(request)).isFalse();
+        clock.advance(Duration.ofSeconds(10));
+
+        assertThat(second.rebalance().block()).hasSize(SHARD_COUNT);
+        assertThat(second.owns(request)).isTrue();
+        assertThat(leaseStore.getOwner("shard." + (SHARD_COUNT - 1))).isEqualTo("second");
+    }
+
+    @Test
+    void shouldDeferRequestsOfShardsTakenOverDuringBatch() {
+        final var first = coordinator("first");
+        first.rebalance().block();
+
+        // the clock of the second instance runs ahead, it takes over the leases the first instance still relies on
+        final var skewedClock = new MutableClock();
+        skewedClock.advance(LEASE_DURATION);
+        final var second = new ShardCoordinator(leaseStore, "second", SHARD_COUNT, ShardKey.CERTIFICATE_NAME,
+                LEASE_DURATION, skewedClock);
+
+        final List<CertificateRequest> requests = IntStream.range(0, 10).mapToObj(i -> request("certificate" + i))
+                .toList();
+        final List<String> ordered = new ArrayList<>();
+        final BatchOptions options = BatchOptions.builder().maxConcurrency(1).admissionPolicy(first).build();
+
+        final List<CertificateResult> results = Batches.submitAll(Flux.fromIterable(requests), options, request -> {
+            ordered.add(request.certificateName());
+            // the leases lapse while the first order runs
+            assertThat(second.rebalance().block()).hasSize(SHARD_COUNT);
+            return Mono.just("certificate");
+        }).collectList().block();
+
+        assertThat(ordered).hasSize(1);
+        assertThat(results).filteredOn(result -> result.status() == CertificateResult.Status.DEFERRED)
+                .hasSize(requests.size() - 1)
+                .allSatisfy(result -> assertThat(result.deferralReason()).isEqualTo(DeferralReason.SHARD_NOT_OWNED));
+
+        // the lease the first instance holds is still valid by its own clock, only the store tells otherwise
+        assertThat(first.owns(requests.get(0))).isTrue();
+        assertThat(first.confirmOwnership(requests.get(0)).block()).isFalse();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
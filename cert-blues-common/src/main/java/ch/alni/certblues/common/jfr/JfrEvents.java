@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.jfr;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jdk.jfr.Event;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Records reactive operations as flight recorder events. The events are only created and timed if they are enabled
+ * in the running recording, so that the instrumentation costs next to nothing otherwise.
+ */
+public final class JfrEvents {
+
+    /**
+     * The prefix of the names of all events of cert-blues.
+     */
+    public static final String NAME_PREFIX = "ch.alni.certblues.";
+
+    /**
+     * The top category of all events of cert-blues.
+     */
+    public static final String CATEGORY = "Cert Blues";
+
+    private JfrEvents() {
+    }
+
+    /**
+     * Records every subscription of the mono as an event that lasts until the mono has terminated.
+     */
+    public static <T, E extends Event & FailableEvent> Function<Mono<T>, Mono<T>> recorded(Supplier<E> eventFactory) {
+        return mono -> Mono.defer(() -> {
+            final E event = eventFactory.get();
+            if (!event.isEnabled()) {
+                return mono;
+            }
+
+            event.begin();
+            return mono
+                    .doOnError(event::failed)
+                    .doFinally(signalType -> event.commit());
+        });
+    }
+
+    /**
+     * Records every subscription of the flux as an event that lasts until the flux has terminated.
+     */
+    public static <T, E extends Event & FailableEvent> Function<Flux<T>, Flux<T>> recordedMany(Supplier<E> eventFactory) {
+        return flux -> Flux.defer(() -> {
+            final E event = eventFactory.get();
+            if (!event.isEnabled()) {
+                return flux;
+            }
+
+            event.begin();
+            return flux
+                    .doOnError(event::failed)
+                    .doFinally(signalType -> event.commit());
+        });
+    }
+
+    /**
+     * Returns the value of the failure field of the events.
+     */
+    public static String toFailure(Throwable throwable) {
+        return throwable.getClass().getSimpleName() + ": " + throwable.getMessage();
+    }
+}
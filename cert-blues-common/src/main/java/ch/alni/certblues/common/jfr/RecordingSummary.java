@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summary of a flight recording: the latencies of the events of cert-blues grouped by event type and operation,
+ * together with the garbage collection pauses that happened meanwhile. It can be run on a recording:
+ * <pre>
+ * java -cp ... ch.alni.certblues.common.jfr.RecordingSummary cert-blues.jfr
+ * </pre>
+ */
+public final class RecordingSummary {
+
+    // the fields that tell apart the operations of the same event type
+    private static final List<String> KEY_FIELDS = List.of("urlKind", "operation", "algorithm", "challengeType", "hit");
+
+    private static final String GARBAGE_COLLECTION = "jdk.GarbageCollection";
+
+    private final List<Entry> entries;
+    private final long garbageCollections;
+    private final Duration totalGcPause;
+    private final Duration maxGcPause;
+
+    private RecordingSummary(List<Entry> entries, long garbageCollections, Duration totalGcPause, Duration maxGcPause) {
+        this.entries = entries;
+        this.garbageCollections = garbageCollections;
+        this.totalGcPause = totalGcPause;
+        this.maxGcPause = maxGcPause;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: RecordingSummary <recording.jfr>...");
+            System.exit(1);
+        }
+
+        for (String arg : args) {
+            System.out.println(arg);
+            System.out.println(read(Path.of(arg)).format());
+        }
+    }
+
+    /**
+     * Reads the whole recording and summarizes it.
+     */
+    public static RecordingSummary read(Path recording) throws IOException {
+        final Map<String, Map<String, Durations>> durations = new TreeMap<>();
+        long garbageCollections = 0;
+        Duration totalGcPause = Duration.ZERO;
+        Duration maxGcPause = Duration.ZERO;
+
+        try (var recordingFile = new RecordingFile(recording)) {
+            while (recordingFile.hasMoreEvents()) {
+                final RecordedEvent event = recordingFile.readEvent();
+                final String eventType = event.getEventType().getName();
+
+                if (eventType.startsWith(JfrEvents.NAME_PREFIX)) {
+                    durations.computeIfAbsent(eventType.substring(JfrEvents.NAME_PREFIX.length()), key -> new TreeMap<>())
+                            .computeIfAbsent(getKey(event), key -> new Durations())
+                            .add(event.getDuration(), event.hasField("failure") && null != event.getString("failure"));
+                }
+                else if (eventType.equals(GARBAGE_COLLECTION)) {
+                    final Duration pause = event.getDuration("sumOfPauses");
+                    garbageCollections++;
+                    totalGcPause = totalGcPause.plus(pause);
+                    maxGcPause = pause.compareTo(maxGcPause) > 0 ? pause : maxGcPause;
+                }
+            }
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+        durations.forEach((eventType, byKey) -> byKey.forEach((key, values) -> entries.add(values.toEntry(eventType, key))));
+        return new RecordingSummary(entries, garbageCollections, totalGcPause, maxGcPause);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getGarbageCollections() {
+        return garbageCollections;
+    }
+
+    public Duration getTotalGcPause() {
+        return totalGcPause;
+    }
+
+    public Duration getMaxGcPause() {
+        return maxGcPause;
+    }
+
+    /**
+     * Formats the summary as a table with the durations in milliseconds.
+     */
+    public String format() {
+        final var builder = new StringBuilder();
+        builder.append(String.format("%-22s %-22s %8s %8s %10s %10s %10s %12s%n",
+                "event", "operation", "count", "failed", "p50 ms", "p99 ms", "max ms", "total ms"));
+
+        for (Entry entry : entries) {
+            builder.append(String.format("%-22s %-22s %8d %8d %10.1f %10.1f %10.1f %12.1f%n",
+                    entry.eventType(), entry.key(), entry.count(), entry.failures(),
+                    toMillis(entry.p50()), toMillis(entry.p99()), toMillis(entry.max()), toMillis(entry.total())));
+        }
+
+        builder.append(String.format("garbage collections: %d, total pause %.1f ms, max pause %.1f ms%n",
+                garbageCollections, toMillis(totalGcPause), toMillis(maxGcPause)));
+        return builder.toString();
+    }
+
+    private static String getKey(RecordedEvent event) {
+        for (String field : KEY_FIELDS) {
+            if (event.hasField(field)) {
+                final Object value = event.getValue(field);
+                return value instanceof Boolean ? field + "=" + value : String.valueOf(value);
+            }
+        }
+        return "";
+    }
+
+    private static double toMillis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    /**
+     * The latencies of the events of one type and operation.
+     */
+    public record Entry(String eventType, String key, long count, long failures,
+                       Duration p50, Duration p99, Duration max, Duration total) {
+    }
+
+    private static final class Durations {
+        private final List<Long> nanos = new ArrayList<>();
+        private long failures;
+
+        private void add(Duration duration, boolean failed) {
+            nanos.add(duration.toNanos());
+            if (failed) {
+                failures++;
+            }
+        }
+
+        private Entry toEntry(String eventType, String key) {
+            final long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            final long total = nanos.stream().mapToLong(Long::longValue).sum();
+            return new Entry(eventType, key, sorted.length, failures,
+                    Duration.ofNanos(percentile(sorted, 0.5)), Duration.ofNanos(percentile(sorted, 0.99)),
+                    Duration.ofNanos(sorted[sorted.length - 1]), Duration.ofNanos(total));
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            final int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+}
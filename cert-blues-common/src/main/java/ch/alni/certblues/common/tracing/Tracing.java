@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.tracing;
+
+import java.util.function.Function;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * Spans of the clients. The reactive pipelines hop between threads, so the current span is not kept in a thread
+ * local but in the Reactor context of the subscription. The tracer is taken from the global OpenTelemetry instance,
+ * so that the application decides where the spans are exported to. Without an exporter the spans are no-ops.
+ */
+public final class Tracing {
+
+    /**
+     * The name of the instrumentation scope of all spans created by cert-blues.
+     */
+    public static final String INSTRUMENTATION_SCOPE = "ch.alni.certblues";
+
+    private static final Object CONTEXT_KEY = Context.class;
+
+    private Tracing() {
+    }
+
+    public static Tracer getTracer() {
+        return GlobalOpenTelemetry.getTracer(INSTRUMENTATION_SCOPE);
+    }
+
+    /**
+     * Returns the trace context stored in the given Reactor context, or the root context if there is none.
+     */
+    public static Context getContext(ContextView contextView) {
+        return contextView.getOrDefault(CONTEXT_KEY, Context.root());
+    }
+
+    /**
+     * Returns the function for {@code contextWrite} that makes the given trace context the parent of the spans
+     * created upstream.
+     */
+    public static Function<reactor.util.context.Context, reactor.util.context.Context> withContext(Context context) {
+        return reactorContext -> reactorContext.put(CONTEXT_KEY, context);
+    }
+
+    /**
+     * Wraps the mono into a span that is a child of the trace context of the subscriber. Each subscription gets its
+     * own span, so that every retry is traced on its own.
+     */
+    public static <T> Function<Mono<T>, Mono<T>> traced(String spanName, SpanKind spanKind, Attributes attributes) {
+        return mono -> Mono.deferContextual(contextView -> {
+            final Context parent = getContext(contextView);
+            final Span span = getTracer().spanBuilder(spanName)
+                    .setParent(parent)
+                    .setSpanKind(spanKind)
+                    .setAllAttributes(attributes)
+                    .startSpan();
+
+            return mono
+                    .contextWrite(withContext(parent.with(span)))
+                    .doOnSuccess(value -> span.end())
+                    .doOnError(throwable -> end(span, throwable))
+                    .doOnCancel(span::end);
+        });
+    }
+
+    /**
+     * Marks the span as failed by the given error and ends it.
+     */
+    public static void end(Span span, Throwable throwable) {
+        span.recordException(throwable);
+        span.setStatus(StatusCode.ERROR, String.valueOf(throwable.getMessage()));
+        span.end();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.traffic;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A recorded HTTP request together with its response and timing.
+ *
+ * @param source          which client has sent the request, for example "acme" or "azure"
+ * @param startedOn       when the request has been sent
+ * @param latencyMicros   how long it has taken until the whole response has been received
+ * @param method          the HTTP method
+ * @param url             the full URL of the request
+ * @param requestHeaders  the request headers without the credentials
+ * @param requestBody     the request body as string, null if there is none
+ * @param status          the status code of the response
+ * @param responseHeaders the response headers without the credentials
+ * @param responseBody    the response body as string, null if there is none
+ */
+public record TrafficExchange(String source,
+                              Instant startedOn,
+                              long latencyMicros,
+                              String method,
+                              String url,
+                              Map<String, String> requestHeaders,
+                              String requestBody,
+                              int status,
+                              Map<String, String> responseHeaders,
+                              String responseBody) {
+
+    /**
+     * Replaces the values that must not be recorded, like credentials and keys.
+     */
+    public static final String REDACTED = "<redacted>";
+
+    private static final Set<String> REDACTED_HEADERS = Set.of("authorization", "cookie", "set-cookie");
+
+    public Duration latency() {
+        return Duration.ofNanos(latencyMicros * 1000);
+    }
+
+    /**
+     * Returns a copy of the given headers with the credentials replaced, so that the recordings can be shared.
+     */
+    public static Map<String, String> redact(Map<String, String> headers) {
+        final Map<String, String> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, value) ->
+                result.put(name, REDACTED_HEADERS.contains(name.toLowerCase(Locale.ROOT)) ? REDACTED : value));
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.traffic;
+
+import org.slf4j.Logger;
+
+import ch.alni.certblues.common.json.JsonObjects;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Recording of the HTTP exchanges in a file, one JSON object per line compressed with GZIP. The bodies of the ACME
+ * and Azure responses are mostly JSON and compress well.
+ * <p>
+ * The exchanges are recorded on the event loops of the clients, so they are only queued there and written to the
+ * file by a thread of its own. The exchanges are dropped if the queue is full, the recording must not slow the
+ * clients down.
+ */
+public final class TrafficFile implements TrafficRecorder, Closeable {
+
+    private static final Logger LOG = getLogger(TrafficFile.class);
+
+    private static final int MAX_QUEUED_EXCHANGES = 10_000;
+
+    private static final long POLL_INTERVAL_MILLIS = 100L;
+
+    private final Writer writer;
+
+    private final BlockingQueue<TrafficExchange> queue;
+
+    private final Thread writerThread;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private TrafficFile(Writer writer, int maxQueuedExchanges) {
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(maxQueuedExchanges);
+        this.writerThread = new Thread(this::write, "traffic-recorder");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Creates a new file, or replaces the existing one, to record the exchanges to.
+     */
+    public static TrafficFile create(Path path) throws IOException {
+        final var outputStream = new GZIPOutputStream(Files.newOutputStream(path));
+        return new TrafficFile(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)),
+                MAX_QUEUED_EXCHANGES);
+    }
+
+    /**
+     * Reads all exchanges from the given file in the order they have been recorded.
+     */
+    public static List<TrafficExchange> read(Path path) throws IOException {
+        final List<TrafficExchange> exchanges = new ArrayList<>();
+        try (var reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (!line.isBlank()) {
+                    exchanges.add(JsonObjects.deserialize(line, TrafficExchange.class));
+                }
+            }
+        }
+        return exchanges;
+    }
+
+    @Override
+    public void record(TrafficExchange exchange) {
+        if (closed || !queue.offer(exchange)) {
+            if (droppedCount.getAndIncrement() == 0) {
+                LOG.warn("the recording cannot keep up with the traffic, the exchanges are dropped");
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !closed;
+    }
+
+    /**
+     * Returns how many exchanges have not been recorded.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Writes the queued exchanges to the file until it is closed, and then the ones still queued.
+     */
+    private void write() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                final TrafficExchange exchange = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (null != exchange) {
+                    writer.write(JsonObjects.serialize(exchange));
+                    writer.write('\n');
+                }
+            }
+        }
+        catch (IOException e) {
+            LOG.error("cannot record the exchanges, the recording is stopped", e);
+            closed = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (droppedCount.get() > 0) {
+            LOG.warn("{} exchanges have not been recorded", droppedCount.get());
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.certificate;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped index of the expiry of the certificates, so that the expiring certificates are found without parsing
+ * the certificate files.
+ * <p>
+ * The file has a header followed by fixed-size slots, one per certificate: the expiry in epoch milliseconds, the
+ * length and the UTF-8 bytes of the name, then the length and the bytes of the certificate ID, and the CRC32 checksum
+ * of all that at the end of the slot. A slot is updated in place and flushed before the number of slots in the header
+ * is increased. The slots cross the pages of the file, so a crash in the middle of an update can still leave a torn
+ * slot behind; its checksum does not match then and the index cannot be opened, it has to be rebuilt from the
+ * certificates. The entries are also kept in memory ordered by the expiry, so that finding the expiring certificates
+ * is a range scan.
+ */
+final class ExpiryIndex implements Closeable {
+
+    static final int MAX_NAME_LENGTH = 127;
+
+    private static final int MAGIC = 0x43424958;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SLOT_SIZE = 256;
+    private static final int CHECKSUM_OFFSET = SLOT_SIZE - Integer.BYTES;
+    private static final int MAX_ID_LENGTH = CHECKSUM_OFFSET - Long.BYTES - 2 * Short.BYTES - MAX_NAME_LENGTH;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> byExpiry = new TreeSet<>(
+            Comparator.comparing(Entry::expiresOn).thenComparing(Entry::certificateName));
+
+    private ExpiryIndex(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the index in the given file, an empty index is created if the file does not exist.
+     *
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    static ExpiryIndex open(Path file) throws IOException {
+        final var channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final var index = new ExpiryIndex(channel);
+        try {
+            index.load();
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("cannot read the index " + file, e);
+        }
+        return index;
+    }
+
+    private static String getString(ByteBuffer slot) {
+        final var bytes = new byte[slot.getShort()];
+        slot.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds or replaces the entry of the certificate. The certificate ID is left out if it does not fit into a slot.
+     *
+     * @throws IllegalArgumentException if the name is longer than {@value #MAX_NAME_LENGTH} bytes
+     */
+    synchronized void put(Entry entry) throws IOException {
+        final byte[] name = entry.certificateName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("certificate name too long: " + entry.certificateName());
+        }
+        final byte[] id = null != entry.certificateId() ?
+                entry.certificateId().getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        final Integer existing = slots.get(entry.certificateName());
+        final int slot = null != existing ? existing : count;
+        if (slot == capacity) {
+            map(capacity * 2);
+        }
+
+        final ByteBuffer slotBuffer = buffer.slice(getOffset(slot), SLOT_SIZE);
+        slotBuffer.putLong(entry.expiresOn().toEpochMilli());
+        slotBuffer.putShort((short) name.length).put(name);
+        slotBuffer.putShort((short) (id.length <= MAX_ID_LENGTH ? id.length : 0));
+        if (id.length <= MAX_ID_LENGTH) {
+            slotBuffer.put(id);
+        }
+        slotBuffer.putInt(CHECKSUM_OFFSET, getChecksum(slotBuffer));
+        buffer.force(getOffset(slot), SLOT_SIZE);
+
+        if (null == existing) {
+            count++;
+            buffer.putInt(COUNT_OFFSET, count);
+            buffer.force(0, HEADER_SIZE);
+            slots.put(entry.certificateName(), slot);
+        }
+
+        final Entry previous = entries.put(entry.certificateName(), entry);
+        if (null != previous) {
+            byExpiry.remove(previous);
+        }
+        byExpiry.add(entry);
+    }
+
+    /**
+     * Returns the entries of the certificates that expire before the given instant, the soonest expiring first.
+     */
+    synchronized List<Entry> getExpiringBefore(Instant instant) {
+        return List.copyOf(byExpiry.headSet(new Entry("", instant, null), false));
+    }
+
+    /**
+     * Returns the entry of the given certificate, or null if the certificate is not in the index.
+     */
+    synchronized @Nullable Entry get(String certificateName) {
+        return entries.get(certificateName);
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(COUNT_OFFSET, 0);
+            buffer.force(0, HEADER_SIZE);
+            return;
+        }
+
+        map((int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE));
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("not an index of the certificate store");
+        }
+
+        count = buffer.getInt(COUNT_OFFSET);
+        if (count < 0 || count > capacity) {
+            throw new IOException("corrupted index of the certificate store, " + count + " entries");
+        }
+        for (int slot = 0; slot < count; slot++) {
+            final ByteBuffer slotBuffer = buffer.slice(getOffset(slot), SLOT_SIZE);
+            if (slotBuffer.getInt(CHECKSUM_OFFSET) != getChecksum(slotBuffer)) {
+                throw new IOException("corrupted index of the certificate store, slot " + slot + " is torn");
+            }
+            final Instant expiresOn = Instant.ofEpochMilli(slotBuffer.getLong());
+            final String name = getString(slotBuffer);
+            final String id = getString(slotBuffer);
+
+            final var entry = new Entry(name, expiresOn, id.isEmpty() ? null : id);
+            slots.put(name, slot);
+            entries.put(name, entry);
+            byExpiry.add(entry);
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getOffset(capacity));
+    }
+
+    private static int getChecksum(ByteBuffer slot) {
+        final var checksum = new CRC32();
+        checksum.update(slot.slice(0, CHECKSUM_OFFSET));
+        return (int) checksum.getValue();
+    }
+
+    private static int getOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Entry of the index.
+     *
+     * @param certificateName the name of the certificate
+     * @param expiresOn       when the current version of the certificate expires
+     * @param certificateId   the ID of the certificate in the renewal information, null if not known
+     */
+    record Entry(String certificateName, Instant expiresOn, @Nullable String certificateId) {
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.certificate;
+
+import ch.alni.certblues.acme.protocol.CertificateIdentifiers;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.KeyType;
+import ch.alni.certblues.local.LocalFiles;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Certificate store that keeps the certificates in a directory of the local file system, for the deployments without
+ * a key vault. The keys are generated locally and never leave the directory.
+ * <p>
+ * Each certificate has its own directory with the key of the pending CSR and the versions of the certificate, each
+ * both as PEM (the chain followed by the private key) and as PKCS#12 file. The file {@code current} holds the
+ * version in use. All files are replaced atomically, and the oldest versions are removed when there are more than
+ * the configured number of them. The expiry of the current versions is kept in a memory-mapped index, which is
+ * rebuilt from the certificate files if it is missing or cannot be read.
+ */
+public class FileCertificateStore implements CertificateStore, Closeable {
+    private static final Logger LOG = getLogger(FileCertificateStore.class);
+
+    private static final String INDEX_FILE = "index.bin";
+    private static final String CERTIFICATES_DIRECTORY = "certificates";
+    private static final String PENDING_KEY_FILE = "pending.key";
+    private static final String CURRENT_FILE = "current";
+    private static final String PEM_EXTENSION = ".pem";
+    private static final String PKCS12_EXTENSION = ".p12";
+
+    // the names allowed by the key vault, so that the certificates can be moved between the stores
+    private static final Pattern CERTIFICATE_NAME = Pattern.compile("[0-9a-zA-Z-]{1," + ExpiryIndex.MAX_NAME_LENGTH + "}");
+
+    private final Path certificatesDirectory;
+    private final char[] keyStorePassword;
+    private final int maxVersions;
+    private final Clock clock;
+    private final ExpiryIndex index;
+
+    // the changes of a certificate are serialized
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory        the directory of the store, created if it does not exist
+     * @param keyStorePassword the password of the PKCS#12 files
+     * @param maxVersions      how many versions of a certificate are kept
+     * @param clock            the clock to get the current time from
+     */
+    public FileCertificateStore(Path directory, String keyStorePassword, int maxVersions, Clock clock) {
+        this.certificatesDirectory = directory.resolve(CERTIFICATES_DIRECTORY);
+        this.keyStorePassword = keyStorePassword.toCharArray();
+        this.maxVersions = Math.max(1, maxVersions);
+        this.clock = clock;
+
+        try {
+            Files.createDirectories(certificatesDirectory);
+            this.index = openIndex(directory.resolve(INDEX_FILE));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("cannot open the certificate store in " + directory, e);
+        }
+    }
+
+    private static void checkName(String certificateName) {
+        if (!CERTIFICATE_NAME.matcher(certificateName).matches()) {
+            throw new IllegalArgumentException("invalid certificate name: " + certificateName);
+        }
+    }
+
+    private static KeyPair generateKeyPair(CertificateRequest certificateRequest) throws GeneralSecurityException {
+        if (certificateRequest.keyType() == KeyType.EC) {
+            final var keyPairGenerator = KeyPairGenerator.getInstance("EC");
+            keyPairGenerator.initialize(new ECGenParameterSpec(getCurve(certificateRequest.keySize())));
+            return keyPairGenerator.generateKeyPair();
+        }
+        else {
+            final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(certificateRequest.keySize());
+            return keyPairGenerator.generateKeyPair();
+        }
+    }
+
+    // like the key vault, the key size selects the curve and P-256 is the default
+    private static String getCurve(int keySize) {
+        return switch (keySize) {
+            case 384 -> "secp384r1";
+            case 521 -> "secp521r1";
+            default -> "secp256r1";
+        };
+    }
+
+    private static String getSigningAlgorithm(KeyPair keyPair) {
+        return "EC".equals(keyPair.getPrivate().getAlgorithm()) ? "SHA256withECDSA" : "SHA256withRSA";
+    }
+
+    private static byte[] createCsr(CertificateRequest certificateRequest, KeyPair keyPair)
+            throws OperatorCreationException, IOException {
+        final GeneralName[] subjectAltNames = certificateRequest.dnsNames().stream()
+                .map(dnsName -> new GeneralName(GeneralName.dNSName, dnsName))
+                .toArray(GeneralName[]::new);
+
+        final Extension[] extensions = new Extension[]{
+                Extension.create(Extension.subjectAlternativeName, false, new GeneralNames(subjectAltNames))
+        };
+
+        return new JcaPKCS10CertificationRequestBuilder(
+                new X500Principal(certificateRequest.subjectDn()), keyPair.getPublic())
+                .addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, new Extensions(extensions))
+                .build(new JcaContentSignerBuilder(getSigningAlgorithm(keyPair)).build(keyPair.getPrivate()))
+                .getEncoded();
+    }
+
+    private static String toPem(Object object) throws IOException {
+        final var writer = new StringWriter();
+        try (var pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(object);
+        }
+        return writer.toString();
+    }
+
+    private static KeyPair readKeyPair(Path file) throws IOException {
+        try (var parser = new PEMParser(new StringReader(Files.readString(file, StandardCharsets.US_ASCII)))) {
+            return new JcaPEMKeyConverter().getKeyPair((PEMKeyPair) parser.readObject());
+        }
+    }
+
+    private static X509Certificate readLeaf(Path pemFile) throws IOException, GeneralSecurityException {
+        try (var parser = new PEMParser(new StringReader(Files.readString(pemFile, StandardCharsets.US_ASCII)))) {
+            final Object object = parser.readObject();
+            if (!(object instanceof X509CertificateHolder)) {
+                throw new IOException("no certificate found in " + pemFile);
+            }
+            return new JcaX509CertificateConverter().getCertificate((X509CertificateHolder) object);
+        }
+    }
+
+    private static List<X509Certificate> parseChain(String certificate) throws GeneralSecurityException {
+        final var certificateFactory = CertificateFactory.getInstance("X.509");
+        final var input = new ByteArrayInputStream(certificate.getBytes(StandardCharsets.US_ASCII));
+        final List<X509Certificate> chain = certificateFactory.generateCertificates(input).stream()
+                .map(X509Certificate.class::cast)
+                .toList();
+        if (chain.isEmpty()) {
+            throw new IllegalArgumentException("no certificate found");
+        }
+        // the leaf certificate comes first in the chain
+        return chain;
+    }
+
+    private static String toVersion(X509Certificate certificate) {
+        // sorted by the start of the validity
+        return String.format("%013d-%s", certificate.getNotBefore().getTime(),
+                certificate.getSerialNumber().toString(16));
+    }
+
+    private static ExpiryIndex.Entry toEntry(String certificateName, X509Certificate certificate) {
+        String certificateId;
+        try {
+            certificateId = CertificateIdentifiers.of(certificate);
+        }
+        catch (IllegalArgumentException e) {
+            // the certificate is then renewed after the renewal interval
+            certificateId = null;
+        }
+        return new ExpiryIndex.Entry(certificateName, certificate.getNotAfter().toInstant(), certificateId);
+    }
+
+    @Override
+    public Mono<byte[]> createCsr(CertificateRequest certificateRequest) {
+        return Mono.fromCallable(() -> {
+                    final String certificateName = certificateRequest.certificateName();
+                    checkName(certificateName);
+
+                    final KeyPair keyPair = generateKeyPair(certificateRequest);
+                    final byte[] csr = createCsr(certificateRequest, keyPair);
+
+                    // the key is kept until the certificate is uploaded, a new CSR replaces it
+                    synchronized (getLock(certificateName)) {
+                        final Path certificateDirectory = Files.createDirectories(
+                                certificatesDirectory.resolve(certificateName));
+                        LocalFiles.writeAtomically(certificateDirectory.resolve(PENDING_KEY_FILE),
+                                toPem(keyPair).getBytes(StandardCharsets.US_ASCII));
+                    }
+                    return csr;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> cancelCsr(CertificateRequest certificateRequest) {
+        return Mono.<Void>fromCallable(() -> {
+                    final String certificateName = certificateRequest.certificateName();
+                    checkName(certificateName);
+                    synchronized (getLock(certificateName)) {
+                        Files.deleteIfExists(certificatesDirectory.resolve(certificateName).resolve(PENDING_KEY_FILE));
+                    }
+                    return null;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> upload(String name, String certificate) {
+        return Mono.<Void>fromCallable(() -> {
+                    checkName(name);
+                    synchronized (getLock(name)) {
+                        upload(name, parseChain(certificate));
+                    }
+                    return null;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<CertificateInfo> getExpiringCertificates(Duration renewalInterval) {
+        return Flux.defer(() -> Flux.fromIterable(index.getExpiringBefore(clock.instant().plus(renewalInterval))))
+                .map(entry -> CertificateInfo.builder()
+                        .certificateName(entry.certificateName())
+                        .expiresOn(entry.expiresOn())
+                        .certificateId(entry.certificateId())
+                        .build());
+    }
+
+    /**
+     * Returns the path of the PKCS#12 file of the current version of the given certificate, or null if the
+     * certificate has no version yet.
+     */
+    public @Nullable Path getKeyStoreFile(String certificateName) throws IOException {
+        checkName(certificateName);
+        final Path certificateDirectory = certificatesDirectory.resolve(certificateName);
+        try {
+            final String version = Files.readString(certificateDirectory.resolve(CURRENT_FILE)).trim();
+            return certificateDirectory.resolve(version + PKCS12_EXTENSION);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    private Object getLock(String certificateName) {
+        return locks.computeIfAbsent(certificateName, name -> new Object());
+    }
+
+    private void upload(String name, List<X509Certificate> chain) throws IOException, GeneralSecurityException {
+        final Path certificateDirectory = certificatesDirectory.resolve(name);
+        final Path pendingKeyFile = certificateDirectory.resolve(PENDING_KEY_FILE);
+        if (!Files.exists(pendingKeyFile)) {
+            throw new IllegalStateException("no CSR has been created for the certificate " + name);
+        }
+
+        final KeyPair keyPair = readKeyPair(pendingKeyFile);
+        final X509Certificate leaf = chain.get(0);
+        if (!Arrays.equals(leaf.getPublicKey().getEncoded(), keyPair.getPublic().getEncoded())) {
+            throw new IllegalArgumentException("the certificate does not match the key of the pending CSR of " + name);
+        }
+
+        final String version = toVersion(leaf);
+
+        final var pem = new StringBuilder();
+        for (X509Certificate certificate : chain) {
+            pem.append(toPem(certificate));
+        }
+        pem.append(toPem(new JcaPKCS8Generator(keyPair.getPrivate(), null)));
+        LocalFiles.writeAtomically(certificateDirectory.resolve(version + PEM_EXTENSION),
+                pem.toString().getBytes(StandardCharsets.US_ASCII));
+
+        final var keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(name, keyPair.getPrivate(), keyStorePassword, chain.toArray(new Certificate[0]));
+        final var keyStoreBytes = new ByteArrayOutputStream();
+        keyStore.store(keyStoreBytes, keyStorePassword);
+        LocalFiles.writeAtomically(certificateDirectory.resolve(version + PKCS12_EXTENSION),
+                keyStoreBytes.toByteArray());
+
+        // the new version is in use once the pointer is replaced
+        LocalFiles.writeAtomically(certificateDirectory.resolve(CURRENT_FILE),
+                version.getBytes(StandardCharsets.US_ASCII));
+        Files.delete(pendingKeyFile);
+        index.put(toEntry(name, leaf));
+
+        removeOldVersions(certificateDirectory);
+        LOG.info("version {} of certificate {} stored, expires on {}", version, name, leaf.getNotAfter());
+    }
+
+    private void removeOldVersions(Path certificateDirectory) throws IOException {
+        final List<String> versions;
+        try (Stream<Path> files = Files.list(certificateDirectory)) {
+            versions = files.map(file -> file.getFileName().toString())
+                    .filter(fileName -> fileName.endsWith(PEM_EXTENSION))
+                    .map(fileName -> fileName.substring(0, fileName.length() - PEM_EXTENSION.length()))
+                    .sorted()
+                    .toList();
+        }
+
+        for (String version : versions.subList(0, Math.max(0, versions.size() - maxVersions))) {
+            Files.deleteIfExists(certificateDirectory.resolve(version + PEM_EXTENSION));
+            Files.deleteIfExists(certificateDirectory.resolve(version + PKCS12_EXTENSION));
+        }
+    }
+
+    private ExpiryIndex openIndex(Path indexFile) throws IOException {
+        if (Files.exists(indexFile)) {
+            try {
+                return ExpiryIndex.open(indexFile);
+            }
+            catch (IOException e) {
+                LOG.warn("cannot read the index of the certificate store, it is rebuilt: {}", e.getMessage());
+                Files.delete(indexFile);
+            }
+        }
+
+        final ExpiryIndex rebuilt = ExpiryIndex.open(indexFile);
+        try (Stream<Path> directories = Files.list(certificatesDirectory)) {
+            for (Path certificateDirectory : directories.toList()) {
+                final Path currentFile = certificateDirectory.resolve(CURRENT_FILE);
+                if (Files.exists(currentFile)) {
+                    final String version = Files.readString(currentFile).trim();
+                    final Path pemFile = certificateDirectory.resolve(version + PEM_EXTENSION);
+                    rebuilt.put(toEntry(certificateDirectory.getFileName().toString(), readLeaf(pemFile)));
+                }
+            }
+        }
+        catch (GeneralSecurityException e) {
+            throw new IOException("cannot rebuild the index of the certificate store", e);
+        }
+        LOG.info("index of the certificate store rebuilt with {} certificates", rebuilt.size());
+        return rebuilt;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.config;
+
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.local.certificate.FileCertificateStore;
+import ch.alni.certblues.local.storage.LogStorageService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Clock;
+
+/**
+ * Configures the components that keep their data on the local file system. They take precedence over the Azure-based
+ * ones if configured.
+ */
+@Configuration
+@EnableConfigurationProperties(LocalConfigurationProperties.class)
+public class LocalConfiguration {
+
+    private final Clock clock;
+
+    private final LocalConfigurationProperties properties;
+
+    public LocalConfiguration(Clock clock, LocalConfigurationProperties properties) {
+        this.clock = clock;
+        this.properties = properties;
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "local.certificate-store", name = "directory")
+    public CertificateStore fileCertificateStore() {
+        return new FileCertificateStore(properties.getCertificateStore().directory(),
+                properties.getCertificateStore().keyStorePassword(), properties.getCertificateStore().maxVersions(),
+                clock
+        );
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "local.request-store", name = "directory")
+    public StorageService logStorageService() {
+        return new LogStorageService(properties.getRequestStore().directory(),
+                properties.getRequestStore().compactionThreshold(), properties.getRequestStore().sync()
+        );
+    }
+}
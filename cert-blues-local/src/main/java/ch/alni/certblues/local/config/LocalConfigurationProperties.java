@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Properties to configure the components that keep their data on the local file system.
+ */
+@ConfigurationProperties(prefix = "local")
+public class LocalConfigurationProperties {
+
+    private final CertificateStoreProperties certificateStore;
+    private final RequestStoreProperties requestStore;
+
+    public LocalConfigurationProperties(CertificateStoreProperties certificateStore,
+                                        RequestStoreProperties requestStore) {
+        this.certificateStore = certificateStore;
+        this.requestStore = requestStore;
+    }
+
+    /**
+     * The certificate store on the file system, null if the certificates are kept in the key vault.
+     */
+    public CertificateStoreProperties getCertificateStore() {
+        return certificateStore;
+    }
+
+    /**
+     * The store of the certificate requests on the file system, null if they are kept in the table storage.
+     */
+    public RequestStoreProperties getRequestStore() {
+        return requestStore;
+    }
+
+    public record CertificateStoreProperties(Path directory, @DefaultValue("") String keyStorePassword,
+                                             @DefaultValue("3") int maxVersions) {
+
+        /**
+         * The directory the certificates and their keys are kept in.
+         */
+        @Override
+        public Path directory() {
+            return directory;
+        }
+
+        /**
+         * The password of the PKCS#12 files of the certificates.
+         */
+        @Override
+        public String keyStorePassword() {
+            return keyStorePassword;
+        }
+
+        /**
+         * How many versions of a certificate are kept.
+         */
+        @Override
+        public int maxVersions() {
+            return maxVersions;
+        }
+    }
+
+    public record RequestStoreProperties(Path directory, @DefaultValue("1000") int compactionThreshold,
+                                         @DefaultValue("true") boolean sync) {
+
+        /**
+         * The directory the log of the certificate requests is kept in.
+         */
+        @Override
+        public Path directory() {
+            return directory;
+        }
+
+        /**
+         * How many outdated lines the log may hold before it is compacted.
+         */
+        @Override
+        public int compactionThreshold() {
+            return compactionThreshold;
+        }
+
+        /**
+         * If every change is flushed to the disk before it completes.
+         */
+        @Override
+        public boolean sync() {
+            return sync;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.storage;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.importing.RequestWriter;
+import ch.alni.certblues.local.LocalFiles;
+import org.slf4j.Logger;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Storage service that keeps the certificate requests in a log file on the local file system, for the deployments
+ * without a table storage and as a backend without latency for the benchmarks. It has the same semantics as the
+ * table storage: a request is pending if its creation has been forced or if its certificate is expiring.
+ * <p>
+ * Each change is appended to the log as a line: the request as JSON with a prefix telling if its creation is forced
+ * (the flag is not part of the JSON), or the name of a request that has been reset. All requests are kept in memory
+ * by name, so the reads never touch the file. The log is compacted into one line per request when it holds more
+ * outdated lines than the configured threshold, and when it is opened after a write has been interrupted.
+ */
+public class LogStorageService implements StorageService, RequestWriter, Closeable {
+    private static final Logger LOG = getLogger(LogStorageService.class);
+
+    private static final String LOG_FILE = "requests.log";
+
+    private static final char PENDING = 'P';
+    private static final char FORCED = 'F';
+    private static final char RESET = 'R';
+
+    // all requests are in one partition, a batch is written to the log at once
+    private static final String PARTITION = "certificateRequest";
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    // sorted by name like the rows of a table
+    private final Map<String, CertificateRequest> requests = new ConcurrentSkipListMap<>();
+
+    private final Path logFile;
+    private final int compactionThreshold;
+    private final boolean sync;
+
+    // guarded by this
+    private FileChannel channel;
+    private int lineCount;
+
+    /**
+     * @param directory           the directory of the log, created if it does not exist
+     * @param compactionThreshold how many outdated lines the log may hold before it is compacted
+     * @param sync                if every change is flushed to the disk before it completes
+     */
+    public LogStorageService(Path directory, int compactionThreshold, boolean sync) {
+        this.logFile = directory.resolve(LOG_FILE);
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+        this.sync = sync;
+
+        try {
+            Files.createDirectories(directory);
+            final boolean intact = load();
+            synchronized (this) {
+                if (intact) {
+                    channel = openChannel();
+                }
+                else {
+                    compact();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("cannot open the request store in " + directory, e);
+        }
+        LOG.info("request store opened with {} certificate requests", requests.size());
+    }
+
+    private static String toLine(CertificateRequest request) {
+        return (request.forceRequestCreation() ? FORCED : PENDING) + request.toJson() + '\n';
+    }
+
+    /**
+     * Replays the log into the memory.
+     *
+     * @return false if the log has lines that cannot be read, the last one is usually cut by an interrupted write
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(logFile)) {
+            return true;
+        }
+
+        final String content = Files.readString(logFile, StandardCharsets.UTF_8);
+        boolean intact = content.isEmpty() || content.endsWith("\n");
+
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                replay(line);
+                lineCount++;
+            }
+            catch (IllegalArgumentException e) {
+                LOG.warn("line of the request log ignored: {}", e.getMessage());
+                intact = false;
+            }
+        }
+        return intact;
+    }
+
+    private void replay(String line) {
+        final char type = line.charAt(0);
+        final String value = line.substring(1);
+
+        switch (type) {
+            case PENDING, FORCED -> {
+                final CertificateRequest request = CertificateRequest.of(value).toBuilder()
+                        .forceRequestCreation(type == FORCED)
+                        .build();
+                requests.put(request.certificateName(), request);
+            }
+            case RESET -> requests.computeIfPresent(value,
+                    (name, request) -> request.toBuilder().forceRequestCreation(false).build());
+            default -> throw new IllegalArgumentException("unknown record type " + type);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Adds or replaces the given request.
+     */
+    public void put(CertificateRequest certificateRequest) {
+        putAll(List.of(certificateRequest));
+    }
+
+    /**
+     * Adds or replaces the given requests with a single write to the log.
+     */
+    public synchronized void putAll(List<CertificateRequest> certificateRequests) {
+        final StringBuilder lines = new StringBuilder();
+        certificateRequests.forEach(request -> lines.append(toLine(request)));
+
+        append(lines.toString(), certificateRequests.size());
+        certificateRequests.forEach(request -> requests.put(request.certificateName(), request));
+        compactIfNeeded();
+    }
+
+    @Override
+    public String getPartition(CertificateRequest certificateRequest) {
+        return PARTITION;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public Mono<Void> upsert(List<CertificateRequest> certificateRequests) {
+        final Mono<Void> upsert = Mono.fromRunnable(() -> putAll(certificateRequests));
+        return sync ? upsert.subscribeOn(Schedulers.boundedElastic()) : upsert;
+    }
+
+    @Override
+    public Mono<Void> reset(CertificateRequest certificateRequest) {
+        final Mono<Void> reset = Mono.fromRunnable(() -> reset(certificateRequest.certificateName()));
+        // the changes that are not flushed to the disk do not block
+        return sync ? reset.subscribeOn(Schedulers.boundedElastic()) : reset;
+    }
+
+    private synchronized void reset(String certificateName) {
+        final CertificateRequest request = requests.get(certificateName);
+        if (request == null || !request.forceRequestCreation()) {
+            return;
+        }
+
+        append(RESET + certificateName + '\n', 1);
+        requests.put(certificateName, request.toBuilder().forceRequestCreation(false).build());
+        compactIfNeeded();
+    }
+
+    @Override
+    public Flux<CertificateRequest> getPendingCertificateRequests(List<CertificateInfo> expiringCertificates) {
+        final Set<String> expiringNames = expiringCertificates.stream()
+                .map(CertificateInfo::certificateName)
+                .collect(Collectors.toSet());
+
+        return Flux.fromIterable(requests.values())
+                .filter(request -> request.forceRequestCreation() ||
+                        expiringNames.contains(request.certificateName()));
+    }
+
+    @Override
+    public Mono<CertificateRequest> getCertificateRequest(String certificateName) {
+        return Mono.justOrEmpty(requests.get(certificateName));
+    }
+
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    private void append(String lines, int count) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            lineCount += count;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("cannot write to the request log " + logFile, e);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (lineCount - requests.size() < compactionThreshold) {
+            return;
+        }
+        try {
+            compact();
+        }
+        catch (IOException e) {
+            // the log is still complete, the compaction is tried again with the next change
+            LOG.warn("cannot compact the request log {}", logFile, e);
+        }
+    }
+
+    /**
+     * Replaces the log with one line per request and reopens it.
+     */
+    private synchronized void compact() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        requests.values().forEach(request -> content.append(toLine(request)));
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        try {
+            LocalFiles.writeAtomically(logFile, content.toString().getBytes(StandardCharsets.UTF_8));
+            LOG.debug("request log compacted from {} to {} lines", lineCount, requests.size());
+            lineCount = requests.size();
+        }
+        finally {
+            channel = openChannel();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.certificate;
+
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import ch.alni.certblues.acme.server.LocalCertificateAuthority;
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.KeyType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileCertificateStoreTest {
+
+    private static final Duration VALIDITY = Duration.ofDays(90);
+
+    private final LocalCertificateAuthority authority = new LocalCertificateAuthority();
+    private final Clock clock = Clock.systemUTC();
+
+    @TempDir
+    Path directory;
+
+    private static CertificateRequest request(String name, KeyType keyType) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + name + ".cloudalni.com")
+                .certificateName(name)
+                .dnsNames(List.of(name + ".cloudalni.com"))
+                .keyType(keyType)
+                .keySize(keyType == KeyType.EC ? 256 : 2048)
+                .build();
+    }
+
+    private void issue(FileCertificateStore store, CertificateRequest request) {
+        final byte[] csr = store.createCsr(request).block();
+        store.upload(request.certificateName(), authority.issue(csr, VALIDITY)).block();
+    }
+
+    @Test
+    void shouldStoreVersionsAndFindExpiringCertificates() throws Exception {
+        try (var store = new FileCertificateStore(directory, "secret", 2, clock)) {
+            issue(store, request("rsa", KeyType.RSA));
+            for (int i = 0; i < 3; i++) {
+                issue(store, request("renewed", KeyType.RSA));
+            }
+
+            assertThat(store.getExpiringCertificates(VALIDITY.minusDays(1)).collectList().block()).isEmpty();
+            assertThat(store.getExpiringCertificates(VALIDITY.plusDays(1)).collectList().block())
+                    .extracting(CertificateInfo::certificateName)
+                    .containsExactlyInAnyOrder("rsa", "renewed");
+
+            // only the last versions are kept
+            try (var files = Files.list(directory.resolve("certificates").resolve("renewed"))) {
+                assertThat(files.filter(file -> file.toString().endsWith(".p12")).count()).isEqualTo(2);
+            }
+
+            final var keyStore = KeyStore.getInstance("PKCS12");
+            try (var input = Files.newInputStream(store.getKeyStoreFile("rsa"))) {
+                keyStore.load(input, "secret".toCharArray());
+            }
+            assertThat(keyStore.getKey("rsa", "secret".toCharArray()).getAlgorithm()).isEqualTo("RSA");
+
+            final var csr = new PKCS10CertificationRequest(store.createCsr(request("ec", KeyType.EC)).block());
+            assertThat(csr.getSubjectPublicKeyInfo().getAlgorithm().getAlgorithm())
+                    .isEqualTo(X9ObjectIdentifiers.id_ecPublicKey);
+        }
+
+        // the index is read again, and rebuilt from the certificates if it is lost
+        try (var store = new FileCertificateStore(directory, "secret", 2, clock)) {
+            assertThat(store.getExpiringCertificates(VALIDITY.plusDays(1)).collectList().block()).hasSize(2);
+        }
+        Files.delete(directory.resolve("index.bin"));
+        try (var store = new FileCertificateStore(directory, "secret", 2, clock)) {
+            assertThat(store.getExpiringCertificates(VALIDITY.plusDays(1)).collectList().block()).hasSize(2);
+        }
+        // or if it is torn
+        tearFirstSlot(directory.resolve("index.bin"));
+        try (var store = new FileCertificateStore(directory, "secret", 2, clock)) {
+            assertThat(store.getExpiringCertificates(VALIDITY.plusDays(1)).collectList().block()).hasSize(2);
+        }
+    }
+
+    @Test
+    void shouldRejectTornIndex() throws Exception {
+        final Path indexFile = directory.resolve("index.bin");
+        try (var index = ExpiryIndex.open(indexFile)) {
+            index.put(new ExpiryIndex.Entry("certificate", Instant.parse("2025-01-01T00:00:00Z"), "id"));
+        }
+        tearFirstSlot(indexFile);
+
+        assertThatThrownBy(() -> ExpiryIndex.open(indexFile))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("torn");
+    }
+
+    @Test
+    void shouldRejectCertificateOfAnotherKey() throws Exception {
+        try (var store = new FileCertificateStore(directory, "", 2, clock);
+             var other = new FileCertificateStore(directory.resolve("other"), "", 2, clock)) {
+            store.createCsr(request("mismatch", KeyType.RSA)).block();
+            final byte[] csr = other.createCsr(request("mismatch", KeyType.RSA)).block();
+
+            assertThatThrownBy(() -> store.upload("mismatch", authority.issue(csr, VALIDITY)).block())
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThat(store.getKeyStoreFile("mismatch")).isNull();
+        }
+    }
+
+    @Test
+    void shouldGrowIndex() throws Exception {
+        final Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        try (var index = ExpiryIndex.open(directory.resolve("index.bin"))) {
+            for (int i = 0; i < 5000; i++) {
+                index.put(new ExpiryIndex.Entry("certificate" + i, now.plus(Duration.ofMinutes(i)), null));
+            }
+            index.put(new ExpiryIndex.Entry("certificate0", now.plus(Duration.ofDays(30)), "id"));
+        }
+
+        try (var index = ExpiryIndex.open(directory.resolve("index.bin"))) {
+            assertThat(index.size()).isEqualTo(5000);
+            assertThat(index.getExpiringBefore(now.plus(Duration.ofMinutes(3))))
+                    .extracting(ExpiryIndex.Entry::certificateName)
+                    .containsExactly("certificate1", "certificate2");
+            assertThat(index.get("certificate0").certificateId()).isEqualTo("id");
+        }
+    }
+
+    // as if the crash has happened after the first page of the slot has been written, but not the second one
+    private static void tearFirstSlot(Path indexFile) throws IOException {
+        final byte[] bytes = Files.readAllBytes(indexFile);
+        bytes[16 + Long.BYTES + Short.BYTES] ^= 0x01;
+        Files.write(indexFile, bytes);
+    }
+}
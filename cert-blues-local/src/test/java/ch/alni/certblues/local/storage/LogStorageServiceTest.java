@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.local.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogStorageServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private static CertificateRequest request(String name, boolean forced) {
+        return CertificateRequest.builder()
+                .subjectDn("CN=" + name + ".cloudalni.com")
+                .certificateName(name)
+                .dnsNames(List.of(name + ".cloudalni.com"))
+                .forceRequestCreation(forced)
+                .build();
+    }
+
+    private static List<String> getPendingNames(LogStorageService service, String... expiring) {
+        final List<CertificateInfo> expiringCertificates = List.of(expiring).stream()
+                .map(name -> CertificateInfo.builder().certificateName(name).expiresOn(Instant.now()).build())
+                .toList();
+
+        return service.getPendingCertificateRequests(expiringCertificates)
+                .map(CertificateRequest::certificateName)
+                .collectList()
+                .block();
+    }
+
+    @Test
+    void keepsRequestsAndResetsAcrossRestarts() throws Exception {
+        try (LogStorageService service = new LogStorageService(directory, 1000, true)) {
+            service.putAll(List.of(request("forced", true), request("expiring", false), request("idle", false)));
+            assertThat(getPendingNames(service, "expiring")).containsExactly("expiring", "forced");
+
+            service.reset(request("forced", true)).block();
+            assertThat(getPendingNames(service)).isEmpty();
+        }
+
+        try (LogStorageService service = new LogStorageService(directory, 1000, true)) {
+            assertThat(service.getRequestCount()).isEqualTo(3);
+            assertThat(getPendingNames(service)).isEmpty();
+            assertThat(service.getCertificateRequest("idle").block()).isEqualTo(request("idle", false));
+            assertThat(service.getCertificateRequest("unknown").blockOptional()).isEmpty();
+        }
+    }
+
+    @Test
+    void compactsOutdatedLinesAndRecoversFromInterruptedWrite() throws Exception {
+        final Path logFile = directory.resolve("requests.log");
+
+        try (LogStorageService service = new LogStorageService(directory, 5, false)) {
+            for (int i = 0; i < 10; i++) {
+                service.put(request("test", true));
+                service.reset(request("test", true)).block();
+            }
+        }
+        assertThat(Files.readAllLines(logFile).size()).isLessThanOrEqualTo(6);
+
+        // a write that has been cut off
+        Files.writeString(logFile, "F{\"certificateName\":\"cut", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (LogStorageService service = new LogStorageService(directory, 5, false)) {
+            assertThat(service.getRequestCount()).isEqualTo(1);
+            service.put(request("other", true));
+        }
+        assertThat(Files.readAllLines(logFile)).hasSize(2);
+
+        try (LogStorageService service = new LogStorageService(directory, 5, false)) {
+            assertThat(getPendingNames(service)).containsExactly("other");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.server;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaMiscPEMGenerator;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.PKCSException;
+import org.bouncycastle.util.io.pem.PemWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Certificate authority that issues certificates for CSRs with a self-signed root certificate kept in memory.
+ */
+public class LocalCertificateAuthority {
+
+    private static final String SIGNING_ALG = "SHA256withRSA";
+    private static final X500Name ROOT_NAME = new X500Name("CN=Cert Blues Mock Root CA");
+
+    private final AtomicLong serialNumbers = new AtomicLong(1L);
+
+    private final KeyPair keyPair;
+    private final String rootCertificate;
+
+    public LocalCertificateAuthority() {
+        try {
+            final var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+
+            this.keyPair = keyPairGenerator.generateKeyPair();
+
+            final Instant now = Instant.now();
+            final var rootBuilder = new JcaX509v3CertificateBuilder(
+                    ROOT_NAME, nextSerialNumber(), Date.from(now), Date.from(now.plus(Duration.ofDays(3650))),
+                    ROOT_NAME, keyPair.getPublic()
+            ).addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+
+            this.rootCertificate = toPem(rootBuilder.build(newSigner()));
+        }
+        catch (NoSuchAlgorithmException | OperatorCreationException | CertIOException e) {
+            throw new IllegalStateException("cannot create the local certificate authority", e);
+        }
+    }
+
+    /**
+     * Issues a certificate for the given CSR and returns the certificate chain in PEM format. The requested
+     * subject alternative names are copied into the certificate, other requested extensions are ignored.
+     *
+     * @param encodedCsr the CSR in DER encoding
+     * @param validity   how long the certificate is valid
+     */
+    public String issue(byte[] encodedCsr, Duration validity) {
+        try {
+            final var csr = new PKCS10CertificationRequest(encodedCsr);
+            final var verifier = new JcaContentVerifierProviderBuilder()
+                    .build(csr.getSubjectPublicKeyInfo());
+            if (!csr.isSignatureValid(verifier)) {
+                throw new IllegalArgumentException("the signature of the CSR is not valid");
+            }
+
+            final Instant now = Instant.now();
+            final var builder = new X509v3CertificateBuilder(
+                    ROOT_NAME, nextSerialNumber(), Date.from(now), Date.from(now.plus(validity)),
+                    csr.getSubject(), csr.getSubjectPublicKeyInfo()
+            );
+
+            for (var attribute : csr.getAttributes(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest)) {
+                for (ASN1Encodable value : attribute.getAttributeValues()) {
+                    final Extension subjectAltNames = Extensions.getInstance(value)
+                            .getExtension(Extension.subjectAlternativeName);
+                    if (null != subjectAltNames) {
+                        builder.addExtension(subjectAltNames);
+                    }
+                }
+            }
+
+            return toPem(builder.build(newSigner())) + rootCertificate;
+        }
+        catch (IOException | OperatorCreationException | PKCSException e) {
+            throw new IllegalArgumentException("cannot issue a certificate for the CSR", e);
+        }
+    }
+
+    /**
+     * Returns the root certificate in PEM format.
+     */
+    public String getRootCertificate() {
+        return rootCertificate;
+    }
+
+    // the signers are not thread-safe
+    private ContentSigner newSigner() throws OperatorCreationException {
+        return new JcaContentSignerBuilder(SIGNING_ALG).build(keyPair.getPrivate());
+    }
+
+    private BigInteger nextSerialNumber() {
+        return BigInteger.valueOf(serialNumbers.getAndIncrement());
+    }
+
+    private static String toPem(X509CertificateHolder certificate) {
+        final var writer = new StringWriter();
+        try (PemWriter pemWriter = new PemWriter(writer)) {
+            pemWriter.writeObject(new JcaMiscPEMGenerator(certificate));
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("cannot encode the certificate", e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.server;
+
+import ch.alni.certblues.common.json.JsonObjectException;
+import ch.alni.certblues.common.json.JsonObjects;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.HttpServerRoutes;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * In-process ACME server for local end-to-end and load tests. It implements the directory, nonce, account, order,
+ * authorization, challenge, finalization and certificate download resources of RFC 8555 over plain HTTP.
+ * <p>
+ * The nonces are checked, but the JWS signatures are not verified. Every submitted challenge is valid right away,
+ * and the orders are issued by a {@link LocalCertificateAuthority} as soon as they are finalized. The latency and the
+ * errors of the server can be configured with {@link MockAcmeServerOptions}.
+ */
+public class MockAcmeServer implements AutoCloseable {
+    private static final Logger LOG = getLogger(MockAcmeServer.class);
+
+    private static final String ERROR_TYPE_PREFIX = "urn:ietf:params:acme:error:";
+    // the header names are sent in the canonical form, like the public ACME servers do
+    private static final String HEADER_REPLAY_NONCE = "Replay-Nonce";
+    private static final String HEADER_LOCATION = "Location";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_TYPE_JSON = "application/json";
+    private static final String CONTENT_TYPE_PROBLEM = "application/problem+json";
+    private static final String CONTENT_TYPE_PEM_CHAIN = "application/pem-certificate-chain";
+
+    private final MockAcmeServerOptions options;
+    private final LocalCertificateAuthority certificateAuthority = new LocalCertificateAuthority();
+    private final Random random;
+
+    private final Set<String> nonces = ConcurrentHashMap.newKeySet();
+    private final Map<String, MockOrder> orders = new ConcurrentHashMap<>();
+    private final Map<String, MockAuthorization> authorizations = new ConcurrentHashMap<>();
+    private final Map<String, MockChallenge> challenges = new ConcurrentHashMap<>();
+    private final Map<String, String> certificates = new ConcurrentHashMap<>();
+
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+
+    private final DisposableServer server;
+    private final String baseUrl;
+
+    private MockAcmeServer(MockAcmeServerOptions options) {
+        this.options = options;
+        this.random = new Random(options.seed());
+
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(options.port())
+                .route(this::configureRoutes)
+                .bindNow();
+
+        this.baseUrl = "http://localhost:" + server.port();
+        LOG.info("mock ACME server started at {}", baseUrl);
+    }
+
+    /**
+     * Starts a new server with the given options.
+     */
+    public static MockAcmeServer start(MockAcmeServerOptions options) {
+        return new MockAcmeServer(options);
+    }
+
+    public String getDirectoryUrl() {
+        return baseUrl + "/directory";
+    }
+
+    /**
+     * Returns the root certificate of the CA issuing the certificates in PEM format.
+     */
+    public String getRootCertificate() {
+        return certificateAuthority.getRootCertificate();
+    }
+
+    /**
+     * Returns the number of signed requests received so far.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests that have been rejected with an injected error.
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.get();
+    }
+
+    /**
+     * Returns the number of the certificates issued so far.
+     */
+    public int getIssuedCertificateCount() {
+        return certificates.size();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private void configureRoutes(HttpServerRoutes routes) {
+        routes.get("/directory", (request, response) -> send(response, Reply.json(200, directory())))
+                .head("/new-nonce", (request, response) -> send(response, Reply.empty(200)))
+                .get("/new-nonce", (request, response) -> send(response, Reply.empty(204)))
+                .post("/new-account", signed(this::newAccount))
+                .post("/new-order", signed(this::newOrder))
+                .post("/order/{id}", signed(withId(this::getOrder)))
+                .post("/authz/{id}", signed(withId(this::getAuthorization)))
+                .post("/chall/{id}", signed(withId(this::submitChallenge)))
+                .post("/finalize/{id}", signed(withId(this::finalizeOrder)))
+                .post("/cert/{id}", signed(withId(this::downloadCertificate)));
+    }
+
+    private BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> signed(
+            BiFunction<HttpServerRequest, String, Reply> handler) {
+
+        return (request, response) -> request.receive()
+                .aggregate()
+                .asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("")
+                .map(body -> handleSigned(request, body, handler))
+                .flatMap(reply -> send(response, reply));
+    }
+
+    private static BiFunction<HttpServerRequest, String, Reply> withId(BiFunction<String, String, Reply> handler) {
+        return (request, payload) -> handler.apply(request.param("id"), payload);
+    }
+
+    private Reply handleSigned(HttpServerRequest request, String body,
+                               BiFunction<HttpServerRequest, String, Reply> handler) {
+        requestCount.incrementAndGet();
+
+        try {
+            final Map<?, ?> jws = JsonObjects.deserialize(body, Map.class);
+            final Map<?, ?> protectedHeader = JsonObjects.deserialize(decode((String) jws.get("protected")), Map.class);
+
+            // every nonce can only be used once
+            final Object nonce = protectedHeader.get("nonce");
+            if (!(nonce instanceof String) || !nonces.remove(nonce)) {
+                return Reply.problem(400, "badNonce", "JWS has an invalid anti-replay nonce", false);
+            }
+
+            final Reply injectedError = injectError();
+            if (null != injectedError) {
+                injectedErrorCount.incrementAndGet();
+                return injectedError;
+            }
+
+            return handler.apply(request, decode((String) jws.get("payload")));
+        }
+        catch (JsonObjectException | IllegalArgumentException | ClassCastException | NullPointerException e) {
+            LOG.warn("cannot process the request to {}", request.uri(), e);
+            return Reply.problem(400, "malformed", e.getMessage(), false);
+        }
+    }
+
+    private Reply injectError() {
+        final double value;
+        synchronized (random) {
+            value = random.nextDouble();
+        }
+
+        if (value < options.badNonceRate()) {
+            return Reply.problem(400, "badNonce", "injected bad nonce", false);
+        }
+        else if (value < options.badNonceRate() + options.rateLimitedRate()) {
+            return Reply.problem(429, "rateLimited", "injected rate limit", true);
+        }
+        else if (value < options.badNonceRate() + options.rateLimitedRate() + options.serverErrorRate()) {
+            return Reply.problem(500, "serverInternal", "injected server error", true);
+        }
+        else {
+            return null;
+        }
+    }
+
+    private Reply newAccount(HttpServerRequest request, String payload) {
+        final String accountUrl = baseUrl + "/account/" + ids.incrementAndGet();
+
+        final Map<String, Object> account = new LinkedHashMap<>();
+        account.put("status", "valid");
+        account.put("termsOfServiceAgreed", true);
+        account.put("orders", accountUrl + "/orders");
+
+        return Reply.json(201, account).withLocation(accountUrl);
+    }
+
+    private Reply newOrder(HttpServerRequest request, String payload) {
+        final Map<?, ?> orderRequest = JsonObjects.deserialize(payload, Map.class);
+        final List<?> identifiers = (List<?>) orderRequest.get("identifiers");
+        if (null == identifiers || identifiers.isEmpty()) {
+            return Reply.problem(400, "malformed", "the order has no identifiers", false);
+        }
+
+        final var order = new MockOrder(String.valueOf(ids.incrementAndGet()));
+        for (Object identifier : identifiers) {
+            final var authorization = new MockAuthorization(String.valueOf(ids.incrementAndGet()), (Map<?, ?>) identifier);
+            for (String type : List.of("http-01", "dns-01")) {
+                final var challenge = new MockChallenge(String.valueOf(ids.incrementAndGet()), type, authorization);
+                authorization.challenges.add(challenge);
+                challenges.put(challenge.id, challenge);
+            }
+            authorizations.put(authorization.id, authorization);
+            order.identifiers.add((Map<?, ?>) identifier);
+            order.authorizations.add(authorization);
+        }
+        orders.put(order.id, order);
+
+        return Reply.json(201, toJson(order)).withLocation(baseUrl + "/order/" + order.id);
+    }
+
+    private Reply getOrder(String id, String payload) {
+        return ifFound(orders.get(id), order -> Reply.json(200, toJson(order)));
+    }
+
+    private Reply getAuthorization(String id, String payload) {
+        return ifFound(authorizations.get(id), authorization -> Reply.json(200, toJson(authorization)));
+    }
+
+    private Reply submitChallenge(String id, String payload) {
+        return ifFound(challenges.get(id), challenge -> {
+            // the challenges are not validated, submitting them is enough
+            challenge.validated = now();
+            challenge.authorization.valid = true;
+            return Reply.json(200, toJson(challenge));
+        });
+    }
+
+    private Reply finalizeOrder(String id, String payload) {
+        return ifFound(orders.get(id), order -> {
+            if (!order.isReady()) {
+                return Reply.problem(403, "orderNotReady", "the order is not ready to be finalized", false);
+            }
+
+            final Map<?, ?> finalizationRequest = JsonObjects.deserialize(payload, Map.class);
+            final byte[] csr = Base64.getUrlDecoder().decode((String) finalizationRequest.get("csr"));
+
+            final String certificateId = String.valueOf(ids.incrementAndGet());
+            certificates.put(certificateId, certificateAuthority.issue(csr, options.certificateValidity()));
+            order.certificateId = certificateId;
+
+            return Reply.json(200, toJson(order)).withLocation(baseUrl + "/order/" + order.id);
+        });
+    }
+
+    private Reply downloadCertificate(String id, String payload) {
+        return ifFound(certificates.get(id), certificate -> new Reply(200, CONTENT_TYPE_PEM_CHAIN, certificate));
+    }
+
+    private static <T> Reply ifFound(T resource, Function<T, Reply> function) {
+        return null != resource ?
+                function.apply(resource) :
+                Reply.problem(404, "malformed", "resource not found", false);
+    }
+
+    private Map<String, Object> directory() {
+        final Map<String, Object> directory = new LinkedHashMap<>();
+        directory.put("newNonce", baseUrl + "/new-nonce");
+        directory.put("newAccount", baseUrl + "/new-account");
+        directory.put("newOrder", baseUrl + "/new-order");
+        directory.put("revokeCert", baseUrl + "/revoke-cert");
+        directory.put("keyChange", baseUrl + "/key-change");
+        directory.put("meta", Map.of("termsOfService", baseUrl + "/terms", "externalAccountRequired", false));
+        return directory;
+    }
+
+    private Map<String, Object> toJson(MockOrder order) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("status", order.getStatus());
+        json.put("expires", order.expires);
+        json.put("identifiers", order.identifiers);
+        json.put("authorizations", order.authorizations.stream()
+                .map(authorization -> baseUrl + "/authz/" + authorization.id)
+                .toList());
+        json.put("finalize", baseUrl + "/finalize/" + order.id);
+        if (null != order.certificateId) {
+            json.put("certificate", baseUrl + "/cert/" + order.certificateId);
+        }
+        return json;
+    }
+
+    private Map<String, Object> toJson(MockAuthorization authorization) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("identifier", authorization.identifier);
+        json.put("status", authorization.valid ? "valid" : "pending");
+        json.put("expires", authorization.expires);
+        json.put("challenges", authorization.challenges.stream().map(this::toJson).toList());
+        return json;
+    }
+
+    private Map<String, Object> toJson(MockChallenge challenge) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", challenge.type);
+        json.put("url", baseUrl + "/chall/" + challenge.id);
+        json.put("token", challenge.token);
+        if (null != challenge.validated) {
+            json.put("status", "valid");
+            json.put("validated", challenge.validated);
+        }
+        else {
+            json.put("status", "pending");
+        }
+        return json;
+    }
+
+    private Mono<Void> send(HttpServerResponse response, Reply reply) {
+        final String nonce = UUID.randomUUID().toString().replace("-", "");
+        nonces.add(nonce);
+
+        response.status(reply.status)
+                .header(HEADER_REPLAY_NONCE, nonce)
+                .header(HEADER_CACHE_CONTROL, "no-store");
+
+        if (null != reply.location) {
+            response.header(HEADER_LOCATION, reply.location);
+        }
+        if (reply.retryAfter) {
+            response.header(HEADER_RETRY_AFTER, String.valueOf(options.retryAfter().toSeconds()));
+        }
+
+        final Mono<Void> sendMono = null != reply.body ?
+                response.header(HEADER_CONTENT_TYPE, reply.contentType).sendString(Mono.just(reply.body)).then() :
+                response.send();
+
+        return options.latency().isZero() ? sendMono : Mono.delay(options.latency()).then(sendMono);
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    private static String now() {
+        return OffsetDateTime.now(ZoneOffset.UTC).toString();
+    }
+
+    private static String expiresIn7Days() {
+        return OffsetDateTime.now(ZoneOffset.UTC).plusDays(7).toString();
+    }
+
+    /**
+     * The response to send.
+     */
+    private static final class Reply {
+        private final int status;
+        private final String contentType;
+        private final String body;
+        private final boolean retryAfter;
+        private String location;
+
+        private Reply(int status, String contentType, String body) {
+            this(status, contentType, body, false);
+        }
+
+        private Reply(int status, String contentType, String body, boolean retryAfter) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        static Reply json(int status, Object body) {
+            return new Reply(status, CONTENT_TYPE_JSON, JsonObjects.serialize(body));
+        }
+
+        static Reply empty(int status) {
+            return new Reply(status, null, null);
+        }
+
+        static Reply problem(int status, String type, String detail, boolean retryAfter) {
+            final Map<String, Object> problem = Map.of(
+                    "type", ERROR_TYPE_PREFIX + type,
+                    "detail", String.valueOf(detail),
+                    "status", status
+            );
+            return new Reply(status, CONTENT_TYPE_PROBLEM, JsonObjects.serialize(problem), retryAfter);
+        }
+
+        Reply withLocation(String location) {
+            this.location = location;
+            return this;
+        }
+    }
+
+    private static final class MockOrder {
+        private final String id;
+        private final String expires = expiresIn7Days();
+        private final List<Map<?, ?>> identifiers = new ArrayList<>();
+        private final List<MockAuthorization> authorizations = new ArrayList<>();
+        private volatile String certificateId;
+
+        private MockOrder(String id) {
+            this.id = id;
+        }
+
+        boolean isReady() {
+            return authorizations.stream().allMatch(authorization -> authorization.valid);
+        }
+
+        String getStatus() {
+            if (null != certificateId) {
+                return "valid";
+            }
+            return isReady() ? "ready" : "pending";
+        }
+    }
+
+    private static final class MockAuthorization {
+        private final String id;
+        private final Map<?, ?> identifier;
+        private final String expires = expiresIn7Days();
+        private final List<MockChallenge> challenges = new ArrayList<>();
+        private volatile boolean valid;
+
+        private MockAuthorization(String id, Map<?, ?> identifier) {
+            this.id = id;
+            this.identifier = identifier;
+        }
+    }
+
+    private static final class MockChallenge {
+        private final String id;
+        private final String type;
+        private final String token = UUID.randomUUID().toString().replace("-", "");
+        private final MockAuthorization authorization;
+        private volatile String validated;
+
+        private MockChallenge(String id, String type, MockAuthorization authorization) {
+            this.id = id;
+            this.type = type;
+            this.authorization = authorization;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.acme.server;
+
+import com.google.auto.value.AutoValue;
+
+import java.time.Duration;
+
+/**
+ * Behaviour of the {@link MockAcmeServer}. The error rates are probabilities between 0 and 1 that are applied to
+ * every signed request independently.
+ */
+@AutoValue
+public abstract class MockAcmeServerOptions {
+
+    public static Builder builder() {
+        return new AutoValue_MockAcmeServerOptions.Builder()
+                .port(0)
+                .latency(Duration.ZERO)
+                .badNonceRate(0)
+                .rateLimitedRate(0)
+                .serverErrorRate(0)
+                .retryAfter(Duration.ofSeconds(1))
+                .certificateValidity(Duration.ofDays(90))
+                .seed(0L);
+    }
+
+    /**
+     * The port to listen to, 0 for any free port.
+     */
+    public abstract int port();
+
+    /**
+     * How long the server waits before it answers a request.
+     */
+    public abstract Duration latency();
+
+    /**
+     * Probability of rejecting a request with a {@code badNonce} error.
+     */
+    public abstract double badNonceRate();
+
+    /**
+     * Probability of rejecting a request with a {@code rateLimited} error (HTTP 429).
+     */
+    public abstract double rateLimitedRate();
+
+    /**
+     * Probability of rejecting a request with a {@code serverInternal} error (HTTP 500).
+     */
+    public abstract double serverErrorRate();
+
+    /**
+     * The value of the {@code Retry-After} header sent with the {@code rateLimited} and {@code serverInternal} errors.
+     */
+    public abstract Duration retryAfter();
+
+    /**
+     * How long the issued certificates are valid.
+     */
+    public abstract Duration certificateValidity();
+
+    /**
+     * The seed of the random generator that decides which requests fail.
+     */
+    public abstract long seed();
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+
+        public abstract Builder port(int value);
+
+        public abstract Builder latency(Duration value);
+
+        public abstract Builder badNonceRate(double value);
+
+        public abstract Builder rateLimitedRate(double value);
+
+        public abstract Builder serverErrorRate(double value);
+
+        public abstract Builder retryAfter(Duration value);
+
+        public abstract Builder certificateValidity(Duration value);
+
+        public abstract Builder seed(long value);
+
+        public abstract MockAcmeServerOptions build();
+    }
+}
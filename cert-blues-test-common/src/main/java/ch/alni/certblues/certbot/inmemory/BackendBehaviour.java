@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import com.google.auto.value.AutoValue;
+
+import java.time.Duration;
+
+/**
+ * How a simulated backend behaves. The rates are probabilities between 0 and 1 that are applied to every call
+ * independently.
+ */
+@AutoValue
+public abstract class BackendBehaviour {
+
+    public static Builder builder() {
+        return new AutoValue_BackendBehaviour.Builder()
+                .latency(LatencyDistribution.none())
+                .throttlingRate(0)
+                .retryAfter(Duration.ofSeconds(1))
+                .maxRetries(3)
+                .failureRate(0)
+                .seed(0L);
+    }
+
+    /**
+     * A backend that answers immediately and never fails.
+     */
+    public static BackendBehaviour ideal() {
+        return builder().build();
+    }
+
+    /**
+     * The latency of every call, including the throttled ones.
+     */
+    public abstract LatencyDistribution latency();
+
+    /**
+     * How often a call is throttled with 429 and the {@link #retryAfter()} hint.
+     */
+    public abstract double throttlingRate();
+
+    /**
+     * How long the caller is asked to wait after a call has been throttled.
+     */
+    public abstract Duration retryAfter();
+
+    /**
+     * How many times a throttled call is retried before the error is returned, like the retry policies of the Azure
+     * SDK clients do.
+     */
+    public abstract int maxRetries();
+
+    /**
+     * How often a call fails with 500. The failures are not retried.
+     */
+    public abstract double failureRate();
+
+    /**
+     * The seed of the random numbers, so that the runs can be repeated.
+     */
+    public abstract long seed();
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+
+        public abstract Builder latency(LatencyDistribution value);
+
+        public abstract Builder throttlingRate(double value);
+
+        public abstract Builder retryAfter(Duration value);
+
+        public abstract Builder maxRetries(int value);
+
+        public abstract Builder failureRate(double value);
+
+        public abstract Builder seed(long value);
+
+        public abstract BackendBehaviour build();
+    }
+}
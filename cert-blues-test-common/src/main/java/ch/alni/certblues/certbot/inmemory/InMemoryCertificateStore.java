@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.CertificateStore;
+import ch.alni.certblues.certbot.certificate.SimpleCertEntry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Certificate store that keeps the certificates in memory, like a key vault with the latency and the errors of the
+ * given behaviour would do. All CSRs are signed with the same key pair, generating a key per certificate would
+ * dominate the measurements.
+ */
+public class InMemoryCertificateStore implements CertificateStore {
+
+    private final Map<String, CertificateInfo> certificates = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadedCertificates = new ConcurrentHashMap<>();
+
+    private final SimpleCertEntry csrFactory;
+    private final SimulatedBackend backend;
+    private final Clock clock;
+
+    public InMemoryCertificateStore(KeyPair keyPair, BackendBehaviour behaviour, Clock clock) {
+        this.csrFactory = new SimpleCertEntry(keyPair);
+        this.backend = new SimulatedBackend("certificate store", behaviour);
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a certificate that expires at the given time without calling the backend.
+     */
+    public void put(String certificateName, Instant expiresOn) {
+        certificates.put(certificateName, CertificateInfo.builder()
+                .certificateName(certificateName)
+                .expiresOn(expiresOn)
+                .build());
+    }
+
+    @Override
+    public Mono<byte[]> createCsr(CertificateRequest certificateRequest) {
+        return backend.call("createCsr", () -> certificateRequest)
+                .flatMap(csrFactory::createCsr);
+    }
+
+    @Override
+    public Mono<Void> upload(String name, String certificate) {
+        return backend.run("upload", () -> {
+            uploadedCertificates.put(name, certificate);
+            put(name, getExpiresOn(certificate));
+        });
+    }
+
+    @Override
+    public Flux<CertificateInfo> getExpiringCertificates(Duration renewalInterval) {
+        return backend.call("getExpiringCertificates", () -> {
+                    final Instant renewOn = clock.instant().plus(renewalInterval);
+                    return certificates.values().stream()
+                            .filter(certificateInfo -> certificateInfo.expiresOn().isBefore(renewOn))
+                            .toList();
+                })
+                .flatMapIterable(list -> list);
+    }
+
+    /**
+     * Returns the certificate uploaded with the given name.
+     */
+    public Optional<String> getUploadedCertificate(String name) {
+        return Optional.ofNullable(uploadedCertificates.get(name));
+    }
+
+    public int getUploadedCertificateCount() {
+        return uploadedCertificates.size();
+    }
+
+    public SimulatedBackend getBackend() {
+        return backend;
+    }
+
+    private static Instant getExpiresOn(String certificate) {
+        try {
+            final var certificateFactory = CertificateFactory.getInstance("X.509");
+            final var input = new ByteArrayInputStream(certificate.getBytes(StandardCharsets.US_ASCII));
+            // the leaf certificate comes first in the chain
+            final List<?> chain = List.copyOf(certificateFactory.generateCertificates(input));
+            return ((X509Certificate) chain.get(0)).getNotAfter().toInstant();
+        }
+        catch (CertificateException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("cannot parse the certificate " + certificate, e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.acme.facade.DnsChallengeProvisioner;
+import ch.alni.certblues.acme.facade.HttpChallengeProvisioner;
+import ch.alni.certblues.certbot.AuthorizationProvisionerFactory;
+import ch.alni.certblues.certbot.CertificateRequest;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Challenge provisioner that keeps the HTTP tokens and the DNS records in memory, like a storage account and a DNS
+ * zone with the latency and the errors of the given behaviours would do. It provisions the challenges of all
+ * certificate requests, so it is its own factory.
+ */
+public class InMemoryChallengeProvisioner
+        implements AuthorizationProvisionerFactory, HttpChallengeProvisioner, DnsChallengeProvisioner {
+
+    private final Map<String, String> httpTokens = new ConcurrentHashMap<>();
+    private final Map<String, String> dnsRecords = new ConcurrentHashMap<>();
+
+    private final SimulatedBackend httpBackend;
+    private final SimulatedBackend dnsBackend;
+
+    public InMemoryChallengeProvisioner(BackendBehaviour httpBehaviour, BackendBehaviour dnsBehaviour) {
+        this.httpBackend = new SimulatedBackend("http challenge provisioner", httpBehaviour);
+        this.dnsBackend = new SimulatedBackend("dns challenge provisioner", dnsBehaviour);
+    }
+
+    @Override
+    public HttpChallengeProvisioner createHttpChallengeProvisioner(CertificateRequest certificateRequest) {
+        return this;
+    }
+
+    @Override
+    public DnsChallengeProvisioner createDnsChallengeProvisioner(CertificateRequest certificateRequest) {
+        return this;
+    }
+
+    @Override
+    public Mono<Void> provisionHttp(String token, String keyAuth) {
+        return httpBackend.run("provisionHttp", () -> httpTokens.put(token, keyAuth));
+    }
+
+    @Override
+    public Mono<Void> provisionDns(String host, String value) {
+        return dnsBackend.run("provisionDns", () -> dnsRecords.put(host, value));
+    }
+
+    public Optional<String> getKeyAuth(String token) {
+        return Optional.ofNullable(httpTokens.get(token));
+    }
+
+    public Optional<String> getTxtRecord(String host) {
+        return Optional.ofNullable(dnsRecords.get(host));
+    }
+
+    public SimulatedBackend getHttpBackend() {
+        return httpBackend;
+    }
+
+    public SimulatedBackend getDnsBackend() {
+        return dnsBackend;
+    }
+}
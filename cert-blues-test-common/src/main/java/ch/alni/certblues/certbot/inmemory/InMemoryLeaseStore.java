@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.certbot.sharding.Lease;
+import ch.alni.certblues.certbot.sharding.LeaseStore;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lease store that keeps the leases in memory, shared by the coordinators of the instances simulated in one process.
+ * The updates are conditional on the version like the updates of the table entities.
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public Flux<Lease> getLeases() {
+        return Flux.defer(() -> Flux.fromIterable(leases.values()));
+    }
+
+    @Override
+    public Mono<Lease> getLease(String name) {
+        return Mono.fromSupplier(() -> leases.get(name));
+    }
+
+    @Override
+    public Mono<Lease> acquire(String name, String owner, Instant expiresOn, Lease current) {
+        return Mono.fromSupplier(() -> {
+            final Lease acquired = new Lease(name, owner, expiresOn, UUID.randomUUID().toString());
+            final boolean updated = null == current ?
+                    null == leases.putIfAbsent(name, acquired) :
+                    leases.replace(name, current, acquired);
+            return updated ? acquired : null;
+        });
+    }
+
+    @Override
+    public Mono<Void> release(Lease lease) {
+        return Mono.fromRunnable(() -> leases.remove(lease.name(), lease));
+    }
+
+    /**
+     * Returns the owner of the given lease, or null if nobody holds it.
+     */
+    public String getOwner(String name) {
+        final Lease lease = leases.get(name);
+        return null == lease ? null : lease.owner();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.certbot.queue.RequestNotification;
+import ch.alni.certblues.certbot.queue.RequestNotificationQueue;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Queue that keeps the notifications in memory with the same semantics as a storage queue: a received notification
+ * is hidden for the visibility timeout, delivered again after that unless deleted, and can only be deleted with the
+ * receipt of its last delivery.
+ */
+public class InMemoryRequestQueue implements RequestNotificationQueue {
+
+    // in the order the messages have been sent, guarded by this
+    private final Map<String, Message> messages = new LinkedHashMap<>();
+    private final List<String> deadLetters = new ArrayList<>();
+
+    private final Clock clock;
+
+    public InMemoryRequestQueue(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sends a notification of the given certificate.
+     */
+    public synchronized void send(String certificateName) {
+        final var message = new Message(UUID.randomUUID().toString(), certificateName);
+        messages.put(message.messageId, message);
+    }
+
+    @Override
+    public Flux<RequestNotification> receive(int maxNotifications, Duration visibilityTimeout) {
+        return Flux.defer(() -> Flux.fromIterable(receiveNow(maxNotifications, visibilityTimeout)));
+    }
+
+    @Override
+    public Mono<Void> delete(RequestNotification notification) {
+        return Mono.fromRunnable(() -> remove(notification));
+    }
+
+    @Override
+    public Mono<Void> requeue(RequestNotification notification, Duration delay) {
+        return Mono.fromRunnable(() -> {
+            synchronized (this) {
+                final var message = new Message(UUID.randomUUID().toString(), notification.certificateName());
+                message.visibleOn = clock.instant().plus(delay);
+                messages.put(message.messageId, message);
+            }
+            remove(notification);
+        });
+    }
+
+    @Override
+    public Mono<Void> deadLetter(RequestNotification notification) {
+        return Mono.fromRunnable(() -> {
+            if (remove(notification)) {
+                synchronized (this) {
+                    deadLetters.add(notification.certificateName());
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of the messages in the queue, the hidden ones included.
+     */
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * Returns the certificate names of the dead-lettered notifications.
+     */
+    public synchronized List<String> getDeadLetters() {
+        return List.copyOf(deadLetters);
+    }
+
+    private synchronized List<RequestNotification> receiveNow(int maxNotifications, Duration visibilityTimeout) {
+        final Instant now = clock.instant();
+        final List<RequestNotification> received = new ArrayList<>();
+        for (Message message : messages.values()) {
+            if (received.size() >= maxNotifications) {
+                break;
+            }
+            if (!message.visibleOn.isAfter(now)) {
+                message.dequeueCount++;
+                message.receipt = UUID.randomUUID().toString();
+                message.visibleOn = now.plus(visibilityTimeout);
+                received.add(new RequestNotification(message.messageId, message.receipt, message.certificateName,
+                        message.dequeueCount));
+            }
+        }
+        return received;
+    }
+
+    private synchronized boolean remove(RequestNotification notification) {
+        final Message message = messages.get(notification.messageId());
+        if (null == message || !notification.receipt().equals(message.receipt)) {
+            return false;
+        }
+        messages.remove(notification.messageId());
+        return true;
+    }
+
+    private static class Message {
+        private final String messageId;
+        private final String certificateName;
+        private Instant visibleOn = Instant.MIN;
+        private String receipt;
+        private long dequeueCount;
+
+        Message(String messageId, String certificateName) {
+            this.messageId = messageId;
+            this.certificateName = certificateName;
+        }
+    }
+}
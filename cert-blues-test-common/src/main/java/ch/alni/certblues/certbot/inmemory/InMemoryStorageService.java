@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.certbot.CertificateInfo;
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.StorageService;
+import ch.alni.certblues.certbot.importing.RequestWriter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Storage service that keeps the certificate requests in memory. It has the same semantics as the table storage: a
+ * request is pending if its creation has been forced or if its certificate is expiring.
+ */
+public class InMemoryStorageService implements StorageService, RequestWriter {
+
+    // sorted by name like the rows of a table
+    private final Map<String, CertificateRequest> requests = new ConcurrentSkipListMap<>();
+
+    private final SimulatedBackend backend;
+
+    public InMemoryStorageService(BackendBehaviour behaviour) {
+        this.backend = new SimulatedBackend("storage service", behaviour);
+    }
+
+    /**
+     * Adds or replaces the given request without calling the backend.
+     */
+    public void put(CertificateRequest certificateRequest) {
+        requests.put(certificateRequest.certificateName(), certificateRequest);
+    }
+
+    @Override
+    public String getPartition(CertificateRequest certificateRequest) {
+        return "certificateRequest";
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return 100;
+    }
+
+    @Override
+    public Mono<Void> upsert(List<CertificateRequest> certificateRequests) {
+        return backend.run("upsert", () -> certificateRequests.forEach(this::put));
+    }
+
+    @Override
+    public Mono<Void> reset(CertificateRequest certificateRequest) {
+        return backend.run("reset", () -> requests.computeIfPresent(certificateRequest.certificateName(),
+                (name, request) -> request.toBuilder().forceRequestCreation(false).build()));
+    }
+
+    @Override
+    public Flux<CertificateRequest> getPendingCertificateRequests(List<CertificateInfo> expiringCertificates) {
+        final Set<String> expiringNames = expiringCertificates.stream()
+                .map(CertificateInfo::certificateName)
+                .collect(Collectors.toSet());
+
+        return backend.call("getPendingCertificateRequests", () -> List.copyOf(requests.values()))
+                .flatMapIterable(list -> list)
+                .filter(request -> request.forceRequestCreation() ||
+                        expiringNames.contains(request.certificateName()));
+    }
+
+    @Override
+    public Mono<CertificateRequest> getCertificateRequest(String certificateName) {
+        return backend.call("getCertificateRequest", () -> requests.get(certificateName));
+    }
+
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    public SimulatedBackend getBackend() {
+        return backend;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Distribution of the latencies of a simulated backend.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * The z-score of the 99th percentile of the standard normal distribution.
+     */
+    double Z_99 = 2.3263;
+
+    /**
+     * Returns the next latency.
+     */
+    Duration sample(Random random);
+
+    /**
+     * No latency at all.
+     */
+    static LatencyDistribution none() {
+        return random -> Duration.ZERO;
+    }
+
+    /**
+     * The same latency for every call.
+     */
+    static LatencyDistribution fixed(Duration latency) {
+        return random -> latency;
+    }
+
+    /**
+     * Latencies evenly distributed between the given bounds.
+     */
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        Preconditions.checkArgument(min.compareTo(max) <= 0, "min %s is greater than max %s", min, max);
+
+        final long minNanos = min.toNanos();
+        final long rangeNanos = max.toNanos() - minNanos;
+        return random -> Duration.ofNanos(minNanos + (long) (random.nextDouble() * rangeNanos));
+    }
+
+    /**
+     * Log-normally distributed latencies with the given median and 99th percentile. This distribution has the long
+     * tail that the latencies of cloud services usually have.
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        Preconditions.checkArgument(median.compareTo(p99) <= 0, "median %s is greater than p99 %s", median, p99);
+        Preconditions.checkArgument(!median.isZero() && !median.isNegative(), "median %s is not positive", median);
+
+        final double mu = Math.log(median.toNanos());
+        final double sigma = (Math.log(p99.toNanos()) - mu) / Z_99;
+        return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Applies the latency and the errors of a {@link BackendBehaviour} to the calls of an in-memory backend.
+ */
+public final class SimulatedBackend {
+
+    private final String name;
+    private final BackendBehaviour behaviour;
+    private final Random random;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public SimulatedBackend(String name, BackendBehaviour behaviour) {
+        this.name = name;
+        this.behaviour = behaviour;
+        this.random = new Random(behaviour.seed());
+    }
+
+    /**
+     * Returns a mono that waits for the latency of the backend and then either fails or returns the value of the
+     * given operation. Each subscription is a new call, so the throttled calls are retried with the new latency.
+     */
+    public <T> Mono<T> call(String operation, Supplier<T> supplier) {
+        final Mono<T> attempt = Mono.defer(() -> {
+            callCount.incrementAndGet();
+
+            final Duration latency = behaviour.latency().sample(random);
+            final double value = random.nextDouble();
+
+            final Mono<T> result;
+            if (value < behaviour.throttlingRate()) {
+                throttledCount.incrementAndGet();
+                result = Mono.error(new SimulatedBackendException(
+                        name + " throttled " + operation, 429, behaviour.retryAfter()));
+            }
+            else if (value < behaviour.throttlingRate() + behaviour.failureRate()) {
+                failedCount.incrementAndGet();
+                result = Mono.error(new SimulatedBackendException(name + " failed " + operation, 500, null));
+            }
+            else {
+                result = Mono.fromSupplier(supplier);
+            }
+
+            return latency.isZero() ? result : Mono.delay(latency).then(result);
+        });
+
+        return attempt.retryWhen(Retry.fixedDelay(behaviour.maxRetries(), behaviour.retryAfter())
+                .filter(throwable -> throwable instanceof SimulatedBackendException e && e.isThrottled())
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Same as {@link #call(String, Supplier)} for operations without result.
+     */
+    public Mono<Void> run(String operation, Runnable runnable) {
+        return call(operation, () -> {
+            runnable.run();
+            return Boolean.TRUE;
+        }).then();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of the calls including the retries.
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d calls, %d throttled, %d failed", name, getCallCount(), getThrottledCount(),
+                getFailedCount());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.certbot.inmemory;
+
+import ch.alni.certblues.certbot.CertificateRequest;
+import ch.alni.certblues.certbot.KeyType;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a fleet of certificates spread over DNS zones and populates the in-memory backends with it.
+ * <p>
+ * The certificates expire evenly distributed over {@link #expiryWindow()} from now on. A share of the certificates
+ * does not exist yet and is requested with {@code forceRequestCreation}, and another share has already expired.
+ */
+@AutoValue
+public abstract class SyntheticFleet {
+
+    public static Builder builder() {
+        return new AutoValue_SyntheticFleet.Builder()
+                .zoneCount(1)
+                .expiryWindow(Duration.ofDays(90))
+                .newCertificateRate(0)
+                .expiredRate(0)
+                .seed(0L)
+                .clock(Clock.systemUTC());
+    }
+
+    public abstract int certificateCount();
+
+    public abstract int zoneCount();
+
+    /**
+     * The existing certificates expire within this duration from now on.
+     */
+    public abstract Duration expiryWindow();
+
+    /**
+     * The share of the certificates that do not exist yet.
+     */
+    public abstract double newCertificateRate();
+
+    /**
+     * The share of the existing certificates that have already expired.
+     */
+    public abstract double expiredRate();
+
+    public abstract long seed();
+
+    public abstract Clock clock();
+
+    /**
+     * Returns the name of the DNS zone with the given index.
+     */
+    public static String zoneName(int zoneIndex) {
+        return String.format("zone-%03d.test", zoneIndex);
+    }
+
+    /**
+     * Generates the certificate requests of the fleet.
+     */
+    public List<CertificateRequest> generateRequests() {
+        final Random random = new Random(seed());
+        return IntStream.range(0, certificateCount())
+                .mapToObj(index -> toRequest(index, random.nextDouble() < newCertificateRate()))
+                .toList();
+    }
+
+    /**
+     * Adds the requests to the storage service and the existing certificates to the certificate store.
+     *
+     * @return the number of the certificates that expire within the given renewal interval or do not exist yet
+     */
+    public int populate(InMemoryStorageService storageService, InMemoryCertificateStore certificateStore,
+                        Duration renewalInterval) {
+        // independent of the random numbers of the requests
+        final Random random = new Random(~seed());
+        final Instant now = clock().instant();
+        final Instant renewOn = now.plus(renewalInterval);
+
+        int pendingCount = 0;
+        for (CertificateRequest request : generateRequests()) {
+            storageService.put(request);
+
+            if (request.forceRequestCreation()) {
+                pendingCount++;
+                continue;
+            }
+
+            final boolean expired = random.nextDouble() < expiredRate();
+            final Duration offset = Duration.ofNanos((long) (random.nextDouble() * expiryWindow().toNanos()));
+            final Instant expiresOn = expired ? now.minus(offset) : now.plus(offset);
+
+            certificateStore.put(request.certificateName(), expiresOn);
+            if (expiresOn.isBefore(renewOn)) {
+                pendingCount++;
+            }
+        }
+        return pendingCount;
+    }
+
+    private CertificateRequest toRequest(int index, boolean newCertificate) {
+        final String zone = zoneName(index % zoneCount());
+        final String certificateName = String.format("cert-%06d", index);
+
+        return CertificateRequest.builder()
+                .certificateName(certificateName)
+                .storageEndpointUrl("https://" + zone.replace('.', '-') + ".blob.test")
+                .keyType(KeyType.RSA)
+                .keySize(2048)
+                .subjectDn("CN=" + certificateName + "." + zone)
+                .dnsNames(List.of(certificateName + "." + zone))
+                .dnsZone(zone)
+                .dnsZoneResourceGroup("fleet")
+                .validityInMonths(3)
+                .forceRequestCreation(newCertificate)
+                .build();
+    }
+
+    @AutoValue.Builder
+    public static abstract class Builder {
+
+        public abstract Builder certificateCount(int value);
+
+        public abstract Builder zoneCount(int value);
+
+        public abstract Builder expiryWindow(Duration value);
+
+        public abstract Builder newCertificateRate(double value);
+
+        public abstract Builder expiredRate(double value);
+
+        public abstract Builder seed(long value);
+
+        public abstract Builder clock(Clock value);
+
+        abstract SyntheticFleet autoBuild();
+
+        public SyntheticFleet build() {
+            final SyntheticFleet fleet = autoBuild();
+            Preconditions.checkArgument(fleet.zoneCount() > 0, "at least one zone is needed");
+            return fleet;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020, 2021 Alexander Nikiforov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package ch.alni.certblues.common.traffic;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Replays recorded exchanges with their recorded latencies. It answers a request with the next recorded response for
+ * the same method and path, and keeps repeating the last one when the recording is exhausted. The origins of the
+ * recording, like the ACME server or the key vault, are replaced with the URL of this server in the headers and the
+ * bodies, so that the clients follow the links back to this server.
+ * <p>
+ * Point the clients at {@link #getBaseUrl()} with the path of the recorded directory or service endpoint.
+ */
+public class TrafficReplayServer implements AutoCloseable {
+    private static final Logger LOG = getLogger(TrafficReplayServer.class);
+
+    // the bodies are replayed as decoded strings, the framing is computed again
+    private static final Set<String> SKIPPED_HEADERS =
+            Set.of("content-length", "content-encoding", "transfer-encoding", "connection", "set-cookie");
+
+    private final Map<String, Deque<TrafficExchange>> exchanges = new ConcurrentHashMap<>();
+    private final Set<String> origins = new LinkedHashSet<>();
+    private final double speed;
+
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong missedCount = new AtomicLong();
+
+    private final DisposableServer server;
+    private final String baseUrl;
+
+    private TrafficReplayServer(List<TrafficExchange> recording, double speed) {
+        Preconditions.checkArgument(speed > 0, "speed %s is not positive", speed);
+        this.speed = speed;
+
+        for (TrafficExchange exchange : recording) {
+            final URI uri = URI.create(exchange.url());
+            origins.add(uri.getScheme() + "://" + uri.getRawAuthority());
+            exchanges.computeIfAbsent(key(exchange.method(), uri.getRawPath(), uri.getRawQuery()),
+                    key -> new ArrayDeque<>()).add(exchange);
+        }
+
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle(this::replay)
+                .bindNow();
+
+        this.baseUrl = "http://localhost:" + server.port();
+        LOG.info("replaying {} exchanges of {} at {}", recording.size(), origins, baseUrl);
+    }
+
+    /**
+     * Starts a new server that replays the given exchanges with their recorded latencies.
+     */
+    public static TrafficReplayServer start(List<TrafficExchange> recording) {
+        return start(recording, 1.0);
+    }
+
+    /**
+     * Starts a new server that replays the given exchanges. The recorded latencies are divided by the given speed, so
+     * 2.0 replays twice as fast as recorded.
+     */
+    public static TrafficReplayServer start(List<TrafficExchange> recording, double speed) {
+        return new TrafficReplayServer(recording, speed);
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Returns the given recorded URL pointing at this server.
+     */
+    public String toReplayUrl(String recordedUrl) {
+        return rewrite(recordedUrl);
+    }
+
+    /**
+     * Returns the number of the requests answered with a recorded response.
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Returns the number of the requests that have no recorded response.
+     */
+    public long getMissedCount() {
+        return missedCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> replay(HttpServerRequest request, HttpServerResponse response) {
+        final URI uri = URI.create(request.uri());
+        final String key = key(request.method().name(), uri.getRawPath(), uri.getRawQuery());
+        final TrafficExchange exchange = next(key);
+
+        if (null == exchange) {
+            missedCount.incrementAndGet();
+            LOG.warn("no recorded exchange for {}", key);
+            return request.receive().then(response.status(404).send());
+        }
+
+        replayedCount.incrementAndGet();
+        response.status(exchange.status());
+        exchange.responseHeaders().forEach((name, value) -> {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                response.header(name, rewrite(value));
+            }
+        });
+
+        final Duration latency = Duration.ofNanos((long) (exchange.latency().toNanos() / speed));
+        final Mono<Void> sendMono = null != exchange.responseBody() && !"HEAD".equals(exchange.method()) ?
+                response.sendString(Mono.just(rewrite(exchange.responseBody()))).then() :
+                response.send();
+
+        return request.receive().then(Mono.delay(latency)).then(sendMono);
+    }
+
+    private TrafficExchange next(String key) {
+        final Deque<TrafficExchange> queue = exchanges.get(key);
+        if (null == queue) {
+            return null;
+        }
+
+        synchronized (queue) {
+            // the last response is repeated, for example the final state of an order
+            return queue.size() > 1 ? queue.poll() : queue.peek();
+        }
+    }
+
+    private String rewrite(String value) {
+        String result = value;
+        for (String origin : origins) {
+            result = result.replace(origin, baseUrl);
+        }
+        return result;
+    }
+
+    private static String key(String method, String path, String query) {
+        return method + " " + path + (null != query ? "?" + query : "");
+    }
+}